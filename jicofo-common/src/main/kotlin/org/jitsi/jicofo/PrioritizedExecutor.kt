@@ -0,0 +1,115 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import org.jitsi.jicofo.metrics.LatencyHistogram
+import org.jitsi.utils.concurrent.CustomizableThreadFactory
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * A bounded thread pool which runs queued tasks in order of [TaskPools.Priority] (and in submission order within the
+ * same priority).
+ *
+ * At most [maxThreads] threads are used, and idle threads are stopped. Tasks are always queued, and never run in the
+ * submitting thread, which is often one of Smack's threads and must not block. Instead, [isQueueFull] tells the entry
+ * points for new work (e.g. [org.jitsi.jicofo.xmpp.IqDispatcher]) to refuse it while more than [maxQueueSize] tasks
+ * are queued. Tasks which continue work already accepted are still queued, so that it completes.
+ */
+class PrioritizedExecutor(
+    /** The name of the pool, used for thread names and as the label of the metrics. */
+    val name: String,
+    maxThreads: Int,
+    private val maxQueueSize: Int
+) : ThreadPoolExecutor(
+    maxThreads,
+    maxThreads,
+    60,
+    TimeUnit.SECONDS,
+    PriorityBlockingQueue(),
+    CustomizableThreadFactory("Jicofo $name pool", false)
+) {
+    private val sequence = AtomicLong()
+    private val labels = listOf(name)
+
+    init {
+        allowCoreThreadTimeOut(true)
+    }
+
+    override fun execute(command: Runnable) = execute(command, TaskPools.Priority.NORMAL)
+
+    fun execute(command: Runnable, priority: TaskPools.Priority) {
+        super.execute(Task(command, priority, sequence.getAndIncrement(), System.nanoTime()))
+        queueSize.set(queue.size.toLong(), labels)
+    }
+
+    /** Whether [maxQueueSize] or more tasks are queued, in which case new work should be refused. */
+    val isQueueFull: Boolean
+        get() = queue.size >= maxQueueSize
+
+    override fun beforeExecute(t: Thread, r: Runnable) {
+        super.beforeExecute(t, r)
+        if (r is Task) {
+            tasks.add(1, labels)
+            val queueTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - r.queued)
+            queueTimeMs.add(queueTime, labels)
+            waitTime.observe(queueTime, name)
+            queueSize.set(queue.size.toLong(), labels)
+        }
+    }
+
+    private class Task(
+        private val command: Runnable,
+        private val priority: TaskPools.Priority,
+        private val sequence: Long,
+        /** The value of [System.nanoTime] when the task was queued. */
+        val queued: Long
+    ) : Runnable, Comparable<Task> {
+        override fun run() = command.run()
+
+        override fun compareTo(other: Task): Int = compareValuesBy(this, other, { it.priority }, { it.sequence })
+    }
+
+    companion object {
+        private val queueSize = metricsContainer.registerLongGauge(
+            "task_pool_queue_size",
+            "The number of tasks queued in a task pool.",
+            labelNames = listOf("pool")
+        )
+        private val tasks = metricsContainer.registerCounter(
+            "task_pool_tasks",
+            "Number of tasks started by a task pool.",
+            labelNames = listOf("pool")
+        )
+
+        /** Divided by [tasks], this gives the average time a task waited in the queue. */
+        private val queueTimeMs = metricsContainer.registerCounter(
+            "task_pool_queue_time_ms",
+            "Total time in milliseconds that tasks in a task pool spent queued before starting.",
+            labelNames = listOf("pool")
+        )
+        private val waitTime = LatencyHistogram(
+            "task_pool_wait_time_ms",
+            "Time that tasks in a task pool spent queued before starting",
+            labelName = "pool"
+        )
+    }
+}
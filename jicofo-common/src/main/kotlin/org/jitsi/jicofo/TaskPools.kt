@@ -18,22 +18,118 @@
 package org.jitsi.jicofo
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
+import org.jitsi.config.JitsiConfig
+import org.jitsi.metaconfig.config
 import org.jitsi.utils.concurrent.CustomizableThreadFactory
+import org.jitsi.utils.logging2.createLogger
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 
 @SuppressFBWarnings("NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
 class TaskPools {
+    /** The classes of work which run on separate pools, so that one of them being overloaded does not starve others. */
+    enum class WorkClass(val configName: String) {
+        /** Invites, Jingle, MUC presence and conference requests. */
+        SIGNALING("signaling"),
+
+        /** Handling colibri responses and events from bridges. */
+        BRIDGE("bridge"),
+
+        /** Bridge health checks. */
+        HEALTH("health"),
+
+        /** Everything else, e.g. component discovery and room metadata. */
+        HOUSEKEEPING("housekeeping")
+    }
+
+    /** The priority of a task within its pool. Queued tasks with a higher priority run first. */
+    enum class Priority {
+        /** Tasks which release resources, e.g. leaving a room or terminating a session. */
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
     companion object {
-        private val defaultIoPool: ExecutorService =
-            Executors.newCachedThreadPool(CustomizableThreadFactory("Jicofo Global IO Pool", false))
+        private val logger = createLogger()
+
+        private val defaultPoolsLazy = lazy {
+            val useVirtualThreads = TaskPoolConfig.virtualThreads && virtualThreadsSupported().also {
+                if (!it) logger.warn("Virtual threads are enabled, but not supported by this JVM. Using bounded pools.")
+            }
+            WorkClass.entries.associateWith {
+                if (useVirtualThreads) {
+                    newVirtualThreadPerTaskExecutor()
+                } else {
+                    val config = TaskPoolConfig(it.configName)
+                    PrioritizedExecutor(it.configName, config.maxThreads, config.maxQueueSize)
+                }
+            }
+        }
+        private val defaultPools: Map<WorkClass, ExecutorService> by defaultPoolsLazy
+
+        /** Virtual threads are available since JDK 21. We build for JDK 17, so they are accessed with reflection. */
+        private fun virtualThreadsSupported() = try {
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor")
+            true
+        } catch (e: NoSuchMethodException) {
+            false
+        }
+
+        /** Create an executor which starts a new virtual thread for each task. */
+        private fun newVirtualThreadPerTaskExecutor(): ExecutorService =
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+
+        /** When set, used for all [WorkClass]es instead of their own pools. */
+        private var overridePool: ExecutorService? = null
+
+        /** The pool for work of a specific [WorkClass]. */
+        @JvmStatic
+        fun pool(workClass: WorkClass): ExecutorService = overridePool ?: defaultPools.getValue(workClass)
+
+        /**
+         * Run [task] on the pool for [workClass], before any queued tasks with a lower [priority]. With virtual threads
+         * tasks are never queued, so [priority] has no effect.
+         */
+        @JvmStatic
+        fun execute(workClass: WorkClass, priority: Priority, task: Runnable) {
+            when (val pool = pool(workClass)) {
+                is PrioritizedExecutor -> pool.execute(task, priority)
+                else -> pool.execute(task)
+            }
+        }
 
         @JvmStatic
-        var ioPool: ExecutorService = defaultIoPool
+        val signalingPool: ExecutorService
+            get() = pool(WorkClass.SIGNALING)
+
+        @JvmStatic
+        val bridgePool: ExecutorService
+            get() = pool(WorkClass.BRIDGE)
+
+        @JvmStatic
+        val healthPool: ExecutorService
+            get() = pool(WorkClass.HEALTH)
+
+        @JvmStatic
+        val housekeepingPool: ExecutorService
+            get() = pool(WorkClass.HOUSEKEEPING)
+
+        /**
+         * Setting this replaces the pools for all [WorkClass]es, which allows tests to control when async work runs.
+         * Reading it returns the pool for [WorkClass.HOUSEKEEPING]; code should instead use the pool for the class of
+         * its work.
+         */
+        @JvmStatic
+        var ioPool: ExecutorService
+            get() = pool(WorkClass.HOUSEKEEPING)
+            set(value) {
+                overridePool = value
+            }
 
         fun resetIoPool() {
-            ioPool = defaultIoPool
+            overridePool = null
         }
 
         private val defaultScheduledPool: ScheduledExecutorService = Executors.newScheduledThreadPool(
@@ -41,6 +137,10 @@ class TaskPools {
             CustomizableThreadFactory("Jicofo Global Scheduled Pool", true)
         )
 
+        /**
+         * The pool for timers. Tasks scheduled here must not block, but should hand off any blocking work to one of
+         * the other pools.
+         */
         @JvmStatic
         var scheduledPool: ScheduledExecutorService = defaultScheduledPool
 
@@ -50,8 +150,28 @@ class TaskPools {
 
         @JvmStatic
         fun shutdown() {
-            ioPool.shutdown()
+            overridePool?.shutdown()
+            if (defaultPoolsLazy.isInitialized()) {
+                defaultPools.values.forEach { it.shutdown() }
+            }
             scheduledPool.shutdown()
         }
     }
 }
+
+private class TaskPoolConfig(name: String) {
+    val maxThreads: Int by config {
+        "$BASE.$name.max-threads".from(JitsiConfig.newConfig)
+    }
+    val maxQueueSize: Int by config {
+        "$BASE.$name.max-queue-size".from(JitsiConfig.newConfig)
+    }
+
+    companion object {
+        const val BASE = "jicofo.task-pools"
+
+        val virtualThreads: Boolean by config {
+            "$BASE.virtual-threads".from(JitsiConfig.newConfig)
+        }
+    }
+}
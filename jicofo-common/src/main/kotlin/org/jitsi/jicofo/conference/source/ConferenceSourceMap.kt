@@ -84,7 +84,7 @@ open class ConferenceSourceMap(
      * Create a compact JSON representation of this [ConferenceSourceMap]. The JSON is a map of an ID of the owner
      * to the compact JSON of its [EndpointSourceSet] (see [EndpointSourceSet.compactJson]).
      */
-    fun compactJson(): String = synchronized(syncRoot) {
+    open fun compactJson(): String = synchronized(syncRoot) {
         buildString {
             append("{")
             endpointSourceSets.entries.forEachIndexed { i, entry ->
@@ -200,7 +200,7 @@ open class ConferenceSourceMap(
  * A read-only version of [ConferenceSourceMap]. Attempts to modify the map will via [add], [remove] or any of the
  * standard [java.util.Map] mutating methods will result in an exception.
  */
-class UnmodifiableConferenceSourceMap(
+open class UnmodifiableConferenceSourceMap(
     endpointSourceSets: ConcurrentHashMap<String, EndpointSourceSet>
 ) : ConferenceSourceMap(endpointSourceSets) {
     constructor(map: Map<String, EndpointSourceSet>) : this(ConcurrentHashMap(map))
@@ -220,3 +220,13 @@ class UnmodifiableConferenceSourceMap(
     override fun map(transform: (EndpointSourceSet) -> EndpointSourceSet) =
         throw UnsupportedOperationException("map() not supported in unmodifiable view")
 }
+
+/**
+ * An [UnmodifiableConferenceSourceMap] with its own copy of the sources, which therefore never change. This allows the
+ * compact JSON to be computed only once, which is useful when the map is signaled to many endpoints.
+ */
+class ImmutableConferenceSourceMap(map: Map<String, EndpointSourceSet>) : UnmodifiableConferenceSourceMap(map) {
+    private val compactJson: String by lazy { super.compactJson() }
+
+    override fun compactJson() = compactJson
+}
@@ -0,0 +1,75 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.conference.source
+
+import org.jitsi.xmpp.extensions.jingle.ContentPacketExtension
+import org.jitsi.xmpp.extensions.jitsimeet.JsonMessageExtension
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * An immutable set of sources together with its encodings for signaling (source-add and source-remove). Each
+ * encoding is created once, when first used, and is shared by all stanzas which carry these sources, so it must not be
+ * modified.
+ */
+class EncodedSources(sources: Map<String, EndpointSourceSet>) {
+    val sources: ConferenceSourceMap = UnmodifiableConferenceSourceMap(sources)
+
+    /** The sources encoded in the compact JSON format (see [ConferenceSourceMap.compactJson]). */
+    val json: JsonMessageExtension by lazy { JsonMessageExtension("{\"sources\":${this.sources.compactJson()}}") }
+
+    /** The sources encoded as Jingle contents (see [ConferenceSourceMap.toJingle]). */
+    val jingle: List<ContentPacketExtension> by lazy { this.sources.toJingle() }
+
+    override fun toString() = sources.toString()
+}
+
+private typealias SourcesKey = Map<String, EndpointSourceSet>
+
+/**
+ * A cache of [EncodedSources], so that when the same change to the sources of a conference is signaled to many
+ * endpoints it is only encoded once. Endpoints which receive a different (filtered) view of the change get their own
+ * [EncodedSources], and the [maxSize] most recently used ones are kept.
+ */
+class EncodedSourcesCache(private val maxSize: Int = 16) {
+    private val cache = object : LinkedHashMap<SourcesKey, EncodedSources>(maxSize, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<SourcesKey, EncodedSources>) = size > maxSize
+    }
+
+    /** Get the [EncodedSources] for [sources], which should not be modified afterwards. */
+    fun get(sources: ConferenceSourceMap): EncodedSources {
+        // Snapshot the map, since the key must not change while it's in the cache.
+        val key: SourcesKey = HashMap(sources)
+        return synchronized(cache) {
+            cache[key]?.also { hits.inc() } ?: EncodedSources(key).also {
+                misses.inc()
+                cache[key] = it
+            }
+        }
+    }
+
+    companion object {
+        val hits = metricsContainer.registerCounter(
+            "encoded_sources_cache_hits",
+            "Number of source-add and source-remove stanzas which reused previously encoded sources."
+        )
+        val misses = metricsContainer.registerCounter(
+            "encoded_sources_cache_misses",
+            "Number of source-add and source-remove stanzas for which the sources were newly encoded."
+        )
+    }
+}
@@ -42,6 +42,15 @@ data class EndpointSourceSet(
      */
     fun isEmpty() = sources.isEmpty() && ssrcGroups.isEmpty()
 
+    /** The sets are immutable, so the hash code is only computed once (sets are compared as keys of a cache). */
+    private val cachedHashCode: Int by lazy { 31 * sources.hashCode() + ssrcGroups.hashCode() }
+
+    override fun hashCode() = cachedHashCode
+
+    override fun equals(other: Any?) = this === other ||
+        (other is EndpointSourceSet && cachedHashCode == other.cachedHashCode && sources == other.sources &&
+            ssrcGroups == other.ssrcGroups)
+
     /**
      * Whether there are any audio sources in this set.
      */
@@ -0,0 +1,54 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.conference.source
+
+import org.jitsi.utils.MediaType
+
+/**
+ * Describes which sources are signaled to an endpoint, depending on its capabilities. Endpoints with equal filters
+ * receive the same (filtered) sources.
+ */
+data class SourceFilter(
+    /** Whether audio sources are signaled. */
+    val audio: Boolean = true,
+    /** Whether video sources are signaled. */
+    val video: Boolean = true,
+    /** Whether simulcast is stripped (see [EndpointSourceSet.stripSimulcast]). */
+    val stripSimulcast: Boolean = true
+) {
+    /** The set of media types which are signaled. */
+    val supportedMediaTypes: Set<MediaType> = buildSet {
+        if (audio) add(MediaType.AUDIO)
+        if (video) add(MediaType.VIDEO)
+    }
+
+    /** Filter out the sources in [sources] which should not be signaled, e.g. video if [video] is not set. */
+    fun filter(sources: EndpointSourceSet): EndpointSourceSet {
+        var result = sources
+        if (!audio || !video) {
+            val strippedSources = sources.sources.filter { it.mediaType in supportedMediaTypes }.toSet()
+            result = if (strippedSources.isEmpty()) {
+                EndpointSourceSet.EMPTY
+            } else {
+                val strippedSsrcGroups = sources.ssrcGroups.filter { it.mediaType in supportedMediaTypes }.toSet()
+                EndpointSourceSet(strippedSources, strippedSsrcGroups)
+            }
+        }
+        return if (stripSimulcast) result.stripSimulcast else result
+    }
+}
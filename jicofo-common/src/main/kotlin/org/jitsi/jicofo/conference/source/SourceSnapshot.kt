@@ -0,0 +1,83 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.conference.source
+
+/**
+ * The sources of a conference at a specific [version], filtered for signaling with [filter]. Endpoints which are
+ * invited while the sources don't change share a snapshot, so that the sources are filtered and encoded once rather
+ * than once for every endpoint (see [ValidatingConferenceSourceMap.snapshot]).
+ */
+class SourceSnapshot @JvmOverloads constructor(
+    sources: Map<String, EndpointSourceSet>,
+    val filter: SourceFilter,
+    val version: Long = 0,
+    /** A snapshot of a previous version, whose filtered sources are reused for the owners which haven't changed. */
+    previous: SourceSnapshot? = null
+) {
+    /** The sources before filtering. */
+    val unfiltered: Map<String, EndpointSourceSet> = HashMap(sources)
+
+    /** The filtered sources by owner, including owners with no sources left after filtering. */
+    private val filteredByOwner: Map<String, EndpointSourceSet> = unfiltered.mapValues { (owner, sources) ->
+        if (previous != null && previous.unfiltered[owner] === sources) {
+            previous.filteredByOwner[owner] ?: filter.filter(sources)
+        } else {
+            filter.filter(sources)
+        }
+    }
+
+    /** The sources after filtering. Owners with no sources left are omitted. */
+    val filtered: Map<String, EndpointSourceSet> = filteredByOwner.filterValues { !it.isEmpty() }
+
+    /** Recently requested [offerSources], which are shared between endpoints. */
+    private val offers = object : LinkedHashMap<Pair<Map<String, EndpointSourceSet>, String?>, ConferenceSourceMap>(
+        MAX_OFFERS,
+        0.75f,
+        true
+    ) {
+        override fun removeEldestEntry(
+            eldest: MutableMap.MutableEntry<Pair<Map<String, EndpointSourceSet>, String?>, ConferenceSourceMap>
+        ) = size > MAX_OFFERS
+    }
+
+    /**
+     * Get the filtered sources to offer to the endpoint with ID [endpointId]: the sources in this snapshot and
+     * [additional] (before filtering, e.g. the feedback sources of a bridge), except the endpoint's own. The result is
+     * shared between endpoints with the same [additional] sources, and it encodes its JSON only once.
+     */
+    fun offerSources(additional: Map<String, EndpointSourceSet>, endpointId: String?): ConferenceSourceMap {
+        // The endpoint's ID only matters if it owns sources, which is usually not the case when it's being invited.
+        val exclude = endpointId?.takeIf { unfiltered.containsKey(it) || additional.containsKey(it) }
+        val key = Pair(HashMap(additional), exclude)
+        synchronized(offers) { offers[key]?.let { return it } }
+
+        val result = HashMap(filtered)
+        additional.forEach { (owner, sources) ->
+            val merged = filter.filter((unfiltered[owner] ?: EndpointSourceSet.EMPTY) + sources)
+            if (merged.isEmpty()) result.remove(owner) else result[owner] = merged
+        }
+        exclude?.let { result.remove(it) }
+
+        return ImmutableConferenceSourceMap(result).also { synchronized(offers) { offers[key] = it } }
+    }
+
+    companion object {
+        /** Endpoints on the same bridge use the same additional sources, so a few entries cover all of them. */
+        private const val MAX_OFFERS = 8
+    }
+}
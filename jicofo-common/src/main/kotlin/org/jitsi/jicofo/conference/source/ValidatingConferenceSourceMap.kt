@@ -53,6 +53,30 @@ class ValidatingConferenceSourceMap(
      */
     private val msidToOwnerMap = mutableMapOf<String, String>()
 
+    /** Incremented with every change to the map. */
+    @Volatile
+    var version = 0L
+        private set
+
+    /** The snapshot of the latest version for each filter which has been requested. */
+    private val snapshots = mutableMapOf<SourceFilter, SourceSnapshot>()
+
+    /**
+     * Get a snapshot of the sources filtered with [filter]. The same snapshot is returned until the map changes, and
+     * the next snapshot reuses the filtered sources of the owners which haven't changed.
+     */
+    fun snapshot(filter: SourceFilter): SourceSnapshot = synchronized(syncRoot) {
+        val previous = snapshots[filter]
+        if (previous?.version == version) {
+            previous
+        } else {
+            SourceSnapshot(this, filter, version, previous).also { snapshots[filter] = it }
+        }
+    }
+
+    /** Whether [ssrc] is used by any source in the map. */
+    fun isSsrcInUse(ssrc: Long): Boolean = synchronized(syncRoot) { ssrcToOwnerMap.containsKey(ssrc) }
+
     /**
      * Attempts to add [sourcesToAdd] as sources owned by [owner]. The attempt is successful if the addition does not
      * introduce any conflicts in SSRC/MSID and the resulting set of sources for [owner] is valid (see
@@ -178,16 +202,18 @@ class ValidatingConferenceSourceMap(
         return acceptedSourceSet
     }
 
-    /** Override [add] to keep the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
+    /** Override [add] to keep [version] and the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
     override fun add(other: ConferenceSourceMap) = synchronized(syncRoot) {
         super.add(other).also {
+            version++
             other.forEach { (owner, endpointSourceSet) -> sourceSetAdded(owner, endpointSourceSet) }
         }
     }
 
-    /** Override [add] to keep the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
+    /** Override [add] to keep [version] and the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
     override fun add(owner: String, endpointSourceSet: EndpointSourceSet) = synchronized(syncRoot) {
         super.add(owner, endpointSourceSet).also {
+            version++
             sourceSetAdded(owner, endpointSourceSet)
         }
     }
@@ -201,16 +227,18 @@ class ValidatingConferenceSourceMap(
         }
     }
 
-    /** Override [remove] to keep the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
+    /** Override [remove] to keep [version] and the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
     override fun remove(other: ConferenceSourceMap) = synchronized(syncRoot) {
         super.remove(other).also {
+            version++
             other.forEach { (owner, ownerRemovedSourceSet) -> sourceSetRemoved(owner, ownerRemovedSourceSet) }
         }
     }
 
-    /** Override [remove] to keep the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
+    /** Override [remove] to keep [version] and the additional [ssrcToOwnerMap] and [msidToOwnerMap] maps updated. */
     override fun remove(owner: String): EndpointSourceSet? = synchronized(syncRoot) {
         val ownerRemovedSourceSet = super.remove(owner)
+        version++
         ownerRemovedSourceSet?.let {
             sourceSetRemoved(owner, it)
         }
@@ -236,6 +264,11 @@ class ValidatingConferenceSourceMap(
         }
     }
 
+    /** Override [map] to keep [version] updated. */
+    override fun map(transform: (EndpointSourceSet) -> EndpointSourceSet) = synchronized(syncRoot) {
+        super.map(transform).also { version++ }
+    }
+
     companion object {
 
         /**
@@ -0,0 +1,168 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.metrics
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.function.Function
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * A histogram of durations in milliseconds, exported like a Prometheus histogram: `<name>_bucket` counts the
+ * observations of at most `le` milliseconds (the buckets are cumulative, and the `+Inf` bucket counts all
+ * observations), `<name>_sum` is their total in milliseconds and `<name>_count` is their number.
+ *
+ * Observing a duration is lock-free and does not allocate: it increments a slot in a fixed array of counters. The
+ * exported metrics are brought up to date by [JicofoMetricsContainer.metricsUpdater], so they may lag by one update
+ * interval. With a [labelName] there is a separate histogram for each value of the label.
+ */
+class LatencyHistogram @JvmOverloads constructor(
+    name: String,
+    /** Describes what is measured, e.g. "Round-trip time of requests". */
+    help: String,
+    /** The upper bounds of the buckets in milliseconds, in increasing order. */
+    bucketsMs: List<Long> = DEFAULT_BUCKETS_MS,
+    labelName: String? = null
+) {
+    private val bounds = bucketsMs.toLongArray()
+    private val bucketNames = bucketsMs.map { it.toString() } + "+Inf"
+
+    private val bucketMetric = metricsContainer.registerCounter(
+        "${name}_bucket",
+        "$help: number of observations of at most le milliseconds.",
+        labelNames = listOfNotNull(labelName) + "le"
+    )
+    private val sumMetric = metricsContainer.registerCounter(
+        "${name}_sum",
+        "$help: total in milliseconds.",
+        labelNames = listOfNotNull(labelName)
+    )
+    private val countMetric = metricsContainer.registerCounter(
+        "${name}_count",
+        "$help: number of observations.",
+        labelNames = listOfNotNull(labelName)
+    )
+
+    /** The histograms by label value. Without a label there is a single histogram with an empty label value. */
+    private val histograms = ConcurrentHashMap<String, Histogram>()
+
+    /** Created once, so that looking up an existing histogram does not allocate a lambda. */
+    private val newHistogram = Function<String, Histogram> { Histogram(if (labelName == null) null else it) }
+
+    init {
+        metricsContainer.metricsUpdater.addUpdateTask { export() }
+    }
+
+    /** Record a duration of [durationMs] milliseconds, for the label value [label]. */
+    @JvmOverloads
+    fun observe(durationMs: Long, label: String = "") {
+        val histogram = histograms[label] ?: histograms.computeIfAbsent(label, newHistogram)
+        histogram.observe(durationMs.coerceAtLeast(0))
+    }
+
+    /** Record the time elapsed since [startNanos], a value of [System.nanoTime]. */
+    @JvmOverloads
+    fun observeSince(startNanos: Long, label: String = "") =
+        observe(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), label)
+
+    /** Stop recording and exporting the histogram for the label value [label]. */
+    fun remove(label: String) {
+        histograms.remove(label)?.removeMetrics()
+    }
+
+    /** Export the current values now, instead of waiting for the metrics updater. */
+    fun export() = histograms.values.forEach { it.export() }
+
+    /** The cumulative count of each bucket (the last one being `+Inf`) for the label value [label]. */
+    internal fun bucketCounts(label: String = ""): List<Long> =
+        histograms[label]?.bucketCounts() ?: List(bounds.size + 1) { 0L }
+
+    /** The total of the observations for the label value [label], in milliseconds. */
+    internal fun sum(label: String = ""): Long = histograms[label]?.sum() ?: 0L
+
+    private inner class Histogram(label: String?) {
+        /** The number of observations in each bucket (not cumulative). The last slot is the `+Inf` bucket. */
+        private val counts = AtomicLongArray(bounds.size + 1)
+        private val total = AtomicLong()
+
+        private val labels = listOfNotNull(label)
+        private val bucketLabels = bucketNames.map { labels + it }
+
+        /** The cumulative counts and the sum exported so far. Only accessed while synchronized on this. */
+        private val exportedBuckets = LongArray(bounds.size + 1)
+        private var exportedSum = 0L
+        private var removed = false
+
+        fun observe(durationMs: Long) {
+            var i = 0
+            while (i < bounds.size && durationMs > bounds[i]) i++
+            counts.incrementAndGet(i)
+            total.addAndGet(durationMs)
+        }
+
+        fun bucketCounts(): List<Long> {
+            var cumulative = 0L
+            return List(counts.length()) {
+                cumulative += counts.get(it)
+                cumulative
+            }
+        }
+
+        fun sum() = total.get()
+
+        /**
+         * Add the observations since the last export to the exported counters. The slots are read one at a time, so
+         * an observation made during the export may be reflected in only some of the metrics until the next export.
+         * Every exported value still only increases.
+         */
+        @Synchronized
+        fun export() {
+            if (removed) return
+            var cumulative = 0L
+            for (i in exportedBuckets.indices) {
+                cumulative += counts.get(i)
+                val delta = cumulative - exportedBuckets[i]
+                if (delta > 0) {
+                    bucketMetric.add(delta, bucketLabels[i])
+                    exportedBuckets[i] = cumulative
+                    // The +Inf bucket counts all observations.
+                    if (i == bounds.size) countMetric.add(delta, labels)
+                }
+            }
+            val currentSum = total.get()
+            if (currentSum > exportedSum) {
+                sumMetric.add(currentSum - exportedSum, labels)
+                exportedSum = currentSum
+            }
+        }
+
+        @Synchronized
+        fun removeMetrics() {
+            removed = true
+            bucketLabels.forEach { bucketMetric.remove(it) }
+            sumMetric.remove(labels)
+            countMetric.remove(labels)
+        }
+    }
+
+    companion object {
+        val DEFAULT_BUCKETS_MS = listOf(5L, 10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L)
+    }
+}
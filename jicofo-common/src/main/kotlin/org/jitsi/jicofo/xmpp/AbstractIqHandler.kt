@@ -46,7 +46,12 @@ abstract class AbstractIqHandler<T : IQ>(
      */
     elementNamespace: String,
     iqTypes: Set<IQ.Type> = setOf(IQ.Type.set, IQ.Type.get),
-    mode: IQRequestHandler.Mode = IQRequestHandler.Mode.sync
+    mode: IQRequestHandler.Mode = IQRequestHandler.Mode.sync,
+    /**
+     * If set, requests are handled on the [dispatcher]'s queue for [dispatchKey], and the response is sent when
+     * [handleRequest] completes. Otherwise they are handled in the Smack thread.
+     */
+    private val dispatcher: IqDispatcher? = null
 ) {
     /**
      * One handler for each (connection, iqType) pair. These are the actual instances registered with the
@@ -73,6 +78,9 @@ abstract class AbstractIqHandler<T : IQ>(
      */
     abstract fun handleRequest(request: IqRequest<T>): IqProcessingResult
 
+    /** The key which selects the [dispatcher] queue for [iq]. Defaults to the bare JID of the sender, i.e. the room. */
+    protected open fun dispatchKey(iq: T): Any? = iq.from?.asBareJid()
+
     private inner class IQRequestHandlerImpl(
         val connection: AbstractXMPPConnection,
         elementName: String,
@@ -87,13 +95,20 @@ abstract class AbstractIqHandler<T : IQ>(
          */
         @Suppress("UNCHECKED_CAST")
         override fun handleIQRequest(iq: IQ): IQ? {
-            val result = handleRequest(
-                IqRequest(
-                    iq as? T ?: throw IllegalArgumentException("Unexpected IQ type: ${iq::class}"),
-                    connection
-                )
+            val request = IqRequest(
+                iq as? T ?: throw IllegalArgumentException("Unexpected IQ type: ${iq::class}"),
+                connection
             )
-            return when (result) {
+            if (dispatcher == null) {
+                return handle(request)
+            }
+            dispatcher.dispatch(dispatchKey(request.iq), iq, connection) { handle(request) }
+            return null
+        }
+
+        private fun handle(request: IqRequest<T>): IQ? {
+            val iq = request.iq
+            return when (val result = handleRequest(request)) {
                 is AcceptedWithResponse -> result.response
                 is IqProcessingResult.AcceptedWithNoResponse -> null
                 is IqProcessingResult.RejectedWithError -> result.response
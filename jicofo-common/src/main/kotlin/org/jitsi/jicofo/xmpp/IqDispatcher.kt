@@ -0,0 +1,166 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import org.jitsi.jicofo.PrioritizedExecutor
+import org.jitsi.jicofo.TaskPools
+import org.jitsi.utils.logging2.createLogger
+import org.jitsi.utils.queue.PacketQueue
+import org.jivesoftware.smack.XMPPConnection
+import org.jivesoftware.smack.iqrequest.IQRequestHandler
+import org.jivesoftware.smack.packet.IQ
+import org.jivesoftware.smack.packet.StanzaError
+import org.jxmpp.jid.Jid
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.atomic.AtomicInteger
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * Handles IQs on a fixed number of serial queues, selected by hashing a key (normally the JID of the room). IQs with
+ * the same key are handled in the order in which they were dispatched, while IQs for different rooms are handled in
+ * parallel on [executor], so that a slow request (e.g. one which joins a MUC) only delays requests for the same room.
+ *
+ * Handlers should be registered in [IQRequestHandler.Mode.sync] mode and dispatch from Smack's handler thread. That
+ * thread is only used to queue the request, and the IQs are dispatched in the order in which they were received.
+ *
+ * When [maxPending] requests are already waiting, or the queue of [executor] is full, new requests are refused with a
+ * `resource-constraint` error instead of being queued, so that an overloaded jicofo sheds load at the point where it
+ * accepts new work.
+ */
+class IqDispatcher @JvmOverloads constructor(
+    private val name: String,
+    numQueues: Int = XmppConfig.config.iqDispatchQueues,
+    private val executor: ExecutorService = TaskPools.signalingPool,
+    private val maxPending: Int = XmppConfig.config.iqDispatchMaxPending
+) {
+    private val logger = createLogger()
+
+    /** The number of tasks which were dispatched and have not started. */
+    private val pending = AtomicInteger()
+
+    private val queues = List(numQueues) { i ->
+        PacketQueue<Runnable>(
+            Integer.MAX_VALUE,
+            false,
+            "$name IQ queue $i",
+            {
+                try {
+                    it.run()
+                } catch (e: Exception) {
+                    logger.warn("Error handling IQ", e)
+                }
+                true
+            },
+            executor
+        )
+    }
+
+    /**
+     * Run [task] after all tasks previously dispatched with the same [key], unless jicofo is overloaded.
+     * @return whether the task was accepted.
+     */
+    fun dispatch(key: Any?, task: Runnable): Boolean {
+        if (pending.incrementAndGet() > maxPending || (executor as? PrioritizedExecutor)?.isQueueFull == true) {
+            pending.decrementAndGet()
+            rejected.inc(listOf(name))
+            return false
+        }
+        queues[Math.floorMod(key.hashCode(), queues.size)].add(
+            Runnable {
+                pending.decrementAndGet()
+                task.run()
+            }
+        )
+        return true
+    }
+
+    /** Respond to [request] with an error saying that it was refused because of load. */
+    private fun refuse(request: IQ, connection: XMPPConnection, replyTo: Jid?) {
+        logger.warn("Overloaded, refusing ${request.stanzaId} from $replyTo")
+        connection.tryToSendStanza(
+            IQ.createErrorResponse(request, StanzaError.Condition.resource_constraint).apply { to = replyTo }
+        )
+    }
+
+    /**
+     * Handle [request] with [handler] and send the response it returns (if any) on [connection]. If [handler] throws,
+     * an internal-server-error is sent. If the request is refused because of load, a resource-constraint error is sent
+     * to [replyTo].
+     */
+    fun dispatch(
+        key: Any?,
+        request: IQ,
+        connection: XMPPConnection,
+        replyTo: Jid? = request.from,
+        handler: (IQ) -> IQ?
+    ) {
+        val accepted = dispatch(key) {
+            val response = try {
+                handler(request)
+            } catch (e: Exception) {
+                logger.error("Error handling ${request.stanzaId}", e)
+                IQ.createErrorResponse(request, StanzaError.Condition.internal_server_error)
+            }
+            response?.let { connection.tryToSendStanza(it) }
+        }
+        if (!accepted) refuse(request, connection, replyTo)
+    }
+
+    /**
+     * Like [dispatch], but [handler] returns a future for the response, which is sent when it completes. The queue for
+     * [key] moves on as soon as [handler] returns, so the handler must not rely on later requests waiting for the
+     * response.
+     */
+    fun dispatchAsync(
+        key: Any?,
+        request: IQ,
+        connection: XMPPConnection,
+        replyTo: Jid? = request.from,
+        handler: (IQ) -> CompletableFuture<out IQ?>
+    ) {
+        val accepted = dispatch(key) {
+            val response = try {
+                handler(request)
+            } catch (e: Exception) {
+                CompletableFuture.failedFuture(e)
+            }
+            response.whenComplete { iq, e ->
+                if (e != null) {
+                    logger.error("Error handling ${request.stanzaId}", e)
+                    connection.tryToSendStanza(
+                        IQ.createErrorResponse(request, StanzaError.Condition.internal_server_error)
+                    )
+                } else {
+                    iq?.let { connection.tryToSendStanza(it) }
+                }
+            }
+        }
+        if (!accepted) refuse(request, connection, replyTo)
+    }
+
+    fun shutdown() = queues.forEach { it.close() }
+
+    companion object {
+        private val rejected = metricsContainer.registerCounter(
+            "xmpp_iq_dispatch_rejected",
+            "Number of requests refused with resource-constraint because jicofo was overloaded.",
+            labelNames = listOf("dispatcher")
+        )
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+import org.jitsi.utils.concurrent.CustomizableThreadFactory
+import org.jitsi.utils.logging2.createLogger
+import org.jivesoftware.smack.SmackException
+import org.jivesoftware.smack.StanzaListener
+import org.jivesoftware.smack.XMPPConnection
+import org.jivesoftware.smack.filter.IQReplyFilter
+import org.jivesoftware.smack.filter.IQTypeFilter
+import org.jivesoftware.smack.filter.OrFilter
+import org.jivesoftware.smack.packet.IQ
+import org.jivesoftware.smack.packet.Stanza
+import org.jxmpp.jid.Jid
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Matches IQ responses to outstanding requests for a single [XMPPConnection] without parking a thread per request.
+ *
+ * A single stanza listener is registered with the connection and completes the [CompletableFuture] registered for the
+ * stanza ID of the request. Timeouts are handled by one shared timer thread for all connections. An in-flight request
+ * costs a map entry and a timer entry.
+ *
+ * The futures are completed either on Smack's listener thread (for responses) or on the timer thread (for timeouts),
+ * so dependent stages which may block must use the `*Async` variants with an appropriate executor.
+ *
+ * The router stays registered with its connection until [close] is called for the connection, which the owner of the
+ * connection must do when it shuts the connection down.
+ */
+class IqResponseRouter private constructor(private val connection: XMPPConnection) {
+    private val logger = createLogger()
+
+    /** The outstanding requests, by stanza ID. */
+    private val pending = ConcurrentHashMap<String, PendingRequest>()
+
+    private val responseListener = StanzaListener { stanza -> handleResponse(stanza) }
+
+    init {
+        connection.addSyncStanzaListener(responseListener, responseFilter)
+    }
+
+    /** The number of requests currently waiting for a response. */
+    val pendingCount: Int
+        get() = pending.size
+
+    /**
+     * Send [iq] and return a future which is completed with the response, or with `null` if no response was received
+     * within [timeout].
+     *
+     * @throws SmackException.NotConnectedException if the request could not be sent.
+     */
+    @Throws(SmackException.NotConnectedException::class)
+    fun send(iq: IQ, timeout: Duration = Duration.ofMillis(connection.replyTimeout)): CompletableFuture<IQ?> {
+        val id = iq.stanzaId ?: throw IllegalArgumentException("Can not track a request without a stanza ID")
+        val request = PendingRequest(iq.to)
+        if (pending.putIfAbsent(id, request) != null) {
+            throw IllegalStateException("A request with stanza ID $id is already pending")
+        }
+
+        try {
+            connection.sendStanza(iq)
+        } catch (e: SmackException.NotConnectedException) {
+            pending.remove(id, request)
+            throw e
+        } catch (e: InterruptedException) {
+            pending.remove(id, request)
+            Thread.currentThread().interrupt()
+            throw SmackException.NotConnectedException("Interrupted while sending $id")
+        }
+
+        // The timeout is scheduled only after sending, so that a response delivered synchronously (e.g. by a mock
+        // connection) is never raced by an immediate timeout.
+        if (!request.future.isDone) {
+            request.timeout = timer.schedule(
+                {
+                    if (pending.remove(id, request)) {
+                        IqMetrics.timeouts.inc()
+                        request.future.complete(null)
+                    }
+                },
+                timeout.toMillis().coerceAtLeast(0),
+                TimeUnit.MILLISECONDS
+            )
+        }
+        IqMetrics.sent.inc()
+
+        return request.future
+    }
+
+    private fun handleResponse(stanza: Stanza) {
+        val response = stanza as? IQ ?: return
+        val id = response.stanzaId ?: return
+        val request = pending[id] ?: return
+
+        if (!isExpectedSender(request.to, response.from)) {
+            logger.warn("Ignoring a response to $id from an unexpected address: ${response.from}")
+            return
+        }
+        if (pending.remove(id, request)) {
+            request.timeout?.cancel(false)
+            request.future.complete(response)
+        }
+    }
+
+    /** Stop routing responses, and complete the outstanding requests with `null` as if they had timed out. */
+    private fun stop() {
+        connection.removeSyncStanzaListener(responseListener)
+        pending.keys.toList().forEach { id ->
+            pending.remove(id)?.let {
+                it.timeout?.cancel(false)
+                it.future.complete(null)
+            }
+        }
+    }
+
+    /**
+     * Whether a response from [from] to a request sent to [to] is accepted. This follows Smack's [IQReplyFilter]: a
+     * response must come from the address the request was sent to, except that a request without a `to` (i.e. to our
+     * own account) may be answered by our bare JID or by the server, and a request to our own bare JID may be answered
+     * without a `from`.
+     */
+    private fun isExpectedSender(to: Jid?, from: Jid?): Boolean {
+        if (from == to) return true
+        val local = connection.user?.asBareJid()
+        return if (to == null) {
+            from == local || from == connection.xmppServiceDomain
+        } else {
+            from == null && to == local
+        }
+    }
+
+    private class PendingRequest(val to: Jid?) {
+        val future = CompletableFuture<IQ?>()
+
+        @Volatile
+        var timeout: ScheduledFuture<*>? = null
+    }
+
+    companion object {
+        private val responseFilter = OrFilter(IQTypeFilter.RESULT, IQTypeFilter.ERROR)
+
+        /**
+         * The timer used for the timeouts of all requests. Cancelled timeouts are removed right away, so that a
+         * request answered in time does not keep an entry until its deadline.
+         */
+        private val timer = ScheduledThreadPoolExecutor(
+            1,
+            CustomizableThreadFactory("Jicofo IQ Timeouts", true)
+        ).apply { removeOnCancelPolicy = true }
+
+        private val routers = HashMap<XMPPConnection, IqResponseRouter>()
+
+        /** Get the [IqResponseRouter] for [connection], creating it if necessary. */
+        @JvmStatic
+        fun forConnection(connection: XMPPConnection): IqResponseRouter = synchronized(routers) {
+            routers.getOrPut(connection) { IqResponseRouter(connection) }
+        }
+
+        /**
+         * Remove the [IqResponseRouter] for [connection] (if any) from the connection. Requests which are still
+         * outstanding are completed with `null`. A later request on the connection creates a new router.
+         */
+        @JvmStatic
+        fun close(connection: XMPPConnection) {
+            synchronized(routers) { routers.remove(connection) }?.stop()
+        }
+    }
+}
+
+private class IqMetrics {
+    companion object {
+        val sent = metricsContainer.registerCounter(
+            "xmpp_iq_requests_sent",
+            "Number of IQ requests sent through the shared response router."
+        )
+        val timeouts = metricsContainer.registerCounter(
+            "xmpp_iq_requests_timed_out",
+            "Number of IQ requests sent through the shared response router which timed out."
+        )
+    }
+}
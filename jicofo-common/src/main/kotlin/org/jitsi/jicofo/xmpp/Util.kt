@@ -27,6 +27,9 @@ import org.jxmpp.jid.DomainBareJid
 import org.jxmpp.jid.Jid
 import org.jxmpp.jid.impl.JidCreate
 import org.jxmpp.stringprep.XmppStringprepException
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
 
 private val logger = LoggerImpl("org.jitsi.jicofo.xmpp.Util")
 
@@ -66,11 +69,19 @@ fun XMPPConnection.tryToSendStanza(stanza: Stanza) = try {
     logger.error("Failed to send packet: ${stanza.toXML()}", e)
 }
 
+/**
+ * Send [iq] and return a future completed with the response, or with `null` on timeout. No thread is used while the
+ * request is in flight, see [IqResponseRouter].
+ */
 @Throws(SmackException.NotConnectedException::class)
-fun AbstractXMPPConnection.sendIqAndGetResponse(iq: IQ): IQ? = createStanzaCollectorAndSend(iq).let {
-    try {
-        it.nextResult()
-    } finally {
-        it.cancel()
-    }
+fun XMPPConnection.sendIqAsync(iq: IQ, timeout: Duration = Duration.ofMillis(replyTimeout)): CompletableFuture<IQ?> =
+    IqResponseRouter.forConnection(this).send(iq, timeout)
+
+/** Send [iq] and wait for the response. Returns `null` on timeout. */
+@Throws(SmackException.NotConnectedException::class)
+fun AbstractXMPPConnection.sendIqAndGetResponse(iq: IQ): IQ? = try {
+    sendIqAsync(iq).get()
+} catch (e: ExecutionException) {
+    logger.warn("Failed to get a response for ${iq.stanzaId}", e.cause)
+    null
 }
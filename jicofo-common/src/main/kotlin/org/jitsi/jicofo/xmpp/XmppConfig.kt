@@ -41,6 +41,21 @@ class XmppConfig private constructor() {
         "jicofo.xmpp.use-jitsi-jid-validation".from(newConfig)
     }
 
+    /** The number of serial queues used by [IqDispatcher]. */
+    val iqDispatchQueues: Int by config {
+        "jicofo.xmpp.iq-dispatch-queues".from(newConfig)
+    }
+
+    /** The maximum number of requests waiting in the queues of an [IqDispatcher]. */
+    val iqDispatchMaxPending: Int by config {
+        "jicofo.xmpp.iq-dispatch-max-pending".from(newConfig)
+    }
+
+    /** Whether MUC presence from an occupant replaces its presence which is still queued for processing. */
+    val presenceCoalescing: Boolean by config {
+        "jicofo.xmpp.presence-coalescing".from(newConfig)
+    }
+
     companion object {
         @JvmField
         val service = XmppServiceConnectionConfig()
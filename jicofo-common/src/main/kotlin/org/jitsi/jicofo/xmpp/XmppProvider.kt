@@ -139,7 +139,7 @@ class XmppProvider(val config: XmppConnectionConfig, parentLogger: Logger) {
 
             config.xmppDomain?.let {
                 logger.info("Will discover components for $it")
-                TaskPools.ioPool.submit { discoverComponents(it) }
+                TaskPools.housekeepingPool.submit { discoverComponents(it) }
             } ?: run {
                 logger.info("No xmpp-domain configured, will not discover components.")
             }
@@ -176,6 +176,7 @@ class XmppProvider(val config: XmppConnectionConfig, parentLogger: Logger) {
                 xmppConnection.disconnect()
                 logger.info("Disconnected.")
                 xmppConnection.removeConnectionListener(connectionListener)
+                IqResponseRouter.close(xmppConnection)
             }
             registered = false
         }
@@ -231,7 +232,7 @@ class XmppProvider(val config: XmppConnectionConfig, parentLogger: Logger) {
     }
 
     private fun fireComponentsChanged(components: Set<Component>) = listeners.forEach {
-        TaskPools.ioPool.submit {
+        TaskPools.housekeepingPool.submit {
             try {
                 it.componentsChanged(components)
             } catch (throwable: Throwable) {
@@ -242,7 +243,7 @@ class XmppProvider(val config: XmppConnectionConfig, parentLogger: Logger) {
 
     private fun fireRegistrationStateChanged(registered: Boolean) {
         listeners.forEach {
-            TaskPools.ioPool.submit {
+            TaskPools.housekeepingPool.submit {
                 try {
                     it.registrationChanged(registered)
                 } catch (throwable: Throwable) {
@@ -28,10 +28,11 @@ import io.opentelemetry.api.trace.Tracer
 import io.opentelemetry.context.Context
 import org.jitsi.jicofo.TaskPools
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
+import org.jitsi.jicofo.conference.source.EncodedSources
 import org.jitsi.jicofo.xmpp.IqProcessingResult
 import org.jitsi.jicofo.xmpp.createSessionInitiate
 import org.jitsi.jicofo.xmpp.createTransportReplace
-import org.jitsi.jicofo.xmpp.sendIqAndGetResponse
+import org.jitsi.jicofo.xmpp.sendIqAsync
 import org.jitsi.jicofo.xmpp.tryToSendStanza
 import org.jitsi.tracing.TracingGlobal
 import org.jitsi.utils.MediaType
@@ -54,6 +55,7 @@ import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 import org.jxmpp.jid.Jid
 import java.util.Objects
+import java.util.concurrent.CompletableFuture
 
 /**
  * Extracts a remote [Span] from the `traceparent` extension of an IQ, if present.
@@ -131,7 +133,7 @@ class JingleSession(
             }
             return@PacketQueue true
         },
-        TaskPools.ioPool
+        TaskPools.signalingPool
     )
 
     private val localJid: Jid = connection.user
@@ -237,15 +239,15 @@ class JingleSession(
     }
 
     /**
-     * Send a transport-replace IQ and wait for a response. Return true if the response is successful, and false
-     * otherwise.
+     * Send a transport-replace IQ. Returns a future which completes (on [TaskPools.signalingPool]) with true if the
+     * response is successful, and false otherwise. No thread is used while waiting for the response.
      */
     @Throws(SmackException.NotConnectedException::class)
     fun replaceTransport(
         contents: List<ContentPacketExtension>,
         additionalExtensions: List<ExtensionElement>,
         sources: ConferenceSourceMap
-    ): Boolean {
+    ): CompletableFuture<Boolean> {
         logger.info("Sending transport-replace, sources=$sources.")
         if (state != State.ACTIVE) logger.error("Sending transport-replace for session in state $state")
 
@@ -259,33 +261,32 @@ class JingleSession(
         }
 
         JingleStats.stanzaSent(jingleIq.action)
-        val response = connection.sendIqAndGetResponse(jingleIq)
-        return if (response?.type == IQ.Type.result) {
-            true
-        } else {
-            logger.error("Unexpected response to transport-replace: ${response?.toXML()}")
-            false
-        }
+        return connection.sendIqAsync(jingleIq).thenApplyAsync(
+            { response ->
+                if (response?.type == IQ.Type.result) {
+                    true
+                } else {
+                    logger.error("Unexpected response to transport-replace: ${response?.toXML()}")
+                    false
+                }
+            },
+            TaskPools.signalingPool
+        )
     }
 
     /**
      * Send a source-remove IQ with the specified sources. Returns immediately without waiting for a response.
      */
-    fun removeSource(sourcesToRemove: ConferenceSourceMap) {
-        val removeSourceIq = JingleIQ(JingleAction.SOURCEREMOVE, sid).apply {
-            from = localJid
-            type = IQ.Type.set
-            to = remoteJid
-        }
+    fun removeSource(sourcesToRemove: ConferenceSourceMap) = removeSource(EncodedSources(sourcesToRemove))
 
-        if (encodeSourcesAsJson) {
-            removeSourceIq.addExtension(sourcesToRemove.toJsonMessageExtension())
-        } else {
-            sourcesToRemove.toJingle().forEach { removeSourceIq.addContent(it) }
-        }
+    /**
+     * Send a source-remove IQ with the specified (possibly shared) encoded sources. Returns immediately without
+     * waiting for a response.
+     */
+    fun removeSource(sourcesToRemove: EncodedSources) {
         logger.debug { "Sending source-remove, sources=$sourcesToRemove" }
         if (state != State.ACTIVE) logger.error("Sending source-remove for session in state $state")
-        connection.tryToSendStanza(removeSourceIq)
+        connection.tryToSendStanza(createSourceIq(JingleAction.SOURCEREMOVE, sourcesToRemove))
         JingleStats.stanzaSent(JingleAction.SOURCEREMOVE)
     }
 
@@ -323,19 +324,29 @@ class JingleSession(
     /**
      * Send a source-add IQ with the specified sources. Returns immediately without waiting for a response.
      */
-    fun addSource(sources: ConferenceSourceMap) {
+    fun addSource(sources: ConferenceSourceMap) = addSource(EncodedSources(sources))
+
+    /**
+     * Send a source-add IQ with the specified (possibly shared) encoded sources. Returns immediately without waiting
+     * for a response.
+     */
+    fun addSource(sources: EncodedSources) {
         logger.debug { "Sending source-add, sources=$sources" }
         JingleStats.stanzaSent(JingleAction.SOURCEADD)
         if (state != State.ACTIVE) logger.error("Sending source-add for session in state $state")
-        connection.tryToSendStanza(createAddSourceIq(sources))
+        connection.tryToSendStanza(createSourceIq(JingleAction.SOURCEADD, sources))
     }
 
+    /**
+     * Send a session-initiate IQ. Returns a future which completes (on [TaskPools.signalingPool]) with true unless an
+     * error response was received. No thread is used while waiting for the response.
+     */
     @Throws(SmackException.NotConnectedException::class)
     fun initiateSession(
         contents: List<ContentPacketExtension>,
         additionalExtensions: List<ExtensionElement>,
         sources: ConferenceSourceMap,
-    ): Boolean {
+    ): CompletableFuture<Boolean> {
         if (state != State.PENDING) logger.error("Sending session-initiate for session in state $state")
         val contentsWithSources = if (encodeSourcesAsJson) contents else sources.toContents(contents)
         val sessionInitiate = createSessionInitiate(localJid, remoteJid, sid, contentsWithSources).apply {
@@ -357,25 +368,31 @@ class JingleSession(
 
         jingleIqRequestHandler.registerSession(this)
         JingleStats.stanzaSent(sessionInitiate.action)
-        val response = connection.sendIqAndGetResponse(sessionInitiate)
-        // We treat a timeout (null) as success. This prevents failures in case the client delays processing, observed
-        // when joining a large conference. The session will be pending until we receive session-accept.
-        return if (response == null || response.type == IQ.Type.result) {
-            true
-        } else {
-            logger.error("Unexpected response to session-initiate: $response")
-            false
-        }
+        return connection.sendIqAsync(sessionInitiate).thenApplyAsync(
+            { response ->
+                // We treat a timeout (null) as success. This prevents failures in case the client delays processing,
+                // observed when joining a large conference. The session will be pending until we receive
+                // session-accept.
+                if (response == null || response.type == IQ.Type.result) {
+                    true
+                } else {
+                    logger.error("Unexpected response to session-initiate: $response")
+                    false
+                }
+            },
+            TaskPools.signalingPool
+        )
     }
 
-    private fun createAddSourceIq(sources: ConferenceSourceMap) = JingleIQ(JingleAction.SOURCEADD, sid).apply {
+    /** Only the addressing is specific to this session, the encoded sources are shared. */
+    private fun createSourceIq(action: JingleAction, sources: EncodedSources) = JingleIQ(action, sid).apply {
         from = localJid
         type = IQ.Type.set
         to = remoteJid
         if (encodeSourcesAsJson) {
-            addExtension(sources.toJsonMessageExtension())
+            addExtension(sources.json)
         } else {
-            sources.toJingle().forEach { addContent(it) }
+            sources.jingle.forEach { addContent(it) }
         }
     }
 
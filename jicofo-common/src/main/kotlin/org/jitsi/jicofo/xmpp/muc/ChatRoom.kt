@@ -27,6 +27,7 @@ import org.jivesoftware.smack.packet.ExtensionElement
 import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.EntityFullJid
 import org.jxmpp.jid.Jid
+import java.util.concurrent.CompletableFuture
 
 /** Wraps a Smack [MultiUserChat] for the purposes of jicofo. */
 interface ChatRoom {
@@ -100,6 +101,12 @@ interface ChatRoom {
     @Throws(SmackException::class, XMPPException::class, InterruptedException::class)
     fun join(): ChatRoomInfo
 
+    /**
+     * Joins this chat room with the preconfigured nickname, without waiting for the join to complete. The returned
+     * future completes with the fields read from the MUC config form once the room is fully joined.
+     */
+    fun joinAsync(): CompletableFuture<ChatRoomInfo>
+
     /** Leave the chat room. */
     fun leave()
 
@@ -24,12 +24,14 @@ import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.jitsi.jicofo.JicofoConfig
 import org.jitsi.jicofo.MediaType
-import org.jitsi.jicofo.TaskPools.Companion.ioPool
+import org.jitsi.jicofo.TaskPools
+import org.jitsi.jicofo.metrics.LatencyHistogram
 import org.jitsi.jicofo.util.PendingCount
 import org.jitsi.jicofo.xmpp.RoomMetadata
+import org.jitsi.jicofo.xmpp.XmppConfig
 import org.jitsi.jicofo.xmpp.XmppProvider
 import org.jitsi.jicofo.xmpp.muc.MemberRole.Companion.fromSmack
-import org.jitsi.jicofo.xmpp.sendIqAndGetResponse
+import org.jitsi.jicofo.xmpp.sendIqAsync
 import org.jitsi.jicofo.xmpp.tryToSendStanza
 import org.jitsi.utils.event.EventEmitter
 import org.jitsi.utils.event.SyncEventEmitter
@@ -47,6 +49,7 @@ import org.jivesoftware.smack.packet.PresenceBuilder
 import org.jivesoftware.smack.util.Consumer
 import org.jivesoftware.smackx.muc.MUCAffiliation
 import org.jivesoftware.smackx.muc.MUCRole
+import org.jivesoftware.smackx.muc.MucConfigFormManager
 import org.jivesoftware.smackx.muc.MultiUserChat
 import org.jivesoftware.smackx.muc.MultiUserChatManager
 import org.jivesoftware.smackx.muc.Occupant
@@ -54,19 +57,44 @@ import org.jivesoftware.smackx.muc.UserStatusListener
 import org.jivesoftware.smackx.muc.packet.MUCAdmin
 import org.jivesoftware.smackx.muc.packet.MUCInitialPresence
 import org.jivesoftware.smackx.muc.packet.MUCItem
+import org.jivesoftware.smackx.muc.packet.MUCOwner
 import org.jivesoftware.smackx.muc.packet.MUCUser
+import org.jivesoftware.smackx.xdata.form.Form
+import org.jivesoftware.smackx.xdata.packet.DataForm
 import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.EntityFullJid
 import org.jxmpp.jid.Jid
 import org.jxmpp.jid.impl.JidCreate
 import org.jxmpp.jid.parts.Resourcepart
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
 import java.util.logging.Level
+import kotlin.concurrent.withLock
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
 
 private val jsonMapper = jacksonObjectMapper()
 
+private object ChatRoomMetrics {
+    /** Divided by [presenceReceived], this gives the ratio of presence which was coalesced. */
+    val presenceCoalesced = metricsContainer.registerCounter(
+        "muc_presence_coalesced",
+        "Number of MUC presence stanzas which replaced a queued presence from the same occupant."
+    )
+    val presenceReceived = metricsContainer.registerCounter(
+        "muc_presence_received",
+        "Number of MUC presence stanzas received."
+    )
+    val xmppTaskWaitTime = LatencyHistogram(
+        "muc_xmpp_task_wait_time_ms",
+        "Time that XMPP tasks for a MUC waited (including while the MUC was being joined) before they started"
+    )
+}
+
 @SuppressFBWarnings(
     value = ["JLM_JSR166_UTILCONCURRENT_MONITORENTER"],
     justification = "We intentionally synchronize on [members] (a ConcurrentHashMap)."
@@ -90,15 +118,22 @@ class ChatRoomImpl(
     )
 
     /**
-     * Latch that is counted down when the room metadata is set.
-     * This is used to block the join until the room metadata is available.
+     * Completed when the room metadata is set. A join does not complete until the room metadata is available (or a
+     * timeout expires).
      */
-    private val roomMetadataLatch = CountDownLatch(1)
+    private val roomMetadataReceived = CompletableFuture<Unit>()
+
+    /** Set once the room has been fully joined. */
+    @Volatile
+    private var roomJoined = false
 
     /**
-     * Latch that is counted down when the room is joined. Processing presence blocks until this latch is counted down.
+     * Tasks for [xmppTaskQueue] which arrive while a join is in progress, or null if no join is in progress. They are
+     * added to the queue once the room is fully joined, so that they are processed in order without having to park a
+     * thread until then.
      */
-    private val roomJoinedLatch = CountDownLatch(1)
+    private var tasksHeldDuringJoin: MutableList<Runnable>? = null
+    private val tasksHeldDuringJoinLock = Any()
 
     override fun visitorInvited() {
         pendingVisitorsCounter.eventPending()
@@ -119,9 +154,20 @@ class ChatRoomImpl(
             }
             true
         },
-        ioPool
+        TaskPools.signalingPool
     )
 
+    /** Whether a newer presence from an occupant replaces its presence which is still queued (if any). */
+    private val coalescePresence = XmppConfig.config.presenceCoalescing
+
+    /** The queued available presence of each occupant, which is replaced when coalescing. */
+    private val queuedPresence = ConcurrentHashMap<Jid, QueuedPresence>()
+
+    /** The number of presence stanzas in [xmppTaskQueue]. */
+    private val presenceQueueSize = AtomicInteger()
+    private val presenceReceived = AtomicLong()
+    private val presenceCoalesced = AtomicLong()
+
     private val membersMap: MutableMap<EntityFullJid, ChatRoomMemberImpl> = ConcurrentHashMap()
     override val members: List<ChatRoomMember>
         get() = synchronized(membersMap) { return membersMap.values.toList() }
@@ -154,6 +200,9 @@ class ChatRoomImpl(
         }
     }
 
+    /** Serializes leaving [muc] before (re-)joining it. */
+    private val leaveLock = ReentrantLock()
+
     /** Smack multi user chat backend instance. */
     private val muc: MultiUserChat =
         MultiUserChatManager.getInstanceFor(xmppProvider.xmppConnection).getMultiUserChat(this.roomJid).apply {
@@ -162,7 +211,7 @@ class ChatRoomImpl(
         }
 
     override val isJoined
-        get() = muc.isJoined && roomJoinedLatch.count <= 0
+        get() = muc.isJoined && roomJoined
 
     /** Our full Multi User Chat XMPP address. */
     private var myOccupantJid: EntityFullJid? = null
@@ -260,6 +309,9 @@ class ChatRoomImpl(
         get() = JsonNodeFactory.instance.objectNode().apply {
             put("room_jid", roomJid.toString())
             put("my_occupant_jid", myOccupantJid.toString())
+            put("presence_queue_size", presenceQueueSize.get())
+            put("presence_received", presenceReceived.get())
+            put("presence_coalesced", presenceCoalesced.get())
             val membersJson = JsonNodeFactory.instance.objectNode()
             membersMap.values.forEach {
                 membersJson.set<ObjectNode>(it.name, it.debugState)
@@ -304,7 +356,13 @@ class ChatRoomImpl(
         avModeration(mediaType).isAllowedToUnmute(jid)
 
     @Throws(SmackException::class, XMPPException::class, InterruptedException::class)
-    override fun join(): ChatRoomInfo {
+    override fun join(): ChatRoomInfo = try {
+        joinAsync().get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+
+    override fun joinAsync(): CompletableFuture<ChatRoomInfo> {
         // TODO: clean-up the way we figure out what nickname to use.
         resetState()
         return joinAs(xmppProvider.config.username)
@@ -331,55 +389,141 @@ class ChatRoomImpl(
         }
     }
 
-    @Throws(SmackException::class, XMPPException::class, InterruptedException::class)
-    private fun joinAs(nickname: Resourcepart): ChatRoomInfo {
-        // The queue should block until the room is fully joined.
-        xmppTaskQueue.add { roomJoinedLatch.await() }
-
-        myOccupantJid = JidCreate.entityFullFrom(roomJid, nickname)
-        synchronized(muc) {
-            if (muc.isJoined) {
-                muc.leave()
-            }
-        }
+    /**
+     * Join the MUC as [nickname]. The steps are pipelined: the configuration form is submitted while waiting for the
+     * room metadata, and no thread is blocked except while Smack sends the initial presence and waits for the MUC to
+     * reflect it (which its API only supports synchronously).
+     */
+    private fun joinAs(nickname: Resourcepart): CompletableFuture<ChatRoomInfo> {
+        // Hold the tasks for the queue until the room is fully joined.
+        synchronized(tasksHeldDuringJoinLock) {
+            if (tasksHeldDuringJoin == null) tasksHeldDuringJoin = mutableListOf()
+        }
+
+        return CompletableFuture.supplyAsync(
+            {
+                myOccupantJid = JidCreate.entityFullFrom(roomJid, nickname)
+                // MultiUserChat.leave() blocks waiting for a response, so use a ReentrantLock rather than a monitor,
+                // which would pin the carrier thread when running on a virtual thread.
+                leaveLock.withLock {
+                    if (muc.isJoined) {
+                        muc.leave()
+                    }
+                }
+
+                muc.addPresenceInterceptor(presenceInterceptor)
+                muc.createOrJoin(nickname)
+            },
+            TaskPools.signalingPool
+        ).thenCompose {
+            sendToRoom(MUCOwner().apply { type = IQ.Type.get })
+        }.thenCompose { configResponse ->
+            val config = Form(DataForm.from(configResponse, MucConfigFormManager.FORM_TYPE))
+
+            // Make the room non-anonymous, so that others can recognize focus JID
+            val answer = config.fillableForm
+            answer.setAnswer(MucConfigFields.WHOIS, "anyone")
+            val configSubmitted = sendToRoom(
+                MUCOwner().apply {
+                    type = IQ.Type.set
+                    addExtension(answer.dataFormToSubmit)
+                }
+            )
 
-        muc.addPresenceInterceptor(presenceInterceptor)
-        muc.createOrJoin(nickname)
-        val config = muc.configurationForm
+            val metadataReceived =
+                if (config.getField(MucConfigFields.CONFERENCE_PRESET_ENABLED)?.firstValue?.toBoolean() == true) {
+                    logger.info("Conference presets service is enabled. Will wait until RoomMetadata is set.")
+                    awaitRoomMetadata()
+                } else {
+                    CompletableFuture.completedFuture(Unit)
+                }
 
-        // Make the room non-anonymous, so that others can recognize focus JID
-        val answer = config.fillableForm
-        answer.setAnswer(MucConfigFields.WHOIS, "anyone")
-        muc.sendConfigurationForm(answer)
+            configSubmitted.thenCombine(metadataReceived) { _, _ -> config.toChatRoomInfo() }
+        }.whenCompleteAsync(
+            { _, e ->
+                if (e == null) roomJoined = true
+                releaseHeldTasks()
+            },
+            // Complete on a signaling thread rather than Smack's, since callers continue the work that follows a join.
+            TaskPools.signalingPool
+        )
+    }
 
-        // Read the breakout room and meetingId.
-        val mainRoomStr = if (config.getField(MucConfigFields.IS_BREAKOUT_ROOM)?.firstValue?.toBoolean() == true) {
-            config.getField(MucConfigFields.MAIN_ROOM)?.firstValue
+    /** Read the breakout room and meetingId. */
+    private fun Form.toChatRoomInfo(): ChatRoomInfo {
+        val mainRoomStr = if (getField(MucConfigFields.IS_BREAKOUT_ROOM)?.firstValue?.toBoolean() == true) {
+            getField(MucConfigFields.MAIN_ROOM)?.firstValue
         } else {
             null
         }
 
-        if (config.getField(MucConfigFields.CONFERENCE_PRESET_ENABLED)?.firstValue?.toBoolean() == true) {
-            logger.info("Conference presets service is enabled. Will block until RoomMetadata is set.")
-            if (roomMetadataLatch.await(10, TimeUnit.SECONDS)) {
+        return ChatRoomInfo(
+            meetingId = getField(MucConfigFields.MEETING_ID)?.firstValue,
+            mainRoomJid = if (mainRoomStr == null) null else JidCreate.entityBareFrom(mainRoomStr)
+        )
+    }
+
+    /** Completes when the room metadata is set, or after a timeout. */
+    private fun awaitRoomMetadata(): CompletableFuture<Unit> {
+        val result = CompletableFuture<Unit>()
+        val timeout = TaskPools.scheduledPool.schedule(
+            {
+                if (result.complete(Unit)) {
+                    logger.warn("Timed out waiting for RoomMetadata to be set. Will continue without it.")
+                }
+            },
+            10,
+            TimeUnit.SECONDS
+        )
+        roomMetadataReceived.thenRun {
+            if (result.complete(Unit)) {
                 logger.info("RoomMetadata is set, room is fully joined.")
+                timeout.cancel(false)
+            }
+        }
+        return result
+    }
+
+    /** Send [iq] to the room and complete with the response, or exceptionally on an error response or timeout. */
+    private fun sendToRoom(iq: IQ): CompletableFuture<IQ> {
+        val connection = xmppProvider.xmppConnection
+        iq.to = roomJid
+        return connection.sendIqAsync(iq).thenApply { response ->
+            when {
+                response == null -> throw SmackException.NoResponseException.newWith(connection, iq.toString())
+                response.type == IQ.Type.error -> throw XMPPException.XMPPErrorException(response, response.error)
+                else -> response
+            }
+        }
+    }
+
+    /** Add [task] to [xmppTaskQueue], or hold it until the room is joined if a join is in progress. */
+    private fun addXmppTask(task: () -> Unit) {
+        val queued = System.nanoTime()
+        val runnable = Runnable {
+            ChatRoomMetrics.xmppTaskWaitTime.observeSince(queued)
+            task()
+        }
+        synchronized(tasksHeldDuringJoinLock) {
+            val heldTasks = tasksHeldDuringJoin
+            if (heldTasks != null) {
+                heldTasks.add(runnable)
             } else {
-                logger.warn("Timed out waiting for RoomMetadata to be set. Will continue without it.")
+                xmppTaskQueue.add(runnable)
             }
         }
-        roomJoinedLatch.countDown()
+    }
 
-        return ChatRoomInfo(
-            meetingId = config.getField(MucConfigFields.MEETING_ID)?.firstValue,
-            mainRoomJid = if (mainRoomStr == null) null else JidCreate.entityBareFrom(mainRoomStr)
-        )
+    private fun releaseHeldTasks() = synchronized(tasksHeldDuringJoinLock) {
+        tasksHeldDuringJoin?.forEach { xmppTaskQueue.add(it) }
+        tasksHeldDuringJoin = null
     }
 
     override fun setRoomMetadata(roomMetadata: RoomMetadata) {
-        // The initial RoomMetadata is required to consider the room fully joined. The queue will block until that
-        // happens, so handle it outside the queue
-        if (roomJoinedLatch.count > 0L) {
-            ioPool.submit { doSetRoomMetadata(roomMetadata) }
+        // The initial RoomMetadata is required to consider the room fully joined. Tasks for the queue are held until
+        // that happens, so handle it outside the queue
+        if (!roomJoined) {
+            TaskPools.signalingPool.submit { doSetRoomMetadata(roomMetadata) }
         } else {
             queueXmppTask { doSetRoomMetadata(roomMetadata) }
         }
@@ -413,7 +557,7 @@ class ChatRoomImpl(
         eventEmitter.fireEvent {
             audioTranslationRequestsChanged(roomMetadata.metadata?.audioTranslationRequests ?: emptyMap())
         }
-        roomMetadataLatch.countDown()
+        roomMetadataReceived.complete(Unit)
     }
 
     override fun leave() {
@@ -422,14 +566,15 @@ class ChatRoomImpl(
         muc.removeParticipantListener(this)
         leaveCallback(this)
 
-        // Unblock any threads waiting on the latches
+        // Drop any held tasks and complete a pending join
         xmppTaskQueue.close()
-        roomMetadataLatch.countDown()
-        roomJoinedLatch.countDown()
+        synchronized(tasksHeldDuringJoinLock) { tasksHeldDuringJoin = null }
+        queuedPresence.clear()
+        roomMetadataReceived.complete(Unit)
 
-        // Call MultiUserChat.leave() in an IO thread, because it now (with Smack 4.4.3) blocks waiting for a response
-        // from the XMPP server (and we want ChatRoom#leave to return immediately).
-        ioPool.execute {
+        // Call MultiUserChat.leave() in a signaling thread, because it now (with Smack 4.4.3) blocks waiting for a
+        // response from the XMPP server (and we want ChatRoom#leave to return immediately).
+        TaskPools.execute(TaskPools.WorkClass.SIGNALING, TaskPools.Priority.HIGH) {
             val connection: XMPPConnection = xmppProvider.xmppConnection
             try {
                 // FIXME smack4: there used to be a custom dispose() method if leave() fails, there might still be some
@@ -472,9 +617,10 @@ class ChatRoomImpl(
             addItem(item)
         }
         try {
-            val reply = xmppProvider.xmppConnection.sendIqAndGetResponse(admin)
-            if (reply == null || reply.type != IQ.Type.result) {
-                logger.warn("Failed to grant ownership: ${reply?.toString() ?: "timeout"}")
+            xmppProvider.xmppConnection.sendIqAsync(admin).thenAccept { reply ->
+                if (reply == null || reply.type != IQ.Type.result) {
+                    logger.warn("Failed to grant ownership: ${reply?.toString() ?: "timeout"}")
+                }
             }
         } catch (e: SmackException.NotConnectedException) {
             logger.warn("Failed to grant ownership: XMPP disconnected")
@@ -667,13 +813,51 @@ class ChatRoomImpl(
 
     /**
      * Offload processing presence for the room from Smack's thread to a queue running in the jicofo IO pool.
+     *
+     * When coalescing, an available presence from an occupant whose previous available presence is still queued
+     * replaces it, since only the latest one matters. Other presence (e.g. a member leaving or being kicked) is always
+     * queued, and keeps its order with the presence queued before and after it.
      */
     override fun processPresence(presence: Presence?) {
         if (presence == null) {
             logger.warn("Received null presence packet")
             return
         }
-        xmppTaskQueue.add { doProcessPresence(presence) }
+        presenceReceived.incrementAndGet()
+        ChatRoomMetrics.presenceReceived.inc()
+
+        val from = presence.from
+        if (!coalescePresence || from == null || presence.type != Presence.Type.available || presence.error != null) {
+            // A presence queued after this one must not replace one queued before it.
+            from?.let { queuedPresence.remove(it) }
+            queuePresence { doProcessPresence(presence) }
+            return
+        }
+
+        var added: QueuedPresence? = null
+        queuedPresence.compute(from) { _, queued ->
+            queued?.apply { this.presence = presence } ?: QueuedPresence(presence).also { added = it }
+        }
+        val queued = added
+        if (queued == null) {
+            presenceCoalesced.incrementAndGet()
+            ChatRoomMetrics.presenceCoalesced.inc()
+            return
+        }
+        queuePresence {
+            // Once removed the presence can no longer be replaced. It may have already been removed by a presence
+            // which is not coalesced, which is fine.
+            queuedPresence.remove(from, queued)
+            doProcessPresence(queued.presence)
+        }
+    }
+
+    private fun queuePresence(task: () -> Unit) {
+        presenceQueueSize.incrementAndGet()
+        addXmppTask {
+            presenceQueueSize.decrementAndGet()
+            task()
+        }
     }
 
     private fun doProcessPresence(presence: Presence) {
@@ -695,7 +879,10 @@ class ChatRoomImpl(
         }
     }
 
-    override fun queueXmppTask(runnable: () -> Unit) = xmppTaskQueue.add(runnable)
+    override fun queueXmppTask(runnable: () -> Unit) = addXmppTask(runnable)
+
+    /** A queued presence, which is replaced by newer presence from the same occupant until it is processed. */
+    private class QueuedPresence(@Volatile var presence: Presence)
 
     private object MucConfigFields {
         const val IS_BREAKOUT_ROOM = "muc#roominfo_isbreakout"
@@ -0,0 +1,75 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PrioritizedExecutorTest : ShouldSpec() {
+    init {
+        context("With a single thread which is busy") {
+            val executor = PrioritizedExecutor("test", maxThreads = 1, maxQueueSize = 3)
+            val blocked = CountDownLatch(1)
+            val done = CountDownLatch(4)
+            val order = Collections.synchronizedList(mutableListOf<String>())
+
+            executor.execute { blocked.await() }
+            executor.execute({ order.add("low"); done.countDown() }, TaskPools.Priority.LOW)
+            executor.execute({ order.add("normal"); done.countDown() }, TaskPools.Priority.NORMAL)
+            executor.execute({ order.add("high"); done.countDown() }, TaskPools.Priority.HIGH)
+
+            var thread: Thread? = null
+            should("report the queue as full, but still queue new tasks") {
+                executor.isQueueFull shouldBe true
+                executor.execute {
+                    thread = Thread.currentThread()
+                    done.countDown()
+                }
+                thread shouldBe null
+            }
+            should("run queued tasks in order of priority") {
+                blocked.countDown()
+                done.await(5, TimeUnit.SECONDS) shouldBe true
+                order shouldBe listOf("high", "normal", "low")
+                thread shouldNotBe null
+                executor.isQueueFull shouldBe false
+            }
+            executor.shutdown()
+        }
+        context("Tasks with the same priority") {
+            val executor = PrioritizedExecutor("test", maxThreads = 1, maxQueueSize = 100)
+            val blocked = CountDownLatch(1)
+            val done = CountDownLatch(10)
+            val order = Collections.synchronizedList(mutableListOf<Int>())
+
+            executor.execute { blocked.await() }
+            repeat(10) { i -> executor.execute { order.add(i); done.countDown() } }
+            blocked.countDown()
+
+            should("run in the order in which they were submitted") {
+                done.await(5, TimeUnit.SECONDS) shouldBe true
+                order shouldBe (0 until 10).toList()
+            }
+            executor.shutdown()
+        }
+    }
+}
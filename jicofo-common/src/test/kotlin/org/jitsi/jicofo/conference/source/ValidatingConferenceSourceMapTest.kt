@@ -19,6 +19,8 @@ import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
 import org.jitsi.utils.MediaType.AUDIO
 import org.jitsi.utils.MediaType.VIDEO
 
@@ -409,6 +411,39 @@ class ValidatingConferenceSourceMapTest : ShouldSpec() {
                 }
             }
         }
+        context("Snapshots") {
+            val audioOnly = SourceFilter(video = false)
+            conferenceSources.tryToAdd(jid1, sourceSet)
+            val snapshot = conferenceSources.snapshot(SourceFilter())
+
+            should("Filter the sources") {
+                snapshot.filtered shouldBe mapOf(jid1 to sourceSet.stripSimulcast)
+                conferenceSources.snapshot(audioOnly).filtered shouldBe mapOf(jid1 to EndpointSourceSet(s7))
+            }
+            should("Be shared until the sources change") {
+                conferenceSources.snapshot(SourceFilter()) shouldBeSameInstanceAs snapshot
+
+                conferenceSources.tryToAdd(jid2, EndpointSourceSet(Source(101, AUDIO)))
+                val next = conferenceSources.snapshot(SourceFilter())
+                next shouldNotBeSameInstanceAs snapshot
+                next.version shouldBe conferenceSources.version
+                // The filtered sources of the unchanged endpoint are reused.
+                next.filtered[jid1] shouldBeSameInstanceAs snapshot.filtered[jid1]
+                next.filtered[jid2] shouldBe EndpointSourceSet(Source(101, AUDIO))
+            }
+            should("Share offers with the same additional sources") {
+                val additional = ConferenceSourceMap("jvb", EndpointSourceSet(Source(1000, AUDIO)))
+                val offer = snapshot.offerSources(additional, jid2)
+                offer.toMap() shouldBe
+                    mapOf(jid1 to sourceSet.stripSimulcast, "jvb" to EndpointSourceSet(Source(1000, AUDIO)))
+                snapshot.offerSources(additional.copy(), "jid3") shouldBeSameInstanceAs offer
+                offer.compactJson() shouldBeSameInstanceAs offer.compactJson()
+
+                // The endpoint's own sources are not offered.
+                snapshot.offerSources(additional, jid1).toMap() shouldBe
+                    mapOf("jvb" to EndpointSourceSet(Source(1000, AUDIO)))
+            }
+        }
     }
 }
 
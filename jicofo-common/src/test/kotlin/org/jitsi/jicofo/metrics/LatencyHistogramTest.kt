@@ -0,0 +1,86 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.metrics
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class LatencyHistogramTest : ShouldSpec() {
+    init {
+        context("A histogram without a label") {
+            val histogram = LatencyHistogram("test_latency_ms", "Test latency", listOf(10L, 100L))
+            listOf(0L, 10L, 11L, 100L, 5000L, -1L).forEach { histogram.observe(it) }
+
+            should("count the observations cumulatively, with the bounds included in their bucket") {
+                histogram.bucketCounts() shouldBe listOf(3L, 5L, 6L)
+                histogram.sum() shouldBe 5121L
+            }
+            should("export") {
+                histogram.export()
+                histogram.observe(50)
+                histogram.export()
+                histogram.bucketCounts() shouldBe listOf(3L, 6L, 7L)
+            }
+        }
+        context("A histogram with a label") {
+            val histogram = LatencyHistogram("test_labeled_latency_ms", "Test latency", listOf(10L), labelName = "l")
+            histogram.observe(5, "a")
+            histogram.observe(20, "b")
+            histogram.export()
+
+            should("keep a separate histogram for each label value") {
+                histogram.bucketCounts("a") shouldBe listOf(1L, 1L)
+                histogram.bucketCounts("b") shouldBe listOf(0L, 1L)
+            }
+            should("stop recording a removed label value") {
+                histogram.remove("a")
+                histogram.bucketCounts("a") shouldBe listOf(0L, 0L)
+                histogram.bucketCounts("b") shouldBe listOf(0L, 1L)
+            }
+        }
+        context("Concurrent observations") {
+            val histogram = LatencyHistogram("test_concurrent_latency_ms", "Test latency", listOf(1L, 2L, 3L))
+            val numThreads = 8
+            val observationsPerThread = 100_000
+            val start = CountDownLatch(1)
+            val threads = List(numThreads) {
+                thread {
+                    start.await()
+                    repeat(observationsPerThread) { histogram.observe((it % 5).toLong()) }
+                }
+            }
+            // Export concurrently with the observations, as the metrics updater does.
+            val exporter = thread {
+                start.await()
+                while (threads.any { it.isAlive }) histogram.export()
+            }
+            start.countDown()
+            threads.forEach { it.join(TimeUnit.SECONDS.toMillis(30)) }
+            exporter.join(TimeUnit.SECONDS.toMillis(30))
+
+            should("not lose any observations") {
+                val total = numThreads.toLong() * observationsPerThread
+                histogram.bucketCounts() shouldBe listOf(2 * total / 5, 3 * total / 5, 4 * total / 5, total)
+                histogram.sum() shouldBe total / 5 * (0 + 1 + 2 + 3 + 4)
+            }
+        }
+    }
+}
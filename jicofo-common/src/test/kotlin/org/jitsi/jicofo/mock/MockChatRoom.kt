@@ -28,6 +28,7 @@ import org.jivesoftware.smack.packet.ExtensionElement
 import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.impl.JidCreate
 import java.lang.IllegalArgumentException
+import java.util.concurrent.CompletableFuture
 import javax.xml.namespace.QName
 
 class MockChatRoom(
@@ -51,6 +52,7 @@ class MockChatRoom(
         every { xmppProvider } returns this@MockChatRoom.xmppProvider
         every { debugState } returns JsonNodeFactory.instance.objectNode()
         every { getChatMember(any()) } answers { memberList.find { it.occupantJid == arg(0) } }
+        every { joinAsync() } answers { CompletableFuture.completedFuture(join()) }
     }
 
     fun addMember(
@@ -18,12 +18,21 @@ package org.jitsi.jicofo.mock
 import io.mockk.every
 import io.mockk.mockk
 import org.jivesoftware.smack.AbstractXMPPConnection
+import org.jivesoftware.smack.StanzaListener
+import org.jivesoftware.smack.filter.StanzaFilter
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.Stanza
 import org.jivesoftware.smack.packet.StanzaFactory
 import org.jivesoftware.smack.packet.id.StanzaIdSource
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
 
 open class MockXmppConnection {
+    /** The sync stanza listeners registered with the connection, which receive the responses to IQs sent. */
+    private val syncStanzaListeners = CopyOnWriteArrayList<Pair<StanzaListener, StanzaFilter>>()
+
     val xmppConnection: AbstractXMPPConnection = mockk(relaxed = true) {
         every { createStanzaCollectorAndSend(any()) } answers {
             val request = arg<IQ>(0)
@@ -40,7 +49,26 @@ open class MockXmppConnection {
 
         every { sendStanza(any()) } answers {
             val request = arg<Stanza>(0)
-            if (request is IQ) handleIq(request)
+            if (request is IQ) {
+                val response = handleIq(request)
+                if (response != null && (request.type == IQ.Type.get || request.type == IQ.Type.set)) {
+                    val delay = responseDelay
+                    if (delay == null) {
+                        deliver(response)
+                    } else {
+                        CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS).execute {
+                            deliver(response)
+                        }
+                    }
+                }
+            }
+        }
+
+        every { addSyncStanzaListener(any(), any()) } answers {
+            syncStanzaListeners.add(Pair(firstArg(), secondArg()))
+        }
+        every { removeSyncStanzaListener(any()) } answers {
+            syncStanzaListeners.removeIf { it.first == firstArg<StanzaListener>() }
         }
 
         val stanzaIdSource = object : StanzaIdSource {
@@ -50,5 +78,16 @@ open class MockXmppConnection {
         every { stanzaFactory } returns StanzaFactory(stanzaIdSource)
     }
 
+    /**
+     * When set, the responses to IQs sent with [AbstractXMPPConnection.sendStanza] are delivered after this delay from
+     * another thread, instead of from the sending thread before it returns.
+     */
+    @Volatile
+    var responseDelay: Duration? = null
+
+    /** Deliver [response] to the listeners, like the connection does when it receives it. */
+    protected fun deliver(response: IQ) =
+        syncStanzaListeners.filter { it.second.accept(response) }.forEach { it.first.processStanza(response) }
+
     open fun handleIq(iq: IQ): IQ? = null
 }
@@ -0,0 +1,89 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import io.kotest.assertions.nondeterministic.eventually
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.time.Duration.Companion.seconds
+
+class IqDispatcherTest : ShouldSpec() {
+    init {
+        context("Tasks with the same key") {
+            val executor = Executors.newFixedThreadPool(4)
+            val dispatcher = IqDispatcher("test", 8, executor)
+            val done = CountDownLatch(100)
+            val order = Collections.synchronizedList(mutableListOf<Int>())
+            repeat(100) { i -> dispatcher.dispatch("room1") { order.add(i); done.countDown() } }
+
+            should("run in the order in which they were dispatched") {
+                done.await(5, TimeUnit.SECONDS) shouldBe true
+                order shouldBe (0 until 100).toList()
+            }
+            dispatcher.shutdown()
+            executor.shutdown()
+        }
+        context("A blocked task") {
+            val executor = Executors.newFixedThreadPool(4)
+            // The hash codes of "room1" and "room2" differ by one, so with two queues they map to different queues.
+            val dispatcher = IqDispatcher("test", 2, executor)
+            val blocked = CountDownLatch(1)
+            val sameKeyDone = CountDownLatch(1)
+            val otherKeyDone = CountDownLatch(1)
+            dispatcher.dispatch("room1") { blocked.await() }
+            dispatcher.dispatch("room1") { sameKeyDone.countDown() }
+            dispatcher.dispatch("room2") { otherKeyDone.countDown() }
+
+            should("delay tasks with the same key, but not others") {
+                otherKeyDone.await(5, TimeUnit.SECONDS) shouldBe true
+                sameKeyDone.count shouldBe 1
+                blocked.countDown()
+                sameKeyDone.await(5, TimeUnit.SECONDS) shouldBe true
+            }
+            dispatcher.shutdown()
+            executor.shutdown()
+        }
+        context("When too many tasks are pending") {
+            val executor = Executors.newSingleThreadExecutor()
+            val dispatcher = IqDispatcher("test", 4, executor, maxPending = 2)
+            // Keep the executor busy, so that dispatched tasks stay pending.
+            val blocked = CountDownLatch(1)
+            executor.execute { blocked.await() }
+            val done = CountDownLatch(3)
+
+            should("refuse new tasks until pending ones have started") {
+                dispatcher.dispatch("room1") { done.countDown() } shouldBe true
+                dispatcher.dispatch("room2") { done.countDown() } shouldBe true
+                dispatcher.dispatch("room3") { done.countDown() } shouldBe false
+
+                blocked.countDown()
+                eventually(5.seconds) {
+                    done.count shouldBe 1
+                }
+                dispatcher.dispatch("room3") { done.countDown() } shouldBe true
+                done.await(5, TimeUnit.SECONDS) shouldBe true
+            }
+            dispatcher.shutdown()
+            executor.shutdown()
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.mockk.every
+import io.mockk.verify
+import org.jitsi.jicofo.mock.MockXmppConnection
+import org.jivesoftware.smack.packet.IQ
+import org.jivesoftware.smackx.ping.packet.Ping
+import org.jxmpp.jid.impl.JidCreate
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+class IqResponseRouterTest : ShouldSpec() {
+    init {
+        val remote = JidCreate.from("remote@example.com/res")
+        val other = JidCreate.from("other@example.com/res")
+
+        context("When the remote side responds") {
+            val connection = object : MockXmppConnection() {
+                override fun handleIq(iq: IQ): IQ = IQ.createResultIQ(iq)
+            }
+            val router = IqResponseRouter.forConnection(connection.xmppConnection)
+            val future = router.send(Ping(remote), Duration.ofSeconds(10))
+
+            should("complete the future with the response") {
+                val response = future.get(1, TimeUnit.SECONDS)
+                response.shouldNotBeNull()
+                response.type shouldBe IQ.Type.result
+            }
+            should("not keep any pending requests") {
+                router.pendingCount shouldBe 0
+            }
+            should("reuse the same router for the connection") {
+                (IqResponseRouter.forConnection(connection.xmppConnection) === router) shouldBe true
+            }
+        }
+        context("When the remote side does not respond") {
+            val connection = MockXmppConnection()
+            val router = IqResponseRouter.forConnection(connection.xmppConnection)
+            val future = router.send(Ping(remote), Duration.ofMillis(10))
+
+            should("complete the future with null on timeout") {
+                future.get(5, TimeUnit.SECONDS) shouldBe null
+                router.pendingCount shouldBe 0
+            }
+        }
+        context("When a response comes from an unexpected address") {
+            val connection = object : MockXmppConnection() {
+                override fun handleIq(iq: IQ): IQ = IQ.createResultIQ(iq).apply { from = other }
+            }
+            val router = IqResponseRouter.forConnection(connection.xmppConnection)
+            val future = router.send(Ping(remote), Duration.ofMillis(10))
+
+            should("ignore it") {
+                future.get(5, TimeUnit.SECONDS) shouldBe null
+            }
+        }
+        context("When a response to a request to our own account has no from address") {
+            val local = JidCreate.entityFullFrom("jicofo@example.com/focus")
+            val connection = object : MockXmppConnection() {
+                override fun handleIq(iq: IQ): IQ = IQ.createResultIQ(iq).apply { from = null }
+            }
+            every { connection.xmppConnection.user } returns local
+            val router = IqResponseRouter.forConnection(connection.xmppConnection)
+
+            should("accept it, like Smack does") {
+                router.send(Ping(local.asBareJid()), Duration.ofSeconds(10)).get(1, TimeUnit.SECONDS).shouldNotBeNull()
+            }
+            should("not accept it for a request to another address") {
+                router.send(Ping(remote), Duration.ofMillis(10)).get(5, TimeUnit.SECONDS) shouldBe null
+            }
+        }
+        context("When the router is closed") {
+            val connection = MockXmppConnection()
+            val router = IqResponseRouter.forConnection(connection.xmppConnection)
+            val future = router.send(Ping(remote), Duration.ofSeconds(60))
+            IqResponseRouter.close(connection.xmppConnection)
+
+            should("complete the pending requests with null") {
+                future.get(1, TimeUnit.SECONDS) shouldBe null
+                router.pendingCount shouldBe 0
+            }
+            should("remove its listener from the connection") {
+                verify { connection.xmppConnection.removeSyncStanzaListener(any()) }
+            }
+            should("create a new router for a later request") {
+                (IqResponseRouter.forConnection(connection.xmppConnection) === router) shouldBe false
+            }
+        }
+    }
+}
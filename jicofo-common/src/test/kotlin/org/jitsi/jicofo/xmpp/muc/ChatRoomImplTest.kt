@@ -26,62 +26,89 @@ import io.mockk.mockkStatic
 import io.mockk.unmockkStatic
 import org.jitsi.jicofo.MediaType
 import org.jitsi.jicofo.TaskPools
+import org.jitsi.jicofo.conference.source.measure
 import org.jitsi.jicofo.mock.MockXmppConnection
+import org.jitsi.jicofo.mock.PendingExecutor
 import org.jitsi.jicofo.mock.inPlaceExecutor
 import org.jitsi.jicofo.xmpp.RoomMetadata
 import org.jitsi.jicofo.xmpp.XmppProvider
+import org.jitsi.utils.logging2.createLogger
 import org.jivesoftware.smack.packet.ExtensionElement
+import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.Presence
 import org.jivesoftware.smack.packet.StandardExtensionElement
 import org.jivesoftware.smack.packet.StanzaBuilder
 import org.jivesoftware.smackx.muc.MUCAffiliation
 import org.jivesoftware.smackx.muc.MUCRole
+import org.jivesoftware.smackx.muc.MucConfigFormManager
 import org.jivesoftware.smackx.muc.MultiUserChat
 import org.jivesoftware.smackx.muc.MultiUserChatManager
 import org.jivesoftware.smackx.muc.Occupant
+import org.jivesoftware.smackx.muc.packet.MUCOwner
 import org.jivesoftware.smackx.muc.packet.MUCUser
+import org.jivesoftware.smackx.xdata.FormField
+import org.jivesoftware.smackx.xdata.packet.DataForm
+import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.EntityFullJid
 import org.jxmpp.jid.impl.JidCreate
+import org.jxmpp.jid.parts.Resourcepart
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.logging.Level
 
 class ChatRoomImplTest : ShouldSpec() {
     override fun isolationMode() = IsolationMode.InstancePerLeaf
 
     private val roomJid = JidCreate.entityBareFrom("room@conference.example.com")
-    private val xmppConnection = MockXmppConnection().xmppConnection
+    private val mucServer = MucServer()
+    private val xmppConnection = mucServer.xmppConnection
     private val xmppProvider: XmppProvider = mockk(relaxed = true) {
         every { xmppConnection } returns this@ChatRoomImplTest.xmppConnection
+        every { config.username } returns Resourcepart.from("focus")
     }
 
     /** The role/affiliation of each occupant, as would be reported by the MUC. */
     private val occupantMap = mutableMapOf<EntityFullJid, Occupant>()
+
+    /** How long [MultiUserChat.createOrJoin] blocks. */
+    private var createOrJoinDelay = Duration.ZERO
     private val muc: MultiUserChat = mockk(relaxed = true) {
         every { getOccupant(any()) } answers { occupantMap[firstArg<EntityFullJid>()] }
+        every { createOrJoin(any<Resourcepart>()) } answers {
+            Thread.sleep(createOrJoinDelay.toMillis())
+            mockk(relaxed = true)
+        }
     }
 
     private var left = false
     private val chatRoom by lazy {
+        createChatRoom(roomJid).apply {
+            addListener(
+                object : ChatRoomListener {
+                    override fun memberJoined(member: ChatRoomMember) {
+                        joined.add(member)
+                    }
+                    override fun memberLeft(member: ChatRoomMember) {
+                        leftMembers.add(member)
+                    }
+                    override fun memberKicked(member: ChatRoomMember) {
+                        kicked.add(member)
+                    }
+                }
+            )
+        }
+    }
+
+    private fun createChatRoom(jid: EntityBareJid): ChatRoomImpl {
         mockkStatic(MultiUserChatManager::class)
         val manager = mockk<MultiUserChatManager> {
             every { getMultiUserChat(any()) } returns muc
         }
         every { MultiUserChatManager.getInstanceFor(any()) } returns manager
         try {
-            ChatRoomImpl(xmppProvider, roomJid, Level.INFO) { left = true }.apply {
-                addListener(
-                    object : ChatRoomListener {
-                        override fun memberJoined(member: ChatRoomMember) {
-                            joined.add(member)
-                        }
-                        override fun memberLeft(member: ChatRoomMember) {
-                            leftMembers.add(member)
-                        }
-                        override fun memberKicked(member: ChatRoomMember) {
-                            kicked.add(member)
-                        }
-                    }
-                )
-            }
+            return ChatRoomImpl(xmppProvider, jid, Level.INFO) { left = true }
         } finally {
             unmockkStatic(MultiUserChatManager::class)
         }
@@ -195,6 +222,38 @@ class ChatRoomImplTest : ShouldSpec() {
                 chatRoom.audioSendersCount shouldBe 0
             }
         }
+        context("Presence coalescing") {
+            // Create the room with a queue which runs when runAll() is called.
+            val executor = PendingExecutor()
+            TaskPools.ioPool = executor.executor
+            chatRoom.memberCount shouldBe 0
+
+            should("Process only the latest queued presence of an occupant") {
+                join("member1", MUCRole.participant, sourceInfo("member1", audioMuted = false))
+                chatRoom.processPresence(memberPresence("member1", extensions = arrayOf(sourceInfo("member1", true))))
+                join("member2")
+                executor.runAll()
+
+                joined.map { it.name } shouldBe listOf("member1", "member2")
+                chatRoom.audioSendersCount shouldBe 0
+                chatRoom.debugState["presence_received"].asLong() shouldBe 3
+                chatRoom.debugState["presence_coalesced"].asLong() shouldBe 1
+                chatRoom.debugState["presence_queue_size"].asInt() shouldBe 0
+            }
+            should("Not reorder presence around a member leaving") {
+                join("member1")
+                executor.runAll()
+                chatRoom.processPresence(memberPresence("member1", extensions = arrayOf(sourceInfo("member1", true))))
+                chatRoom.processPresence(memberPresence("member1", Presence.Type.unavailable))
+                join("member1")
+                executor.runAll()
+
+                joined.size shouldBe 2
+                leftMembers.size shouldBe 1
+                chatRoom.memberCount shouldBe 1
+                chatRoom.debugState["presence_coalesced"].asLong() shouldBe 0
+            }
+        }
         context("AV moderation") {
             val jid = JidCreate.from("someone@example.com")
             chatRoom.isAvModerationEnabled(MediaType.AUDIO) shouldBe false
@@ -229,5 +288,108 @@ class ChatRoomImplTest : ShouldSpec() {
             chatRoom.visitorsLive shouldBe true
             chatRoom.participantsSoftLimit shouldBe 30
         }
+        context("Joining") {
+            should("Submit the configuration and read the meeting ID") {
+                val chatRoomInfo = chatRoom.joinAsync().get(5, TimeUnit.SECONDS)
+
+                chatRoomInfo.meetingId shouldBe "meeting-id"
+                mucServer.submittedForms.single().getField("muc#roomconfig_whois").firstValue shouldBe "anyone"
+            }
+            context("With the conference presets service enabled") {
+                mucServer.presetsEnabled = true
+                val result = chatRoom.joinAsync()
+
+                should("Submit the configuration while waiting for the room metadata") {
+                    result.isDone shouldBe false
+                    mucServer.submittedForms.size shouldBe 1
+                }
+                should("Hold presence until the room is joined") {
+                    join("member1")
+                    chatRoom.memberCount shouldBe 0
+
+                    chatRoom.setRoomMetadata(RoomMetadata(metadata = null))
+                    result.get(5, TimeUnit.SECONDS)
+                    chatRoom.memberCount shouldBe 1
+                    joined.map { it.name } shouldBe listOf("member1")
+                }
+            }
+        }
+        xcontext("Join latency") {
+            // Each join blocks in createOrJoin and then makes two IQ round trips. With joinAsync only createOrJoin
+            // holds a thread, so with a small pool the joins should take about numRooms / numThreads * delay, plus two
+            // round trips. For comparison, join() is called from numThreads threads, each of which is held for the
+            // whole join, so that should take about numRooms / numThreads * 3 * delay.
+            val numRooms = 200
+            val numThreads = 8
+            val delay = Duration.ofMillis(20)
+            val pool = Executors.newFixedThreadPool(numThreads)
+            val callers = Executors.newFixedThreadPool(numThreads)
+            try {
+                TaskPools.ioPool = pool
+                createOrJoinDelay = delay
+                mucServer.responseDelay = delay
+
+                val asyncRooms = List(numRooms) {
+                    createChatRoom(JidCreate.entityBareFrom("async-room$it@conference.example.com"))
+                }
+                val asyncDuration = measure {
+                    asyncRooms.map { it.joinAsync() }.forEach { it.get() }
+                }
+                logger.info("Joining $numRooms rooms with joinAsync and $numThreads threads took $asyncDuration")
+
+                val syncRooms = List(numRooms) {
+                    createChatRoom(JidCreate.entityBareFrom("sync-room$it@conference.example.com"))
+                }
+                val syncDuration = measure {
+                    syncRooms.map { room -> callers.submit { room.join() } }.forEach { it.get() }
+                }
+                logger.info("Joining $numRooms rooms with join and $numThreads threads took $syncDuration")
+            } finally {
+                TaskPools.resetIoPool()
+                callers.shutdown()
+                pool.shutdown()
+            }
+        }
     }
+
+    /** Answers the MUC owner requests sent while joining, with a room configuration form. */
+    private class MucServer : MockXmppConnection() {
+        var presetsEnabled = false
+        val submittedForms = CopyOnWriteArrayList<DataForm>()
+
+        init {
+            every { xmppConnection.replyTimeout } returns 15000
+        }
+
+        override fun handleIq(iq: IQ): IQ? {
+            if (iq !is MUCOwner) return null
+            if (iq.type == IQ.Type.set) {
+                submittedForms.add(iq.getExtension(DataForm::class.java))
+            }
+            return MUCOwner().apply {
+                type = IQ.Type.result
+                stanzaId = iq.stanzaId
+                from = iq.to
+                to = iq.from
+                if (iq.type == IQ.Type.get) addExtension(configForm())
+            }
+        }
+
+        private fun configForm() = DataForm.builder(DataForm.Type.form)
+            .setFormType(MucConfigFormManager.FORM_TYPE)
+            .addField(FormField.textSingleBuilder("muc#roomconfig_whois").setValue("moderators").build())
+            .addField(FormField.textSingleBuilder("muc#roominfo_meetingId").setValue("meeting-id").build())
+            .apply {
+                if (presetsEnabled) {
+                    addField(
+                        FormField.textSingleBuilder("muc#roominfo_conference_presets_service_enabled")
+                            .setValue("true")
+                            .build()
+                    )
+                }
+            }
+            .build()
+    }
+
+    private val logger = createLogger()
 }
@@ -26,16 +26,21 @@
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.packet.*;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import static org.jitsi.jicofo.bridge.BridgeConfig.config;
-import static org.jitsi.jicofo.xmpp.UtilKt.sendIqAndGetResponse;
 
 /**
  * The class is responsible for doing health checks of currently known
  * jitsi-videobridge instances.
  *
+ * Health check requests are sent asynchronously and no thread waits for the
+ * responses, so slow bridges do not hold up the health checks of other bridges
+ * or the timers in {@link TaskPools#getScheduledPool()}.
+ *
  * @author Pawel Domas
  */
 public class JvbDoctor
@@ -149,9 +154,11 @@ public void bridgeIsShuttingDown(@NotNull Bridge bridge)
         private PeriodicHealthCheckTask(Runnable task, long healthCheckInterval)
         {
             innerTask = task;
+            // Spread the checks for different bridges across the interval, so they don't all run at the same time.
+            long initialDelay = ThreadLocalRandom.current().nextLong(Math.max(1, healthCheckInterval));
             future = TaskPools.getScheduledPool().scheduleWithFixedDelay(
-                () -> innerFuture = TaskPools.getIoPool().submit(runInner),
-                healthCheckInterval,
+                () -> innerFuture = TaskPools.getHealthPool().submit(runInner),
+                initialDelay,
                 healthCheckInterval,
                 TimeUnit.MILLISECONDS);
         }
@@ -175,6 +182,12 @@ private void cancel()
 
     private class HealthCheckTask extends AbstractHealthCheckTask
     {
+        /**
+         * Whether a health check (including its second attempt) is in progress. Checks do not overlap: if a bridge
+         * is slow to respond, the next check is skipped.
+         */
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+
         private HealthCheckTask(Bridge bridge)
         {
             super(bridge);
@@ -189,7 +202,8 @@ private HealthCheckIQ newHealthCheckIQ(Bridge bridge)
         }
 
         /**
-         * Performs a health check.
+         * Starts a health check. This does not wait for the response, which is handled in
+         * {@link #responseReceived(IQ, long, boolean)}.
          * @throws org.jivesoftware.smack.SmackException.NotConnectedException when XMPP is not connected,
          * the task should terminate.
          */
@@ -210,33 +224,67 @@ protected void doHealthCheck()
                 return;
             }
 
-            logger.debug("Sending health-check request to: " + bridge);
-
-            IQ response = sendIqAndGetResponse(connection, newHealthCheckIQ(bridge));
+            if (!inProgress.compareAndSet(false, true))
+            {
+                logger.warn("The previous health check is still in progress, skipping: " + bridge);
+                return;
+            }
 
-            // On timeout we'll give it one more try
-            if (response == null && secondChanceDelay > 0)
+            try
             {
-                try
-                {
-                    if (taskInvalid())
-                        return;
+                send(connection, true);
+            }
+            catch (SmackException.NotConnectedException | RuntimeException e)
+            {
+                inProgress.set(false);
+                throw e;
+            }
+        }
 
-                    logger.warn(bridge + " health-check timed out,"
-                            + " but will give it another try after: "
-                            + secondChanceDelay);
+        private void send(AbstractXMPPConnection connection, boolean firstAttempt)
+            throws SmackException.NotConnectedException
+        {
+            logger.debug("Sending health-check request to: " + bridge);
 
-                    Thread.sleep(secondChanceDelay);
+            long start = System.nanoTime();
+            UtilKt.sendIqAsync(connection, newHealthCheckIQ(bridge), Duration.ofMillis(connection.getReplyTimeout()))
+                .whenCompleteAsync(
+                    (response, error) ->
+                    {
+                        if (error != null)
+                        {
+                            logger.warn("Failed to get a health check response from: " + bridge, error);
+                        }
+                        responseReceived(response, System.nanoTime() - start, firstAttempt);
+                    },
+                    TaskPools.getHealthPool());
+        }
 
-                    if (taskInvalid())
-                        return;
+        /**
+         * Handles the response to a health check, or its timeout if {@code response} is null.
+         * @param rttNanos the time since the request was sent.
+         * @param firstAttempt whether this was the first attempt, i.e. a timeout should be retried.
+         */
+        private void responseReceived(IQ response, long rttNanos, boolean firstAttempt)
+        {
+            // On timeout we'll give it one more try
+            if (response == null && firstAttempt && secondChanceDelay > 0 && !taskInvalid())
+            {
+                logger.warn(bridge + " health-check timed out, but will give it another try after: "
+                        + secondChanceDelay);
+
+                // The timer only hands the request off, it must not wait for the response.
+                TaskPools.getScheduledPool().schedule(
+                    () -> TaskPools.getHealthPool().execute(this::retry),
+                    secondChanceDelay,
+                    TimeUnit.MILLISECONDS);
+                return;
+            }
 
-                    response = sendIqAndGetResponse(connection, newHealthCheckIQ(bridge));
-                }
-                catch (InterruptedException e)
-                {
-                    logger.error(bridge + " second chance delay wait interrupted", e);
-                }
+            inProgress.set(false);
+            if (response != null)
+            {
+                bridge.healthCheckResponseReceived(TimeUnit.NANOSECONDS.toMillis(rttNanos));
             }
 
             // Sync on start/stop and bridges state
@@ -285,6 +333,27 @@ protected void doHealthCheck()
                 }
             }
         }
+
+        /** Sends the second attempt after the first one timed out. */
+        private void retry()
+        {
+            AbstractXMPPConnection connection = getConnection();
+            if (taskInvalid() || !connection.isConnected())
+            {
+                inProgress.set(false);
+                return;
+            }
+
+            try
+            {
+                send(connection, false);
+            }
+            catch (Exception e)
+            {
+                inProgress.set(false);
+                logger.error("Error when doing health-check on: " + bridge, e);
+            }
+        }
     }
 
     private abstract class AbstractHealthCheckTask implements Runnable
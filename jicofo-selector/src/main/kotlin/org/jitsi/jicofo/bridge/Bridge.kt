@@ -49,7 +49,12 @@ class Bridge @JvmOverloads internal constructor(
      * The XMPP address of the bridge.
      */
     val jid: Jid,
-    private val clock: Clock = Clock.systemUTC()
+    private val clock: Clock = Clock.systemUTC(),
+    /**
+     * Called when a change which may affect the selection of this bridge happens (e.g. new stats, a change in the
+     * operational status or in the number of endpoints).
+     */
+    private val stateChanged: (Bridge) -> Unit = {}
 ) : Comparable<Bridge> {
 
     /** Keep track of the recently added endpoints. */
@@ -108,6 +113,7 @@ class Bridge @JvmOverloads internal constructor(
                 // Remember when the bridge has last failed
                 failureInstant = clock.instant()
             }
+            stateChanged(this)
         }
 
     /** Start out with the configured value, update if the bridge reports a value. */
@@ -115,6 +121,10 @@ class Bridge @JvmOverloads internal constructor(
 
     /** Stores a boolean that indicates whether the bridge is in graceful shutdown mode. */
     var isInGracefulShutdown = false // we assume it is not shutting down
+        set(value) {
+            field = value
+            stateChanged(this)
+        }
 
     /** Whether the bridge is in SHUTTING_DOWN mode. */
     var isShuttingDown = false
@@ -147,6 +157,9 @@ class Bridge @JvmOverloads internal constructor(
      */
     val removed = AtomicBoolean(false)
 
+    /** The value of the `jvb` label of the metrics for this bridge. */
+    private val metricsLabel = jid.resourceOrEmpty.toString()
+
     /**
      * The last instant at which we detected, based on restart requests from endpoints, that this bridge is failing ICE
      */
@@ -224,6 +237,7 @@ class Bridge @JvmOverloads internal constructor(
                     "checks for this bridge are effectively disabled."
             )
         }
+        stateChanged(this)
     }
 
     /**
@@ -245,6 +259,7 @@ class Bridge @JvmOverloads internal constructor(
         if (!removed.get()) {
             BridgeMetrics.endpoints.set(endpoints.get().toLong(), listOf(jid.resourceOrEmpty.toString()))
         }
+        stateChanged(this)
     }
 
     /** Updates the "endpoints moved" metric for this bridge. */
@@ -261,6 +276,7 @@ class Bridge @JvmOverloads internal constructor(
             logger.error("Removed more endpoints than were allocated. Resetting to 0.", Throwable())
             endpoints.set(0)
         }
+        stateChanged(this)
     }
     internal fun markRemoved() {
         if (removed.compareAndSet(false, true)) {
@@ -268,8 +284,21 @@ class Bridge @JvmOverloads internal constructor(
             BridgeMetrics.endpoints.remove(listOf(jid.resourceOrEmpty.toString()))
             BridgeMetrics.failingIce.remove(listOf(jid.resourceOrEmpty.toString()))
             BridgeMetrics.endpointsMoved.remove(listOf(jid.resourceOrEmpty.toString()))
+            BridgeMetrics.healthCheckRtt.remove(metricsLabel)
+            BridgeMetrics.allocationRtt.remove(metricsLabel)
         }
     }
+    /** Records the round-trip time of a health check which received a response. */
+    fun healthCheckResponseReceived(rttMs: Long) {
+        if (removed.get()) return
+        BridgeMetrics.healthCheckRtt.observe(rttMs, metricsLabel)
+    }
+
+    /** Records the round-trip time of a colibri2 request which allocated an endpoint, sent at [sentNanos]. */
+    fun allocationResponseReceived(sentNanos: Long) {
+        if (removed.get()) return
+        BridgeMetrics.allocationRtt.observeSince(sentNanos, metricsLabel)
+    }
     internal fun updateMetrics() {
         if (!removed.get()) {
             BridgeMetrics.failingIce.set(failingIce, listOf(jid.resourceOrEmpty.toString()))
@@ -293,10 +322,20 @@ class Bridge @JvmOverloads internal constructor(
                     logger.info("Detected an ICE failing state.")
                 }
                 lastIceFailed = clock.instant()
+                stateChanged(this)
             }
         }
     }
 
+    /**
+     * Whether [isOperational] or [correctedStress] may still change with time alone, i.e. without a call to
+     * `stateChanged`: endpoints were added or removed recently, ICE is failing, or the bridge failed recently.
+     */
+    internal val hasTimeDependentState: Boolean
+        get() = recentlyAddedEndpointCount != 0L ||
+            failingIce ||
+            failureInstant?.let { Duration.between(it, clock.instant()) < config.failureResetThreshold } == true
+
     /** Returns the net number of video channels recently allocated or removed from this bridge. */
     private val recentlyAddedEndpointCount: Long
         get() = newEndpointsRate.getAccumulatedCount()
@@ -0,0 +1,261 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.bridge
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An index of the bridges eligible for selection, ordered by load and bucketed by version and by region, which is
+ * maintained incrementally: when the state of a bridge changes, only that bridge is moved, and only in the buckets it
+ * belongs to.
+ *
+ * Changes are signaled with [stateChanged] and applied on the next call to [get], so a burst of changes to a bridge
+ * (e.g. endpoints added one at a time) moves it once. Readers get an immutable [Snapshot]; applying a change copies
+ * the affected buckets and shares the others with the previous snapshot.
+ *
+ * Some state changes with time alone (the ramp-up stress correction, ICE failure and the failure reset). The bridges
+ * which have such state are re-examined every [REFRESH_INTERVAL].
+ */
+internal class BridgeCandidates(private val clock: Clock) {
+    /** The bridges whose state changed since they were last positioned. */
+    private val changed: MutableSet<Bridge> = ConcurrentHashMap.newKeySet()
+
+    /** The current position of each eligible bridge. Only accessed while synchronized on this. */
+    private val entries = HashMap<Bridge, Entry>()
+
+    /** The operational bridges, including those which are SHUTTING_DOWN. Only accessed while synchronized on this. */
+    private val operational = HashSet<Bridge>()
+
+    /**
+     * The bridges whose state may change with time alone (see [Bridge.hasTimeDependentState]). Only accessed while
+     * synchronized on this.
+     */
+    private val timeDependent = HashSet<Bridge>()
+
+    @Volatile
+    private var lastRefresh = Instant.MIN
+
+    @Volatile
+    private var snapshot = Snapshot(false, Index.EMPTY, emptyMap())
+
+    /** Signal that the state of [bridge] changed (or that it was added or removed). */
+    fun stateChanged(bridge: Bridge) {
+        changed.add(bridge)
+    }
+
+    /** Get the current [Snapshot], with the changes signaled so far applied. */
+    fun get(): Snapshot {
+        val now = clock.instant()
+        if (changed.isEmpty() && Duration.between(lastRefresh, now) < REFRESH_INTERVAL) {
+            return snapshot
+        }
+
+        synchronized(this) {
+            if (Duration.between(lastRefresh, now) >= REFRESH_INTERVAL) {
+                changed.addAll(timeDependent)
+                lastRefresh = now
+            }
+            if (changed.isNotEmpty()) {
+                var all = snapshot.all
+                val byVersion = snapshot.byVersion.toMutableMap()
+                val iterator = changed.iterator()
+                while (iterator.hasNext()) {
+                    val bridge = iterator.next()
+                    // Remove before reading the state, so that a change made while reading is applied next time.
+                    iterator.remove()
+                    val old = entries[bridge]
+                    val new = position(bridge)
+                    if (old == new) continue
+
+                    if (old != null) {
+                        entries.remove(bridge)
+                        all = all.minus(old)
+                        old.version?.let { v -> byVersion[v]?.minus(old)?.let { byVersion[v] = it } }
+                    }
+                    if (new != null) {
+                        entries[bridge] = new
+                        all = all.plus(new)
+                        new.version?.let { v -> byVersion[v] = (byVersion[v] ?: Index.EMPTY).plus(new) }
+                    }
+                }
+                byVersion.values.removeIf { it.isEmpty() }
+                snapshot = Snapshot(operational.isNotEmpty(), all, byVersion)
+            }
+            return snapshot
+        }
+    }
+
+    /**
+     * Read the state of [bridge] and update [operational] and [timeDependent].
+     * @return the entry for the bridge, or null if it is not eligible for selection.
+     */
+    private fun position(bridge: Bridge): Entry? {
+        // Read this first: if there is no time dependent state now, then the state read below is final.
+        if (!bridge.removed.get() && bridge.hasTimeDependentState) {
+            timeDependent.add(bridge)
+        } else {
+            timeDependent.remove(bridge)
+        }
+        if (bridge.removed.get() || !bridge.isOperational) {
+            operational.remove(bridge)
+            return null
+        }
+        operational.add(bridge)
+        if (bridge.isShuttingDown) {
+            return null
+        }
+        val tier = (if (bridge.isDraining) 2 else 0) + (if (bridge.isInGracefulShutdown) 1 else 0)
+        return Entry(bridge, tier, bridge.correctedStress, bridge.fullVersion, bridge.region)
+    }
+
+    /**
+     * The position of a bridge: bridges are ordered by [tier] and then by [stress]. The tier encodes the preferences
+     * for bridges which are not draining, and then for bridges which are not in graceful shutdown: only the bridges in
+     * the lowest tier present are candidates.
+     */
+    data class Entry(
+        val bridge: Bridge,
+        val tier: Int,
+        val stress: Double,
+        val version: String?,
+        val region: String?
+    ) : Comparable<Entry> {
+        override fun compareTo(other: Entry): Int =
+            if (tier != other.tier) tier.compareTo(other.tier) else stress.compareTo(other.stress)
+    }
+
+    /** Immutable lists of entries in order: all of them, and those in each region. */
+    class Index(
+        private val entries: List<Entry>,
+        private val byRegion: Map<String?, List<Entry>>
+    ) {
+        fun isEmpty() = entries.isEmpty()
+
+        fun plus(entry: Entry) = Index(
+            entries.inserted(entry),
+            byRegion + (entry.region to (byRegion[entry.region] ?: emptyList()).inserted(entry))
+        )
+
+        fun minus(entry: Entry): Index {
+            val regionEntries = byRegion[entry.region]?.removed(entry) ?: emptyList()
+            return Index(
+                entries.removed(entry),
+                if (regionEntries.isEmpty()) byRegion - entry.region else byRegion + (entry.region to regionEntries)
+            )
+        }
+
+        /** The candidates, i.e. the entries in the lowest tier. */
+        fun candidates(): CandidateList =
+            CandidateList(entries, entries.firstOrNull()?.tier ?: 0, byRegion)
+
+        companion object {
+            val EMPTY = Index(emptyList(), emptyMap())
+
+            /** Insert [entry] after the entries which compare equal to it, in a copy of this list. */
+            private fun List<Entry>.inserted(entry: Entry): List<Entry> {
+                var low = 0
+                var high = size
+                while (low < high) {
+                    val mid = (low + high) ushr 1
+                    if (this[mid] <= entry) low = mid + 1 else high = mid
+                }
+                return ArrayList<Entry>(size + 1).apply {
+                    addAll(this@inserted)
+                    add(low, entry)
+                }
+            }
+
+            /** Remove [entry] in a copy of this list, locating it with a binary search. */
+            private fun List<Entry>.removed(entry: Entry): List<Entry> {
+                var low = 0
+                var high = size
+                while (low < high) {
+                    val mid = (low + high) ushr 1
+                    if (this[mid] < entry) low = mid + 1 else high = mid
+                }
+                while (low < size && this[low] != entry) low++
+                if (low == size) return this
+                return ArrayList(this).apply { removeAt(low) }
+            }
+        }
+    }
+
+    /** The state of the index at one point in time. */
+    class Snapshot(
+        /** Whether any bridge was operational. */
+        val anyOperational: Boolean,
+        val all: Index,
+        val byVersion: Map<String, Index>
+    ) {
+        /**
+         * The operational bridges which are not SHUTTING_DOWN, ordered by load. Bridges which are not draining and not
+         * in graceful shutdown are preferred, i.e. the others are only included if there are no such bridges.
+         */
+        val candidates: CandidateList = all.candidates()
+
+        /** The same as [candidates], but for the bridges of [version] only, or null if there are none. */
+        fun candidates(version: String): CandidateList? = byVersion[version]?.candidates()
+    }
+
+    companion object {
+        /** How often to re-examine the bridges with time dependent state. */
+        val REFRESH_INTERVAL: Duration = Duration.ofMillis(100)
+    }
+}
+
+/**
+ * A view of the leading entries of an ordered list of [BridgeCandidates.Entry] which are in [tier]. Lookups by region
+ * use the region buckets of the index instead of scanning the list.
+ */
+internal class CandidateList(
+    private val entries: List<BridgeCandidates.Entry>,
+    private val tier: Int,
+    /** The entries of each region, ordered like [entries], or null if this is already the view of a region. */
+    private val byRegion: Map<String?, List<BridgeCandidates.Entry>>?
+) : AbstractList<Bridge>(), RandomAccess {
+    override val size: Int = run {
+        // The entries are ordered by tier, so those in the tier are a prefix.
+        var low = 0
+        var high = entries.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (entries[mid].tier <= tier) low = mid + 1 else high = mid
+        }
+        low
+    }
+
+    override fun get(index: Int): Bridge {
+        if (index >= size) throw IndexOutOfBoundsException("Index $index, size $size")
+        return entries[index].bridge
+    }
+
+    /** The candidates in [region], in the same order. */
+    fun inRegion(region: String?): List<Bridge> =
+        if (byRegion == null) {
+            filter { it.region == region }
+        } else {
+            CandidateList(byRegion[region] ?: emptyList(), tier, null)
+        }
+}
+
+/** The bridges in [region], in the same order. Uses the region buckets of a [CandidateList] when available. */
+internal fun List<Bridge>.inRegion(region: String?): List<Bridge> =
+    if (this is CandidateList) inRegion(region) else filter { it.region == region }
@@ -171,6 +171,7 @@ class BridgeConfig private constructor() {
 
     val iceFailureDetection = IceFailureDetectionConfig()
     val loadRedistribution = LoadRedistributionConfig()
+    val colibriBatching = ColibriBatchingConfig()
 
     companion object {
         const val BASE = "jicofo.bridge"
@@ -227,3 +228,24 @@ class LoadRedistributionConfig internal constructor() {
         const val BASE = "jicofo.bridge.load-redistribution"
     }
 }
+
+class ColibriBatchingConfig internal constructor() {
+    /**
+     * How long to keep a batch of endpoint and relay updates open for more updates before sending it. With zero,
+     * updates are only merged while earlier requests to the same bridge are still being sent.
+     */
+    val window: Duration by config {
+        "$BASE.window".from(JitsiConfig.newConfig)
+    }
+
+    /** The maximum number of endpoints (local or relay) in a single batch. */
+    val maxSize: Int by config {
+        "$BASE.max-size".from(JitsiConfig.newConfig)
+    }
+
+    override fun toString(): String = "ColibriBatchingConfig(window=$window, maxSize=$maxSize)"
+
+    companion object {
+        const val BASE = "jicofo.bridge.colibri-batching"
+    }
+}
@@ -1,5 +1,6 @@
 package org.jitsi.jicofo.bridge
 
+import org.jitsi.jicofo.metrics.LatencyHistogram
 import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
 class BridgeMetrics {
     companion object {
@@ -29,5 +30,20 @@ class BridgeMetrics {
             "Total number of times a bridge was considered overloaded for a conference because the conference had " +
                 "reached max-bridge-participants-per-interval on it."
         )
+
+        /** A histogram of health check round-trip times. */
+        val healthCheckRtt = LatencyHistogram(
+            "bridge_health_check_rtt_ms",
+            "Round-trip time of health checks to a bridge",
+            listOf(5L, 10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L),
+            labelName = "jvb"
+        )
+
+        /** A histogram of the round-trip times of colibri2 requests which allocate an endpoint. */
+        val allocationRtt = LatencyHistogram(
+            "bridge_colibri_allocation_rtt_ms",
+            "Round-trip time of colibri2 requests to a bridge which allocate an endpoint",
+            labelName = "jvb"
+        )
     }
 }
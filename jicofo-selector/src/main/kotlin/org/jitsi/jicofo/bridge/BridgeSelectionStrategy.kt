@@ -94,10 +94,10 @@ abstract class BridgeSelectionStrategy {
         participantProperties: ParticipantProperties,
         desiredRegion: String?
     ): Bridge? {
-        val result = bridges
-            .filterNot { it.isOverloaded(conferenceBridges) }
-            .intersect(conferenceBridges.keys)
-            .firstOrNull { desiredRegion != null && it.region.equals(desiredRegion) }
+        if (desiredRegion == null) return null
+        val result = bridges.inRegion(desiredRegion).firstOrNull {
+            conferenceBridges.containsKey(it) && !it.isOverloaded(conferenceBridges)
+        }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -111,10 +111,9 @@ abstract class BridgeSelectionStrategy {
         desiredRegion: String?
     ): Bridge? {
         val regionGroup = config.getRegionGroup(desiredRegion)
-        val result = bridges
-            .filterNot { it.isOverloaded(conferenceBridges) }
-            .intersect(conferenceBridges.keys)
-            .firstOrNull { regionGroup.contains(it.region) }
+        val result = bridges.firstOrNull {
+            regionGroup.contains(it.region) && conferenceBridges.containsKey(it) && !it.isOverloaded(conferenceBridges)
+        }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -151,9 +150,8 @@ abstract class BridgeSelectionStrategy {
         participantProperties: ParticipantProperties,
         desiredRegion: String?
     ): Bridge? {
-        val result = bridges
-            .filterNot { it.isOverloaded(conferenceBridges) }
-            .firstOrNull { desiredRegion != null && it.region.equals(desiredRegion) }
+        if (desiredRegion == null) return null
+        val result = bridges.inRegion(desiredRegion).firstOrNull { !it.isOverloaded(conferenceBridges) }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -167,9 +165,7 @@ abstract class BridgeSelectionStrategy {
         desiredRegion: String?
     ): Bridge? {
         val regionGroup = config.getRegionGroup(desiredRegion)
-        val result = bridges
-            .filterNot { it.isOverloaded(conferenceBridges) }
-            .firstOrNull { regionGroup.contains(it.region) }
+        val result = bridges.firstOrNull { regionGroup.contains(it.region) && !it.isOverloaded(conferenceBridges) }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -206,9 +202,8 @@ abstract class BridgeSelectionStrategy {
         participantProperties: ParticipantProperties,
         desiredRegion: String?
     ): Bridge? {
-        val result = bridges
-            .intersect(conferenceBridges.keys)
-            .firstOrNull { desiredRegion != null && it.region.equals(desiredRegion) }
+        if (desiredRegion == null) return null
+        val result = bridges.inRegion(desiredRegion).firstOrNull { conferenceBridges.containsKey(it) }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -220,9 +215,9 @@ abstract class BridgeSelectionStrategy {
         conferenceBridges: Map<Bridge, ConferenceBridgeProperties>,
         participantProperties: ParticipantProperties
     ): Bridge? {
-        val result = bridges
-            .intersect(conferenceBridges.keys)
-            .firstOrNull { !it.hasMaxParticipantsInConference(conferenceBridges) }
+        val result = bridges.firstOrNull {
+            conferenceBridges.containsKey(it) && !it.hasMaxParticipantsInConference(conferenceBridges)
+        }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties)
         }
@@ -244,8 +239,8 @@ abstract class BridgeSelectionStrategy {
         participantProperties: ParticipantProperties,
         desiredRegion: String?
     ): Bridge? {
-        val result = bridges
-            .firstOrNull { desiredRegion != null && it.region.equals(desiredRegion) }
+        if (desiredRegion == null) return null
+        val result = bridges.inRegion(desiredRegion).firstOrNull()
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties, desiredRegion)
         }
@@ -266,10 +261,7 @@ abstract class BridgeSelectionStrategy {
         conferenceBridges: Map<Bridge, ConferenceBridgeProperties>,
         participantProperties: ParticipantProperties
     ): Bridge? {
-        val result = bridges
-            .filterNot { it.isOverloaded(conferenceBridges) }
-            .intersect(conferenceBridges.keys)
-            .firstOrNull()
+        val result = bridges.firstOrNull { conferenceBridges.containsKey(it) && !it.isOverloaded(conferenceBridges) }
         if (result != null) {
             logSelection(result, conferenceBridges, participantProperties)
         }
@@ -59,6 +59,12 @@ class BridgeSelector @JvmOverloads constructor(
     /** The map of bridge JID to <tt>Bridge</tt>. */
     private val bridges: MutableMap<Jid, Bridge> = ConcurrentHashMap()
 
+    /**
+     * The bridges eligible for selection, ordered and bucketed by version and region. Bridges signal changes to their
+     * state, and only the changed bridges are moved on the next selection.
+     */
+    private val candidates = BridgeCandidates(clock)
+
     /** Get the [Bridge] with a specific JID or null */
     fun get(jid: Jid) = bridges[jid]
 
@@ -92,12 +98,13 @@ class BridgeSelector @JvmOverloads constructor(
             eventEmitter.fireEvent { bridgeIsShuttingDown(it) }
         }
         return it
-    } ?: Bridge(bridgeJid, clock).also { newBridge ->
+    } ?: Bridge(bridgeJid, clock, candidates::stateChanged).also { newBridge ->
         if (stats != null) {
             newBridge.setStats(stats)
         }
         logger.info("Added new videobridge: $newBridge")
         bridges[bridgeJid] = newBridge
+        candidates.stateChanged(newBridge)
         bridgeCount.inc()
         eventEmitter.fireEvent { bridgeAdded(newBridge) }
     }
@@ -116,6 +123,7 @@ class BridgeSelector @JvmOverloads constructor(
                 lostBridges.inc()
             }
             it.markRemoved()
+            candidates.stateChanged(it)
             bridgeCount.dec()
             eventEmitter.fireEvent { bridgeRemoved(it) }
         }
@@ -158,7 +166,6 @@ class BridgeSelector @JvmOverloads constructor(
      * @param participantRegion the region of the participant for which a
      * bridge is to be selected.
      */
-    @Synchronized
     @JvmOverloads
     fun selectBridge(
         conferenceBridges: Map<Bridge, ConferenceBridgeProperties> = emptyMap(),
@@ -177,42 +184,25 @@ class BridgeSelector @JvmOverloads constructor(
             return null
         }
 
-        // the list of all known videobridges JIDs ordered by load and *operational* status.
-        val prioritizedBridges = synchronized(this) { ArrayList(bridges.values) }
-        prioritizedBridges.sort()
-
-        var candidateBridges = prioritizedBridges.filter { it.isOperational }.toList()
-        if (candidateBridges.isEmpty()) {
+        val snapshot = candidates.get()
+        if (!snapshot.anyOperational) {
             logger.warn("There are no operational bridges.")
             return null
         }
 
-        candidateBridges = candidateBridges.filter { !it.isShuttingDown }.toList()
-        if (candidateBridges.isEmpty()) {
+        if (snapshot.candidates.isEmpty()) {
             logger.warn("All operational bridges are SHUTTING_DOWN")
             return null
         }
 
+        var candidateBridges: List<Bridge> = snapshot.candidates
         if (v != null && !OctoConfig.config.allowMixedVersions) {
-            candidateBridges = candidateBridges.filter { it.fullVersion == v }
-            if (candidateBridges.isEmpty()) {
+            candidateBridges = snapshot.candidates(v) ?: run {
                 logger.warn("There are no bridges with the required version: $v")
                 return null
             }
         }
 
-        // If there are active bridges, prefer those.
-        val activeBridges = candidateBridges.filter { !it.isDraining }.toList()
-        if (!activeBridges.isEmpty()) {
-            candidateBridges = activeBridges
-        }
-
-        // If there are bridges not shutting down, prefer those.
-        val runningBridges = candidateBridges.filter { !it.isInGracefulShutdown }.toList()
-        if (!runningBridges.isEmpty()) {
-            candidateBridges = runningBridges
-        }
-
         return bridgeSelectionStrategy.select(
             candidateBridges,
             conferenceBridges,
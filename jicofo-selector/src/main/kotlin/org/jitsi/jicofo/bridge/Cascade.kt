@@ -25,6 +25,11 @@ import kotlin.collections.HashSet
  */
 interface Cascade<N : CascadeNode<N, L>, L : CascadeLink> {
     val sessions: MutableMap<String?, N>
+
+    /** Cached routes through the cascade, or null to walk the cascade for every query. */
+    val routingTable: CascadeRoutingTable<N>?
+        get() = null
+
     fun addLinkBetween(session: N, otherSession: N, meshId: String)
     fun removeLinkTo(session: N, otherSession: N)
 }
@@ -71,9 +76,19 @@ fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.addNodeToMesh(
         "Cascade $this already contains node $newNode"
     }
 
+    val linkedNodes = updatingRoutes { linkNewNode(newNode, meshId, existingNode) }
+    routingTable?.nodeAdded(newNode, linkedNodes)
+}
+
+/** Link [newNode] into the cascade and return the nodes it was linked to. */
+private fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.linkNewNode(
+    newNode: N,
+    meshId: String,
+    existingNode: N?
+): List<N> {
     if (sessions.isEmpty()) {
         sessions[newNode.relayId] = newNode
-        return
+        return emptyList()
     } else if (sessions.size == 1) {
         val onlyNode = sessions.values.first()
         if (existingNode != null) {
@@ -83,7 +98,7 @@ fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.addNodeToMesh(
         }
         addLinkBetween(onlyNode, newNode, meshId)
         sessions[newNode.relayId] = newNode
-        return
+        return listOf(onlyNode)
     }
 
     val meshNodes = getMeshNodes(meshId)
@@ -97,10 +112,23 @@ fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.addNodeToMesh(
         }
         addLinkBetween(existingNode, newNode, meshId)
         sessions[newNode.relayId] = newNode
+        return listOf(existingNode)
     } else {
         // ?? Should we check if existingNode, if not null, is a member of meshNodes?
         meshNodes.forEach { node -> addLinkBetween(node, newNode, meshId) }
         sessions[newNode.relayId] = newNode
+        return meshNodes
+    }
+}
+
+/** Run [block], which changes the links of the cascade, with the [Cascade.routingTable] (if any) marked as updating. */
+private inline fun <N : CascadeNode<N, L>, L : CascadeLink, T> Cascade<N, L>.updatingRoutes(block: () -> T): T {
+    val table = routingTable ?: return block()
+    table.updating = true
+    try {
+        return block()
+    } finally {
+        table.updating = false
     }
 }
 
@@ -114,6 +142,13 @@ fun <C : Cascade<N, L>, N : CascadeNode<N, L>, L : CascadeLink> C.removeNode(
     check(sessions[node.relayId] === node) {
         "Bridge entry for ${node.relayId} is not $node"
     }
+    updatingRoutes { unlinkNode(node, repairFn) }
+}
+
+private fun <C : Cascade<N, L>, N : CascadeNode<N, L>, L : CascadeLink> C.unlinkNode(
+    node: N,
+    repairFn: (C, Set<Set<N>>) -> Set<CascadeRepair<N, L>>
+) {
     sessions.remove(node.relayId)
 
     node.relays.keys.forEach { key ->
@@ -140,21 +175,27 @@ fun <C : Cascade<N, L>, N : CascadeNode<N, L>, L : CascadeLink> C.removeNode(
         val disconnected = node.relays.values.groupBy { it.meshId }.values.map {
             it.flatMap { getNodesBehind(node, it.relayId!!) }.toSet()
         }.toSet()
+        routingTable?.nodeRemoved(node, disconnected)
         val newLinks = repairFn(this, disconnected)
         newLinks.forEach { (node, other, mesh) ->
             addLinkBetween(node, other, mesh)
         }
+        routingTable?.partsLinked(disconnected, newLinks.map { it.node to it.other }) { computeRoutesFrom(it) }
         /* TODO: validate that the newly-added links have left us with a valid cascade? */
+    } else {
+        routingTable?.nodeRemoved(node)
     }
 }
 
 /** Return a set of all nodes "behind" a given node link. */
 /* TODO: would this be better as an iterator? */
 fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.getNodesBehind(from: N, toward: N): Set<N> {
-    val nodes = HashSet<N>()
     val link = requireNotNull(from.relays[toward.relayId]) {
         "$from does not have a link to $toward"
     }
+    cachedRoutesFrom(from)?.nodesBehind?.get(toward)?.let { return it }
+
+    val nodes = HashSet<N>()
     getNodesBehind(link, toward, nodes)
     return nodes
 }
@@ -169,9 +210,11 @@ fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.getNodesBehind(from:
 fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.getNodesBehind(fromMesh: String, toward: N): Set<N> {
     val nodes = HashSet<N>()
     nodes.add(toward)
+    val routes = cachedRoutesFrom(toward)
     toward.relays.values.filter { it.meshId != fromMesh }.forEach {
         val next = requireNotNull(sessions[it.relayId])
-        getNodesBehind(it, next, nodes)
+        routes?.nodesBehind?.get(next)?.let { nodesBehind -> nodes.addAll(nodesBehind) }
+            ?: getNodesBehind(it, next, nodes)
     }
 
     return nodes
@@ -191,12 +234,34 @@ private fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.getNodesBehin
 
 /* Traverse the graph from a node; for each other node, indicate the node from which it was reached. */
 fun <C : Cascade<N, L>, N : CascadeNode<N, L>, L : CascadeLink> C.getPathsFrom(node: N, pathFn: (C, N, N?) -> Unit) {
+    val routes = cachedRoutesFrom(node)
     pathFn(this, node, null)
+    if (routes != null) {
+        routes.previous.forEach { (other, from) -> pathFn(this, other, from) }
+        return
+    }
     node.relays.values.forEach {
         getPathsFrom(it, node, pathFn)
     }
 }
 
+/** Get the routes from [node] from the [Cascade.routingTable], computing them if necessary and possible. */
+private fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.cachedRoutesFrom(node: N): Routes<N>? =
+    routingTable?.routesFrom(node) { computeRoutesFrom(it) }
+
+/** Walk the cascade from [source] to find the routes to all other nodes. */
+private fun <N : CascadeNode<N, L>, L : CascadeLink> Cascade<N, L>.computeRoutesFrom(source: N): Routes<N> =
+    Routes<N>().apply {
+        source.relays.values.forEach { link ->
+            val nextHop = checkNotNull(sessions[link.relayId])
+            getPathsFrom(link, source) { _, other, from ->
+                this.nextHop[other] = nextHop
+                previous[other] = from!!
+            }
+        }
+        indexNodesBehind()
+    }
+
 private fun <C : Cascade<N, L>, N : CascadeNode<N, L>, L : CascadeLink> C.getPathsFrom(
     link: L,
     from: N,
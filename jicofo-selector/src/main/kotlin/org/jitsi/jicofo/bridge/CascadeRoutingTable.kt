@@ -0,0 +1,204 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.bridge
+
+/**
+ * Caches the routes through a [Cascade], so that [getNodesBehind] and [getPathsFrom] do not have to walk the cascade.
+ *
+ * The routes from a node are computed the first time they are needed, and are then kept up to date by [addNodeToMesh]
+ * and [removeNode]. A cascade which uses a routing table must not change its links in any other way.
+ */
+class CascadeRoutingTable<N : Any> {
+    private val routes = HashMap<N, Routes<N>>()
+
+    /**
+     * Set while the cascade is being changed. Routes which are cached are still valid (for the cascade before the
+     * change), but routes which are not cached can not be computed, because the links are not consistent.
+     */
+    internal var updating = false
+
+    /** The number of nodes for which routes are cached. */
+    val size: Int
+        get() = routes.size
+
+    /** Get the routes from [source], computing them with [compute] if they are not cached and can be computed. */
+    internal fun routesFrom(source: N, compute: (N) -> Routes<N>): Routes<N>? =
+        routes[source] ?: if (updating) null else compute(source).also { routes[source] = it }
+
+    /**
+     * Update the cached routes after [newNode] was added, with links to [linkedNodes] only. These are either the nodes
+     * of the mesh [newNode] joined, or the single existing node it was linked to in a new mesh. Adding a node does not
+     * change any existing routes.
+     */
+    internal fun nodeAdded(newNode: N, linkedNodes: Collection<N>) {
+        if (routes.isEmpty()) {
+            return
+        }
+        val linked = linkedNodes.toSet()
+        val someLinked = linked.firstOrNull() ?: return
+        val routesFromLinked = routes[someLinked]
+
+        routes.forEach { (node, routesFromNode) ->
+            if (node in linked) {
+                routesFromNode.add(newNode, nextHop = newNode, previous = node)
+            } else {
+                // The route to any of the linked nodes enters the mesh at the same node, which links to the new node.
+                val previous = routesFromNode.previous.getValue(someLinked)
+                routesFromNode.add(
+                    newNode,
+                    nextHop = routesFromNode.nextHop.getValue(someLinked),
+                    previous = if (previous in linked) previous else someLinked
+                )
+            }
+        }
+
+        // The routes from the new node go through the linked node at which the route from any linked node leaves the
+        // mesh (which is that linked node itself if the route leaves the mesh right away).
+        if (routesFromLinked != null) {
+            routes[newNode] = Routes<N>().apply {
+                linked.forEach {
+                    nextHop[it] = it
+                    previous[it] = newNode
+                }
+                routesFromLinked.nextHop.forEach { (node, nextHopFromLinked) ->
+                    if (node !in linked && node != newNode) {
+                        nextHop[node] = if (nextHopFromLinked in linked) nextHopFromLinked else someLinked
+                        previous[node] = routesFromLinked.previous.getValue(node)
+                    }
+                }
+                indexNodesBehind()
+            }
+        }
+    }
+
+    /**
+     * Update the cached routes after [node], which was in a single mesh, was removed. No route went through [node], so
+     * only the routes to and from it are removed.
+     */
+    internal fun nodeRemoved(node: N) {
+        routes.remove(node)
+        routes.values.forEach { it.remove(node) }
+    }
+
+    /**
+     * Update the cached routes after [node], which connected more than one mesh, was removed and left the cascade in
+     * the disconnected [parts]. The routes within a part did not go through [node] and are kept, while the routes from
+     * each node to the nodes of the other parts are removed until the parts are linked again in [partsLinked].
+     */
+    internal fun nodeRemoved(node: N, parts: Collection<Set<N>>) {
+        routes.remove(node)
+        val partOf = HashMap<N, Set<N>>()
+        parts.forEach { part -> part.forEach { partOf[it] = part } }
+        routes.entries.removeIf { (source, routesFromSource) ->
+            val part = partOf[source] ?: return@removeIf true
+            routesFromSource.removeThrough(node, part)
+            false
+        }
+    }
+
+    /**
+     * Update the cached routes after the disconnected [parts] left by [nodeRemoved] were linked again with [links],
+     * each of which links two parts in a new mesh. The routes from the linked nodes are computed again with
+     * [compute]. Every other node reaches the nodes of the other parts through the linked node of its own part at
+     * which the route leaves the part, so its routes to them are derived from the routes from that linked node.
+     */
+    internal fun partsLinked(parts: Collection<Set<N>>, links: Collection<Pair<N, N>>, compute: (N) -> Routes<N>) {
+        if (routes.isEmpty() || links.isEmpty()) {
+            return
+        }
+        val linkedNodes = links.flatMap { it.toList() }.toSet()
+        linkedNodes.forEach { routes[it] = compute(it) }
+
+        parts.forEach { part ->
+            // The nodes of the other parts, by the linked node of this part through which they are reached.
+            val exits = HashMap<N, MutableList<N>>()
+            links.forEach { (node, other) ->
+                if (node in part) exits.addNodesBehind(node, other)
+                if (other in part) exits.addNodesBehind(other, node)
+            }
+            part.forEach { source ->
+                val routesFromSource = routes[source]
+                if (routesFromSource != null && source !in linkedNodes) {
+                    exits.forEach { (exit, nodes) -> routesFromSource.addThrough(exit, nodes, routes.getValue(exit)) }
+                }
+            }
+        }
+    }
+
+    private fun HashMap<N, MutableList<N>>.addNodesBehind(exit: N, other: N) {
+        getOrPut(exit) { mutableListOf() }.addAll(routes.getValue(exit).nodesBehind[other].orEmpty())
+    }
+
+    fun clear() = routes.clear()
+}
+
+/** The routes from a single node. */
+internal class Routes<N : Any> {
+    /** The node to which a packet for each other node is sent. */
+    val nextHop = HashMap<N, N>()
+
+    /** The node from which each other node is reached. */
+    val previous = HashMap<N, N>()
+
+    /**
+     * The nodes behind each link, by the node at the other end of the link. The sets are never modified once added,
+     * so they can be returned to callers without copying.
+     */
+    val nodesBehind = HashMap<N, Set<N>>()
+
+    /** Set [nodesBehind] from [nextHop]. */
+    fun indexNodesBehind() {
+        nodesBehind.clear()
+        nextHop.entries.groupBy({ it.value }, { it.key }).forEach { (link, nodes) -> nodesBehind[link] = nodes.toSet() }
+    }
+
+    /** Add a route to [node], after the routes to all other nodes are known. */
+    fun add(node: N, nextHop: N, previous: N) {
+        this.nextHop[node] = nextHop
+        this.previous[node] = previous
+        nodesBehind[nextHop] = nodesBehind[nextHop].orEmpty() + node
+    }
+
+    fun remove(node: N) {
+        val nextHop = this.nextHop.remove(node) ?: return
+        previous.remove(node)
+        val remaining = nodesBehind.getValue(nextHop) - node
+        if (remaining.isEmpty()) nodesBehind.remove(nextHop) else nodesBehind[nextHop] = remaining
+    }
+
+    /** Remove the routes to [node] and to the other nodes behind the same link, except for the nodes in [kept]. */
+    fun removeThrough(node: N, kept: Set<N>) {
+        val nextHop = this.nextHop[node] ?: return
+        val (remaining, removed) = nodesBehind.getValue(nextHop).partition { it in kept }
+        removed.forEach {
+            this.nextHop.remove(it)
+            previous.remove(it)
+        }
+        if (remaining.isEmpty()) nodesBehind.remove(nextHop) else nodesBehind[nextHop] = remaining.toSet()
+    }
+
+    /** Add the routes to [nodes], which are reached through [exit], given the routes [routesFromExit] from it. */
+    fun addThrough(exit: N, nodes: Collection<N>, routesFromExit: Routes<N>) {
+        val nextHop = this.nextHop.getValue(exit)
+        nodes.forEach {
+            this.nextHop[it] = nextHop
+            previous[it] = routesFromExit.previous.getValue(it)
+        }
+        nodesBehind[nextHop] = nodesBehind.getValue(nextHop) + nodes
+    }
+}
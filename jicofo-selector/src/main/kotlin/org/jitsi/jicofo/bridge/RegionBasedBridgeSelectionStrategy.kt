@@ -86,7 +86,7 @@ class RegionBasedBridgeSelectionStrategy : BridgeSelectionStrategy() {
             }
 
             // If there are no bridges in the participant region or region group, select from the local region instead.
-            if (bridges.none { regionGroup.contains(it.region) }) {
+            if (regionGroup.all { bridges.inRegion(it).isEmpty() }) {
                 region = localRegion
             }
         }
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import io.opentelemetry.api.trace.Span
 import io.opentelemetry.context.Context
 import org.jitsi.jicofo.OctoConfig
+import org.jitsi.jicofo.TaskPools
 import org.jitsi.jicofo.bridge.Bridge
 import org.jitsi.jicofo.bridge.BridgeConfig
 import org.jitsi.jicofo.bridge.CascadeLink
@@ -30,6 +31,7 @@ import org.jitsi.jicofo.codec.CodecUtil
 import org.jitsi.jicofo.codec.Config
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
 import org.jitsi.jicofo.conference.source.EndpointSourceSet
+import org.jitsi.jicofo.xmpp.sendIqAsync
 import org.jitsi.utils.MediaType
 import org.jitsi.utils.logging2.Logger
 import org.jitsi.utils.logging2.createChildLogger
@@ -49,12 +51,16 @@ import org.jitsi.xmpp.extensions.colibri2.Transport
 import org.jitsi.xmpp.extensions.jingle.DtlsFingerprintPacketExtension
 import org.jitsi.xmpp.extensions.jingle.ExtmapAllowMixedPacketExtension
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
-import org.jivesoftware.smack.StanzaCollector
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smackx.muc.MUCRole
 import java.time.Duration
 import java.util.Collections.singletonList
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 import kotlin.math.ceil
 
 /** The size of the buckets used to track the rate at which endpoints are added to a session. */
@@ -129,8 +135,89 @@ class Colibri2Session(
     /** The set of (octo) relays for the session, mapped by their ID (i.e. the relayId of the remote bridge). */
     override val relays = mutableMapOf<String, Relay>()
 
-    /** Creates and sends a request to allocate a new endpoint. Returns a [StanzaCollector] for the response. */
-    internal fun sendAllocationRequest(participant: ParticipantInfo): StanzaCollector {
+    /**
+     * Requests which have been created but not yet sent. Requests are queued with [queueLock] held, which fixes their
+     * order, and are sent by [flush] after the locks are released. This way sending requests to one bridge does not
+     * block operations on the conference, or sending to other bridges.
+     */
+    private val queuedRequests = ConcurrentLinkedQueue<Runnable>()
+
+    /**
+     * Protects [queuedRequests], [openBatch] and changes to [relays]. Most requests are queued with the
+     * [ColibriV2SessionManager] lock held as well, but updates to relay endpoints may be queued without it (see
+     * [Relay.updateParticipant]).
+     */
+    private val queueLock = ReentrantLock()
+
+    /** Held while sending [queuedRequests], so that requests to this bridge are sent in order. */
+    private val flushLock = Any()
+
+    /**
+     * The batch of endpoint and relay endpoint updates at the end of [queuedRequests], if it still accepts updates.
+     * Accessed with [queueLock] held.
+     */
+    private var openBatch: Colibri2UpdateBatch? = null
+
+    private fun enqueue(send: Runnable) {
+        queueLock.withLock {
+            // Updates queued after this request must be sent after it.
+            openBatch = null
+            queuedRequests.add(send)
+        }
+        colibriSessionManager.requestQueued(this)
+    }
+
+    /**
+     * Merge an update into the open batch, or queue a new batch if there is no open batch or it does not accept the
+     * update. With a non-zero [ColibriBatchingConfig.window] a new batch is sent when the window expires, unless
+     * another request to the bridge is sent before that.
+     */
+    private fun addToBatch(update: (Colibri2UpdateBatch) -> Boolean) {
+        queueLock.withLock {
+            val batchingConfig = BridgeConfig.config.colibriBatching
+            val batch = openBatch?.takeIf { update(it) } ?: Colibri2UpdateBatch(createRequest()).also { newBatch ->
+                update(newBatch)
+                openBatch = newBatch
+                queuedRequests.add { sendBatch(newBatch) }
+                if (batchingConfig.window.isZero) {
+                    colibriSessionManager.requestQueued(this)
+                } else {
+                    TaskPools.scheduledPool.schedule(
+                        { flush() },
+                        batchingConfig.window.toMillis(),
+                        TimeUnit.MILLISECONDS
+                    )
+                }
+            }
+            if (batch.size >= batchingConfig.maxSize) {
+                openBatch = null
+                colibriSessionManager.requestQueued(this)
+            }
+        }
+    }
+
+    private fun sendBatch(batch: Colibri2UpdateBatch) {
+        val iq = batch.build() ?: return
+        send(iq, "batched update (${batch.updates} updates)")
+    }
+
+    /** Send all queued requests, in the order in which they were queued. */
+    internal fun flush() = synchronized(flushLock) {
+        while (true) {
+            val send = queuedRequests.poll() ?: break
+            try {
+                send.run()
+            } catch (e: Exception) {
+                logger.warn("Failed to send a request", e)
+            }
+        }
+    }
+
+    /**
+     * Creates and queues a request to allocate a new endpoint. Returns a future completed with the response, or with
+     * `null` on timeout.
+     */
+    internal fun sendAllocationRequest(participant: ParticipantInfo): CompletableFuture<IQ?> {
         val request = createRequest(!created)
         val endpoint = participant.toEndpoint(create = true, expire = false).apply {
             if (participant.audioMuted || participant.videoMuted) {
@@ -154,9 +241,22 @@ class Colibri2Session(
         participant.medias.forEach { endpoint.addMedia(it) }
         request.addEndpoint(endpoint.build())
 
-        logger.trace { "Sending allocation request for ${participant.id}: ${request.build().toXML()}" }
+        val iq = request.build()
+        logger.trace { "Queueing allocation request for ${participant.id}: ${iq.toXML()}" }
         created = true
-        return xmppConnection.createStanzaCollectorAndSend(request.build())
+        val response = CompletableFuture<IQ?>()
+        enqueue {
+            try {
+                val sent = System.nanoTime()
+                xmppConnection.sendIqAsync(iq).whenComplete { r, e ->
+                    if (r != null) bridge.allocationResponseReceived(sent)
+                    if (e != null) response.completeExceptionally(e) else response.complete(r)
+                }
+            } catch (e: Exception) {
+                response.completeExceptionally(e)
+            }
+        }
+        return response
     }
 
     /** Updates the transport info and/or sources for an existing endpoint. */
@@ -173,26 +273,7 @@ class Colibri2Session(
             return
         }
 
-        val request = createRequest()
-        val endpoint = Colibri2Endpoint.getBuilder().apply {
-            setId(participant.id)
-            setStatsId(participant.statsId)
-        }
-
-        if (transport != null) {
-            endpoint.setTransport(Transport.getBuilder().setIceUdpExtension(transport).build())
-        }
-
-        if (sources != null) {
-            endpoint.setSources(sources.toColibriMediaSources(participant.id))
-        }
-
-        initialLastN?.let {
-            endpoint.setInitialLastN(it)
-        }
-
-        request.addEndpoint(endpoint.build())
-        sendRequest(request.build(), "updateParticipant")
+        addToBatch { it.updateEndpoint(participant, transport, sources, initialLastN) }
     }
 
     /**
@@ -232,17 +313,10 @@ class Colibri2Session(
     }
 
     internal fun updateForceMute(participants: Set<ParticipantInfo>) {
-        val request = createRequest()
         participants.forEach { participant ->
-            request.addEndpoint(
-                Colibri2Endpoint.getBuilder().apply {
-                    setId(participant.id)
-                    setForceMute(participant.audioMuted, participant.videoMuted)
-                }.build()
-            )
+            val forceMute = Pair(participant.audioMuted, participant.videoMuted)
+            addToBatch { it.updateEndpoint(participant, forceMute = forceMute) }
         }
-
-        sendRequest(request.build(), "updateForceMute")
     }
 
     /** Expire the entire conference. */
@@ -261,11 +335,8 @@ class Colibri2Session(
             logger.debug { "No participants to expire." }
             return
         }
-        val request = createRequest()
-        participantsToExpire.forEach { request.addExpire(it.id) }
-
         logger.debug { "Expiring endpoint: ${participantsToExpire.map { it.id }}" }
-        sendRequest(request.build(), "expire(participantsToExpire)")
+        participantsToExpire.forEach { participant -> addToBatch { it.expireEndpoint(participant) } }
     }
 
     private fun createRequest(create: Boolean = false) = ConferenceModifyIQ.builder(xmppConnection).apply {
@@ -365,32 +436,15 @@ class Colibri2Session(
         }
 
         val relay = Relay(relayId, initiator, meshId)
-        relays[relayId] = relay
-        relay.start(initialParticipants)
-    }
-
-    /**
-     * Updates the sources for a specific endpoint on a specific relay. Also used to create a new remote endpoint in
-     * the relay (when [create] is true).
-     */
-    internal fun updateRemoteParticipant(
-        participantInfo: ParticipantInfo,
-        /** The ID of the relay on which to add/update an endpoint. */
-        relayId: String,
-        /** Whether a new relay endpoint should be created, or an existing one updated. */
-        create: Boolean
-    ) {
-        logger.debug { "Updating remote participant ${participantInfo.id} on $relayId" }
-        relays[relayId]?.updateParticipant(participantInfo, create)
-            ?: throw IllegalStateException("Relay $relayId doesn't exist (bridge=${this.relayId})")
+        queueLock.withLock {
+            relays[relayId] = relay
+            relay.start(initialParticipants)
+        }
     }
 
-    /** Expires a set of endpoints on a specific relay. */
-    internal fun expireRemoteParticipants(participants: List<ParticipantInfo>, relayId: String) {
-        logger.debug { "Expiring remote participants on $relayId: ${participants.map { it.id }}" }
-        relays[relayId]?.expireParticipants(participants)
-            ?: throw IllegalStateException("Relay $relayId doesn't exist (bridge=${this.relayId})")
-    }
+    /** Get the relay with ID [relayId], through which the relay endpoints of remote participants are updated. */
+    internal fun getRelay(relayId: String): Relay =
+        relays[relayId] ?: throw IllegalStateException("Relay $relayId doesn't exist (bridge=${this.relayId})")
 
     /** Sets the remote side transport information for a specific relay. */
     internal fun setRelayTransport(
@@ -422,20 +476,26 @@ class Colibri2Session(
             )
         }
 
-        relayIds.forEach { relays.remove(it) }
-
-        sendRequest(request.build(), "expireRelays")
+        queueLock.withLock {
+            relayIds.forEach { relays.remove(it) }
+            sendRequest(request.build(), "expireRelays")
+        }
     }
 
     /**
-     * Send an IQ async, and handle timeouts and errors: timeouts are just logged, while errors trigger a session
-     * failure.
+     * Queue an IQ to be sent async (see [flush]), and handle timeouts and errors: timeouts are just logged, while
+     * errors trigger a session failure.
      *
      * @param onSuccess invoked with the response when the bridge answered successfully. Note that this runs on
-     * [org.jitsi.jicofo.util.TaskPools.ioPool], so responses to two requests sent in order may be handled out of
+     * [org.jitsi.jicofo.TaskPools.bridgePool], so responses to two requests sent in order may be handled out of
      * order — anything order-sensitive needs its own guard.
      */
-    private fun sendRequest(iq: IQ, name: String, onSuccess: ((ConferenceModifiedIQ) -> Unit)? = null) {
+    private fun sendRequest(iq: IQ, name: String, onSuccess: ((ConferenceModifiedIQ) -> Unit)? = null) = enqueue {
+        send(iq, name, onSuccess)
+    }
+
+    /** Send an IQ now and handle the response, see [sendRequest]. */
+    private fun send(iq: IQ, name: String, onSuccess: ((ConferenceModifiedIQ) -> Unit)? = null) {
         logger.debug { "Sending $name request: ${iq.toXML()}" }
         xmppConnection.sendIqAndHandleResponseAsync(iq) { response ->
             if (response == null) {
@@ -520,8 +580,12 @@ class Colibri2Session(
         /** Send a request to allocate a new relay, and submit a task to wait for a response. */
         internal fun start(initialParticipants: List<ParticipantInfo>) {
             val request = buildCreateRelayRequest(initialParticipants)
-            logger.trace { "Sending create relay: ${request.toXML()}" }
+            logger.trace { "Queueing create relay: ${request.toXML()}" }
 
+            enqueue { sendCreateRelayRequest(request) }
+        }
+
+        private fun sendCreateRelayRequest(request: IQ) {
             xmppConnection.sendIqAndHandleResponseAsync(request) { response ->
                 // Wait for a response to the relay allocation request. When a response is received, parse the contained
                 // transport and forward it to the associated [Relay] for the remote side via [colibriSessionManager]
@@ -600,38 +664,35 @@ class Colibri2Session(
             meshId?.let { put("mesh_id", it) }
         }
 
-        /** Update or create a relay endpoint for a specific participant. */
+        /**
+         * Update or create a relay endpoint for a specific participant. This may be called without the
+         * [ColibriV2SessionManager] lock, so the update is dropped if the relay was expired (or replaced by a new relay
+         * with the same ID) since it was looked up. A new relay is created with the current state of the participants.
+         */
         fun updateParticipant(participant: ParticipantInfo, create: Boolean) {
-            val request = createRequest()
-            val relay = Colibri2Relay.getBuilder().apply {
-                setId(relayId)
+            queueLock.withLock {
+                if (relays[relayId] !== this) {
+                    logger.debug { "Relay is no longer active, not updating ${participant.id}" }
+                    return
+                }
+                logger.debug { "Updating remote participant ${participant.id}" }
+                addToBatch { it.updateRelayEndpoint(relayId, participant, create) }
             }
-            val endpoints = Endpoints.getBuilder()
-            endpoints.addEndpoint(participant.toEndpoint(create = create, expire = false).build())
-            relay.setEndpoints(endpoints.build())
-            request.addRelay(relay.build())
-            sendRequest(request.build(), "Relay.updateParticipant")
         }
 
-        /** Expire relay endpoints for a set of participants. */
+        /** Expire relay endpoints for a set of participants. Like [updateParticipant], dropped if the relay is gone. */
         fun expireParticipants(participants: List<ParticipantInfo>) {
-            if (participants.all { it.visitor }) {
-                return
-            }
-            val request = createRequest()
-            val relay = Colibri2Relay.getBuilder().apply { setId(relayId) }
-            val endpoints = Endpoints.getBuilder()
-
-            participants.forEach {
-                if (!it.visitor) {
-                    endpoints.addEndpoint(it.toEndpoint(create = false, expire = true).build())
+            queueLock.withLock {
+                if (participants.all { it.visitor } || relays[relayId] !== this) {
+                    return
+                }
+                logger.debug { "Expiring remote participants: ${participants.map { it.id }}" }
+                participants.forEach { participant ->
+                    if (!participant.visitor) {
+                        addToBatch { it.expireRelayEndpoint(relayId, participant) }
+                    }
                 }
             }
-
-            relay.setEndpoints(endpoints.build())
-            request.addRelay(relay.build())
-
-            sendRequest(request.build(), "Relay.expireParticipants")
         }
 
         /** Create a request to create a relay (this is just the initial request). */
@@ -688,10 +749,3 @@ class Colibri2Session(
         }
     }
 }
-
-private fun ConferenceModifyIQ.Builder.addExpire(endpointId: String) = addEndpoint(
-    Colibri2Endpoint.getBuilder().apply {
-        setId(endpointId)
-        setExpire(true)
-    }.build()
-)
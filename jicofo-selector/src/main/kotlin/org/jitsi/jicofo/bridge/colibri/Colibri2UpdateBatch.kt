@@ -0,0 +1,191 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.bridge.colibri
+
+import org.jitsi.jicofo.conference.source.EndpointSourceSet
+import org.jitsi.xmpp.extensions.colibri2.Colibri2Endpoint
+import org.jitsi.xmpp.extensions.colibri2.Colibri2Relay
+import org.jitsi.xmpp.extensions.colibri2.ConferenceModifyIQ
+import org.jitsi.xmpp.extensions.colibri2.Endpoints
+import org.jitsi.xmpp.extensions.colibri2.InitialLastN
+import org.jitsi.xmpp.extensions.colibri2.Transport
+import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * Updates to existing endpoints and relay endpoints on one bridge, merged into a single [ConferenceModifyIQ].
+ *
+ * Updates to the same endpoint are merged with last-writer-wins semantics: each field (transport, sources, initial
+ * last-n, force-mute) holds the last value set for it, and expiring an endpoint replaces any previous update to it.
+ * An update which can not be merged (an update following an expire of the same endpoint) is rejected, and the caller
+ * is expected to start a new batch.
+ *
+ * The merge methods are called with the queue lock of the [Colibri2Session] held, while [build] runs when the batch is
+ * sent. Once built, a batch accepts no more updates.
+ */
+internal class Colibri2UpdateBatch(
+    /** The request to which the merged updates are added. */
+    private val request: ConferenceModifyIQ.Builder
+) {
+    /** Pending updates to local endpoints, by endpoint ID. */
+    private val endpoints = LinkedHashMap<String, EndpointUpdate>()
+
+    /** Pending updates to relay endpoints, by relay ID and endpoint ID. */
+    private val relayEndpoints = LinkedHashMap<String, LinkedHashMap<String, RelayEndpointUpdate>>()
+
+    private var built = false
+
+    /** The number of updates merged into this batch. */
+    var updates = 0
+        private set
+
+    /** The number of distinct endpoints (local and relay) in this batch. */
+    val size: Int
+        @Synchronized get() = endpoints.size + relayEndpoints.values.sumOf { it.size }
+
+    @Synchronized
+    fun updateEndpoint(
+        participant: ParticipantInfo,
+        transport: IceUdpTransportPacketExtension? = null,
+        sources: EndpointSourceSet? = null,
+        initialLastN: InitialLastN? = null,
+        forceMute: Pair<Boolean, Boolean>? = null
+    ): Boolean {
+        if (built) return false
+        val update = endpoints.getOrPut(participant.id) { EndpointUpdate(participant) }
+        if (update.expire) return false
+
+        transport?.let { update.transport = it }
+        sources?.let { update.sources = it }
+        initialLastN?.let { update.initialLastN = it }
+        forceMute?.let { update.forceMute = it }
+        updates++
+        return true
+    }
+
+    @Synchronized
+    fun expireEndpoint(participant: ParticipantInfo): Boolean {
+        if (built) return false
+        endpoints[participant.id] = EndpointUpdate(participant).apply { expire = true }
+        updates++
+        return true
+    }
+
+    /**
+     * Create or update the relay endpoint for [participant]. The endpoint is built now, since it reflects the state
+     * of [participant] at the time of the update.
+     */
+    @Synchronized
+    fun updateRelayEndpoint(relayId: String, participant: ParticipantInfo, create: Boolean): Boolean {
+        if (built) return false
+        val relay = relayEndpoints.getOrPut(relayId) { LinkedHashMap() }
+        val previous = relay[participant.id]
+        if (previous?.expire == true) return false
+
+        // If the endpoint is created in this batch, it is still created by the merged update.
+        val mergedCreate = create || previous?.create == true
+        relay[participant.id] = RelayEndpointUpdate(
+            mergedCreate,
+            false,
+            participant.toEndpoint(create = mergedCreate, expire = false).build()
+        )
+        updates++
+        return true
+    }
+
+    @Synchronized
+    fun expireRelayEndpoint(relayId: String, participant: ParticipantInfo): Boolean {
+        if (built) return false
+        val relay = relayEndpoints.getOrPut(relayId) { LinkedHashMap() }
+        if (relay[participant.id]?.create == true) {
+            // The endpoint was to be created by this batch, so there is nothing to signal.
+            relay.remove(participant.id)
+        } else {
+            relay[participant.id] = RelayEndpointUpdate(
+                false,
+                true,
+                participant.toEndpoint(create = false, expire = true).build()
+            )
+        }
+        updates++
+        return true
+    }
+
+    /**
+     * Add the merged updates to the request and return it, or return null if there is nothing left to signal. After
+     * this is called no more updates are accepted.
+     */
+    @Synchronized
+    fun build(): ConferenceModifyIQ? {
+        built = true
+        val relays = relayEndpoints.filterValues { it.isNotEmpty() }
+        if (endpoints.isEmpty() && relays.isEmpty()) return null
+
+        endpoints.values.forEach { request.addEndpoint(it.build()) }
+        relays.forEach { (relayId, relayEndpoints) ->
+            request.addRelay(
+                Colibri2Relay.getBuilder().apply {
+                    setId(relayId)
+                    setEndpoints(
+                        Endpoints.getBuilder().apply {
+                            relayEndpoints.values.forEach { addEndpoint(it.endpoint) }
+                        }.build()
+                    )
+                }.build()
+            )
+        }
+        requestsSent.inc()
+        updatesSent.add(updates.toLong())
+        return request.build()
+    }
+
+    private class EndpointUpdate(private val participant: ParticipantInfo) {
+        var transport: IceUdpTransportPacketExtension? = null
+        var sources: EndpointSourceSet? = null
+        var initialLastN: InitialLastN? = null
+        var forceMute: Pair<Boolean, Boolean>? = null
+        var expire = false
+
+        fun build(): Colibri2Endpoint = Colibri2Endpoint.getBuilder().apply {
+            setId(participant.id)
+            if (expire) {
+                setExpire(true)
+                return@apply
+            }
+            setStatsId(participant.statsId)
+            transport?.let { setTransport(Transport.getBuilder().setIceUdpExtension(it).build()) }
+            sources?.let { setSources(it.toColibriMediaSources(participant.id)) }
+            initialLastN?.let { setInitialLastN(it) }
+            forceMute?.let { setForceMute(it.first, it.second) }
+        }.build()
+    }
+
+    private class RelayEndpointUpdate(val create: Boolean, val expire: Boolean, val endpoint: Colibri2Endpoint)
+
+    companion object {
+        /** The ratio of [updatesSent] to [requestsSent] is the average number of updates merged into a request. */
+        val updatesSent = metricsContainer.registerCounter(
+            "colibri2_batched_updates",
+            "Number of endpoint and relay endpoint updates sent to bridges in batched colibri2 requests."
+        )
+        val requestsSent = metricsContainer.registerCounter(
+            "colibri2_batched_requests",
+            "Number of batched colibri2 requests with endpoint and relay endpoint updates sent to bridges."
+        )
+    }
+}
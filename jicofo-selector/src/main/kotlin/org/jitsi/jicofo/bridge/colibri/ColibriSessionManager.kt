@@ -26,6 +26,7 @@ import org.jitsi.utils.TemplatedUrl
 import org.jitsi.xmpp.extensions.colibri2.InitialLastN
 import org.jitsi.xmpp.extensions.colibri2.Media
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
+import java.util.concurrent.CompletableFuture
 
 interface ColibriSessionManager {
     fun addListener(listener: Listener)
@@ -48,6 +49,13 @@ interface ColibriSessionManager {
 
     @Throws(ColibriAllocationFailedException::class, BridgeSelectionFailedException::class)
     fun allocate(participant: ParticipantAllocationParameters): ColibriAllocation
+
+    /**
+     * Allocate a participant without blocking a thread while waiting for the bridge to respond. The returned future
+     * completes exceptionally with [ColibriAllocationFailedException] or [BridgeSelectionFailedException] (possibly
+     * wrapped in a [java.util.concurrent.CompletionException]) on failure.
+     */
+    fun allocateAsync(participant: ParticipantAllocationParameters): CompletableFuture<ColibriAllocation>
     fun getBridges(): Map<Bridge, ConferenceBridgeProperties>
 
     fun updateParticipant(
@@ -94,6 +102,19 @@ interface ColibriSessionManager {
 
     val debugState: ObjectNode
 
+    /**
+     * Notified synchronously, with the session manager's lock held, when a session on a bridge is created or removed,
+     * and when the number of participants in it changes. Unlike [Listener] the calls are never reordered, so
+     * implementations can maintain an index from bridges to conferences.
+     */
+    interface BridgeSessionListener {
+        /** The session on [bridge] exists and has [participantCount] participants, which may be 0. */
+        fun participantCountChanged(bridge: Bridge, participantCount: Int)
+
+        /** The session on [bridge] was removed. */
+        fun sessionRemoved(bridge: Bridge)
+    }
+
     /**
      * Interface for events fired by [ColibriSessionManager].
      */
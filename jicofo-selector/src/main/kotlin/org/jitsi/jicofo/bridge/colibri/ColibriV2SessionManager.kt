@@ -33,6 +33,7 @@ import org.jitsi.jicofo.bridge.BridgeConfig.Companion.config
 import org.jitsi.jicofo.bridge.BridgeSelector
 import org.jitsi.jicofo.bridge.Cascade
 import org.jitsi.jicofo.bridge.CascadeRepair
+import org.jitsi.jicofo.bridge.CascadeRoutingTable
 import org.jitsi.jicofo.bridge.ConferenceBridgeProperties
 import org.jitsi.jicofo.bridge.ParticipantProperties
 import org.jitsi.jicofo.bridge.addNodeToMesh
@@ -52,7 +53,6 @@ import org.jitsi.xmpp.extensions.colibri2.Connect
 import org.jitsi.xmpp.extensions.colibri2.InitialLastN
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
 import org.jivesoftware.smack.AbstractXMPPConnection
-import org.jivesoftware.smack.StanzaCollector
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError.Condition.bad_request
 import org.jivesoftware.smack.packet.StanzaError.Condition.conflict
@@ -62,6 +62,11 @@ import java.net.URI
 import java.net.URLEncoder
 import java.time.Clock
 import java.util.Collections.singletonList
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 
 /** The fixed connect id used for the (single) transcriber connect. */
 private const val TRANSCRIBER_CONNECT_ID = "transcriber"
@@ -119,10 +124,13 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     private val logger = createChildLogger(parentLogger)
     private val tracer = TracingGlobal.sdk.getTracer("org.jitsi.jicofo.colibri")
 
-    private val eventEmitter = AsyncEventEmitter<ColibriSessionManager.Listener>(TaskPools.ioPool)
+    private val eventEmitter = AsyncEventEmitter<ColibriSessionManager.Listener>(TaskPools.bridgePool)
     override fun addListener(listener: ColibriSessionManager.Listener) = eventEmitter.addHandler(listener)
     override fun removeListener(listener: ColibriSessionManager.Listener) = eventEmitter.removeHandler(listener)
 
+    /** Notified whenever a session of this conference is created or removed, or its number of participants changes. */
+    var bridgeSessionListener: ColibriSessionManager.BridgeSessionListener? = null
+
     /**
      * The single session that currently hosts the transcriber and/or translator connects. Selected as the first
      * available session and reselected if it is removed. (The per-source translation mode signals connects to each
@@ -153,13 +161,16 @@ class ColibriV2SessionManager @JvmOverloads constructor(
      */
     override val sessions = mutableMapOf<String?, Colibri2Session>()
 
+    /** Routes through the cascade, used to update relays when participants are added, updated or removed. */
+    override val routingTable = CascadeRoutingTable<Colibri2Session>()
+
     /**
      * The set of participants that have associated colibri2 endpoints allocated, mapped by their ID. A participant is
      * represented by a [ParticipantInfo] instance. Needs to be kept in sync with [participantsBySession].
      */
     private val participants = mutableMapOf<String, ParticipantInfo>()
 
-    override fun getParticipants(bridge: Bridge): List<String> = synchronized(syncRoot) {
+    override fun getParticipants(bridge: Bridge): List<String> = syncRoot.withLock {
         val session = sessions[bridge.relayId] ?: return emptyList()
         return getSessionParticipants(session).map { it.id }
     }
@@ -170,30 +181,129 @@ class ColibriV2SessionManager @JvmOverloads constructor(
      */
     private val participantsBySession = mutableMapOf<Colibri2Session, MutableList<ParticipantInfo>>()
 
-    /** Protects access to [sessions], [participants] and [participantsBySession]. */
-    private val syncRoot = Any()
+    /**
+     * Protects access to [sessions], [participants] and [participantsBySession]. Requests to the bridges are created
+     * with this lock held, but sent after it is released (see [withSyncRoot]). Updates to relay endpoints only look up
+     * the relays with this lock held, and are built after it is released (see [withRelayUpdates]). Locks are acquired
+     * in this order: this lock, [ParticipantInfo.relayUpdateLock], the queue lock of a [Colibri2Session]. This is a
+     * [ReentrantLock] rather than a monitor, so that threads waiting for it do not pin a carrier thread when running on
+     * virtual threads.
+     */
+    private val syncRoot = ReentrantLock()
+
+    /** Sessions which may have requests queued. See [Colibri2Session.flush]. */
+    private val sessionsToFlush = ConcurrentLinkedQueue<Colibri2Session>()
+
+    internal fun requestQueued(session: Colibri2Session) {
+        sessionsToFlush.add(session)
+    }
+
+    /**
+     * Send the requests queued by the sessions. Requests for different bridges may be sent in parallel by different
+     * threads, while requests for the same bridge are sent in the order in which they were queued. Does nothing if
+     * the current thread holds [syncRoot], the outermost [withSyncRoot] call will send them.
+     */
+    private fun flushRequests() {
+        if (syncRoot.isHeldByCurrentThread) return
+        while (true) {
+            val session = sessionsToFlush.poll() ?: break
+            session.flush()
+        }
+    }
+
+    /** Run [block] with [syncRoot] held, and then send any requests that it queued. */
+    private inline fun <T> withSyncRoot(block: () -> T): T = try {
+        syncRoot.withLock(block)
+    } finally {
+        flushRequests()
+    }
+
+    /**
+     * Like [withSyncRoot], but [block] may also prepare updates to relay endpoints (see [prepareRelayUpdates]), which
+     * are queued after [syncRoot] is released. This way the updates for the other bridges of a large conference are
+     * built without holding up other operations on the conference.
+     */
+    private inline fun <T> withRelayUpdates(block: (MutableList<RelayUpdates>) -> T): T {
+        val relayUpdates = mutableListOf<RelayUpdates>()
+        try {
+            return syncRoot.withLock { block(relayUpdates) }
+        } finally {
+            relayUpdates.forEach { it.queue() }
+            flushRequests()
+        }
+    }
+
+    /**
+     * Lock [participantInfo] for relay updates, run [prepare], and look up the relays through which [participantInfo]
+     * is reached from the other sessions. Called with [syncRoot] held. The returned [RelayUpdates] applies [update] to
+     * each relay when it is queued, and must be queued to release the lock.
+     */
+    private fun prepareRelayUpdates(
+        participantInfo: ParticipantInfo,
+        prepare: () -> Unit = {},
+        update: (Colibri2Session.Relay) -> Unit
+    ): RelayUpdates {
+        participantInfo.relayUpdateLock.lock()
+        try {
+            prepare()
+            val relays = buildList<Colibri2Session.Relay> {
+                getPathsFrom(participantInfo.session) { _, otherSession, from ->
+                    // We make sure that relayId is not null when there are multiple sessions.
+                    from?.let { add(otherSession.getRelay(it.relayId!!)) }
+                }
+            }
+            return RelayUpdates(participantInfo, relays, update)
+        } catch (e: Throwable) {
+            participantInfo.relayUpdateLock.unlock()
+            throw e
+        }
+    }
+
+    /**
+     * Updates to the relay endpoints of one participant, prepared by [prepareRelayUpdates]. The participant's
+     * [ParticipantInfo.relayUpdateLock] is held until they are queued, so the updates for a participant are queued in
+     * the order in which they were prepared. A relay which was expired or replaced in the meantime ignores the update
+     * (see [Colibri2Session.Relay.updateParticipant]).
+     */
+    private inner class RelayUpdates(
+        private val participantInfo: ParticipantInfo,
+        private val relays: List<Colibri2Session.Relay>,
+        private val update: (Colibri2Session.Relay) -> Unit
+    ) {
+        fun queue() {
+            try {
+                relays.forEach(update)
+            } catch (e: Exception) {
+                logger.warn("Failed to queue relay updates for ${participantInfo.id}", e)
+            } finally {
+                participantInfo.relayUpdateLock.unlock()
+            }
+        }
+    }
 
     /**
      * Expire everything.
      */
-    override fun expire() = synchronized(syncRoot) {
+    override fun expire() = withSyncRoot {
         logger.info("Expiring.")
         sessions.values.forEach { session ->
             logger.debug { "Expiring $session" }
             session.bridge.endpointsRemoved(getSessionParticipants(session).size)
             session.expire()
+            bridgeSessionListener?.sessionRemoved(session.bridge)
         }
         sessions.clear()
+        routingTable.clear()
         eventEmitter.fireEvent { bridgeCountChanged(0) }
         clear()
     }
 
-    override fun removeParticipant(participantId: String) = synchronized(syncRoot) {
+    override fun removeParticipant(participantId: String) = withRelayUpdates { relayUpdates ->
         logger.debug { "Asked to remove $participantId" }
 
         participants[participantId]?.let {
             logger.debug("Removing ${it.id}")
-            removeParticipantInfosBySession(mapOf(it.session to singletonList(it)))
+            removeParticipantInfosBySession(mapOf(it.session to singletonList(it)), relayUpdates)
         } ?: logger.warn("Can not remove $participantId, no participantInfo")
         Unit
     }
@@ -209,6 +319,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         sessions.remove(session.relayId)
         participantsBySession.remove(session)
         participants.forEach { remove(it) }
+        bridgeSessionListener?.sessionRemoved(session.bridge)
         session.relayId?.let { removedRelayId ->
             sessions.values.forEach { otherSession -> otherSession.expireRelay(removedRelayId) }
         }
@@ -225,7 +336,9 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     }
 
     private fun removeParticipantInfosBySession(
-        bySession: Map<Colibri2Session, List<ParticipantInfo>>
+        bySession: Map<Colibri2Session, List<ParticipantInfo>>,
+        /** Receives the updates to expire the relay endpoints of the removed participants. */
+        relayUpdates: MutableList<RelayUpdates>
     ): Set<ParticipantInfo> {
         var sessionRemoved = false
         val participantsRemoved = mutableSetOf<ParticipantInfo>()
@@ -242,19 +355,15 @@ class ColibriV2SessionManager @JvmOverloads constructor(
             } else {
                 session.expire(sessionParticipantsToRemove)
                 session.bridge.endpointRemoved()
+                // Visitors don't have relay endpoints. If the session was removed the relays themselves are expired,
+                // so there's no need to expire individual endpoints within a relay.
+                sessionParticipantsToRemove.filter { !it.visitor }.forEach { participantInfo ->
+                    relayUpdates.add(
+                        prepareRelayUpdates(participantInfo) { it.expireParticipants(listOf(participantInfo)) }
+                    )
+                }
                 sessionParticipantsToRemove.forEach { remove(it) }
                 participantsRemoved.addAll(sessionParticipantsToRemove)
-
-                // Visitors don't have relay endpoints.
-                if (sessionParticipantsToRemove.any { !it.visitor }) {
-                    // If the session was removed the relays themselves are expired, so there's no need to expire
-                    // individual endpoints within a relay.
-                    getPathsFrom(session) { _, otherSession, from ->
-                        from?.relayId?.let {
-                            otherSession.expireRemoteParticipants(sessionParticipantsToRemove, it)
-                        }
-                    }
-                }
             }
         }
 
@@ -269,7 +378,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         require(mediaType == MediaType.AUDIO || mediaType == MediaType.VIDEO) {
             "Unsupported media type: $mediaType"
         }
-        synchronized(syncRoot) {
+        withSyncRoot {
             val participantsToMuteBySession = mutableMapOf<Colibri2Session, MutableSet<ParticipantInfo>>()
 
             participantIds.forEach {
@@ -308,16 +417,16 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     }
 
     override val bridgeCount: Int
-        get() = synchronized(syncRoot) { sessions.size }
+        get() = syncRoot.withLock { sessions.size }
     override val bridgeRegions: Set<String>
-        get() = synchronized(syncRoot) { sessions.values.mapNotNull { it.bridge.region }.toSet() }
+        get() = syncRoot.withLock { sessions.values.mapNotNull { it.bridge.region }.toSet() }
 
     /**
      * Get the [Colibri2Session] for a specific [Bridge]. If one doesn't exist, create it. Returns the session and
      * a boolean indicating whether the session was just created (true) or existed (false).
      */
     private fun getOrCreateSession(bridge: Bridge, visitor: Boolean): Pair<Colibri2Session, Boolean> =
-        synchronized(syncRoot) {
+        syncRoot.withLock {
             var session = sessions[bridge.relayId]
             if (session != null) {
                 return Pair(session, false)
@@ -338,13 +447,13 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         url: TemplatedUrl?,
         customHeaders: Map<String, String>?,
         urlParams: Map<String, String>?
-    ) = synchronized(syncRoot) {
+    ) = withSyncRoot {
         if (transcriberUrl == url) {
-            return@synchronized
+            return@withSyncRoot
         }
         if (transcriberUrl != null && url != null) {
             logger.error("Changing to a different transcriber URL is not supported")
-            return@synchronized
+            return@withSyncRoot
         }
         transcriberUrl = url
         transcriberCustomHeaders = customHeaders
@@ -464,7 +573,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         url: TemplatedUrl?,
         requests: List<TranslationRequest>,
         customHeaders: Map<String, String>?
-    ) = synchronized(syncRoot) {
+    ) = withSyncRoot {
         translatorUrl = url
         translatorRequests = requests
         translatorCustomHeaders = customHeaders
@@ -472,7 +581,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     }
 
     /** Get the bridge-to-bridge-properties map needed for bridge selection. */
-    override fun getBridges(): Map<Bridge, ConferenceBridgeProperties> = synchronized(syncRoot) {
+    override fun getBridges(): Map<Bridge, ConferenceBridgeProperties> = syncRoot.withLock {
         return participantsBySession.entries
             .filter { it.key.bridge.isOperational }
             .associate {
@@ -509,7 +618,13 @@ class ColibriV2SessionManager @JvmOverloads constructor(
             .startSpan()
         try {
             span.makeCurrent().use { s ->
-                return doAllocate(participant)
+                val pendingAllocation = sendAllocation(participant)
+                val response = try {
+                    pendingAllocation.response.get()
+                } catch (e: ExecutionException) {
+                    throw allocationRequestFailed(pendingAllocation, e.cause ?: e)
+                }
+                return handleAllocationResponse(pendingAllocation, response)
             }
         } catch (e: Throwable) {
             span.setStatus(StatusCode.ERROR, e.message ?: "")
@@ -519,14 +634,50 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         }
     }
 
+    override fun allocateAsync(participant: ParticipantAllocationParameters): CompletableFuture<ColibriAllocation> {
+        val span: Span = tracer.spanBuilder("colibri.allocate")
+            .startSpan()
+        val pendingAllocation = try {
+            span.makeCurrent().use { sendAllocation(participant) }
+        } catch (e: Exception) {
+            span.setStatus(StatusCode.ERROR, e.message ?: "")
+            span.end()
+            return CompletableFuture.failedFuture(e)
+        }
+
+        // Handle the response on the bridge pool, not on the thread which completes the response future.
+        return pendingAllocation.response.handleAsync(
+            { response, e ->
+                if (e != null) throw allocationRequestFailed(pendingAllocation, e)
+                handleAllocationResponse(pendingAllocation, response)
+            },
+            TaskPools.bridgePool
+        ).whenComplete { _, e ->
+            if (e != null) {
+                span.setStatus(StatusCode.ERROR, (e.cause ?: e).message ?: "")
+            }
+            span.end()
+        }
+    }
+
+    /** The state of an allocation request which has been sent, but whose response has not been handled yet. */
+    private class PendingAllocation(
+        val session: Colibri2Session,
+        val created: Boolean,
+        val participantInfo: ParticipantInfo,
+        val response: CompletableFuture<IQ?>
+    )
+
+    /**
+     * Select a bridge for [participant], update the local state and send the allocation request. Returns without
+     * waiting for the response.
+     */
     @Throws(ColibriAllocationFailedException::class, BridgeSelectionFailedException::class)
-    fun doAllocate(participant: ParticipantAllocationParameters): ColibriAllocation {
+    private fun sendAllocation(participant: ParticipantAllocationParameters): PendingAllocation {
         logger.info("Allocating for ${participant.id}")
-        val stanzaCollector: StanzaCollector
-        val session: Colibri2Session
-        val created: Boolean
-        val participantInfo: ParticipantInfo
-        synchronized(syncRoot) {
+        // The allocation request and any relay updates are sent after the lock is released, including when this
+        // fails after they were queued.
+        val pendingAllocation = withRelayUpdates { relayUpdates ->
             if (participants.containsKey(participant.id)) {
                 throw IllegalStateException("participant already exists")
             }
@@ -563,10 +714,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
                     throw BridgeSelectionFailedException()
                 }
             }
-            getOrCreateSession(bridge, visitor).let {
-                session = it.first
-                created = it.second
-            }
+            val (session, created) = getOrCreateSession(bridge, visitor)
             logger.info(
                 "Selected ${bridge.jid.resourceOrNull} for ${participant.id} " +
                     "(visitor=${participant.visitor}, session exists: ${!created})"
@@ -577,9 +725,9 @@ class ColibriV2SessionManager @JvmOverloads constructor(
                     "Session $session with visitor=${session.visitor} chosen for participant with visitor=$visitor"
                 )
             }
-            participantInfo = ParticipantInfo(participant, session)
+            val participantInfo = ParticipantInfo(participant, session)
             session.endpointAdded()
-            stanzaCollector = session.sendAllocationRequest(participantInfo)
+            val responseFuture = session.sendAllocationRequest(participantInfo)
             add(participantInfo)
             if (created) {
                 val topologySelectionResult = config.topologyStrategy.connectNode(
@@ -587,35 +735,54 @@ class ColibriV2SessionManager @JvmOverloads constructor(
                     session
                 )
                 addNodeToMesh(session, topologySelectionResult.meshId, topologySelectionResult.existingNode)
-            } else {
-                if (!participantInfo.visitor) {
-                    getPathsFrom(session) { _, otherSession, from ->
-                        if (from != null) {
-                            logger.debug {
-                                "Adding a relayed endpoint to $otherSession for ${participantInfo.id} " +
-                                    "from ${from.relayId}."
-                            }
-                            // We already made sure that relayId is not null when there are multiple sessions.
-                            otherSession.updateRemoteParticipant(participantInfo, from.relayId!!, create = true)
-                        }
+                participantCountChanged(session)
+            } else if (!participantInfo.visitor) {
+                relayUpdates.add(
+                    prepareRelayUpdates(participantInfo) {
+                        logger.debug { "Adding a relayed endpoint to ${it.relayId} for ${participantInfo.id}." }
+                        it.updateParticipant(participantInfo, create = true)
                     }
-                }
+                )
             }
+            PendingAllocation(session, created, participantInfo, responseFuture)
         }
 
-        if (created) {
+        if (pendingAllocation.created) {
             eventEmitter.fireEvent { bridgeCountChanged(sessions.size) }
         }
 
-        val response: IQ?
-        try {
-            response = stanzaCollector.nextResult()
-            logger.trace { "Received response: ${response?.toXML()}" }
-        } finally {
-            stanzaCollector.cancel()
+        return pendingAllocation
+    }
+
+    /**
+     * Clean up after the request in [pendingAllocation] could not be sent (e.g. because the XMPP connection is down).
+     * Returns the exception to propagate to the caller.
+     */
+    private fun allocationRequestFailed(
+        pendingAllocation: PendingAllocation,
+        cause: Throwable
+    ): ColibriAllocationFailedException {
+        val participantInfo = pendingAllocation.participantInfo
+        logger.warn("Failed to send the allocation request for ${participantInfo.id}: ${cause.message}")
+        withRelayUpdates { relayUpdates ->
+            if (participants.containsValue(participantInfo)) {
+                removeParticipantInfosBySession(
+                    mapOf(pendingAllocation.session to listOf(participantInfo)),
+                    relayUpdates
+                )
+            }
         }
+        return ColibriAllocationFailedException("Failed to send the allocation request: ${cause.message}", false)
+    }
 
-        synchronized(syncRoot) {
+    /** Handle the response (or timeout, if [response] is null) to an allocation request sent by [sendAllocation]. */
+    @Throws(ColibriAllocationFailedException::class)
+    private fun handleAllocationResponse(pendingAllocation: PendingAllocation, response: IQ?): ColibriAllocation {
+        logger.trace { "Received response: ${response?.toXML()}" }
+        val session = pendingAllocation.session
+        val participantInfo = pendingAllocation.participantInfo
+
+        withSyncRoot {
             // We may have already removed the session and/or participant, for example due to a previous failure. In
             // that case we shouldn't act on this error (hence removeBridge=false).
             if (!sessions.containsValue(session)) {
@@ -633,7 +800,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
                 )
             }
             try {
-                return handleResponse(response, session, created, participantInfo)
+                return handleResponse(response, session, pendingAllocation.created, participantInfo)
             } catch (e: Exception) {
                 if (e is ConferenceAlreadyExistsException) {
                     logger.warn("Failed to allocate a colibri2 endpoint for ${participantInfo.id}: ${e.message}")
@@ -775,7 +942,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         )
     }
 
-    internal fun sessionFailed(session: Colibri2Session) = synchronized(syncRoot) {
+    internal fun sessionFailed(session: Colibri2Session) = withSyncRoot {
         // Make sure the same instance is still in use. Especially with long timeouts (15s) it's possible that it's
         // already been removed
         if (sessions.values.contains(session)) {
@@ -801,7 +968,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
      */
     internal fun endpointIceRestarted(endpointId: String, transport: IceUdpTransportPacketExtension) {
         val generation = transport.iceGeneration
-        synchronized(syncRoot) {
+        syncRoot.withLock {
             val participantInfo = participants[endpointId] ?: run {
                 logger.info("ICE restart: got a transport for an unknown endpoint $endpointId, ignoring.")
                 IceRestartMetrics.failed.inc()
@@ -842,7 +1009,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         eventEmitter.fireEvent { endpointIceRestartFailed(endpointId) }
     }
 
-    override fun restartIce(participantId: String) = synchronized(syncRoot) {
+    override fun restartIce(participantId: String) = withSyncRoot {
         val participantInfo = participants[participantId] ?: run {
             logger.error("ICE restart: no ParticipantInfo for $participantId, can not request an ICE restart.")
             IceRestartMetrics.failed.inc()
@@ -888,7 +1055,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
         sources: EndpointSourceSet?,
         initialLastN: InitialLastN?,
         suppressLocalBridgeUpdate: Boolean
-    ) = synchronized(syncRoot) {
+    ) = withRelayUpdates { relayUpdates ->
         logger.debug("Updating $participantId with transport=$transport, sources=$sources")
 
         val participantInfo = participants[participantId]
@@ -902,29 +1069,31 @@ class ColibriV2SessionManager @JvmOverloads constructor(
             participantInfo.session.updateParticipant(participantInfo, transport, sources, initialLastN)
         }
         if (sources != null) {
-            participantInfo.sources = sources
-            if (!participantInfo.visitor) {
-                getPathsFrom(participantInfo.session) { _, otherSession, from ->
-                    if (from != null) {
-                        // We make sure that relayId is not null when there are multiple sessions.
-                        otherSession.updateRemoteParticipant(participantInfo, from.relayId!!, false)
+            if (participantInfo.visitor) {
+                participantInfo.sources = sources
+            } else {
+                // Only the relays are looked up with the lock held, the updates are built and queued after it is
+                // released.
+                relayUpdates.add(
+                    prepareRelayUpdates(participantInfo, prepare = { participantInfo.sources = sources }) {
+                        it.updateParticipant(participantInfo, create = false)
                     }
-                }
+                )
             }
         }
     }
 
-    override fun getBridgeSessionId(participantId: String): Pair<Bridge?, String?> = synchronized(syncRoot) {
+    override fun getBridgeSessionId(participantId: String): Pair<Bridge?, String?> = syncRoot.withLock {
         val session = participants[participantId]?.session
         return Pair(session?.bridge, session?.id)
     }
 
-    override fun removeBridge(bridge: Bridge): List<String> = synchronized(syncRoot) {
+    override fun removeBridge(bridge: Bridge): List<String> = withRelayUpdates { relayUpdates ->
         val sessionToRemove = sessions.values.find { it.bridge.jid == bridge.jid } ?: return emptyList()
         logger.info("Removing bridges: $bridge")
         val participantsToRemove = getSessionParticipants(sessionToRemove)
 
-        removeParticipantInfosBySession(mapOf(sessionToRemove to participantsToRemove))
+        removeParticipantInfosBySession(mapOf(sessionToRemove to participantsToRemove), relayUpdates)
 
         logger.info("Removed participants: ${participantsToRemove.map { it.id }}")
         participantsToRemove.map { it.id }
@@ -932,7 +1101,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
 
     override val debugState: ObjectNode
         get() = JsonNodeFactory.instance.objectNode().apply {
-            synchronized(syncRoot) {
+            syncRoot.withLock {
                 val participantsJson = JsonNodeFactory.instance.objectNode()
                 participants.values.forEach { participantsJson.set<ObjectNode>(it.id, it.toJson()) }
                 set<ObjectNode>("participants", participantsJson)
@@ -969,7 +1138,7 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     ) {
         logger.info("Received transport from $session for relay $relayId")
         logger.debug { "Received transport from $session for relay $relayId: ${transport.toXML()}" }
-        synchronized(syncRoot) {
+        withSyncRoot {
             // It's possible a new session was started for the same bridge.
             if (!sessions.containsKey(session.bridge.relayId) || sessions[session.bridge.relayId] != session) {
                 logger.info("Received a response for a session that is no longer active. Ignoring.")
@@ -998,11 +1167,19 @@ class ColibriV2SessionManager @JvmOverloads constructor(
     private fun remove(participantInfo: ParticipantInfo) {
         participants.remove(participantInfo.id)
         participantsBySession[participantInfo.session]?.remove(participantInfo)
+        participantCountChanged(participantInfo.session)
     }
 
     private fun add(participantInfo: ParticipantInfo) {
         participants[participantInfo.id] = participantInfo
         participantsBySession.computeIfAbsent(participantInfo.session) { mutableListOf() }.add(participantInfo)
+        participantCountChanged(participantInfo.session)
+    }
+
+    /** Report the participant count of [session], unless it is not (or no longer) one of [sessions]. */
+    private fun participantCountChanged(session: Colibri2Session) {
+        if (sessions[session.relayId] != session) return
+        bridgeSessionListener?.participantCountChanged(session.bridge, participantsBySession[session]?.size ?: 0)
     }
 }
 
@@ -22,6 +22,7 @@ import org.jitsi.jicofo.conference.source.ConferenceSourceMap
 import org.jitsi.jicofo.conference.source.EndpointSourceSet
 import org.jitsi.jicofo.conference.source.Source
 import org.jitsi.jicofo.conference.source.SsrcGroup
+import org.jitsi.jicofo.xmpp.sendIqAsync
 import org.jitsi.xmpp.extensions.colibri2.Capability
 import org.jitsi.xmpp.extensions.colibri2.Colibri2Endpoint
 import org.jitsi.xmpp.extensions.colibri2.ConferenceModifiedIQ
@@ -132,15 +133,12 @@ internal fun ParticipantInfo.toEndpoint(
     }
 }
 
+/**
+ * Send [iq] and handle the response (or `null` on timeout) with [block] on [TaskPools.bridgePool]. No thread is used
+ * while waiting for the response.
+ */
 internal fun AbstractXMPPConnection.sendIqAndHandleResponseAsync(iq: IQ, block: (IQ?) -> Unit) {
-    val stanzaCollector = createStanzaCollectorAndSend(iq)
-    TaskPools.ioPool.submit {
-        try {
-            block(stanzaCollector.nextResult())
-        } finally {
-            stanzaCollector.cancel()
-        }
-    }
+    sendIqAsync(iq).thenAcceptAsync(block, TaskPools.bridgePool)
 }
 
 /**
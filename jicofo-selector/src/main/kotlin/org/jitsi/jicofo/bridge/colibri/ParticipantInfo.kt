@@ -20,6 +20,7 @@ package org.jitsi.jicofo.bridge.colibri
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 import com.fasterxml.jackson.databind.node.ObjectNode
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
+import java.util.concurrent.locks.ReentrantLock
 
 /**
  * Represents the information for a specific participant/endpoint needed for colibri2.
@@ -40,8 +41,17 @@ class ParticipantInfo(
 
     var audioMuted = parameters.forceMuteAudio
     var videoMuted = parameters.forceMuteVideo
+
+    /** Changed with the session manager's lock and [relayUpdateLock] held. */
     var sources = parameters.sources
 
+    /**
+     * Held by [ColibriV2SessionManager] from when it looks up the relays to update for this participant until the
+     * updates are queued, so that the updates for this participant are queued in order. See
+     * [ColibriV2SessionManager.prepareRelayUpdates].
+     */
+    internal val relayUpdateLock = ReentrantLock()
+
     /**
      * The `ice-generation` of the most recent ICE restart for which we relayed the bridge's rotated transport
      * back to this participant, used to discard responses that arrive out of order. See
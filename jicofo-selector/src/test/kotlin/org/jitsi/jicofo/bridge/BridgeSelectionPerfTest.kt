@@ -0,0 +1,81 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.bridge
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.nulls.shouldNotBeNull
+import org.jitsi.utils.logging2.createLogger
+import org.jxmpp.jid.impl.JidCreate
+import java.time.Clock
+import java.time.Duration
+
+/**
+ * Compares [BridgeSelector.selectBridge] with the previous implementation, which sorted and filtered all bridges on
+ * every call. Disabled by default, enable manually to run.
+ */
+class BridgeSelectionPerfTest : ShouldSpec() {
+    init {
+        val numBridges = 500
+        val numSelections = 20_000
+        xcontext("BridgeSelector") {
+            val bridgeSelector = BridgeSelector()
+            repeat(numBridges) { i ->
+                bridgeSelector.addJvbAddress(JidCreate.from("jvb$i@example.com")).apply {
+                    setStats(stress = (i % 100) / 100.0, region = "region-${i % 10}", version = "v${i % 2}")
+                }
+            }
+
+            context("Selecting with no state changes between selections") {
+                measureAndLog("Sort and filter on every selection") {
+                    repeat(numSelections) { legacySelect(bridgeSelector.getAll(), "v1").shouldNotBeNull() }
+                }
+                measureAndLog("Indexed selection") {
+                    repeat(numSelections) { bridgeSelector.selectBridge(version = "v1").shouldNotBeNull() }
+                }
+            }
+            context("Selecting with an endpoint added after each selection") {
+                measureAndLog("Sort and filter on every selection") {
+                    repeat(numSelections) { legacySelect(bridgeSelector.getAll(), "v1")!!.endpointAdded() }
+                }
+                measureAndLog("Indexed selection") {
+                    repeat(numSelections) { bridgeSelector.selectBridge(version = "v1")!!.endpointAdded() }
+                }
+            }
+        }
+    }
+
+    /** The candidate computation previously done by [BridgeSelector.selectBridge] on every call. */
+    private fun legacySelect(bridges: List<Bridge>, version: String): Bridge? {
+        val prioritizedBridges = ArrayList(bridges)
+        prioritizedBridges.sort()
+
+        var candidateBridges = prioritizedBridges.filter { it.isOperational }.filter { !it.isShuttingDown }
+        candidateBridges = candidateBridges.filter { it.fullVersion == version }
+        candidateBridges.filter { !it.isDraining }.let { if (it.isNotEmpty()) candidateBridges = it }
+        candidateBridges.filter { !it.isInGracefulShutdown }.let { if (it.isNotEmpty()) candidateBridges = it }
+
+        return candidateBridges.firstOrNull { !it.isOverloaded }
+    }
+
+    private val logger = createLogger()
+    private fun measureAndLog(name: String, block: () -> Unit) {
+        val start = Clock.systemUTC().instant()
+        block()
+        logger.info("$name took ${Duration.between(start, Clock.systemUTC().instant()).toMillis()} ms")
+    }
+}
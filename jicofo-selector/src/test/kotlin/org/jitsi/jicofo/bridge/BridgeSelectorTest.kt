@@ -112,6 +112,22 @@ class BridgeSelectorTest : ShouldSpec() {
             clock.elapse(BridgeConfig.config.participantRampupInterval + 100.ms)
             bridgeSelector.selectBridge() shouldBe jvb2
         }
+        context("Selection reflects state changes without time elapsing") {
+            val bridgeSelector = BridgeSelector(clock)
+            val jvb1 = bridgeSelector.addJvbAddress(jid1).apply { setStats(stress = 0.1) }
+            val jvb2 = bridgeSelector.addJvbAddress(jid2).apply { setStats(stress = 0.2) }
+
+            bridgeSelector.selectBridge() shouldBe jvb1
+            // Recently added endpoints increase the corrected stress of jvb1.
+            repeat(20) { jvb1.endpointAdded() }
+            bridgeSelector.selectBridge() shouldBe jvb2
+
+            jvb2.isInGracefulShutdown = true
+            bridgeSelector.selectBridge() shouldBe jvb1
+
+            bridgeSelector.removeJvbAddress(jid1)
+            bridgeSelector.selectBridge() shouldBe jvb2
+        }
         context(config = regionBasedConfig, name = "Mixing versions") {
             val bridgeSelector = BridgeSelector(clock)
             val jvb1 = bridgeSelector.addJvbAddress(jid1).apply { setStats(version = "v1", stress = 0.9, region = "r") }
@@ -0,0 +1,135 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.bridge
+
+import io.kotest.core.spec.style.ShouldSpec
+import org.jitsi.utils.logging2.createLogger
+import java.time.Clock
+import java.time.Duration
+import kotlin.random.Random
+
+/**
+ * Compares the routes cached in a [CascadeRoutingTable] with walking the cascade, for a visitor-style cascade: a core
+ * mesh with the other relays attached in pairs. Disabled by default, enable manually to run.
+ */
+class CascadePerfTest : ShouldSpec() {
+    init {
+        val numCoreNodes = 4
+        val numNodes = 64
+        val numEndpointChanges = 5_000
+        val numRounds = 5
+        xcontext("Cascade") {
+            context("Relaying an endpoint change to all other nodes") {
+                listOf(false, true).forEach { routed ->
+                    val cascade = createCascade(routed, numCoreNodes, numNodes)
+                    val nodes = cascade.sessions.values.toList()
+                    val random = Random(1)
+                    var visited = 0
+                    measureAndLog("$numEndpointChanges endpoint changes, routed=$routed") {
+                        repeat(numEndpointChanges) {
+                            cascade.getPathsFrom(nodes.random(random)) { _, _, from -> if (from != null) visited++ }
+                        }
+                    }
+                    logger.info("Visited $visited nodes")
+                }
+            }
+            context("Finding the nodes behind each link") {
+                listOf(false, true).forEach { routed ->
+                    val cascade = createCascade(routed, numCoreNodes, numNodes)
+                    var found = 0
+                    measureAndLog("$numEndpointChanges iterations over all links, routed=$routed") {
+                        repeat(numEndpointChanges) {
+                            cascade.sessions.values.forEach { node ->
+                                node.relays.keys.forEach { found += cascade.getNodesBehind(node, it).size }
+                            }
+                        }
+                    }
+                    logger.info("Found $found nodes")
+                }
+            }
+            context("Adding and removing relays") {
+                // Repeat the measurement, so that the first rounds (which include JIT compilation) can be told apart.
+                repeat(numRounds) { round ->
+                    listOf(false, true).forEach { routed ->
+                        val name = "Creating and removing $numNodes relays 100 times, routed=$routed, round=$round"
+                        measureAndLog(name) {
+                            repeat(100) {
+                                val cascade = createCascade(routed, numCoreNodes, numNodes)
+                                cascade.getPathsFrom(cascade.sessions.values.first()) { _, _, _ -> }
+                                cascade.sessions.values.toList().reversed().forEach { node ->
+                                    cascade.removeNode(node) { _, _ -> emptySet() }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            context("Removing a core relay and repairing the cascade") {
+                repeat(numRounds) { round ->
+                    listOf(false, true).forEach { routed ->
+                        // Start with the routes from every node cached, and use them once after the repair.
+                        val cascades = List(100) {
+                            createCascade(routed, numCoreNodes, numNodes).apply {
+                                sessions.values.forEach { node -> getPathsFrom(node) { _, _, _ -> } }
+                            }
+                        }
+                        var visited = 0
+                        measureAndLog("Removing a core relay from 100 cascades, routed=$routed, round=$round") {
+                            cascades.forEach { cascade ->
+                                cascade.removeNode(cascade.sessions.getValue("core-0"), ::repair)
+                                cascade.sessions.values.forEach { node ->
+                                    cascade.getPathsFrom(node) { _, _, from -> if (from != null) visited++ }
+                                }
+                            }
+                        }
+                        logger.info("Visited $visited nodes")
+                    }
+                }
+            }
+        }
+    }
+
+    /** Link the first node of each disconnected edge mesh to a node of the remaining core, in a new mesh. */
+    private fun repair(
+        cascade: TestCascade,
+        disconnected: Set<Set<TestCascadeNode>>
+    ): Set<CascadeRepair<TestCascadeNode, TestCascadeLink>> {
+        val core = disconnected.first { part -> part.any { it.relayId.startsWith("core-") } }
+        val coreNode = core.first { it.relayId.startsWith("core-") }
+        return (disconnected - setOf(core)).mapIndexed { i, part ->
+            CascadeRepair(part.first(), coreNode, "repair-$i")
+        }.toSet()
+    }
+
+    private fun createCascade(routed: Boolean, numCoreNodes: Int, numNodes: Int) = TestCascade(routed).apply {
+        val core = List(numCoreNodes) { TestCascadeNode("core-$it") }
+        core.forEach { addNodeToMesh(it, "core") }
+        (0 until (numNodes - numCoreNodes) / 2).forEach { i ->
+            val attachedTo = core[i % numCoreNodes]
+            addNodeToMesh(TestCascadeNode("edge-$i-0"), "edge-$i", attachedTo)
+            addNodeToMesh(TestCascadeNode("edge-$i-1"), "edge-$i")
+        }
+    }
+
+    private val logger = createLogger()
+    private fun measureAndLog(name: String, block: () -> Unit) {
+        val start = Clock.systemUTC().instant()
+        block()
+        logger.info("$name took ${Duration.between(start, Clock.systemUTC().instant()).toMillis()} ms")
+    }
+}
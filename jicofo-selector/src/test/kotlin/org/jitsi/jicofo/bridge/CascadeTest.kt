@@ -24,9 +24,11 @@ import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.collections.shouldContainExactly
 import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
 import io.kotest.matchers.shouldBe
+import kotlin.random.Random
 
-class TestCascade : Cascade<TestCascadeNode, TestCascadeLink> {
+class TestCascade(routed: Boolean = false) : Cascade<TestCascadeNode, TestCascadeLink> {
     override val sessions = HashMap<String?, TestCascadeNode>()
+    override val routingTable = if (routed) CascadeRoutingTable<TestCascadeNode>() else null
 
     var linksRemoved = 0
 
@@ -410,5 +412,88 @@ class CascadeTest : ShouldSpec() {
                 cascade.validate()
             }
         }
+        context("a cascade with a routing table") {
+            (1..10).forEach { seed ->
+                should("route like a walk of the cascade (seed $seed)") {
+                    RandomCascades(Random(seed)).run(steps = 200)
+                }
+            }
+        }
+    }
+
+    /** Applies the same random changes to a cascade with a routing table and one without, and compares the routes. */
+    private class RandomCascades(private val random: Random) {
+        private val routed = TestCascade(routed = true)
+        private val walked = TestCascade()
+        private var nextNodeId = 0
+        private var nextMeshId = 0
+
+        fun run(steps: Int) {
+            repeat(steps) {
+                if (routed.sessions.size < 3 || random.nextInt(3) != 0) add() else remove()
+                routed.validate()
+                walked.validate()
+                compare()
+            }
+            routed.routingTable!!.size shouldBe routed.sessions.size
+        }
+
+        private fun add() {
+            val id = (nextNodeId++).toString()
+            val existing = routed.sessions.keys.randomOrNull(random)
+            // Either join an existing mesh, or start a new one linked to an existing node.
+            val meshes = routed.sessions.values.flatMap { node -> node.relays.values.mapNotNull { it.meshId } }
+                .distinct()
+            val meshId = meshes.randomOrNull(random)?.takeIf { random.nextBoolean() } ?: "mesh-${nextMeshId++}"
+            routed.addNodeToMesh(TestCascadeNode(id), meshId, routed.sessions[existing])
+            walked.addNodeToMesh(TestCascadeNode(id), meshId, walked.sessions[existing])
+        }
+
+        private fun remove() {
+            val id = routed.sessions.keys.random(random)
+            // Reconnect the disconnected parts, either with a new mesh between one node from each, or with a new mesh
+            // for each other part, between one of its nodes and one of the first part (as the visitor topology does).
+            var repairIds: List<String>? = null
+            val repairMeshId = "mesh-${nextMeshId++}"
+            val star = random.nextBoolean()
+            routed.removeNode(routed.sessions[id]!!) { _, disconnected ->
+                repairIds = disconnected.map { part -> part.map { it.relayId }.random(random) }
+                repairs(routed, repairIds!!, repairMeshId, star)
+            }
+            walked.removeNode(walked.sessions[id]!!) { _, _ -> repairs(walked, repairIds!!, repairMeshId, star) }
+        }
+
+        private fun repairs(cascade: TestCascade, ids: List<String>, meshId: String, star: Boolean) = buildSet {
+            if (star) {
+                ids.drop(1).forEachIndexed { i, id ->
+                    add(CascadeRepair(cascade.sessions[id]!!, cascade.sessions[ids.first()]!!, "$meshId-$i"))
+                }
+                return@buildSet
+            }
+            ids.forEachIndexed { i, id ->
+                ids.drop(i + 1).forEach { add(CascadeRepair(cascade.sessions[id]!!, cascade.sessions[it]!!, meshId)) }
+            }
+        }
+
+        private fun compare() {
+            routed.sessions.keys shouldBe walked.sessions.keys
+            routed.sessions.forEach { (id, node) ->
+                val walkedNode = walked.sessions[id]!!
+                node.relays.values.forEach { link ->
+                    val toward = routed.sessions[link.relayId]!!
+                    routed.getNodesBehind(node, toward).ids() shouldBe
+                        walked.getNodesBehind(walkedNode, walked.sessions[link.relayId]!!).ids()
+                    routed.getNodesBehind(link.meshId!!, node).ids() shouldBe
+                        walked.getNodesBehind(link.meshId!!, walkedNode).ids()
+                }
+                routed.paths(node) shouldBe walked.paths(walkedNode)
+            }
+        }
+
+        private fun Set<TestCascadeNode>.ids() = map { it.relayId }.toSet()
+
+        private fun TestCascade.paths(node: TestCascadeNode) = buildMap {
+            getPathsFrom(node) { _, other, from -> put(other.relayId, from?.relayId) }
+        }
     }
 }
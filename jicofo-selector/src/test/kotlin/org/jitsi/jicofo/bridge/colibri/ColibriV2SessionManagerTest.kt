@@ -35,10 +35,12 @@ import org.jitsi.jicofo.bridge.BridgeConfig
 import org.jitsi.jicofo.bridge.BridgeSelector
 import org.jitsi.jicofo.bridge.ParticipantProperties
 import org.jitsi.jicofo.conference.source.EndpointSourceSet
+import org.jitsi.jicofo.conference.source.Source
 import org.jitsi.jicofo.mock.MockXmppConnection
 import org.jitsi.jicofo.mock.PendingExecutor
 import org.jitsi.jicofo.mock.TestColibri2Server
 import org.jitsi.jicofo.mock.inPlaceScheduledExecutor
+import org.jitsi.utils.MediaType
 import org.jitsi.utils.logging2.createLogger
 import org.jitsi.utils.ms
 import org.jitsi.utils.time.FakeClock
@@ -236,6 +238,30 @@ class ColibriV2SessionManagerTest : ShouldSpec() {
                     relayEndpointsOn2 shouldBe listOf("p1")
                 }
 
+                context("And adding, updating and removing another participant on the second bridge") {
+                    allocate("p3", region = "region-jvb2")
+                    sessionManager.updateParticipant(
+                        "p3",
+                        null,
+                        EndpointSourceSet(Source(3, MediaType.AUDIO)),
+                        null,
+                        false
+                    )
+                    sessionManager.removeParticipant("p3").also { drain() }
+
+                    should("create, update and expire its endpoint on the first bridge's relay, in order") {
+                        val relayEndpoints = requestsTo(bridge1).flatMap { it.relays }.filter { it.id == "jvb2" }
+                            .mapNotNull { it.endpoints }.flatMap { it.endpoints }.filter { it.id == "p3" }
+                        relayEndpoints.map { Pair(it.create, it.expire) } shouldBe listOf(
+                            Pair(true, false),
+                            Pair(false, false),
+                            Pair(false, true)
+                        )
+                    }
+                    should("not fail any sessions") {
+                        failedSessions.shouldBeEmpty()
+                    }
+                }
                 context("And removing the participant on the second bridge") {
                     sessionManager.removeParticipant("p2").also { drain() }
 
@@ -271,6 +297,43 @@ class ColibriV2SessionManagerTest : ShouldSpec() {
             }
         }
 
+        context("Reporting sessions and participant counts per bridge") {
+            withNewConfig("jicofo.octo.enabled=true") {
+                val counts = mutableMapOf<Bridge, Int>()
+                sessionManager.bridgeSessionListener = object : ColibriSessionManager.BridgeSessionListener {
+                    override fun participantCountChanged(bridge: Bridge, participantCount: Int) {
+                        counts[bridge] = participantCount
+                    }
+                    override fun sessionRemoved(bridge: Bridge) {
+                        counts.remove(bridge)
+                    }
+                }
+                allocate("p1", region = "region-jvb1")
+                allocate("p2", region = "region-jvb1")
+                allocate("p3", region = "region-jvb2")
+
+                should("report the participants added to each bridge") {
+                    counts shouldBe mapOf(bridge1 to 2, bridge2 to 1)
+                }
+                should("report participants being removed") {
+                    sessionManager.removeParticipant("p1").also { drain() }
+                    counts shouldBe mapOf(bridge1 to 1, bridge2 to 1)
+                }
+                should("report the session on a bridge being removed with its last participant") {
+                    sessionManager.removeParticipant("p3").also { drain() }
+                    counts shouldBe mapOf(bridge1 to 2)
+                }
+                should("report the session on a removed bridge being removed") {
+                    sessionManager.removeBridge(bridge2).also { drain() }
+                    counts shouldBe mapOf(bridge1 to 2)
+                }
+                should("report all sessions being removed after expiring") {
+                    sessionManager.expire().also { drain() }
+                    counts shouldBe emptyMap()
+                }
+            }
+        }
+
         context("Tracking recently added endpoints") {
             withNewConfig("jicofo.octo.enabled=true") {
                 allocate("p1", region = "region-jvb1")
@@ -303,6 +366,63 @@ class ColibriV2SessionManagerTest : ShouldSpec() {
             }
         }
 
+        context("Batching updates") {
+            withNewConfig("jicofo.bridge.colibri-batching.window = 1 second") {
+                allocate("p1", region = "region-jvb1")
+                allocate("p2", region = "region-jvb1")
+                val requestsBefore = requestsTo(bridge1).size
+
+                // Hold the scheduled flush until all updates have been made.
+                val scheduled = mutableListOf<Runnable>()
+                TaskPools.scheduledPool = mockk {
+                    every { schedule(any(), any(), any()) } answers {
+                        scheduled.add(firstArg<Runnable>())
+                        mockk(relaxed = true)
+                    }
+                }
+                val sources = EndpointSourceSet(Source(1, MediaType.AUDIO))
+                sessionManager.updateParticipant("p1", transportWithGeneration(1), null, null, false)
+                sessionManager.updateParticipant("p1", null, sources, null, false)
+                sessionManager.updateParticipant("p1", transportWithGeneration(2), null, null, false)
+                sessionManager.mute(setOf("p1", "p2"), true, MediaType.AUDIO)
+                val requestsInWindow = requestsTo(bridge1).size - requestsBefore
+                scheduled.forEach { it.run() }
+                drain()
+                val batched = requestsTo(bridge1).drop(requestsBefore)
+
+                should("not send updates before the window expires") {
+                    requestsInWindow shouldBe 0
+                }
+                should("merge all updates into a single request") {
+                    batched.size shouldBe 1
+                    batched.first().endpoints.map { it.id } shouldBe listOf("p1", "p2")
+                }
+                should("keep the last value of each field") {
+                    val p1 = batched.first().endpoints.first { it.id == "p1" }
+                    p1.transport!!.iceUdpTransport!!.ufrag shouldBe "ufrag-2"
+                    p1.sources.shouldNotBeNull()
+                    p1.forceMute!!.audio shouldBe true
+                }
+                should("not fail the session") {
+                    failedSessions.shouldBeEmpty()
+                }
+
+                context("And expiring an updated endpoint") {
+                    sessionManager.mute(setOf("p1"), false, MediaType.AUDIO)
+                    sessionManager.removeParticipant("p1")
+                    scheduled.forEach { it.run() }
+                    drain()
+                    val expires = requestsTo(bridge1).drop(requestsBefore + 1)
+
+                    should("only send the expire") {
+                        expires.size shouldBe 1
+                        expires.first().endpoints.map { it.id to it.expire } shouldBe listOf("p1" to true)
+                        expires.first().endpoints.first().forceMute shouldBe null
+                    }
+                }
+            }
+        }
+
         context("ICE restart") {
             allocate("p1", region = "region-jvb1")
 
@@ -50,6 +50,11 @@
      */
     private final static long EXPIRE_POLLING_INTERVAL = 10000L;
 
+    /**
+     * The entries of removed sessions in {@link #expiryQueue} are not purged while there are fewer than this.
+     */
+    private final static int MIN_EXPIRIES_TO_PURGE = 64;
+
     /**
      * Authentication session lifetime in milliseconds.
      */
@@ -62,9 +67,9 @@
     private final boolean enableAutoLogin;
 
     /**
-     * The timer used to check for the expiration of authentication sessions.
+     * The task which periodically expires authentication sessions.
      */
-    private Timer expireTimer;
+    private ScheduledFuture<?> expireTask;
 
     /**
      * Synchronization root.
@@ -85,6 +90,36 @@
     private final Map<String, AuthenticationSession> authenticationSessions
             = new ConcurrentHashMap<>();
 
+    /**
+     * The sessions by the JID of the user last authenticated with them. Like the other indexes it is updated with
+     * {@link #syncRoot} held, but can be read without it.
+     */
+    private final SessionIndex<Jid> sessionsByJid = new SessionIndex<>();
+
+    /**
+     * The sessions by machine UID and user identity.
+     */
+    private final SessionIndex<List<String>> sessionsByIdentity = new SessionIndex<>();
+
+    /**
+     * The sessions by the name of the room for which they were created.
+     */
+    private final SessionIndex<EntityBareJid> sessionsByRoom = new SessionIndex<>();
+
+    /**
+     * The sessions ordered by the time at which they expire, unless they are used again before then. Since sessions
+     * are only ever renewed, a session is never expired before its queued deadline. Protected by {@link #syncRoot}.
+     */
+    private final PriorityQueue<Expiry> expiryQueue
+            = new PriorityQueue<>(Comparator.comparingLong(Expiry::deadline));
+
+    /**
+     * The number of entries in {@link #expiryQueue} for sessions which have been removed. They are skipped when they
+     * reach the head of the queue, and all of them are dropped when they make up half of it. Protected by
+     * {@link #syncRoot}.
+     */
+    private int removedExpiries = 0;
+
     /**
      * The list of registered {@link AuthenticationListener}s.
      */
@@ -113,7 +148,8 @@ public AbstractAuthAuthority(boolean enableAutoLogin, Duration authenticationLif
     }
 
     /**
-     * Finds an {@link AuthenticationSession} session.
+     * Finds an {@link AuthenticationSession} session. This looks at all sessions, so the indexed lookups (e.g.
+     * {@link #findSessionForJabberId(Jid)}) should be used where possible.
      *
      * @param selector - Must return <tt>true</tt> when a match is found.
      * @return the first {@link AuthenticationSession} that matches given
@@ -154,6 +190,9 @@ protected AuthenticationSession createNewSession(
                         roomName);
 
             authenticationSessions.put(session.getSessionId(), session);
+            sessionsByIdentity.add(identityKey(machineUID, authIdentity), session);
+            sessionsByRoom.add(roomName, session);
+            expiryQueue.add(new Expiry(session, session.getActivityTimestamp() + authenticationLifetime));
 
             logger.info("Authentication session created for " + authIdentity + " SID: " + session.getSessionId());
 
@@ -199,9 +238,12 @@ protected AuthenticationSession findSessionForIdentity(
             return null;
         }
 
-        return findSession(
-            session -> session.getUserIdentity().equals(authIdentity)
-                            && session.getMachineUID().equals(machineUID));
+        return sessionsByIdentity.find(identityKey(machineUID, authIdentity));
+    }
+
+    private static List<String> identityKey(String machineUID, String authIdentity)
+    {
+        return Arrays.asList(machineUID, authIdentity);
     }
 
     /**
@@ -220,8 +262,7 @@ protected AuthenticationSession findSessionForJabberId(Jid jabberId)
             return null;
         }
 
-        return findSession(
-            session -> jabberId.equals(session.getUserJabberId()));
+        return sessionsByJid.find(jabberId);
     }
 
     /**
@@ -271,13 +312,49 @@ public void destroySession(String sessionId)
             if (session == null)
                 return;
 
-            if (authenticationSessions.remove(sessionId) != null)
+            if (removeSession(session))
             {
                 logger.info("Authentication removed: " + session);
             }
         }
     }
 
+    /**
+     * Removes a session from {@link #authenticationSessions} and the indexes. Its entry in {@link #expiryQueue} is
+     * dropped when it reaches the head of the queue, or when the entries of removed sessions are purged.
+     *
+     * @return <tt>true</tt> if the session was removed, or <tt>false</tt> if it had already been removed.
+     */
+    private boolean removeSession(AuthenticationSession session)
+    {
+        synchronized (syncRoot)
+        {
+            if (!authenticationSessions.remove(session.getSessionId(), session))
+            {
+                return false;
+            }
+            sessionsByJid.remove(session.getUserJabberId(), session);
+            sessionsByIdentity.remove(identityKey(session.getMachineUID(), session.getUserIdentity()), session);
+            sessionsByRoom.remove(session.getRoomName(), session);
+
+            removedExpiries++;
+            if (removedExpiries > MIN_EXPIRIES_TO_PURGE && removedExpiries * 2 > expiryQueue.size())
+            {
+                expiryQueue.removeIf(expiry -> !isLive(expiry.session()));
+                removedExpiries = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if <tt>session</tt> has not been removed.
+     */
+    private boolean isLive(AuthenticationSession session)
+    {
+        return authenticationSessions.get(session.getSessionId()) == session;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -291,18 +368,10 @@ public void conferenceEnded(EntityBareJid roomName)
 
         synchronized (syncRoot)
         {
-            Iterator<AuthenticationSession> sessionIterator
-                    = authenticationSessions.values().iterator();
-
-            while (sessionIterator.hasNext())
+            for (AuthenticationSession session : sessionsByRoom.get(roomName))
             {
-                AuthenticationSession session = sessionIterator.next();
-                if (roomName.equals(session.getRoomName()))
-                {
-                    logger.info(
-                        "Removing session for ended conference, S: " + session);
-                    sessionIterator.remove();
-                }
+                logger.info("Removing session for ended conference, S: " + session);
+                removeSession(session);
             }
         }
     }
@@ -344,27 +413,6 @@ protected void notifyUserAuthenticated(Jid userJid,
         }
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public IQ processAuthentication(
-            ConferenceIq query, ConferenceIq response)
-    {
-        synchronized (syncRoot)
-        {
-            return processAuthLocked(query, response);
-        }
-    }
-
-    /**
-     * Implements {@link AuthenticationAuthority#
-     * processAuthentication(ConferenceIq, ConferenceIq, boolean)}. Runs in
-     * synchronized section of authentication sessions storage lock.
-     */
-    protected abstract IQ processAuthLocked(
-            ConferenceIq query, ConferenceIq response);
-
     /**
      * Utility method to by used by implementing classes in order to
      * verify authentication session's identifier during authentication
@@ -426,15 +474,28 @@ protected void authenticateJidWithSession(
             Jid peerJid,
             ConferenceIq response)
     {
-        session.setUserJabberId(peerJid);
+        synchronized (syncRoot)
+        {
+            // Only live sessions are indexed.
+            boolean live = isLive(session);
+            if (live)
+            {
+                sessionsByJid.remove(session.getUserJabberId(), session);
+            }
+            session.setUserJabberId(peerJid);
+            if (live)
+            {
+                sessionsByJid.add(peerJid, session);
+            }
+
+            // Re-new session activity timestamp. This is read by expireSessions while holding the lock.
+            session.touch();
+        }
 
         logger.info("Authenticated jid: " + peerJid + " with session: " + session);
 
         notifyUserAuthenticated(peerJid, session.getUserIdentity(), session.getSessionId());
 
-        // Re-new session activity timestamp
-        session.touch();
-
         // Update response
         response.setIdentity(session.getUserIdentity());
         response.setSessionId(session.getSessionId());
@@ -486,8 +547,11 @@ public IQ processLogoutIq(LogoutIq iq)
      */
     public void start()
     {
-        expireTimer = new Timer("AuthenticationExpireTimer", true);
-        expireTimer.scheduleAtFixedRate(new ExpireTask(), EXPIRE_POLLING_INTERVAL, EXPIRE_POLLING_INTERVAL);
+        expireTask = TaskPools.getScheduledPool().scheduleAtFixedRate(
+            () -> expireSessions(System.currentTimeMillis()),
+            EXPIRE_POLLING_INTERVAL,
+            EXPIRE_POLLING_INTERVAL,
+            TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -495,37 +559,133 @@ public void start()
      */
     public void shutdown()
     {
-        if (expireTimer != null)
+        if (expireTask != null)
+        {
+            expireTask.cancel(false);
+            expireTask = null;
+        }
+    }
+
+    /**
+     * Expires the sessions which have not been used for {@link #authenticationLifetime} at time {@code now}. Only
+     * looks at the sessions whose queued deadline has passed.
+     */
+    void expireSessions(long now)
+    {
+        synchronized (syncRoot)
+        {
+            Expiry expiry;
+            while ((expiry = expiryQueue.peek()) != null && expiry.deadline() <= now)
+            {
+                AuthenticationSession session = expiry.session();
+                if (!isLive(session))
+                {
+                    expiryQueue.poll();
+                    removedExpiries--;
+                    continue;
+                }
+
+                long deadline = session.getActivityTimestamp() + authenticationLifetime;
+                if (deadline < now)
+                {
+                    logger.info("Expiring session:" + session);
+                    // This leaves the entry of a removed session, which is dropped like the others.
+                    removeSession(session);
+                }
+                else
+                {
+                    // The session was used since it was queued.
+                    expiryQueue.poll();
+                    expiryQueue.add(new Expiry(session, Math.max(deadline, now + 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in {@link #expiryQueue}, including those of removed sessions.
+     */
+    int getExpiryQueueSize()
+    {
+        synchronized (syncRoot)
+        {
+            return expiryQueue.size();
+        }
+    }
+
+    /**
+     * A session in {@link #expiryQueue}, with the deadline at the time it was queued.
+     */
+    private static class Expiry
+    {
+        private final AuthenticationSession session;
+
+        private final long deadline;
+
+        Expiry(AuthenticationSession session, long deadline)
+        {
+            this.session = session;
+            this.deadline = deadline;
+        }
+
+        AuthenticationSession session()
+        {
+            return session;
+        }
+
+        long deadline()
         {
-            expireTimer.cancel();
-            expireTimer = null;
+            return deadline;
         }
     }
 
     /**
-     * Task expires tokens and authentications.
+     * An index of sessions by a key, which can be read without holding {@link #syncRoot}. All updates must be made with
+     * {@link #syncRoot} held.
      */
-    private class ExpireTask extends TimerTask
+    private static class SessionIndex<K>
     {
-        @Override
-        public void run()
+        private final Map<K, Set<AuthenticationSession>> sessions = new ConcurrentHashMap<>();
+
+        void add(K key, AuthenticationSession session)
+        {
+            if (key != null)
+            {
+                sessions.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(session);
+            }
+        }
+
+        void remove(K key, AuthenticationSession session)
         {
-            synchronized (syncRoot)
+            if (key != null)
             {
-                Iterator<AuthenticationSession> sessionsIter
-                    = authenticationSessions.values().iterator();
-                while (sessionsIter.hasNext())
+                sessions.computeIfPresent(key, (k, set) -> set.remove(session) && set.isEmpty() ? null : set);
+            }
+        }
+
+        /**
+         * @return any of the sessions with the given key, or <tt>null</tt> if there are none.
+         */
+        AuthenticationSession find(K key)
+        {
+            Set<AuthenticationSession> set = key == null ? null : sessions.get(key);
+            if (set != null)
+            {
+                for (AuthenticationSession session : set)
                 {
-                    AuthenticationSession session = sessionsIter.next();
-                    if (System.currentTimeMillis()
-                            - session.getActivityTimestamp()
-                                    > authenticationLifetime)
-                    {
-                        logger.info("Expiring session:" + session);
-                        sessionsIter.remove();
-                    }
+                    return session;
                 }
             }
+            return null;
+        }
+
+        /**
+         * @return a copy of the set of sessions with the given key.
+         */
+        List<AuthenticationSession> get(K key)
+        {
+            Set<AuthenticationSession> set = key == null ? null : sessions.get(key);
+            return set == null ? List.of() : new ArrayList<>(set);
         }
     }
 }
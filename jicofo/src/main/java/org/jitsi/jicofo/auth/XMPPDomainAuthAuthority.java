@@ -65,8 +65,14 @@ private boolean verifyJid(Jid fullJid)
         return fullJid.asDomainBareJid().equals(domain);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Sessions are looked up in the indexes, which can be read without holding {@link #syncRoot}, so requests are
+     * processed concurrently.
+     */
     @Override
-    protected IQ processAuthLocked(ConferenceIq query, ConferenceIq response)
+    public IQ processAuthentication(ConferenceIq query, ConferenceIq response)
     {
         Jid peerJid = query.getFrom();
         String sessionId = query.getSessionId();
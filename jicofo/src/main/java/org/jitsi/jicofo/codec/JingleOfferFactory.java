@@ -21,6 +21,7 @@
 import org.jitsi.xmpp.extensions.jingle.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Contains factory methods for creating Jingle offer sent in 'session-invite'
@@ -35,25 +36,72 @@
 {
     public static final JingleOfferFactory INSTANCE = new JingleOfferFactory();
 
+    /**
+     * The payload types and RTP header extensions for each (normalized) {@link OfferOptions}, or {@code null} if they
+     * are created for every offer. Only a few combinations of options occur, so the map stays small. The cached
+     * extensions are shared by all offers and must not be modified.
+     */
+    private final Map<OfferOptions, OfferTemplate> templates;
+
+    public JingleOfferFactory()
+    {
+        this(true);
+    }
+
+    /**
+     * @param useTemplates whether to share the payload types and RTP header extensions between offers with the same
+     * options, instead of creating them for each offer.
+     */
+    public JingleOfferFactory(boolean useTemplates)
+    {
+        templates = useTemplates ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * Creates the contents of an offer. The contents themselves (including their transport and RTP description) are
+     * new and can be modified, but the payload types and RTP header extensions in them are shared between offers.
+     */
     public List<ContentPacketExtension> createOffer(OfferOptions options)
     {
+        OfferTemplate template = templates == null
+            ? new OfferTemplate(options)
+            : templates.computeIfAbsent(normalize(options), OfferTemplate::new);
+
         List<ContentPacketExtension> contents = new ArrayList<>();
         if (options.getAudio())
         {
-            contents.add(createAudioContent(options));
+            contents.add(createAudioContent(template));
         }
         if (options.getVideo())
         {
-            contents.add(createVideoContent(options));
+            contents.add(createVideoContent(template));
         }
         if (JicofoConfig.config.enableSctp() && options.getSctp())
         {
-            contents.add(createDataContent(options));
+            contents.add(createDataContent());
         }
 
         return contents;
     }
 
+    /**
+     * Returns a copy of {@code options} with the options which don't affect the payload types and RTP header
+     * extensions reset, so that offers which only differ in those share a template.
+     */
+    private static OfferOptions normalize(OfferOptions options)
+    {
+        boolean audio = options.getAudio();
+        boolean video = options.getVideo();
+        return new OfferOptions(
+            audio,
+            video,
+            false,
+            (audio || video) && options.getTcc(),
+            video && options.getRemb(),
+            video && options.getRtx(),
+            audio && options.getOpusRed());
+    }
+
     /**
      * Creates a {@link ContentPacketExtension} for the audio media type that
      * will be included in initial conference offer.
@@ -61,10 +109,10 @@ public List<ContentPacketExtension> createOffer(OfferOptions options)
      * @return <tt>ContentPacketExtension</tt> for given media type that will be
      *         used in initial conference offer.
      */
-    private ContentPacketExtension createAudioContent(OfferOptions options)
+    private ContentPacketExtension createAudioContent(OfferTemplate template)
     {
         ContentPacketExtension content = createContentPacketExtension("audio");
-        addAudioToContent(content, options);
+        addAudioToContent(content, template);
 
         return content;
     }
@@ -76,7 +124,7 @@ private ContentPacketExtension createAudioContent(OfferOptions options)
      * @return <tt>ContentPacketExtension</tt> for given media type that will be
      *         used in initial conference offer.
      */
-    private ContentPacketExtension createDataContent(OfferOptions options)
+    private ContentPacketExtension createDataContent()
     {
         ContentPacketExtension content = createContentPacketExtension("data");
         addDataToContent(content);
@@ -91,10 +139,10 @@ private ContentPacketExtension createDataContent(OfferOptions options)
      * @return <tt>ContentPacketExtension</tt> for given media type that will be
      *         used in initial conference offer.
      */
-    private ContentPacketExtension createVideoContent(OfferOptions options)
+    private ContentPacketExtension createVideoContent(OfferTemplate template)
     {
         ContentPacketExtension videoContentPe = createContentPacketExtension("video");
-        addVideoToContent(videoContentPe, options);
+        addVideoToContent(videoContentPe, template);
 
         return videoContentPe;
     }
@@ -128,14 +176,14 @@ private static ContentPacketExtension createContentPacketExtension(String name)
      * {@link ContentPacketExtension}.
      * @param content the {@link ContentPacketExtension} to add extensions to.
      */
-    private void addVideoToContent(ContentPacketExtension content, OfferOptions options)
+    private void addVideoToContent(ContentPacketExtension content, OfferTemplate template)
     {
         RtpDescriptionPacketExtension rtpDesc = new RtpDescriptionPacketExtension();
 
         rtpDesc.setMedia("video");
 
-        CodecUtil.Companion.createVideoPayloadTypeExtensions(options).forEach(rtpDesc::addPayloadType);
-        CodecUtil.Companion.createVideoRtpHdrExtExtensions(options).forEach(rtpDesc::addExtmap);
+        template.videoPayloadTypes.forEach(rtpDesc::addPayloadType);
+        template.videoExtmaps.forEach(rtpDesc::addExtmap);
         if (Config.config.getExtmapAllowMixed())
         {
             rtpDesc.setExtmapAllowMixed(new ExtmapAllowMixedPacketExtension());
@@ -149,13 +197,13 @@ private void addVideoToContent(ContentPacketExtension content, OfferOptions opti
      * {@link ContentPacketExtension}.
      * @param content the {@link ContentPacketExtension} to add extensions to.
      */
-    private static void addAudioToContent(ContentPacketExtension content, OfferOptions options)
+    private static void addAudioToContent(ContentPacketExtension content, OfferTemplate template)
     {
         RtpDescriptionPacketExtension rtpDesc = new RtpDescriptionPacketExtension();
         rtpDesc.setMedia("audio");
 
-        CodecUtil.Companion.createAudioRtpHdrExtExtensions(options).forEach(rtpDesc::addExtmap);
-        CodecUtil.Companion.createAudioPayloadTypeExtensions(options).forEach(rtpDesc::addPayloadType);
+        template.audioExtmaps.forEach(rtpDesc::addExtmap);
+        template.audioPayloadTypes.forEach(rtpDesc::addPayloadType);
         if (Config.config.getExtmapAllowMixed())
         {
             rtpDesc.setExtmapAllowMixed(new ExtmapAllowMixedPacketExtension());
@@ -184,4 +232,31 @@ private static void addDataToContent(ContentPacketExtension content)
 
         content.addChildExtension(rdpe);
     }
+
+    /**
+     * The payload types and RTP header extensions of an offer, which only depend on its {@link OfferOptions}.
+     */
+    private static class OfferTemplate
+    {
+        private final List<PayloadTypePacketExtension> audioPayloadTypes;
+        private final List<RTPHdrExtPacketExtension> audioExtmaps;
+        private final List<PayloadTypePacketExtension> videoPayloadTypes;
+        private final List<RTPHdrExtPacketExtension> videoExtmaps;
+
+        private OfferTemplate(OfferOptions options)
+        {
+            audioPayloadTypes = options.getAudio()
+                ? List.copyOf(CodecUtil.Companion.createAudioPayloadTypeExtensions(options))
+                : List.of();
+            audioExtmaps = options.getAudio()
+                ? List.copyOf(CodecUtil.Companion.createAudioRtpHdrExtExtensions(options))
+                : List.of();
+            videoPayloadTypes = options.getVideo()
+                ? List.copyOf(CodecUtil.Companion.createVideoPayloadTypeExtensions(options))
+                : List.of();
+            videoExtmaps = options.getVideo()
+                ? List.copyOf(CodecUtil.Companion.createVideoRtpHdrExtExtensions(options))
+                : List.of();
+        }
+    }
 }
@@ -63,6 +63,7 @@
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.*;
 import java.util.stream.*;
 
@@ -76,8 +77,8 @@
  * participants, as well as the COLIBRI session with the jitsi-videobridge
  * instances used for the conference.
  * <p/>
- * A note on synchronization: this class uses a lot of 'synchronized' blocks,
- * on 3 different objects {@link #participantLock}, {@code this} and {@code BridgeSession#octoParticipant}).
+ * A note on synchronization: this class uses locks on 3 different objects: {@link #participantLock}, {@code this}
+ * and {@code BridgeSession#octoParticipant}).
  * <p/>
  * This seems safe, but it is hard to maintain this way, and we should
  * re-factor to simplify.
@@ -142,9 +143,11 @@
     private final Map<Jid, Participant> participants = new ConcurrentHashMap<>();
 
     /**
-     * This lock is used to synchronise write access to {@link #participants}.
+     * This lock is used to synchronise write access to {@link #participants}. It is a {@link ReentrantLock} rather
+     * than a monitor so that threads blocked on it (or blocking while holding it) do not pin a carrier thread when
+     * running on virtual threads.
      */
-    private final Object participantLock = new Object();
+    private final ReentrantLock participantLock = new ReentrantLock();
 
     /**
      * A stat number of conference participants with a visitor muc role.
@@ -181,6 +184,11 @@
      */
     private final AtomicBoolean started = new AtomicBoolean(false);
 
+    /**
+     * Completed when {@link #startAsync()} finishes, i.e. the room has been joined (or starting failed).
+     */
+    private final CompletableFuture<Void> startResult = new CompletableFuture<>();
+
     /**
      * A timeout task which will terminate media session of the user who is
      * sitting alone in the room for too long.
@@ -239,6 +247,10 @@
      */
     private final boolean includeInStatistics;
 
+    /**
+     * Handles {@link BridgeSelector} events. Events are delivered by {@link FocusManager}, and only for the bridges
+     * which this conference uses (except {@link BridgeSelector.EventHandler#bridgeAdded}).
+     */
     private final BridgeSelectorEventHandler bridgeSelectorEventHandler = new BridgeSelectorEventHandler();
 
     @NotNull private final XmppServices xmppServices;
@@ -259,6 +271,12 @@
             ConferenceConfig.config.getMaxSsrcGroupsPerUser()
     );
 
+    /**
+     * The log of source additions and removals signaled to participants. Each change is stored once and each
+     * participant keeps its own position in the log.
+     */
+    private final SourceChangeLog sourceChanges = new SourceChangeLog();
+
     /**
      * Manages live-translation synthetic sources and the translator connect, driven by the
      * {@code audioTranslationRequests} room metadata.
@@ -385,7 +403,7 @@ private ColibriSessionManager getColibriSessionManager()
         {
             // We initialize colibriSessionManager only after having joined the room, so meetingId must be set.
             String meetingId = Objects.requireNonNull(this.meetingId);
-            colibriSessionManager = new ColibriV2SessionManager(
+            ColibriV2SessionManager sessionManager = new ColibriV2SessionManager(
                     xmppServices.getServiceConnection().getXmppConnection(),
                     bridgeSelector,
                     getRoomName().toString(),
@@ -393,6 +411,8 @@ private ColibriSessionManager getColibriSessionManager()
                     config.getRtcStatsEnabled(),
                     jvbVersion,
                     logger);
+            sessionManager.setBridgeSessionListener(new BridgeSessionListenerImpl());
+            colibriSessionManager = sessionManager;
             colibriSessionManager.addListener(colibriSessionManagerListener);
 
             // Configure transcription if enabled, including custom headers and URL params
@@ -429,23 +449,47 @@ private ColibriSessionManager getColibriSessionManager()
      */
     public void start()
         throws Exception
+    {
+        try
+        {
+            startAsync().get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Starts conference focus processing without blocking while the room is joined. If starting fails the instance is
+     * considered broken, its stop method is called, and the returned future completes exceptionally.
+     *
+     * @return a future which completes once the conference has started, i.e. the room has been joined.
+     */
+    public CompletableFuture<Void> startAsync()
     {
         if (!started.compareAndSet(false, true))
         {
-            return;
+            return startResult;
         }
 
+        CompletableFuture<Void> joined;
         try
         {
             XmppProvider clientXmppProvider = getClientXmppProvider();
 
-            bridgeSelector.addHandler(bridgeSelectorEventHandler);
-
-            if (clientXmppProvider.getRegistered())
-            {
-                joinTheRoom();
-            }
+            joined = clientXmppProvider.getRegistered()
+                ? joinTheRoomAsync()
+                : CompletableFuture.completedFuture(null);
+        }
+        catch (Exception e)
+        {
+            joined = CompletableFuture.failedFuture(e);
+        }
 
+        joined.thenRun(() ->
+        {
             if (jibriDetector != null)
             {
                 jibriRecorder
@@ -463,9 +507,14 @@ public void start()
                             sipJibriDetector,
                             logger);
             }
-        }
-        catch (Exception e)
+        }).whenComplete((v, e) ->
         {
+            if (e == null)
+            {
+                startResult.complete(null);
+                return;
+            }
+
             try
             {
                 stop();
@@ -475,8 +524,20 @@ public void start()
                 logger.warn("An exception was caught while invoking stop()", x);
             }
 
-            throw e;
-        }
+            startResult.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                ? e.getCause()
+                : e);
+        });
+
+        return startResult;
+    }
+
+    /**
+     * @return a future which completes when this conference has started (see {@link #startAsync()}).
+     */
+    public CompletableFuture<Void> getStartResult()
+    {
+        return startResult;
     }
 
     /**
@@ -518,8 +579,6 @@ public void stop()
             jibriRecorder = null;
         }
 
-        bridgeSelector.removeHandler(bridgeSelectorEventHandler);
-
         if (colibriSessionManager != null)
         {
             colibriSessionManager.removeListener(colibriSessionManagerListener);
@@ -604,10 +663,10 @@ private void setMeetingId(String chatRoomMeetingId)
     /**
      * Joins the conference room.
      *
-     * @throws Exception if we have failed to join the room for any reason
+     * @return a future which completes when the room has been joined, or exceptionally if we have failed to join the
+     * room for any reason.
      */
-    private void joinTheRoom()
-        throws Exception
+    private CompletableFuture<Void> joinTheRoomAsync()
     {
         logger.info("Joining " + roomName);
 
@@ -615,7 +674,14 @@ private void joinTheRoom()
         this.chatRoom = chatRoom;
         chatRoom.addListener(chatRoomListener);
 
-        ChatRoomInfo chatRoomInfo = chatRoom.join();
+        return chatRoom.joinAsync().thenAccept(chatRoomInfo -> roomJoined(chatRoom, chatRoomInfo));
+    }
+
+    /**
+     * Completes joining the conference room, once the MUC has been joined.
+     */
+    private void roomJoined(ChatRoom chatRoom, ChatRoomInfo chatRoomInfo)
+    {
         setMeetingId(chatRoomInfo.getMeetingId());
 
         mainRoomJid = chatRoomInfo.getMainRoomJid();
@@ -784,7 +850,7 @@ private void leaveTheRoom()
         chatRoom.removeListener(chatRoomListener);
         chatRoom = null;
 
-        TaskPools.getIoPool().submit(() ->
+        TaskPools.execute(TaskPools.WorkClass.SIGNALING, TaskPools.Priority.HIGH, () ->
         {
             if (!disconnectVnodeExtensions.isEmpty())
             {
@@ -832,7 +898,8 @@ private void onMemberJoined(@NotNull ChatRoomMember chatRoomMember)
         // instance, and the call might block for a disco#info request.
         chatRoomMember.getFeatures();
 
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             cancelConferenceStartTimeout();
             // Make sure it's still a member of the room.
@@ -888,6 +955,10 @@ private void onMemberJoined(@NotNull ChatRoomMember chatRoomMember)
                 inviteChatMember(chatRoomMember);
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     private void inviteAllChatMembers()
@@ -917,7 +988,8 @@ private void inviteAllChatMembers()
      */
     private void inviteChatMember(ChatRoomMember chatRoomMember)
     {
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             // Participant already connected ?
             if (participants.get(chatRoomMember.getOccupantJid()) != null)
@@ -955,6 +1027,10 @@ private void inviteChatMember(ChatRoomMember chatRoomMember)
 
             inviteParticipant(participant, false, true);
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     /**
@@ -978,7 +1054,10 @@ private void inviteParticipant(@NotNull Participant participant, boolean reInvit
         );
 
         participant.setInviteRunnable(channelAllocator);
-        TaskPools.getIoPool().execute(Context.current().wrap(channelAllocator));
+        TaskPools.execute(
+                TaskPools.WorkClass.SIGNALING,
+                TaskPools.Priority.NORMAL,
+                Context.current().wrap(channelAllocator));
     }
 
     @NotNull EndpointSourceSet getSourcesForParticipant(@NotNull Participant participant)
@@ -1065,17 +1144,23 @@ private void expireBridgeSessions()
 
     private void onMemberKicked(ChatRoomMember chatRoomMember)
     {
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             logger.info("Member kicked: " + chatRoomMember.getName());
 
             onMemberLeft(chatRoomMember);
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     private void onMemberLeft(ChatRoomMember chatRoomMember)
     {
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             logger.info("Member left:" + chatRoomMember.getName());
             Participant leftParticipant = participants.get(chatRoomMember.getOccupantJid());
@@ -1106,6 +1191,10 @@ else if (participants.isEmpty())
                 expireBridgeSessions();
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
 
         maybeStop(chatRoomMember);
     }
@@ -1160,7 +1249,8 @@ private void terminateParticipant(
                 reason,
                 sendSessionTerminate));
 
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             participant.terminateJingleSession(reason, message, sendSessionTerminate);
 
@@ -1170,6 +1260,10 @@ private void terminateParticipant(
             Participant removed = participants.remove(participant.getChatMember().getOccupantJid());
             logger.info(
                     "Removed participant " + participant.getChatMember().getName() + " removed=" + (removed != null));
+            if (!willReinvite)
+            {
+                participant.closeSourceSignaling();
+            }
             if (!willReinvite && removed != null)
             {
                 if (includeInStatistics())
@@ -1182,6 +1276,10 @@ private void terminateParticipant(
                 }
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
 
         getColibriSessionManager().removeParticipant(participant.getEndpointId());
     }
@@ -1351,7 +1449,8 @@ void terminateSession(
             existingBridgeSession.getFirst().endpointRequestedRestart();
         }
 
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             terminateParticipant(
                     participant,
@@ -1367,6 +1466,10 @@ void terminateSession(
                 inviteParticipant(participant, false, false);
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     /**
@@ -1384,11 +1487,13 @@ private void propagateNewSources(Participant sourceOwner, EndpointSourceSet sour
             return;
         }
 
-        final ConferenceSourceMap conferenceSourceMap = new ConferenceSourceMap(sourceOwner.getEndpointId(), sources);
+        long start = System.nanoTime();
+        sourceChanges.add(new ConferenceSourceMap(sourceOwner.getEndpointId(), sources));
 
         participants.values().stream()
             .filter(otherParticipant -> otherParticipant != sourceOwner)
-            .forEach(participant -> participant.addRemoteSources(conferenceSourceMap));
+            .forEach(Participant::remoteSourcesChanged);
+        ConferenceMetrics.sourceAddFanOutTime.observeSince(start);
     }
 
 
@@ -1457,7 +1562,7 @@ public void addSource(
         propagateNewSources(participant, sourcesAccepted);
 
         // A newly-added audio source may be the base source for a pending translation request.
-        translationManager.reapply(colibriSessionManager, meetingId);
+        translationManager.endpointChanged(participant.getEndpointId(), colibriSessionManager, meetingId);
     }
 
     /**
@@ -1496,7 +1601,7 @@ public void removeSources(
         sendSourceRemove(new ConferenceSourceMap(participantId, sourcesAcceptedToBeRemoved), participant);
 
         // A sender may have removed the audio source being translated; re-evaluate synthetic translation sources.
-        translationManager.reapply(colibriSessionManager, meetingId);
+        translationManager.endpointChanged(participantId, colibriSessionManager, meetingId);
     }
 
     /**
@@ -1536,7 +1641,7 @@ void acceptSession(
         }
 
         // The initial sources may include the base audio source for a pending translation request.
-        translationManager.reapply(colibriSessionManager, meetingId);
+        translationManager.endpointChanged(participantId, colibriSessionManager, meetingId);
 
         // Now that the Jingle session is ready, signal any sources from other participants to [participant].
         participant.sendQueuedRemoteSources();
@@ -1575,7 +1680,7 @@ private void removeParticipantSources(
         }
 
         // The participant (a potential translation sender) is gone; drop any synthetic translation sources for it.
-        translationManager.reapply(colibriSessionManager, meetingId);
+        translationManager.endpointChanged(participantId, colibriSessionManager, meetingId);
     }
 
     /**
@@ -1591,9 +1696,11 @@ private void sendSourceRemove(ConferenceSourceMap sources, Participant except)
             return;
         }
 
+        sourceChanges.remove(sources);
+
         participants.values().stream()
                 .filter(participant -> participant != except)
-                .forEach(participant -> participant.removeRemoteSources(sources));
+                .forEach(Participant::remoteSourcesChanged);
     }
 
     /**
@@ -1605,6 +1712,25 @@ public ConferenceSourceMap getSources()
         return conferenceSources.unmodifiable();
     }
 
+    /**
+     * @return a snapshot of all sources in the conference, filtered with {@code filter}. The snapshot is shared by all
+     * callers until the sources change.
+     */
+    @NotNull
+    public SourceSnapshot getSourceSnapshot(@NotNull SourceFilter filter)
+    {
+        return conferenceSources.snapshot(filter);
+    }
+
+    /**
+     * @return the log of source changes signaled to the participants of the conference.
+     */
+    @NotNull
+    public SourceChangeLog getSourceChanges()
+    {
+        return sourceChanges;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1787,7 +1913,8 @@ private ObjectNode getDebugState(boolean full)
         int jibriCount = 0;
         int jigasiCount = 0;
         int transcriberCount = 0;
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             for (Participant p : participants.values())
             {
@@ -1812,6 +1939,10 @@ else if (member.isJigasi())
                 }
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
         o.put("visitor_count", visitorCount);
         o.set("visitor_codecs", visitorCodecs.debugState());
         o.put("participant_count", participantCount);
@@ -1829,7 +1960,8 @@ else if (member.isJigasi())
     public void muteAllParticipants(@NotNull MediaType mediaType, EntityFullJid actor)
     {
         Set<Participant> participantsToMute = new HashSet<>();
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             for (Participant participant : participants.values())
             {
@@ -1849,6 +1981,10 @@ public void muteAllParticipants(@NotNull MediaType mediaType, EntityFullJid acto
                 participantsToMute.add(participant);
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
 
         // Sync the colibri force mute state with the AV moderation state.
         // We assume this is successful. If for some reason it wasn't the colibri layer should handle it (e.g. remove a
@@ -1912,12 +2048,17 @@ public int getParticipantCount()
     @Override
     public long getVisitorCount()
     {
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             return participants.values().stream()
                     .filter(p -> p.getChatMember().getRole() == MemberRole.VISITOR)
                     .count();
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     public Map<Bridge, ConferenceBridgeProperties> getBridges()
@@ -2165,10 +2306,15 @@ private void onBridgeUp(Jid bridgeJid)
         {
             logger.info("New bridge available, will try to restart: " + bridgeJid);
 
-            synchronized (participantLock)
+            participantLock.lock();
+            try
             {
                 reInviteParticipants(participants.values());
             }
+            finally
+            {
+                participantLock.unlock();
+            }
         }
     }
 
@@ -2186,7 +2332,8 @@ private int reInviteParticipantsById(@NotNull List<String> participantIdsToReinv
         }
 
         List<Participant> participantsToReinvite = new ArrayList<>();
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             for (Participant participant : participants.values())
             {
@@ -2205,6 +2352,10 @@ private int reInviteParticipantsById(@NotNull List<String> participantIdsToReinv
             }
             reInviteParticipants(participantsToReinvite, updateParticipant);
         }
+        finally
+        {
+            participantLock.unlock();
+        }
         ConferenceMetrics.participantsMoved.addAndGet(participantsToReinvite.size());
         return participantsToReinvite.size();
     }
@@ -2286,7 +2437,8 @@ private void reInviteParticipants(Collection<Participant> participants)
      */
     private void reInviteParticipants(Collection<Participant> participants, boolean updateParticipant)
     {
-        synchronized (participantLock)
+        participantLock.lock();
+        try
         {
             for (Participant participant : participants)
             {
@@ -2304,6 +2456,10 @@ private void reInviteParticipants(Collection<Participant> participants, boolean
                 inviteParticipant(participant, !restartJingle, false);
             }
         }
+        finally
+        {
+            participantLock.unlock();
+        }
     }
 
     /**
@@ -2502,7 +2658,8 @@ private void setEnableTranscribing(boolean enable)
         // for min-participants), trigger invitations now.
         if (enable && chatRoom != null && chatRoom.getMemberCount() > 0)
         {
-            synchronized (participantLock)
+            participantLock.lock();
+            try
             {
                 if (participants.isEmpty())
                 {
@@ -2510,6 +2667,10 @@ private void setEnableTranscribing(boolean enable)
                     inviteAllChatMembers();
                 }
             }
+            finally
+            {
+                participantLock.unlock();
+            }
         }
 
         String meetingId = JitsiMeetConferenceImpl.this.meetingId;
@@ -2574,7 +2735,8 @@ private void setEnableTranscribing(boolean enable)
         @Override
         public void run()
         {
-            synchronized (participantLock)
+            participantLock.lock();
+            try
             {
                 if (participants.size() == 1)
                 {
@@ -2597,6 +2759,35 @@ public void run()
                 }
                 singleParticipantTout = null;
             }
+            finally
+            {
+                participantLock.unlock();
+            }
+        }
+    }
+
+    @NotNull
+    public BridgeSelector.EventHandler getBridgeSelectorEventHandler()
+    {
+        return bridgeSelectorEventHandler;
+    }
+
+    /**
+     * Keeps the {@link FocusManager}'s index of the conferences on each bridge up to date with the sessions of this
+     * conference.
+     */
+    private class BridgeSessionListenerImpl implements ColibriSessionManager.BridgeSessionListener
+    {
+        @Override
+        public void participantCountChanged(@NotNull Bridge bridge, int participantCount)
+        {
+            focusManager.bridgeParticipantCountChanged(JitsiMeetConferenceImpl.this, bridge, participantCount);
+        }
+
+        @Override
+        public void sessionRemoved(@NotNull Bridge bridge)
+        {
+            focusManager.bridgeSessionRemoved(JitsiMeetConferenceImpl.this, bridge);
         }
     }
 
@@ -2684,7 +2875,7 @@ public void roomDestroyed(String reason)
             if (chatRoomToLeave != null)
             {
                 ChatRoom finalChatRoom = chatRoomToLeave;
-                TaskPools.getIoPool().submit(() ->
+                TaskPools.execute(TaskPools.WorkClass.SIGNALING, TaskPools.Priority.HIGH, () ->
                 {
                     try
                     {
@@ -2713,9 +2904,9 @@ public void memberJoined(@NotNull ChatRoomMember member)
                 logger.debug("Ignoring non-visitor member of visitor room: " + member);
                 return;
             }
-            // Run in the IO pool because feature discovery may send disco#info and block for a response, and shouldn't
-            // run in Smack's thread.
-            TaskPools.getIoPool().submit(() -> onMemberJoined(member));
+            // Run in the signaling pool because feature discovery may send disco#info and block for a response, and
+            // shouldn't run in Smack's thread.
+            TaskPools.getSignalingPool().submit(() -> onMemberJoined(member));
         }
 
         @Override
@@ -2777,9 +2968,9 @@ public void startMutedChanged(boolean startAudioMuted, boolean startVideoMuted)
         @Override
         public void memberJoined(@NotNull ChatRoomMember member)
         {
-            // Run in the IO pool because feature discovery may send disco#info and block for a response, and shouldn't
-            // run in Smack's thread.
-            TaskPools.getIoPool().submit(() -> {
+            // Run in the signaling pool because feature discovery may send disco#info and block for a response, and
+            // shouldn't run in Smack's thread.
+            TaskPools.getSignalingPool().submit(() -> {
                 Span span = tracer.spanBuilder("conference.member-joined")
                         .setAllAttributes(TracingUtil.memberAttributes(member))
                         .setAllAttributes(TracingUtil.roomAttributes(chatRoom))
@@ -2946,7 +3137,8 @@ public void endpointIceRestarted(
                 @NotNull IceUdpTransportPacketExtension transport)
         {
             Participant participant = null;
-            synchronized (participantLock)
+            participantLock.lock();
+            try
             {
                 for (Participant p : participants.values())
                 {
@@ -2957,6 +3149,10 @@ public void endpointIceRestarted(
                     }
                 }
             }
+            finally
+            {
+                participantLock.unlock();
+            }
 
             if (participant == null)
             {
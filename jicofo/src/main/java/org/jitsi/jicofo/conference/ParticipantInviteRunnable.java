@@ -40,6 +40,7 @@
 import org.jxmpp.jid.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * An {@link Runnable} which invites a participant to a conference.
@@ -145,121 +146,165 @@ public ParticipantInviteRunnable(
     }
 
     /**
-     * Entry point for the {@link ParticipantInviteRunnable} task.
+     * Entry point for the {@link ParticipantInviteRunnable} task. Starts the invite pipeline and returns without
+     * waiting for it to complete.
      */
     @Override
     public void run()
     {
         Span span = tracer.spanBuilder("conference.participant-invite")
                 .startSpan();
+        CompletableFuture<Void> pipeline;
         try (Scope s = span.makeCurrent())
         {
-            doRun();
+            pipeline = doRun();
         }
         catch (Throwable e)
         {
-            logger.error("Channel allocator failed: ", e);
-            span.setStatus(StatusCode.ERROR, Objects.toString(e.getMessage(), ""));
-            cancel();
+            pipeline = CompletableFuture.failedFuture(e);
         }
-        finally
-        {
+
+        pipeline.whenComplete((result, t) -> {
+            if (t != null)
+            {
+                Throwable e = unwrap(t);
+                logger.error("Channel allocator failed: ", e);
+                span.setStatus(StatusCode.ERROR, Objects.toString(e.getMessage(), ""));
+                cancel();
+            }
             participant.inviteRunnableCompleted(this);
             span.end();
-        }
+        });
     }
 
-    private void doRun()
+    /**
+     * Runs the invite as a staged pipeline: create the offer, allocate on a bridge, then send the Jingle offer. No
+     * thread is held while waiting for the bridge or for the response to the Jingle offer.
+     */
+    private CompletableFuture<Void> doRun()
     {
         Offer offer = createOffer();
         if (canceled)
         {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        ColibriAllocation colibriAllocation;
-        try
+        // The later stages run on other threads, make sure they stay in the span.
+        Context context = Context.current();
+        return colibriSessionManager.allocateAsync(createAllocationParameters(offer))
+            .handle(this::handleAllocationResult)
+            .thenCompose(context.wrapFunction(
+                (ColibriAllocation allocation) -> inviteWithAllocation(offer, allocation)));
+    }
+
+    /**
+     * The stage of the pipeline which runs after the colibri allocation completed.
+     * @param colibriAllocation the allocation, or {@code null} if it failed.
+     */
+    private CompletableFuture<Void> inviteWithAllocation(Offer offer, ColibriAllocation colibriAllocation)
+    {
+        if (colibriAllocation == null || canceled)
         {
-            Set<Media> medias = new HashSet<>();
-            offer.getContents().forEach(content -> {
-                // Ignore the "data" content here (SCTP).
-                if (!"audio".equals(content.getName()) && !"video".equals(content.getName()))
-                {
-                    return;
-                }
-                Media media = ConferenceUtilKt.toMedia(content);
-                if (media != null)
-                {
-                    medias.add(media);
-                }
-                else
-                {
-                    logger.warn("Failed to convert ContentPacketExtension to Media: " + content.toXML());
-                }
-            });
-            // This makes the bridge signal its private host candidates. We enable them for backend components, because
-            // they may be in the same network as the bridge, and disable them for endpoints to avoid checking
-            // unnecessary pairs (unless the endpoints explicitly signal the feature).
-            boolean privateAddresses =
-                (participant.getChatMember().isJigasi() && JigasiConfig.config.getPrivateAddressConnectivity()) ||
-                    (participant.getChatMember().isJibri() && JibriConfig.config.getPrivateAddressConnectivity());
-            ParticipantAllocationParameters participantOptions = new ParticipantAllocationParameters(
-                    participant.getEndpointId(),
-                    participant.getStatId(),
-                    participant.getChatMember().getRegion(),
-                    participant.getSources(),
-                    participant.useSsrcRewriting(),
-                    participant.useRtpMidDemux(),
-                    forceMuteAudio,
-                    forceMuteVideo,
-                    offer.getContents().stream().anyMatch(c -> c.getName() == "data"),
-                    (participant.getChatMember().getRole() == MemberRole.VISITOR),
-                    privateAddresses,
-                    participant.getChatMember().getDiarize(),
-                    medias);
-            colibriAllocation = colibriSessionManager.allocate(participantOptions);
+            return CompletableFuture.completedFuture(null);
         }
-        catch (BridgeSelectionFailedException e)
+
+        Offer updatedOffer = updateOffer(offer, colibriAllocation);
+        if (canceled)
         {
-            logger.error("Can not invite participant, no bridge available.");
-            cancel();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
-        catch (ConferenceAlreadyExistsException e)
+
+        try
         {
-            logger.warn("Can not allocate colibri channels, conference already exists.");
-            cancel();
-            return;
+            return invite(updatedOffer, colibriAllocation);
         }
-        catch (ColibriAllocationFailedException e)
+        catch (SmackException.NotConnectedException e)
         {
-            logger.error("Failed to allocate colibri channels", e);
+            logger.error("Failed to invite participant: ", e);
+            colibriSessionManager.removeParticipant(participant.getEndpointId());
             cancel();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
+    }
 
+    private ParticipantAllocationParameters createAllocationParameters(Offer offer)
+    {
+        Set<Media> medias = new HashSet<>();
+        offer.getContents().forEach(content -> {
+            // Ignore the "data" content here (SCTP).
+            if (!"audio".equals(content.getName()) && !"video".equals(content.getName()))
+            {
+                return;
+            }
+            Media media = ConferenceUtilKt.toMedia(content);
+            if (media != null)
+            {
+                medias.add(media);
+            }
+            else
+            {
+                logger.warn("Failed to convert ContentPacketExtension to Media: " + content.toXML());
+            }
+        });
+        // This makes the bridge signal its private host candidates. We enable them for backend components, because
+        // they may be in the same network as the bridge, and disable them for endpoints to avoid checking
+        // unnecessary pairs (unless the endpoints explicitly signal the feature).
+        boolean privateAddresses =
+            (participant.getChatMember().isJigasi() && JigasiConfig.config.getPrivateAddressConnectivity()) ||
+                (participant.getChatMember().isJibri() && JibriConfig.config.getPrivateAddressConnectivity());
+        return new ParticipantAllocationParameters(
+                participant.getEndpointId(),
+                participant.getStatId(),
+                participant.getChatMember().getRegion(),
+                participant.getSources(),
+                participant.useSsrcRewriting(),
+                participant.useRtpMidDemux(),
+                forceMuteAudio,
+                forceMuteVideo,
+                offer.getContents().stream().anyMatch(c -> c.getName() == "data"),
+                (participant.getChatMember().getRole() == MemberRole.VISITOR),
+                privateAddresses,
+                participant.getChatMember().getDiarize(),
+                medias);
+    }
 
-        if (canceled)
+    /**
+     * Handles the result of the colibri allocation.
+     * @return the allocation, or {@code null} if it failed with an expected error (in which case this task is
+     * canceled).
+     */
+    private ColibriAllocation handleAllocationResult(ColibriAllocation colibriAllocation, Throwable t)
+    {
+        if (t == null)
         {
-            return;
+            return colibriAllocation;
         }
 
-        offer = updateOffer(offer, colibriAllocation);
-        if (canceled)
+        Throwable e = unwrap(t);
+        if (e instanceof BridgeSelectionFailedException)
         {
-            return;
+            logger.error("Can not invite participant, no bridge available.");
         }
-
-        try
+        else if (e instanceof ConferenceAlreadyExistsException)
         {
-            invite(offer, colibriAllocation);
+            logger.warn("Can not allocate colibri channels, conference already exists.");
         }
-        catch (SmackException.NotConnectedException e)
+        else if (e instanceof ColibriAllocationFailedException)
         {
-            logger.error("Failed to invite participant: ", e);
-            colibriSessionManager.removeParticipant(participant.getEndpointId());
-            cancel();
+            logger.error("Failed to allocate colibri channels", e);
+        }
+        else
+        {
+            throw new CompletionException(e);
         }
+
+        cancel();
+        return null;
+    }
+
+    private static Throwable unwrap(Throwable t)
+    {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
     }
 
     /**
@@ -299,9 +344,10 @@ private Offer createOffer()
     }
 
     /**
-     * {@inheritDoc}
+     * Sends the Jingle offer, unless the conference or the participant went away in the meantime. Returns a future
+     * which completes once the response to the offer has been handled.
      */
-    private void invite(Offer offer, ColibriAllocation colibriAllocation)
+    private CompletableFuture<Void> invite(Offer offer, ColibriAllocation colibriAllocation)
         throws SmackException.NotConnectedException
     {
         /*
@@ -314,7 +360,7 @@ private void invite(Offer offer, ColibriAllocation colibriAllocation)
            may not have channel information set, so we have to expire it
            here.
         */
-        boolean expireChannels = false;
+        CompletableFuture<Boolean> invited;
         Jid address = participant.getMucJid();
 
         ChatRoom chatRoom = meetConference.getChatRoom();
@@ -323,30 +369,33 @@ private void invite(Offer offer, ColibriAllocation colibriAllocation)
             // Conference disposed
             logger.info("Expiring " + address + " channels - conference disposed");
 
-            expireChannels = true;
+            invited = CompletableFuture.completedFuture(false);
         }
         else if (!meetConference.hasMember(address))
         {
             // Participant has left the room
             logger.info("Expiring " + address + " channels - participant has left");
 
-            expireChannels = true;
+            invited = CompletableFuture.completedFuture(false);
         }
         else if (!canceled)
         {
-            if (!doInviteOrReinvite(offer, colibriAllocation))
-            {
-                expireChannels = true;
-            }
+            invited = doInviteOrReinvite(offer, colibriAllocation);
         }
-
-        if (expireChannels || canceled)
+        else
         {
-            // Whether another thread intentionally canceled us, or there was
-            // a failure to invite the participant on the jingle level, we will
-            // not trigger a retry here.
-            meetConference.onInviteFailed(this);
+            invited = CompletableFuture.completedFuture(true);
         }
+
+        return invited.thenAccept(ack -> {
+            if (!ack || canceled)
+            {
+                // Whether another thread intentionally canceled us, or there was
+                // a failure to invite the participant on the jingle level, we will
+                // not trigger a retry here.
+                meetConference.onInviteFailed(this);
+            }
+        });
     }
 
     /**
@@ -354,22 +403,21 @@ else if (!canceled)
      * {@code participant} to the jingle session.
      * Creates and sends the appropriate Jingle IQ ({@code session-initiate} for
      * and invite or {@code transport-replace} for a re-invite) and sends it to
-     * the {@code participant}. Blocks until a response is received or a timeout
-     * occurs.
+     * the {@code participant}. Does not block waiting for the response.
      *
      * @param offer The description of the offer to send (sources and a list of {@link ContentPacketExtension}s).
-     * @return {@code false} on failure.
+     * @return a future which completes with {@code false} on failure.
      * @throws SmackException.NotConnectedException if we are unable to send a packet because the XMPP connection is not
      * connected.
      */
-    private boolean doInviteOrReinvite(Offer offer, ColibriAllocation colibriAllocation)
+    private CompletableFuture<Boolean> doInviteOrReinvite(Offer offer, ColibriAllocation colibriAllocation)
         throws SmackException.NotConnectedException
     {
         JingleSession jingleSession = participant.getJingleSession();
 
         // If we're trying to re-invite, but there's no existing jingle session, start a new one.
         boolean initiateSession = !reInvite || jingleSession == null;
-        boolean ack;
+        CompletableFuture<Boolean> ack;
         List<ExtensionElement> additionalExtensions = new ArrayList<>();
 
         if (startAudioMuted || startVideoMuted)
@@ -387,7 +435,10 @@ private boolean doInviteOrReinvite(Offer offer, ColibriAllocation colibriAllocat
 
         // We're about to send a jingle message that will initialize or reset the sources signaled to the participant.
         // Reflect this in the participant state.
-        ConferenceSourceMap sources = participant.resetSignaledSources(offer.getSources());
+        SourceSnapshot snapshot = offer.getSnapshot();
+        ConferenceSourceMap sources = snapshot == null
+            ? participant.resetSignaledSources(offer.getSources())
+            : participant.resetSignaledSources(snapshot, offer.getSources());
         if (initiateSession)
         {
             jingleSession = participant.createNewJingleSession();
@@ -397,45 +448,50 @@ private boolean doInviteOrReinvite(Offer offer, ColibriAllocation colibriAllocat
                     additionalExtensions,
                     sources
             );
+            participant.sessionInitiateSent();
         }
         else
         {
             ack = jingleSession.replaceTransport(offer.getContents(), additionalExtensions, sources);
         }
 
-        if (!ack)
-        {
-            // Failed to invite
-            logger.info(
-                "Expiring " + participant.getMucJid() + " channels - no RESULT for "
-                    + (initiateSession ? "session-initiate"
-                    : "transport-replace"));
-            return false;
-        }
-
-        return true;
+        return ack.thenApply(success -> {
+            if (!success)
+            {
+                // Failed to invite
+                logger.info(
+                    "Expiring " + participant.getMucJid() + " channels - no RESULT for "
+                        + (initiateSession ? "session-initiate"
+                        : "transport-replace"));
+            }
+            return success;
+        });
     }
 
     private @NotNull Offer updateOffer(Offer offer, ColibriAllocation colibriAllocation)
     {
         ConferenceSourceMap conferenceSources;
+        SourceSnapshot snapshot = null;
 
         if (!participant.useSsrcRewriting())
         {
-            // Take all sources from participants in the conference.
-            conferenceSources = meetConference.getSources().copy();
+            // Take all sources from participants in the conference. The snapshot is shared with other participants
+            // invited before the sources change, and the participant's own sources (if present) are removed from the
+            // offer when the signaled sources are reset.
+            snapshot = meetConference.getSourceSnapshot(participant.getSourceFilter());
+            // Add the bridge's feedback sources.
+            conferenceSources = colibriAllocation.getSources();
         }
         else
         {
             // Bridge will signal sources in this case.
             conferenceSources = new ConferenceSourceMap();
+            // Add the bridge's feedback sources.
+            conferenceSources.add(colibriAllocation.getSources());
+            // Remove the participant's own sources (if they're present)
+            conferenceSources.remove(participant.getEndpointId());
         }
 
-        // Add the bridge's feedback sources.
-        conferenceSources.add(colibriAllocation.getSources());
-        // Remove the participant's own sources (if they're present)
-        conferenceSources.remove(participant.getEndpointId());
-
         for (ContentPacketExtension cpe : offer.getContents())
         {
             try
@@ -482,7 +538,7 @@ private boolean doInviteOrReinvite(Offer offer, ColibriAllocation colibriAllocat
         }
 
 
-        return new Offer(conferenceSources, offer.getContents());
+        return new Offer(conferenceSources, offer.getContents(), snapshot);
     }
 
     /**
@@ -32,6 +32,7 @@
 import org.jivesoftware.smack.packet.*;
 import org.jxmpp.jid.*;
 
+import java.time.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
@@ -44,6 +45,10 @@
  * this happen it needs to cache all the information required to start new
  * session. It uses {@link JibriDetector} to select new Jibri.
  *
+ * Requests to Jibri are sent without waiting for the response, and the responses are handled on the signaling pool.
+ * The session's monitor is only held while updating its state, never across a request to Jibri, so that a stop
+ * request or a status update from Jibri is never delayed by a slow Jibri.
+ *
  * @author Pawel Domas
  *
  * This is not meant to be `public`, but has to be exposed because of compatibility with kotlin (JibriStats.kt takes
@@ -280,37 +285,51 @@ public boolean isPending()
     }
 
     /**
-     * Starts this session. A new Jibri instance will be selected and start
-     * request will be sent (in non blocking mode).
-     * @throws StartException if failed to start.
+     * Starts this session. A new Jibri instance will be selected and a start request will be sent to it, without
+     * waiting for the response. If the request fails, it is retried with another Jibri instance.
+     *
+     * @return a future which is completed when a Jibri instance has accepted the request, or completed exceptionally
+     * with a {@link StartException} if no Jibri instance could be started, or if the session was stopped first
+     * ({@link StartException.Stopped}).
      */
-    synchronized public void start()
-        throws StartException
+    synchronized public CompletableFuture<Void> start()
     {
-        try
-        {
-            startInternal();
-        }
-        catch (Exception e)
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        startInternal(result);
+        return result.whenComplete((r, e) ->
         {
-            JibriStats.sessionFailed(getJibriType());
-
-            if (e instanceof StartException.NotAvailable)
+            if (e != null)
             {
-                JibriStats.noInstanceFailed();
+                recordStartFailure(e);
             }
+        });
+    }
 
-            throw e;
+    /**
+     * Records the failure of a start request (including the retries) in {@link JibriStats}, unless it failed because
+     * the session was stopped.
+     */
+    private void recordStartFailure(Throwable e)
+    {
+        if (e instanceof StartException.Stopped)
+        {
+            return;
+        }
+
+        JibriStats.sessionFailed(getJibriType());
+
+        if (e instanceof StartException.NotAvailable)
+        {
+            JibriStats.noInstanceFailed();
         }
     }
 
     /**
-     * Does the actual start logic.
+     * Does the actual start logic: selects a Jibri and sends it a start request. Called with the monitor held.
      *
-     * @throws StartException if fails  to start.
+     * @param result the future to complete when the start request succeeds or fails.
      */
-    private void startInternal()
-        throws StartException
+    private void startInternal(CompletableFuture<Void> result)
     {
         final Jid jibriJid = jibriDetector.selectJibri();
 
@@ -320,30 +339,75 @@ private void startInternal()
 
             if (jibriDetector.isAnyInstanceConnected())
             {
-                throw new StartException.AllBusy();
+                result.completeExceptionally(new StartException.AllBusy());
             }
-
-            throw new StartException.NotAvailable();
+            else
+            {
+                result.completeExceptionally(new StartException.NotAvailable());
+            }
+            return;
         }
 
+        logger.info("Starting session with Jibri " + jibriJid);
+        CompletableFuture<IQ> response;
         try
         {
-            logger.info("Starting session with Jibri " + jibriJid);
-
-            sendJibriStartIq(jibriJid);
+            response = sendJibriStartIq(jibriJid);
         }
         catch (Exception e)
         {
             logger.error("Failed to send start Jibri IQ: " + e, e);
-            jibriDetector.instanceFailed(jibriJid);
-            if (!maxRetriesExceeded())
-            {
-                retryRequestWithAnotherJibri();
-            }
-            else
-            {
-                throw new StartException.InternalServerError();
-            }
+            startFailed(jibriJid, result);
+            return;
+        }
+
+        response.whenCompleteAsync(
+            (reply, e) -> handleStartResponse(jibriJid, e == null ? reply : null, result),
+            TaskPools.getSignalingPool());
+    }
+
+    /**
+     * Handles the response to a start request sent to {@code jibriJid} ({@code null} if the request timed out).
+     */
+    private synchronized void handleStartResponse(Jid jibriJid, IQ reply, CompletableFuture<Void> result)
+    {
+        if (!jibriJid.equals(currentJibriJid))
+        {
+            // The session was stopped while the request was in flight. The stop request has already been sent.
+            logger.info("Ignoring the response to the start request, the session was stopped.");
+            result.completeExceptionally(new StartException.Stopped());
+            return;
+        }
+
+        try
+        {
+            checkStartResponse(jibriJid, reply);
+        }
+        catch (StartException e)
+        {
+            logger.error("Failed to start Jibri " + jibriJid + ": " + e.getMessage());
+            startFailed(jibriJid, result);
+            return;
+        }
+
+        processJibriIqFromJibri((JibriIq) reply);
+        result.complete(null);
+    }
+
+    /**
+     * Handles a failure to start {@code jibriJid}, retrying with another Jibri if the maximum number of retries has
+     * not been reached.
+     */
+    private void startFailed(Jid jibriJid, CompletableFuture<Void> result)
+    {
+        jibriDetector.instanceFailed(jibriJid);
+        if (!maxRetriesExceeded())
+        {
+            retryRequestWithAnotherJibri(result);
+        }
+        else
+        {
+            result.completeExceptionally(new StartException.InternalServerError());
         }
     }
 
@@ -441,7 +505,7 @@ private String nickname()
      * Process a {@link JibriIq} *request* from Jibri
      * @return the response
      */
-    IQ processJibriIqRequestFromJibri(JibriIq request)
+    synchronized IQ processJibriIqRequestFromJibri(JibriIq request)
     {
         processJibriIqFromJibri(request);
         return IQ.createResultIQ(request);
@@ -489,10 +553,11 @@ else if (streamID != null)
     /**
      * Sends an IQ to the given Jibri instance and asks it to start
      * recording/SIP call.
+     *
+     * @return a future completed with the response, or with {@code null} if the request timed out.
      */
-    private void sendJibriStartIq(final Jid jibriJid)
-        throws SmackException.NotConnectedException,
-               StartException
+    private CompletableFuture<IQ> sendJibriStartIq(final Jid jibriJid)
+        throws SmackException.NotConnectedException
     {
         // Store Jibri JID to make the packet filter accept the response
         currentJibriJid = jibriJid;
@@ -548,8 +613,18 @@ private void sendJibriStartIq(final Jid jibriJid)
         // timeout each time.
         reschedulePendingTimeout();
 
-        IQ reply = UtilKt.sendIqAndGetResponse(jibriDetector.getXmppConnection(), startIq);
+        AbstractXMPPConnection connection = jibriDetector.getXmppConnection();
+        return UtilKt.sendIqAsync(connection, startIq, Duration.ofMillis(connection.getReplyTimeout()));
+    }
 
+    /**
+     * Checks the response to a start request sent to {@code jibriJid}.
+     *
+     * @throws StartException if the response is not a pending status.
+     */
+    private void checkStartResponse(Jid jibriJid, IQ reply)
+        throws StartException
+    {
         if (reply == null)
         {
             logger.error("Jibri start request timed out, sending a stop command.");
@@ -564,7 +639,7 @@ private void sendJibriStartIq(final Jid jibriJid)
             stopRequest.setAction(JibriIq.Action.STOP);
             stopRequest.setSessionId(sessionId);
 
-            span = Span.fromContextOrNull(Context.current());
+            Span span = Span.fromContextOrNull(Context.current());
             if (span != null)
             {
                 stopRequest.addExtension(
@@ -607,8 +682,6 @@ private void sendJibriStartIq(final Jid jibriJid)
 
             throw new StartException.UnexpectedResponse();
         }
-
-        processJibriIqFromJibri(jibriIq);
     }
 
     /**
@@ -661,13 +734,12 @@ private boolean maxRetriesExceeded()
 
     /**
      * Retry the current request with another Jibri (if one is available)
-     * @throws StartException if failed to start.
+     * @param result the future to complete when the retried request succeeds or fails.
      */
-    private void retryRequestWithAnotherJibri()
-        throws StartException
+    private void retryRequestWithAnotherJibri(CompletableFuture<Void> result)
     {
         numRetries++;
-        start();
+        startInternal(result);
     }
 
     /**
@@ -732,21 +804,32 @@ private void handleJibriStatusUpdate(
             {
                 logger.info("Jibri failed, trying to fall back to another Jibri");
 
-                try
+                CompletableFuture<Void> retry = new CompletableFuture<>();
+                retryRequestWithAnotherJibri(retry);
+                retry.whenComplete((r, exc) ->
                 {
-                    retryRequestWithAnotherJibri();
-
-                    // The fallback to another Jibri succeeded.
-                    logger.info("Successfully resumed session with another Jibri");
-                }
-                catch (StartException exc)
-                {
-                    logger.warn("Failed to fall back to another Jibri, this session has now failed: " + exc, exc);
-                    // Propagate up that the session has failed entirely.
-                    // We'll pass the original failure reason.
-                    dispatchSessionStateChanged(newStatus, failureReason);
-                    cleanupSession();
-                }
+                    synchronized (JibriSession.this)
+                    {
+                        if (exc == null)
+                        {
+                            // The fallback to another Jibri succeeded.
+                            logger.info("Successfully resumed session with another Jibri");
+                            return;
+                        }
+                        if (exc instanceof StartException.Stopped)
+                        {
+                            // The session was stopped (and cleaned up) while falling back.
+                            logger.info("The session was stopped while falling back to another Jibri.");
+                            return;
+                        }
+                        logger.warn("Failed to fall back to another Jibri, this session has now failed: " + exc, exc);
+                        recordStartFailure(exc);
+                        // Propagate up that the session has failed entirely.
+                        // We'll pass the original failure reason.
+                        dispatchSessionStateChanged(newStatus, failureReason);
+                        cleanupSession();
+                    }
+                });
             }
             else
             {
@@ -912,6 +995,13 @@ public OneBusy()
                 super("This Jibri instance was busy");
             }
         }
+        static public class Stopped extends StartException
+        {
+            public Stopped()
+            {
+                super("The session was stopped");
+            }
+        }
     }
 
     /**
@@ -938,12 +1028,15 @@ private class JibriDetectorEventHandler implements JibriDetector.EventHandler
         @Override
         public void instanceOffline(Jid jid)
         {
-            if (jid.equals(currentJibriJid))
+            synchronized (JibriSession.this)
             {
-                logger.warn(nickname() + " went offline: " + jid
-                        + " for room: " + roomName);
-                handleJibriStatusUpdate(
-                        jid, Status.OFF, FailureReason.ERROR, true);
+                if (jid.equals(currentJibriJid))
+                {
+                    logger.warn(nickname() + " went offline: " + jid
+                            + " for room: " + roomName);
+                    handleJibriStatusUpdate(
+                            jid, Status.OFF, FailureReason.ERROR, true);
+                }
             }
         }
     }
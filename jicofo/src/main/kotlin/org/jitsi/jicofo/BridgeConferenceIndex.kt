@@ -0,0 +1,53 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import org.jitsi.jicofo.bridge.Bridge
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The conferences with a session on each bridge, with the number of participants they have on it. A conference is
+ * indexed from the time its session on a bridge is created until it is removed, even when it has no participants on
+ * the bridge. Conferences update it as sessions and participants are added and removed, so finding the conferences on
+ * a bridge takes time proportional to their number and not to the number of all conferences.
+ */
+class BridgeConferenceIndex<C : Any> {
+    private val index = ConcurrentHashMap<Bridge, ConcurrentHashMap<C, Int>>()
+
+    /** Set the number of participants that [conference] has in its session on [bridge]. */
+    fun update(bridge: Bridge, conference: C, participantCount: Int) {
+        index.compute(bridge) { _, conferences ->
+            (conferences ?: ConcurrentHashMap()).apply { put(conference, participantCount) }
+        }
+    }
+
+    /** Remove [conference] from [bridge], when its session on it is removed. */
+    fun remove(bridge: Bridge, conference: C) {
+        // Use compute, which is atomic for the bridge, so that an empty map is never removed after another thread
+        // added an entry to it.
+        index.computeIfPresent(bridge) { _, conferences ->
+            conferences.apply { remove(conference) }.takeIf { it.isNotEmpty() }
+        }
+    }
+
+    /** Remove [conference] from all bridges. */
+    fun remove(conference: C) = index.keys.forEach { remove(it, conference) }
+
+    /** Get the conferences with a session on [bridge], mapped to the number of participants they have on it. */
+    fun getConferences(bridge: Bridge): Map<C, Int> = index[bridge]?.toMap() ?: emptyMap()
+}
@@ -0,0 +1,95 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import org.jxmpp.jid.EntityBareJid
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The conferences by room name, with an index from each main room to its breakout conferences. Lookups and iteration
+ * take no locks, and creating or removing a conference only locks the hash bin of its room, so requests for different
+ * rooms do not wait for each other.
+ */
+class ConferenceRegistry<C : Any> {
+    private val conferences = ConcurrentHashMap<EntityBareJid, C>()
+    private val breakoutConferences = ConcurrentHashMap<EntityBareJid, MutableSet<C>>()
+
+    /**
+     * A live view of all conferences. It is not copied, and iterating it reflects some state of the registry at or
+     * since the start of the iteration.
+     */
+    val all: Collection<C> = Collections.unmodifiableCollection(conferences.values)
+
+    val size: Int
+        get() = conferences.size
+
+    operator fun get(room: EntityBareJid): C? = conferences[room]
+
+    /**
+     * Get the conference for [room], creating it with [create] if there is none. [create] is called at most once per
+     * room, with the room's bin locked, so it must be cheap and must not access the registry.
+     *
+     * @return the conference and whether it was created by this call.
+     */
+    fun getOrCreate(room: EntityBareJid, create: () -> C): Pair<C, Boolean> {
+        conferences[room]?.let { return Pair(it, false) }
+        var created = false
+        val conference = conferences.computeIfAbsent(room) {
+            created = true
+            create()
+        }
+        return Pair(conference, created)
+    }
+
+    /**
+     * Remove [conference] from [room], unless another conference has replaced it, and from the breakout conferences
+     * of [mainRoom].
+     *
+     * @return whether [conference] was registered for [room].
+     */
+    fun remove(room: EntityBareJid, conference: C, mainRoom: EntityBareJid?): Boolean {
+        if (!conferences.remove(room, conference)) {
+            return false
+        }
+        mainRoom?.let { removeBreakoutConference(it, conference) }
+        return true
+    }
+
+    /** Index [conference], the conference in [room], as a breakout conference of [mainRoom]. */
+    fun addBreakoutConference(mainRoom: EntityBareJid, room: EntityBareJid, conference: C) {
+        // Use compute, which is atomic for the main room, so that an empty set is never removed after another thread
+        // added a conference to it.
+        breakoutConferences.compute(mainRoom) { _, breakouts ->
+            (breakouts ?: ConcurrentHashMap.newKeySet()).apply { add(conference) }
+        }
+        // The conference may have been removed before it was indexed.
+        if (conferences[room] !== conference) {
+            removeBreakoutConference(mainRoom, conference)
+        }
+    }
+
+    /** Whether there are any breakout conferences whose main room is [mainRoom]. */
+    fun hasBreakoutConferences(mainRoom: EntityBareJid): Boolean = breakoutConferences.containsKey(mainRoom)
+
+    private fun removeBreakoutConference(mainRoom: EntityBareJid, conference: C) {
+        breakoutConferences.computeIfPresent(mainRoom) { _, breakouts ->
+            breakouts.apply { remove(conference) }.takeIf { it.isNotEmpty() }
+        }
+    }
+}
@@ -17,17 +17,23 @@
  */
 package org.jitsi.jicofo
 
+import org.jitsi.jicofo.bridge.Bridge
 import org.jitsi.jicofo.conference.JitsiMeetConference
 import org.jxmpp.jid.EntityBareJid
 import java.time.Duration
 
 interface ConferenceStore {
-    /** Get a list of all conferences. */
-    fun getAllConferences(): List<JitsiMeetConference>
+    /** Get all conferences. */
+    fun getAllConferences(): Collection<JitsiMeetConference>
 
     /** Get a conference for a specific [Jid] (i.e. name). */
     fun getConference(jid: EntityBareJid): JitsiMeetConference?
 
+    /** Get the conferences which use [bridge], mapped to the number of participants they have on it. */
+    fun getConferences(bridge: Bridge): Map<JitsiMeetConference, Int> = getAllConferences().mapNotNull { conference ->
+        conference.bridges[bridge]?.participantCount?.let { Pair(conference, it) }
+    }.toMap()
+
     fun getPinnedConferences(): List<PinnedConference>
     fun pinConference(roomName: EntityBareJid, jvbVersion: String, duration: Duration)
     fun unpinConference(roomName: EntityBareJid)
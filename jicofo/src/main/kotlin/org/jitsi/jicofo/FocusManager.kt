@@ -19,6 +19,8 @@ package org.jitsi.jicofo
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 import com.fasterxml.jackson.databind.node.ObjectNode
+import org.jitsi.jicofo.bridge.Bridge
+import org.jitsi.jicofo.bridge.BridgeSelector
 import org.jitsi.jicofo.conference.ConferenceMetrics
 import org.jitsi.jicofo.conference.JitsiMeetConference
 import org.jitsi.jicofo.conference.JitsiMeetConferenceImpl
@@ -34,8 +36,10 @@ import java.time.Clock
 import java.time.Duration
 import java.time.Instant
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
 import java.util.logging.Level
 import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
 
@@ -49,27 +53,23 @@ class FocusManager(
     private val jicofoServices: JicofoServices,
     /** Clock to use for pin timeouts. */
     private val clock: Clock = Clock.systemUTC(),
-) : ConferenceListener, ConferenceStore, XmppProvider.Listener {
+) : ConferenceListener, ConferenceStore, XmppProvider.Listener, BridgeSelector.EventHandler {
 
     val logger = createLogger()
 
-    /**
-     * Jitsi Meet conferences mapped by MUC room names.
-     *
-     * Note that access to this field is almost always protected by a lock on `this`. However, `#getConferenceCount()`
-     * executes [Map.size] on it, which wouldn't be safe with a [HashMap] (as opposed to a [ConcurrentHashMap].
-     * I've chosen this solution, because I don't know whether the cleaner solution of synchronizing on
-     * [.conferencesSyncRoot] in `#getConferenceCount()` is safe.
-     */
-    private val conferences: MutableMap<EntityBareJid, JitsiMeetConferenceImpl> = ConcurrentHashMap()
-    private val conferencesCache: MutableList<JitsiMeetConference> = CopyOnWriteArrayList()
+    /** Jitsi Meet conferences mapped by MUC room names. */
+    private val conferences = ConferenceRegistry<JitsiMeetConferenceImpl>()
     private val conferencesByMeetingId: MutableMap<String, JitsiMeetConferenceImpl> = ConcurrentHashMap()
 
-    /** The object used to synchronize access to [.conferences]. */
-    private val conferencesSyncRoot = Any()
     private val listeners: MutableList<ConferenceStore.Listener> = ArrayList()
 
-    /** Holds the conferences that are currently pinned to a specific bridge version. */
+    /** The conferences using each bridge, maintained by the conferences' colibri session managers. */
+    private val bridgeConferenceIndex = BridgeConferenceIndex<JitsiMeetConferenceImpl>()
+
+    /**
+     * Holds the conferences that are currently pinned to a specific bridge version. Access is synchronized on the map
+     * itself.
+     */
     private val pinnedConferences: MutableMap<EntityBareJid, PinnedConferenceState> = HashMap()
 
     fun start() {
@@ -79,7 +79,7 @@ class FocusManager(
     /**
      * Whether there are any breakout conferences whose main room is [jid].
      */
-    fun hasBreakoutRooms(jid: EntityBareJid) = conferences.values.any { it.mainRoomJid == jid }
+    fun hasBreakoutRooms(jid: EntityBareJid) = conferences.hasBreakoutConferences(jid)
 
     /**
      * @return <tt>true</tt> if conference focus is in the room and ready to handle session participants.
@@ -96,112 +96,149 @@ class FocusManager(
         loggingLevel: Level = Level.ALL,
         /** Whether this conference should be included in statistics. */
         includeInStatistics: Boolean = true
-    ): JitsiMeetConference {
-        var conference: JitsiMeetConferenceImpl
-        var isConferenceCreator: Boolean
-        synchronized(conferencesSyncRoot) {
-            val existingConference = conferences[room]
-            conference = existingConference ?: createConference(room, properties, loggingLevel, includeInStatistics)
-            isConferenceCreator = existingConference == null
-            if (!isConferenceCreator) conference.rescheduleConferenceStartTimeout()
-        }
-        try {
-            if (isConferenceCreator) {
-                conference.start()
-            }
-        } catch (e: Exception) {
-            logger.warn("Exception while trying to start the conference", e)
-            throw e
-        }
-        return conference
+    ): JitsiMeetConference = try {
+        conferenceRequestAsync(room, properties, loggingLevel, includeInStatistics).get().first
+    } catch (e: ExecutionException) {
+        throw e.cause as? Exception ?: e
     }
 
-    /** Creates a new conference and registers it in [conferences]. */
-    private fun createConference(
+    /**
+     * Like [conferenceRequest], but does not block while the MUC is joined. The returned future completes when the
+     * conference has started, or exceptionally if this request created the conference and starting it failed. The
+     * result is the conference and whether this request created it.
+     */
+    @JvmOverloads
+    fun conferenceRequestAsync(
         room: EntityBareJid,
         properties: Map<String, String>,
-        logLevel: Level,
-        includeInStatistics: Boolean
-    ): JitsiMeetConferenceImpl {
-        var conference: JitsiMeetConferenceImpl
-        synchronized(conferencesSyncRoot) {
-            val jvbVersion = getBridgeVersionForConference(room)
-            conference = JitsiMeetConferenceImpl(
-                room,
-                this,
-                properties,
-                logLevel,
-                jvbVersion,
-                includeInStatistics,
-                jicofoServices.xmppServices,
-                jicofoServices.bridgeSelector,
-                jicofoServices.jibriDetector,
-                jicofoServices.sipJibriDetector,
-                jicofoServices.authenticationAuthority,
-                this
-            )
-            conferences[room] = conference
-            conferencesCache.add(conference)
+        loggingLevel: Level = Level.ALL,
+        includeInStatistics: Boolean = true
+    ): CompletableFuture<Pair<JitsiMeetConference, Boolean>> {
+        val (conference, isConferenceCreator) = conferences.getOrCreate(room) {
+            createConference(room, properties, loggingLevel, includeInStatistics)
+        }
+        if (!isConferenceCreator) {
+            conference.rescheduleConferenceStartTimeout()
+            // Wait for a start in progress, so that the response can say the conference is ready. A failure is
+            // reported to the request which created the conference.
+            return conference.startResult.handle<Pair<JitsiMeetConference, Boolean>> { _, _ -> Pair(conference, false) }
         }
         if (includeInStatistics) {
             ConferenceMetrics.conferenceCount.inc()
             ConferenceMetrics.conferencesCreated.inc()
         }
-        return conference
+        return conference.startAsync().handle<Pair<JitsiMeetConference, Boolean>> { _, e ->
+            // The main room is known once the MUC has been joined.
+            conference.mainRoomJid?.let { conferences.addBreakoutConference(it, room, conference) }
+            if (e != null) {
+                logger.warn("Exception while trying to start the conference", e)
+                throw e as? CompletionException ?: CompletionException(e)
+            }
+            Pair(conference, true)
+        }
     }
 
+    /**
+     * Creates a new conference. This runs while [conferences] holds the lock for the room, so it must not block (the
+     * MUC is only joined when the conference is started).
+     */
+    private fun createConference(
+        room: EntityBareJid,
+        properties: Map<String, String>,
+        logLevel: Level,
+        includeInStatistics: Boolean
+    ) = JitsiMeetConferenceImpl(
+        room,
+        this,
+        properties,
+        logLevel,
+        getBridgeVersionForConference(room),
+        includeInStatistics,
+        jicofoServices.xmppServices,
+        jicofoServices.bridgeSelector,
+        jicofoServices.jibriDetector,
+        jicofoServices.sipJibriDetector,
+        jicofoServices.authenticationAuthority,
+        this
+    )
+
     /** {@inheritDoc} */
     override fun conferenceEnded(conference: JitsiMeetConferenceImpl) {
         val roomName = conference.roomName
-        synchronized(conferencesSyncRoot) {
-            conferences.remove(roomName)
-            conferencesCache.remove(conference)
-            conferencesByMeetingId.remove(conference.meetingId)
-            if (conference.includeInStatistics()) {
-                ConferenceMetrics.conferenceCount.dec()
-            }
+        val mainRoomJid = conference.mainRoomJid
+        if (!conferences.remove(roomName, conference, mainRoomJid)) {
+            return
+        }
+        conference.meetingId?.let { conferencesByMeetingId.remove(it, conference) }
+        bridgeConferenceIndex.remove(conference)
+        if (conference.includeInStatistics()) {
+            ConferenceMetrics.conferenceCount.dec()
+        }
 
-            // If this was a breakout room, tell the main conference that it ended.
-            conference.mainRoomJid?.let { mainRoomJid ->
-                conferences[mainRoomJid]?.let {
-                    TaskPools.ioPool.submit { it.breakoutConferenceEnded() }
-                }
+        // If this was a breakout room, tell the main conference that it ended.
+        mainRoomJid?.let {
+            conferences[it]?.let { mainConference ->
+                TaskPools.signalingPool.submit { mainConference.breakoutConferenceEnded() }
             }
+        }
 
-            // It is not clear whether the code below necessarily needs to hold the lock or not.
-            var listeners: Iterable<ConferenceStore.Listener>
-            synchronized(this.listeners) {
-                listeners = ArrayList(this.listeners)
-            }
-            for (listener in listeners) {
-                listener.conferenceEnded(roomName)
-            }
+        var listeners: Iterable<ConferenceStore.Listener>
+        synchronized(this.listeners) {
+            listeners = ArrayList(this.listeners)
+        }
+        for (listener in listeners) {
+            listener.conferenceEnded(roomName)
         }
     }
 
     override fun meetingIdSet(conference: JitsiMeetConferenceImpl, meetingId: String): Boolean =
-        synchronized(conferencesSyncRoot) {
-            conferencesByMeetingId[meetingId]?.let {
-                // If there is already a conference with this meeting ID, we don't allow setting it.
-                logger.warn("Meeting ID $meetingId already exists for ${it.roomName}.")
-                false
-            } ?: run {
-                // Otherwise, we set the meeting ID and register the conference.
-                conferencesByMeetingId[meetingId] = conference
-                true
-            }
-        }
+        conferencesByMeetingId.putIfAbsent(meetingId, conference)?.let {
+            // If there is already a conference with this meeting ID, we don't allow setting it.
+            logger.warn("Meeting ID $meetingId already exists for ${it.roomName}.")
+            false
+        } ?: true
 
     /** {@inheritDoc} */
-    override fun getConference(jid: EntityBareJid): JitsiMeetConference? = synchronized(conferencesSyncRoot) {
-        return conferences[jid]
-    }
+    override fun getConference(jid: EntityBareJid): JitsiMeetConference? = conferences[jid]
 
     /** {@inheritDoc} */
     override fun getAllConferences() = getConferences()
 
     /** {@inheritDoc} */
-    fun getConferences() = conferencesCache
+    override fun getConferences(bridge: Bridge): Map<JitsiMeetConference, Int> =
+        bridgeConferenceIndex.getConferences(bridge).toMap()
+
+    /** Called by [conference] when it has a session on [bridge] with [participantCount] participants. */
+    fun bridgeParticipantCountChanged(conference: JitsiMeetConferenceImpl, bridge: Bridge, participantCount: Int) =
+        bridgeConferenceIndex.update(bridge, conference, participantCount)
+
+    /** Called by [conference] when its session on [bridge] is removed. */
+    fun bridgeSessionRemoved(conference: JitsiMeetConferenceImpl, bridge: Bridge) =
+        bridgeConferenceIndex.remove(bridge, conference)
+
+    /**
+     * Only the conferences with a session on [bridge] need to handle its failure, including those with no participants
+     * on it.
+     */
+    override fun bridgeRemoved(bridge: Bridge) = bridgeConferenceIndex.getConferences(bridge).keys.forEach {
+        it.bridgeSelectorEventHandler.bridgeRemoved(bridge)
+    }
+
+    override fun bridgeFailedHealthCheck(bridge: Bridge) = bridgeConferenceIndex.getConferences(bridge).keys.forEach {
+        it.bridgeSelectorEventHandler.bridgeFailedHealthCheck(bridge)
+    }
+
+    override fun bridgeIsShuttingDown(bridge: Bridge) = bridgeConferenceIndex.getConferences(bridge).keys.forEach {
+        it.bridgeSelectorEventHandler.bridgeIsShuttingDown(bridge)
+    }
+
+    /** A new bridge may allow any conference without a bridge to start, so all conferences are notified. */
+    override fun bridgeAdded(bridge: Bridge) = conferences.all.forEach {
+        it.bridgeSelectorEventHandler.bridgeAdded(bridge)
+    }
+
+    /** A live view of all conferences, which is not copied (see [ConferenceRegistry.all]). */
+    fun getConferences(): Collection<JitsiMeetConference> = conferences.all
 
     /** {@inheritDoc} */
     override fun addListener(listener: ConferenceStore.Listener) {
@@ -326,7 +363,7 @@ class FocusManager(
     /** Create or update the pinning for the specified conference. */
     override fun pinConference(roomName: EntityBareJid, jvbVersion: String, duration: Duration) {
         val pc = PinnedConferenceState(jvbVersion, duration)
-        synchronized(conferencesSyncRoot) {
+        synchronized(pinnedConferences) {
             val prev = pinnedConferences.remove(roomName)
             if (prev != null) {
                 logger.info("Modifying pin for $roomName")
@@ -339,7 +376,7 @@ class FocusManager(
     /**
      * Remove any existing pinning for the specified conference.
      */
-    override fun unpinConference(roomName: EntityBareJid) = synchronized(conferencesSyncRoot) {
+    override fun unpinConference(roomName: EntityBareJid) = synchronized(pinnedConferences) {
         val prev = pinnedConferences.remove(roomName)
         logger.info(if (prev != null) "Removing pin for $roomName" else "Unpin failed: $roomName")
     }
@@ -355,7 +392,7 @@ class FocusManager(
      * Returns null if the conference is not currently pinned.
      */
     fun getBridgeVersionForConference(roomName: EntityBareJid): String? {
-        synchronized(conferencesSyncRoot) {
+        synchronized(pinnedConferences) {
             expirePins(clock.instant())
             return pinnedConferences[roomName]?.jvbVersion
         }
@@ -363,7 +400,7 @@ class FocusManager(
 
     /** Get the set of current pinned conferences. */
     override fun getPinnedConferences(): List<PinnedConference> = buildList {
-        synchronized(conferencesSyncRoot) {
+        synchronized(pinnedConferences) {
             expirePins(clock.instant())
             pinnedConferences.forEach { (conferenceId, p) ->
                 add(PinnedConference(conferenceId.toString(), p.jvbVersion, p.expiresAt.toString()))
@@ -382,6 +419,6 @@ class FocusManager(
     }
 
     override fun registrationChanged(registered: Boolean) {
-        conferencesCache.forEach { it.registrationChanged(registered) }
+        conferences.all.forEach { it.registrationChanged(registered) }
     }
 }
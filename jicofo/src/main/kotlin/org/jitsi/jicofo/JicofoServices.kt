@@ -78,7 +78,7 @@ class JicofoServices {
         it.clientConnection.addListener(focusManager)
     }
 
-    val bridgeSelector = BridgeSelector()
+    val bridgeSelector = BridgeSelector().apply { addHandler(focusManager) }
     private val jvbDoctor = if (BridgeConfig.config.healthChecksEnabled) {
         JvbDoctor(bridgeSelector, xmppServices.serviceConnection).apply {
             bridgeSelector.addHandler(this)
@@ -177,6 +177,7 @@ class JicofoServices {
             it.shutdown()
         }
         loadRedistributor.shutdown()
+        bridgeSelector.removeHandler(focusManager)
         bridgeDetector?.shutdown()
         jibriDetector?.shutdown()
         sipJibriDetector?.shutdown()
@@ -18,10 +18,16 @@
 package org.jitsi.jicofo
 
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
+import org.jitsi.jicofo.conference.source.SourceSnapshot
 import org.jitsi.xmpp.extensions.jingle.ContentPacketExtension
 
 /**
  * Represent a Jingle offer consisting of a set of "content" extensions (which internally contain RTP payload
- * information, transport information, etc) and a set of "sources".
+ * information, transport information, etc) and a set of "sources". When [snapshot] is set, the offer also contains the
+ * sources in the snapshot.
  */
-data class Offer(val sources: ConferenceSourceMap, val contents: List<ContentPacketExtension>)
+data class Offer @JvmOverloads constructor(
+    val sources: ConferenceSourceMap,
+    val contents: List<ContentPacketExtension>,
+    val snapshot: SourceSnapshot? = null
+)
@@ -51,6 +51,16 @@ class AuthConfig private constructor() {
         "jicofo.authentication.enable-auto-login".from(newConfig)
     }
 
+    /** The maximum number of parsed tokens from conference requests to cache. */
+    val tokenCacheSize: Int by config {
+        "jicofo.authentication.token-cache.max-size".from(newConfig)
+    }
+
+    /** The maximum time to cache a parsed token for. Tokens are never cached past their expiration. */
+    val tokenCacheTtl: Duration by config {
+        "jicofo.authentication.token-cache.ttl".from(newConfig)
+    }
+
     val type: Type
         get() = if (enabled) typeProperty else Type.NONE
 
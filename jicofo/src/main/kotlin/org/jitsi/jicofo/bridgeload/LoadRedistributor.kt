@@ -210,9 +210,7 @@ class LoadRedistributor(private val conferenceStore: ConferenceStore, private va
         return bridgeSelector.get(bridgeFullJid) ?: throw BridgeNotFoundException(bridge)
     }
 
-    private fun Bridge.getConferences() = conferenceStore.getAllConferences().mapNotNull { conference ->
-        conference.bridges[this]?.participantCount?.let { Pair(conference, it) }
-    }.sortedByDescending { it.second }
+    private fun Bridge.getConferences() = conferenceStore.getConferences(this).toList().sortedByDescending { it.second }
 
     private fun doMove(bridge: Bridge, endpointsToMove: Map<JitsiMeetConference, Int>): MoveResult {
         logger.info("Moving endpoints from bridge ${bridge.jid}: $endpointsToMove")
@@ -18,6 +18,7 @@
 package org.jitsi.jicofo.conference
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
+import org.jitsi.jicofo.metrics.LatencyHistogram
 import org.jitsi.utils.stats.ConferenceSizeBuckets
 import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
 
@@ -119,5 +120,29 @@ class ConferenceMetrics {
             "participants_pairs",
             "The number of pairs of participants (the sum of n*(n-1) for each conference)"
         )
+
+        @JvmField
+        val conferenceRequestJoinTime = LatencyHistogram(
+            "conference_request_join_time_ms",
+            "Time from receiving a conference request until the conference MUC was joined"
+        )
+
+        @JvmField
+        val sessionInitiateTime = LatencyHistogram(
+            "participant_session_initiate_time_ms",
+            "Time from a member joining the conference MUC until the first session-initiate was sent to it"
+        )
+
+        @JvmField
+        val sessionAcceptTime = LatencyHistogram(
+            "participant_session_accept_time_ms",
+            "Time from sending a session-initiate until the session-accept was received"
+        )
+
+        @JvmField
+        val sourceAddFanOutTime = LatencyHistogram(
+            "source_add_fan_out_time_ms",
+            "Time to queue the sources added by a participant for signaling to the other participants in a conference"
+        )
     }
 }
@@ -27,6 +27,8 @@ import org.jitsi.jicofo.conference.JitsiMeetConferenceImpl.SenderCountExceededEx
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
 import org.jitsi.jicofo.conference.source.EndpointSourceSet
 import org.jitsi.jicofo.conference.source.EndpointSourceSet.Companion.fromJingle
+import org.jitsi.jicofo.conference.source.SourceFilter
+import org.jitsi.jicofo.conference.source.SourceSnapshot
 import org.jitsi.jicofo.conference.source.ValidationFailedException
 import org.jitsi.jicofo.metrics.IceRestartMetrics
 import org.jitsi.jicofo.util.Cancelable
@@ -77,6 +79,13 @@ open class Participant @JvmOverloads constructor(
 ) {
     private val createdInstant: Instant = clock.instant()
 
+    /** The value of [System.nanoTime] when this participant was created, i.e. when the member joined the MUC. */
+    private val createdNanos = System.nanoTime()
+
+    /** The value of [System.nanoTime] when the last session-initiate was sent, or 0 if none was sent. */
+    @Volatile
+    private var sessionInitiateSentNanos = 0L
+
     fun durationSeconds(): Double = Duration.between(createdInstant, clock.instant()).toMillis() / 1000.0
 
     /** The endpoint ID for this participant in the videobridge (Colibri) context. */
@@ -94,13 +103,21 @@ open class Participant @JvmOverloads constructor(
         jingleSession = null
     }
 
+    /**
+     * Release this participant's position in the conference's log of source changes. Called when the participant is
+     * removed from the conference for good, after which no sources are signaled to it.
+     */
+    fun closeSourceSignaling() = synchronized(sourceSignaling) { sourceSignaling.close() }
+
     /**
      * The layer which keeps track of which sources have been signaled to this participant.
      */
     private val sourceSignaling = SourceSignaling(
         audio = hasAudioSupport(),
         video = hasVideoSupport(),
-        ConferenceConfig.config.stripSimulcast()
+        stripSimulcast = ConferenceConfig.config.stripSimulcast(),
+        log = conference.sourceChanges,
+        endpointId = endpointId
     )
 
     /**
@@ -137,6 +154,14 @@ open class Participant @JvmOverloads constructor(
     var jingleSession: JingleSession? = null
         private set
 
+    /** Called when a session-initiate has been sent to this participant. */
+    fun sessionInitiateSent() {
+        if (sessionInitiateSentNanos == 0L) {
+            ConferenceMetrics.sessionInitiateTime.observeSince(createdNanos)
+        }
+        sessionInitiateSentNanos = System.nanoTime()
+    }
+
     /**
      * The task, if any, currently scheduled to signal queued remote sources.
      */
@@ -241,15 +266,16 @@ open class Participant @JvmOverloads constructor(
         get() = conference.getSourcesForParticipant(this)
 
     /**
-     * Add a set of remote sources, which are to be signaled to the remote side. The sources may be signaled
-     * immediately, or queued to be signaled later.
+     * Notify this participant that remote sources were added to or removed from the conference's
+     * [JitsiMeetConferenceImpl.sourceChanges] log. The changes may be signaled immediately, or queued to be signaled
+     * later.
      */
-    fun addRemoteSources(sources: ConferenceSourceMap) {
+    fun remoteSourcesChanged() {
         if (useSsrcRewriting()) {
             // Bridge will signal sources in this case.
+            synchronized(sourceSignaling) { sourceSignaling.skipPending() }
             return
         }
-        synchronized(sourceSignaling) { sourceSignaling.addSources(sources) }
         if (jingleSession?.isActive() == true) {
             synchronized(signalQueuedSourcesTaskSyncRoot) { scheduleSignalingOfQueuedSources() }
         }
@@ -265,6 +291,19 @@ open class Participant @JvmOverloads constructor(
         synchronized(sourceSignaling) { return sourceSignaling.reset(sources) }
     }
 
+    /**
+     * Reset the set of sources that have been signaled to the participant to the sources in [snapshot] (which must use
+     * [sourceFilter]) and [additional].
+     * @return the set of sources that should be signaled in the initial offer (after filtering is applied!)
+     */
+    fun resetSignaledSources(snapshot: SourceSnapshot, additional: ConferenceSourceMap): ConferenceSourceMap {
+        synchronized(sourceSignaling) { return sourceSignaling.reset(snapshot, additional) }
+    }
+
+    /** Which sources are signaled to this participant. */
+    val sourceFilter: SourceFilter
+        get() = sourceSignaling.sourceFilter
+
     /**
      * Schedule a task to signal all queued remote sources to the remote side. If a task is already scheduled, does
      * not schedule a new one (the existing task will send all latest queued sources).
@@ -297,22 +336,6 @@ open class Participant @JvmOverloads constructor(
         }
     }
 
-    /**
-     * Remove a set of remote sources, which are to be signaled as removed to the remote side. The sources may be
-     * signaled immediately, or queued to be signaled later.
-     */
-    fun removeRemoteSources(sources: ConferenceSourceMap) {
-        if (useSsrcRewriting()) {
-            // Bridge will signal sources in this case.
-            return
-        }
-        synchronized(sourceSignaling) { sourceSignaling.removeSources(sources) }
-        if (jingleSession?.isActive() == true) {
-            synchronized(signalQueuedSourcesTaskSyncRoot) { scheduleSignalingOfQueuedSources() }
-        }
-        // No need to schedule, the queued sources will be signaled when the session becomes active.
-    }
-
     /**
      * Signal any queued remote source modifications (either addition or removal) to the remote side.
      */
@@ -328,10 +351,11 @@ open class Participant @JvmOverloads constructor(
         }
         for ((action, sources) in modifiedSources) {
             logger.info("Sending a queued source-${action.toString().lowercase()}, sources=$sources")
+            val encodedSources = sourceSignaling.encode(sources)
             if (action === AddOrRemove.Add) {
-                jingleSession.addSource(sources)
+                jingleSession.addSource(encodedSources)
             } else if (action === AddOrRemove.Remove) {
-                jingleSession.removeSource(sources)
+                jingleSession.removeSource(encodedSources)
             }
         }
     }
@@ -448,6 +472,10 @@ open class Participant @JvmOverloads constructor(
             }
 
             logger.info("Received $action")
+            val sessionInitiateSent = sessionInitiateSentNanos
+            if (action == JingleAction.SESSION_ACCEPT && sessionInitiateSent != 0L) {
+                ConferenceMetrics.sessionAcceptTime.observeSince(sessionInitiateSent)
+            }
             val sourcesAdvertised = fromJingle(contents)
             if (!sourcesAdvertised.isEmpty() && this@Participant.chatMember.role == MemberRole.VISITOR) {
                 return StanzaError.from(StanzaError.Condition.forbidden, "sources not allowed for visitors").build()
@@ -0,0 +1,125 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.conference
+
+import org.jitsi.jicofo.conference.AddOrRemove.Add
+import org.jitsi.jicofo.conference.AddOrRemove.Remove
+import org.jitsi.jicofo.conference.source.ConferenceSourceMap
+import org.jitsi.jicofo.conference.source.EncodedSourcesCache
+
+/**
+ * A versioned log of the changes (additions and removals) to the sources of a conference, shared by all participants.
+ *
+ * Every change is recorded once, and each reader (see [SourceSignaling]) keeps a [Cursor] with the last version it
+ * has consumed. The entries hold references to the [ConferenceSourceMap]s passed to [add] and [remove], so the
+ * callers must not modify them afterwards. Entries which have been consumed by all live cursors are dropped.
+ *
+ * A reader which is no longer used must [Cursor.close] its cursor, otherwise the log keeps the entries it has not
+ * consumed.
+ */
+class SourceChangeLog {
+    /** The entries which have not yet been consumed by all cursors, with consecutive versions. */
+    private val entries = ArrayDeque<Entry>()
+
+    /** The version of the last entry added to the log. */
+    private var version = 0L
+
+    /** The cursors which have not been closed. */
+    private val cursors = HashSet<Cursor>()
+
+    /**
+     * The encodings of recently signaled changes. Readers with the same filtering get equal changes from the log, so
+     * each change is usually encoded once for all of them.
+     */
+    val encodings = EncodedSourcesCache()
+
+    /** Record that [sources] were added to the conference. */
+    fun add(sources: ConferenceSourceMap) = append(Add, sources)
+
+    /** Record that [sources] were removed from the conference. */
+    fun remove(sources: ConferenceSourceMap) = append(Remove, sources)
+
+    private fun append(action: AddOrRemove, sources: ConferenceSourceMap) {
+        if (sources.isEmpty()) return
+
+        synchronized(this) {
+            trim()
+            entries.addLast(Entry(++version, action, sources.unmodifiable))
+        }
+    }
+
+    /** Create a new [Cursor] positioned at the end of the log, i.e. with no pending entries. */
+    fun newCursor(): Cursor = synchronized(this) {
+        Cursor(version).also { cursors.add(it) }
+    }
+
+    /** The number of entries currently kept in the log. */
+    val size: Int
+        get() = synchronized(this) { entries.size }
+
+    /** Drop the entries which have already been consumed by all cursors. */
+    private fun trim() {
+        val minVersion = cursors.minOfOrNull { it.version } ?: version
+        while (entries.isNotEmpty() && entries.first().version <= minVersion) {
+            entries.removeFirst()
+        }
+    }
+
+    data class Entry(
+        val version: Long,
+        val action: AddOrRemove,
+        val sources: ConferenceSourceMap
+    )
+
+    /** A position in the log, owned by a single reader. */
+    inner class Cursor internal constructor(initialVersion: Long) {
+        /** The version of the last entry consumed with this cursor. */
+        @Volatile
+        var version: Long = initialVersion
+            private set
+
+        /** The number of entries which have been added since the last call to [advance] or [skip]. */
+        val pending: Long
+            get() = synchronized(this@SourceChangeLog) { this@SourceChangeLog.version - version }
+
+        /** Return the entries added since the last call to [advance] or [skip], and move to the end of the log. */
+        fun advance(): List<Entry> = synchronized(this@SourceChangeLog) {
+            // Versions are consecutive and the entries after the position of any live cursor are never trimmed.
+            val firstVersion = entries.firstOrNull()?.version ?: (this@SourceChangeLog.version + 1)
+            val from = (version + 1 - firstVersion).coerceIn(0, entries.size.toLong()).toInt()
+            entries.subList(from, entries.size).toList().also {
+                version = this@SourceChangeLog.version
+            }
+        }
+
+        /** Move to the end of the log, discarding any pending entries. */
+        fun skip() = synchronized(this@SourceChangeLog) {
+            version = this@SourceChangeLog.version
+        }
+
+        /**
+         * Stop tracking this cursor, so that the log no longer keeps the entries it has not consumed. The cursor must
+         * not be used afterwards.
+         */
+        fun close() = synchronized(this@SourceChangeLog) {
+            if (cursors.remove(this)) {
+                trim()
+            }
+        }
+    }
+}
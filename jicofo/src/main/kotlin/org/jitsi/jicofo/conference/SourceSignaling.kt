@@ -1,7 +1,7 @@
 /*
  * Jicofo, the Jitsi Conference Focus.
  *
- * Copyright @ 2022-Present 8x8, Inc.
+ * Copyright @ 2022 - present 8x8, Inc
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,49 +23,85 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import org.jitsi.jicofo.conference.AddOrRemove.Add
 import org.jitsi.jicofo.conference.AddOrRemove.Remove
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
-import org.jitsi.utils.MediaType
+import org.jitsi.jicofo.conference.source.EncodedSources
+import org.jitsi.jicofo.conference.source.EndpointSourceSet
+import org.jitsi.jicofo.conference.source.SourceFilter
+import org.jitsi.jicofo.conference.source.SourceSnapshot
+import org.jitsi.jicofo.conference.source.minus
+import org.jitsi.jicofo.conference.source.plus
 
 class SourceSignaling(
     audio: Boolean = true,
     video: Boolean = true,
-    private val stripSimulcast: Boolean = true
+    stripSimulcast: Boolean = true,
+    /**
+     * The log of changes to the conference sources. When it is shared between the participants of a conference each
+     * change is stored once, and [update] only looks at the changes since the previous update.
+     */
+    private val log: SourceChangeLog = SourceChangeLog(),
+    /** The ID of the endpoint to which sources are signaled. Changes to its own sources are ignored. */
+    private val endpointId: String? = null
 ) {
-    /** The set of media types supported by the endpoint. */
-    private val supportedMediaTypes: Set<MediaType> = buildSet {
-        if (audio) add(MediaType.AUDIO)
-        if (video) add(MediaType.VIDEO)
-    }
+    /** Which sources are signaled to the endpoint. */
+    val sourceFilter = SourceFilter(audio, video, stripSimulcast)
+
+    /** Our position in [log]. */
+    private val cursor = log.newCursor()
 
     /**
-     * The pre-filtered set of sources that have been signaled to the endpoint.
+     * The pre-filtered set of sources that have been signaled to the endpoint, by owner.
      * The actual set of sources that have been signaled are the result of [filter] applied to [signaledSources].
+     * The [EndpointSourceSet]s are immutable, and are usually shared with [log] and other participants.
      */
-    private var signaledSources = ConferenceSourceMap()
+    private val signaledSources = HashMap<String, EndpointSourceSet>()
+
+    /** Add [sourcesToAdd] to the log. Note that this is visible to all users of [log]. */
+    fun addSources(sourcesToAdd: ConferenceSourceMap) = log.add(sourcesToAdd)
+
+    /** Add the removal of [sourcesToRemove] to the log. Note that this is visible to all users of [log]. */
+    fun removeSources(sourcesToRemove: ConferenceSourceMap) = log.remove(sourcesToRemove)
 
     /**
-     * The pre-filtered set of updated sources, i.e. [signaledSources] with any requested changes made via [addSources]
-     * or [removeSources].
+     * Encode [sources] (returned by [update]) for signaling. The encoding is shared with other users of [log] which
+     * signal the same sources.
      */
-    private var updatedSources = ConferenceSourceMap()
+    fun encode(sources: ConferenceSourceMap): EncodedSources = log.encodings.get(sources)
 
-    fun addSources(sourcesToAdd: ConferenceSourceMap) {
-        updatedSources.add(sourcesToAdd)
-    }
+    /** Discard any changes in the log which have not yet been consumed with [update]. */
+    fun skipPending() = cursor.skip()
 
-    fun removeSources(sourcesToRemove: ConferenceSourceMap) {
-        updatedSources.remove(sourcesToRemove)
-    }
+    /** Stop reading changes from the log. This instance must not be used afterwards. */
+    fun close() = cursor.close()
 
     /**
-     * Update [signaledSources] to [updatedSources]. Return the set of operations ([Add] or [Remove]) needed to be
-     * signaled to the endpoint to accomplish the update.
+     * Update [signaledSources] with the changes from the log since the last update. Return the set of operations
+     * ([Add] or [Remove]) needed to be signaled to the endpoint to accomplish the update.
+     *
+     * Only the owners affected by the pending changes are examined.
      */
     fun update(): List<SourcesToAddOrRemove> {
-        val ss = signaledSources.filter()
-        val us = updatedSources.filter()
-        val sourcesToAdd = us - ss
-        val sourcesToRemove = ss - us
-        reset(updatedSources)
+        // The pre-filtered sources of each affected owner after applying all pending changes in order.
+        val updated = LinkedHashMap<String, EndpointSourceSet>()
+        cursor.advance().forEach { entry ->
+            entry.sources.forEach { (owner, sources) ->
+                if (owner != endpointId) {
+                    val current = updated[owner] ?: signaledSources[owner] ?: EndpointSourceSet.EMPTY
+                    updated[owner] = if (entry.action == Add) current + sources else current - sources
+                }
+            }
+        }
+
+        val sourcesToAdd = ConferenceSourceMap()
+        val sourcesToRemove = ConferenceSourceMap()
+        updated.forEach { (owner, sources) ->
+            val signaled = signaledSources[owner]?.filter() ?: EndpointSourceSet.EMPTY
+            val filtered = sources.filter()
+            (filtered - signaled).let { if (!it.isEmpty()) sourcesToAdd.add(owner, it) }
+            (signaled - filtered).let { if (!it.isEmpty()) sourcesToRemove.add(owner, it) }
+
+            if (sources.isEmpty()) signaledSources.remove(owner) else signaledSources[owner] = sources
+        }
+
         return buildList {
             if (sourcesToRemove.isNotEmpty()) {
                 add(SourcesToAddOrRemove(Remove, sourcesToRemove))
@@ -78,26 +114,53 @@ class SourceSignaling(
 
     val debugState: ObjectNode
         get() = JsonNodeFactory.instance.objectNode().apply {
-            set<ObjectNode>("signaled_sources", signaledSources.toJson())
-            set<ObjectNode>("sources", updatedSources.toJson())
+            set<ObjectNode>("signaled_sources", ConferenceSourceMap(signaledSources).toJson())
+            put("pending_changes", cursor.pending)
             set<ArrayNode>(
                 "supported_media_types",
-                JsonNodeFactory.instance.arrayNode().apply { supportedMediaTypes.forEach { add(it.toString()) } }
+                JsonNodeFactory.instance.arrayNode().apply {
+                    sourceFilter.supportedMediaTypes.forEach { add(it.toString()) }
+                }
             )
         }
 
+    /**
+     * Reset the set of sources signaled to the endpoint to [s], discarding any pending changes. Return the result of
+     * filtering [s].
+     */
     fun reset(s: ConferenceSourceMap): ConferenceSourceMap {
-        signaledSources = s.copy()
-        updatedSources = signaledSources.copy()
-        return s.filter()
+        cursor.skip()
+        signaledSources.clear()
+        s.forEach { (owner, sources) -> if (!sources.isEmpty()) signaledSources[owner] = sources }
+        return ConferenceSourceMap(
+            signaledSources.mapValues { it.value.filter() }.filterValues { !it.isEmpty() }
+        )
+    }
+
+    /**
+     * Reset the set of sources signaled to the endpoint to the sources in [snapshot] and [additional] (except the
+     * endpoint's own), discarding any pending changes. Return the result of filtering, which is shared with other
+     * endpoints using the same [snapshot] and must not be modified.
+     */
+    fun reset(snapshot: SourceSnapshot, additional: ConferenceSourceMap): ConferenceSourceMap {
+        require(snapshot.filter == sourceFilter) { "Snapshot filter ${snapshot.filter} does not match $sourceFilter" }
+        cursor.skip()
+        signaledSources.clear()
+        snapshot.unfiltered.forEach { (owner, sources) ->
+            if (owner != endpointId && !sources.isEmpty()) signaledSources[owner] = sources
+        }
+        additional.forEach { (owner, sources) ->
+            if (owner != endpointId) {
+                val merged = signaledSources[owner] + sources
+                if (!merged.isEmpty()) signaledSources[owner] = merged
+            }
+        }
+        return snapshot.offerSources(additional, endpointId)
     }
 
     /**
      * Filter out certain sources which should not be signaled to this endpoint. E.g. filter out video for endpoints
      * which don't support video.
      */
-    private fun ConferenceSourceMap.filter(): ConferenceSourceMap = copy().apply {
-        stripByMediaType(supportedMediaTypes)
-        if (stripSimulcast) stripSimulcast()
-    }
+    private fun EndpointSourceSet.filter(): EndpointSourceSet = sourceFilter.filter(this)
 }
@@ -31,7 +31,9 @@ import org.jitsi.utils.logging2.createChildLogger
  *
  * Synthetic sources are owned by the sender endpoint and survive the sender's unrelated source add/remove (they are
  * only removed when the request is dropped, the sender's audio source disappears, or the sender leaves — reflected via
- * [reapply], which the conference calls on the relevant events).
+ * [endpointChanged], which the conference calls on the relevant events). A change of one endpoint only reconciles
+ * that endpoint's synthetic sources, while a change of the requests (or colibri becoming ready) reconciles all of
+ * them.
  *
  * All side effects on the conference source map and colibri session manager happen here; the pure naming/SSRC logic
  * lives in [TranslationSourceManager].
@@ -63,11 +65,43 @@ class ConferenceTranslationManager(
         apply(colibriSessionManager, meetingId)
     }
 
-    /** Re-apply the last request map (e.g. after a participant left or removed a source, or once colibri is ready). */
+    /** Re-apply the last request map for all senders (e.g. once colibri is ready). */
     @Synchronized
     fun reapply(colibriSessionManager: ColibriSessionManager?, meetingId: String?) =
         apply(colibriSessionManager, meetingId)
 
+    /**
+     * Re-apply the last request map for [endpointId] only, after it joined, left, or added or removed sources. This
+     * does nothing unless [endpointId] is a translation sender (or was one).
+     */
+    @Synchronized
+    fun endpointChanged(endpointId: String, colibriSessionManager: ColibriSessionManager?, meetingId: String?) {
+        if (colibriSessionManager == null || meetingId == null) {
+            // Not ready yet; will be applied from JitsiMeetConferenceImpl once colibri is initialized.
+            return
+        }
+
+        val languages = requests[endpointId]
+        val before = sourceManager.sourcesFor(endpointId)
+        if (languages.isNullOrEmpty() && before.isEmpty()) {
+            return
+        }
+
+        val desired = sourceManager.updateSender(
+            endpointId,
+            languages,
+            if (languages.isNullOrEmpty()) null else baseName(endpointId),
+            ::ssrcInUse
+        )
+        val signaled = reconcile(endpointId, desired)
+        if (signaled) {
+            colibriSessionManager.updateParticipant(endpointId, sources = conferenceSources[endpointId])
+        }
+        if (signaled || desired != before) {
+            updateTranslator(colibriSessionManager, meetingId, if (signaled) setOf(endpointId) else emptySet())
+        }
+    }
+
     private fun apply(colibriSessionManager: ColibriSessionManager?, meetingId: String?) {
         if (colibriSessionManager == null || meetingId == null) {
             // Not ready yet; will be applied from JitsiMeetConferenceImpl once colibri is initialized.
@@ -77,25 +111,8 @@ class ConferenceTranslationManager(
         val result = sourceManager.update(requests, ::baseName, ::ssrcInUse)
 
         // Diff the desired synthetic sources against what is currently in the conference source map and apply the delta.
-        val affected = mutableSetOf<String>()
-        for (sender in conferenceSources.unmodifiable().keys.toList()) {
-            val existingSynthetic = conferenceSources[sender]?.sources?.filter { it.synthetic }?.toSet() ?: emptySet()
-            val desired = result.sourcesBySender[sender] ?: emptySet()
-            val toRemove = existingSynthetic - desired
-            val toAdd = desired - existingSynthetic
-
-            try {
-                if (toRemove.isNotEmpty()) {
-                    conferenceSources.tryToRemove(sender, EndpointSourceSet(toRemove))
-                    affected += sender
-                }
-                if (toAdd.isNotEmpty()) {
-                    conferenceSources.tryToAdd(sender, EndpointSourceSet(toAdd))
-                    affected += sender
-                }
-            } catch (e: Exception) {
-                logger.error("Failed to update synthetic translation sources for $sender", e)
-            }
+        val affected = conferenceSources.unmodifiable().keys.toList().filter { sender ->
+            reconcile(sender, result.sourcesBySender[sender] ?: emptySet())
         }
 
         // Signal the updated source sets to the bridges.
@@ -103,8 +120,45 @@ class ConferenceTranslationManager(
             colibriSessionManager.updateParticipant(sender, sources = conferenceSources[sender])
         }
 
-        // Enable/update/disable the translator connect(s). The colibri layer decides placement (per-source or
-        // single-bridge) based on configuration.
+        updateTranslator(colibriSessionManager, meetingId, affected)
+    }
+
+    /**
+     * Replace the synthetic sources of [sender] in the conference source map with [desired].
+     *
+     * @return true if the sources of [sender] changed and need to be signaled to the bridges.
+     */
+    private fun reconcile(sender: String, desired: Set<Source>): Boolean {
+        val existingSynthetic = conferenceSources[sender]?.sources?.filter { it.synthetic }?.toSet() ?: return false
+        val toRemove = existingSynthetic - desired
+        val toAdd = desired - existingSynthetic
+
+        var changed = false
+        try {
+            if (toRemove.isNotEmpty()) {
+                conferenceSources.tryToRemove(sender, EndpointSourceSet(toRemove))
+                changed = true
+            }
+            if (toAdd.isNotEmpty()) {
+                conferenceSources.tryToAdd(sender, EndpointSourceSet(toAdd))
+                changed = true
+            }
+        } catch (e: Exception) {
+            logger.error("Failed to update synthetic translation sources for $sender", e)
+        }
+        return changed
+    }
+
+    /**
+     * Enable/update/disable the translator connect(s). The colibri layer decides placement (per-source or
+     * single-bridge) based on configuration.
+     */
+    private fun updateTranslator(
+        colibriSessionManager: ColibriSessionManager,
+        meetingId: String,
+        signaled: Collection<String>
+    ) {
+        val result = sourceManager.sources(::baseName)
         val url = if (result.isEmpty) null else TranslationConfig.config.getUrl(meetingId)
         val translationRequests = result.sourcesBySender.mapNotNull { (sender, sources) ->
             val baseName = baseName(sender) ?: return@mapNotNull null
@@ -114,7 +168,7 @@ class ConferenceTranslationManager(
 
         logger.info(
             "Applied audio translation: requests=$requests, translationRequests=$translationRequests, " +
-                "signaledBridgesFor=$affected, translator=${if (url != null) "enabled" else "disabled"}"
+                "signaledBridgesFor=$signaled, translator=${if (url != null) "enabled" else "disabled"}"
         )
     }
 
@@ -126,8 +180,9 @@ class ConferenceTranslationManager(
         return audio.name ?: Source.nameForIdAndMediaType(senderId, MediaType.AUDIO, 0)
     }
 
-    /** Whether an SSRC is already used by a non-synthetic source in the conference. */
-    private fun ssrcInUse(ssrc: Long): Boolean = conferenceSources.unmodifiable().values.any { set ->
-        set.sources.any { !it.synthetic && it.ssrc == ssrc }
-    }
+    /**
+     * Whether an SSRC is already used in the conference. Synthetic sources are included, which the
+     * [TranslationSourceManager] avoids anyway.
+     */
+    private fun ssrcInUse(ssrc: Long): Boolean = conferenceSources.isSsrcInUse(ssrc)
 }
@@ -55,6 +55,9 @@ class TranslationSourceManager(
     /** sender endpoint id -> (language -> synthetic source). */
     private val allocated = mutableMapOf<String, MutableMap<String, Source>>()
 
+    /** The SSRCs of all sources in [allocated], so that collisions are checked in constant time. */
+    private val allocatedSsrcs = mutableSetOf<Long>()
+
     /**
      * Recompute the synthetic sources for [requests].
      *
@@ -70,52 +73,87 @@ class TranslationSourceManager(
         baseNameResolver: (String) -> String?,
         ssrcInUse: (Long) -> Boolean
     ): TranslationSources {
-        val next = mutableMapOf<String, MutableMap<String, Source>>()
-
         for ((sender, languages) in requests) {
-            if (languages.isEmpty()) continue
-            val baseName = baseNameResolver(sender) ?: continue
-            val existingForSender = allocated[sender]
-            val nextForSender = mutableMapOf<String, Source>()
-
-            for (language in languages.toSet()) {
-                val existing = existingForSender?.get(language)
-                nextForSender[language] = if (existing != null) {
-                    // Keep the SSRC stable; refresh the name in case the base source name changed.
-                    val expectedName = nameFor(baseName, language)
-                    if (existing.name == expectedName) existing else existing.copy(name = expectedName)
-                } else {
-                    Source(
-                        ssrc = mintSsrc(ssrcInUse, next),
-                        mediaType = MediaType.AUDIO,
-                        name = nameFor(baseName, language),
-                        synthetic = true
-                    )
-                }
+            val baseName = if (languages.isEmpty()) null else baseNameResolver(sender)
+            updateSender(sender, languages, baseName, ssrcInUse)
+        }
+        // Released last, so that SSRCs minted above don't reuse those of the dropped senders.
+        (allocated.keys - requests.keys).forEach { release(it) }
+
+        return sources(baseNameResolver)
+    }
+
+    /**
+     * Recompute the synthetic sources of a single sender, leaving the other senders untouched.
+     *
+     * @param languages the languages requested for [sender], or null if there is no request for it.
+     * @param baseName the base (first audio) source name of [sender], or null if it is not present or has no audio
+     * source.
+     * @return the synthetic sources of [sender] (empty if it has none).
+     */
+    @Synchronized
+    fun updateSender(
+        sender: String,
+        languages: List<String>?,
+        baseName: String?,
+        ssrcInUse: (Long) -> Boolean
+    ): Set<Source> {
+        if (languages.isNullOrEmpty() || baseName == null) {
+            release(sender)
+            return emptySet()
+        }
+
+        val existingForSender = allocated[sender]
+        val nextForSender = mutableMapOf<String, Source>()
+        for (language in languages.toSet()) {
+            val existing = existingForSender?.get(language)
+            nextForSender[language] = if (existing != null) {
+                // Keep the SSRC stable; refresh the name in case the base source name changed.
+                val expectedName = nameFor(baseName, language)
+                if (existing.name == expectedName) existing else existing.copy(name = expectedName)
+            } else {
+                Source(
+                    ssrc = mintSsrc(ssrcInUse).also { allocatedSsrcs.add(it) },
+                    mediaType = MediaType.AUDIO,
+                    name = nameFor(baseName, language),
+                    synthetic = true
+                )
             }
-            next[sender] = nextForSender
         }
+        existingForSender?.forEach { (language, source) ->
+            if (language !in nextForSender) allocatedSsrcs.remove(source.ssrc)
+        }
+        allocated[sender] = nextForSender
+
+        return nextForSender.values.toSet()
+    }
 
-        allocated.clear()
-        allocated.putAll(next)
+    /** The synthetic sources currently allocated for [sender]. */
+    @Synchronized
+    fun sourcesFor(sender: String): Set<Source> = allocated[sender]?.values?.toSet() ?: emptySet()
 
-        val sourcesBySender = next.mapValues { (_, byLang) -> byLang.values.toSet() }
-        val requestNames = next.values.flatMap { it.values }.map { it.name!! }.toSet()
-        val exportNames = next.keys.mapNotNull { baseNameResolver(it) }.toSet()
+    /** The synthetic sources currently allocated for all senders. */
+    @Synchronized
+    fun sources(baseNameResolver: (String) -> String?): TranslationSources {
+        val sourcesBySender = allocated.mapValues { (_, byLang) -> byLang.values.toSet() }
+        val requestNames = allocated.values.flatMap { it.values }.map { it.name!! }.toSet()
+        val exportNames = allocated.keys.mapNotNull { baseNameResolver(it) }.toSet()
 
         return TranslationSources(sourcesBySender, requestNames, exportNames)
     }
 
     /** All synthetic SSRCs currently allocated. */
     @Synchronized
-    fun allocatedSsrcs(): Set<Long> = allocated.values.flatMap { it.values }.map { it.ssrc }.toSet()
+    fun allocatedSsrcs(): Set<Long> = allocatedSsrcs.toSet()
+
+    private fun release(sender: String) {
+        allocated.remove(sender)?.values?.forEach { allocatedSsrcs.remove(it.ssrc) }
+    }
 
-    private fun mintSsrc(ssrcInUse: (Long) -> Boolean, next: Map<String, Map<String, Source>>): Long {
-        val usedByNext = next.values.flatMap { it.values }.map { it.ssrc }.toSet()
-        val usedByAllocated = allocated.values.flatMap { it.values }.map { it.ssrc }.toSet()
+    private fun mintSsrc(ssrcInUse: (Long) -> Boolean): Long {
         repeat(MAX_MINT_ATTEMPTS) {
             val candidate = ssrcGenerator() and 0xFFFFFFFFL
-            if (candidate != 0L && !ssrcInUse(candidate) && candidate !in usedByNext && candidate !in usedByAllocated) {
+            if (candidate != 0L && candidate !in allocatedSsrcs && !ssrcInUse(candidate)) {
                 return candidate
             }
         }
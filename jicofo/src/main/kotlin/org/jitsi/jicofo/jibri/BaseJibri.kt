@@ -36,6 +36,7 @@ import org.jitsi.xmpp.extensions.jibri.JibriIq.Action
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 import java.lang.Exception
+import java.util.concurrent.CompletableFuture
 import kotlin.use
 import org.jitsi.jicofo.util.ErrorResponse.create as error
 
@@ -72,16 +73,21 @@ abstract class BaseJibri internal constructor(
                     doHandleIQRequest(request.iq)
                 }
             } catch (e: Exception) {
-                logger.warn("Failed to handle request: ${request.iq}", e)
-                request.connection.tryToSendStanza(
-                    IQ.createErrorResponse(request.iq, StanzaError.Condition.internal_server_error)
-                )
-                span.setStatus(StatusCode.ERROR, e.message ?: "")
-                null
-            } finally {
+                CompletableFuture.failedFuture(e)
+            }
+            // A start request completes once a Jibri instance has responded, without holding up the room's queue.
+            response.whenComplete { iq, e ->
+                if (e != null) {
+                    logger.warn("Failed to handle request: ${request.iq}", e)
+                    request.connection.tryToSendStanza(
+                        IQ.createErrorResponse(request.iq, StanzaError.Condition.internal_server_error)
+                    )
+                    span.setStatus(StatusCode.ERROR, e.message ?: "")
+                } else {
+                    request.connection.tryToSendStanza(iq)
+                }
                 span.end()
             }
-            response?.let { request.connection.tryToSendStanza(it) }
         }
         AcceptedWithNoResponse()
     } else {
@@ -114,9 +120,10 @@ abstract class BaseJibri internal constructor(
      * [.getJibriSessionForMeetIq] returns `null`. The implementing class should allocate and store a new
      * [JibriSession]. Once a [JibriSession] is created it must be started by the implementing class.
      * @param iq the start request coming from a Jitsi Meet participant.
-     * @return the response to be sent. It should be 'result' if a new session was started or 'error' otherwise.
+     * @return a future with the response to be sent. It should be 'result' if a new session was started or 'error'
+     * otherwise.
      */
-    protected abstract fun handleStartRequest(iq: JibriIq): IQ
+    protected abstract fun handleStartRequest(iq: JibriIq): CompletableFuture<IQ>
 
     /**
      * Checks if the given [JibriIq] should be accepted by this instance. The IQ may originate either from a
@@ -145,30 +152,30 @@ abstract class BaseJibri internal constructor(
     protected abstract fun acceptType(packet: JibriIq): Boolean
 
     /**
-     * Handles an incoming Jibri IQ from either a jibri instance or a participant in the conference. This may block
-     * waiting for a response over the network.
+     * Handles an incoming Jibri IQ from either a jibri instance or a participant in the conference. This does not
+     * block, a start request completes when a Jibri instance responds.
      *
-     * @return the IQ to be sent back as a response ('result' or 'error').
+     * @return a future with the IQ to be sent back as a response ('result' or 'error').
      */
-    private fun doHandleIQRequest(iq: JibriIq): IQ {
+    private fun doHandleIQRequest(iq: JibriIq): CompletableFuture<IQ> {
         logger.debug { "Jibri request. IQ: ${iq.toXML()}" }
 
         // Coming from a Jibri instance.
         val session = getJibriSessionForMeetIq(iq)
         if (session != null && session.accept(iq)) {
-            return session.processJibriIqRequestFromJibri(iq)
+            return CompletableFuture.completedFuture(session.processJibriIqRequestFromJibri(iq))
         }
 
         if (ConferenceConfig.config.enableModeratorChecks) {
             verifyModeratorRole(iq)?.let {
                 logger.warn("Ignored Jibri request from non-moderator.")
-                return IQ.createErrorResponse(iq, it)
+                return CompletableFuture.completedFuture(IQ.createErrorResponse(iq, it))
             }
         }
 
-        return when (iq.action) {
+        val response = when (iq.action) {
             Action.START -> when (session) {
-                null -> handleStartRequest(iq)
+                null -> return handleStartRequest(iq)
                 else -> {
                     logger.info("Will not start a Jibri session, a session is already active")
                     error(
@@ -189,9 +196,10 @@ abstract class BaseJibri internal constructor(
                 }
             }
             Action.UNDEFINED, null -> {
-                return error(iq, StanzaError.Condition.bad_request, "undefined action ${iq.toXML()}")
+                error(iq, StanzaError.Condition.bad_request, "undefined action ${iq.toXML()}")
             }
         }
+        return CompletableFuture.completedFuture(response)
     }
 
     private fun verifyModeratorRole(iq: JibriIq): StanzaError? {
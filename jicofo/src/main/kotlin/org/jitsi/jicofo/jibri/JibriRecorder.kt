@@ -20,7 +20,6 @@ package org.jitsi.jicofo.jibri
 import org.apache.commons.lang3.StringUtils
 import org.jitsi.jicofo.conference.JitsiMeetConferenceImpl
 import org.jitsi.jicofo.jibri.JibriConfig.Companion.config
-import org.jitsi.jicofo.jibri.JibriSession.StartException
 import org.jitsi.jicofo.jibri.JibriSession.StartException.AllBusy
 import org.jitsi.jicofo.jibri.JibriSession.StartException.NotAvailable
 import org.jitsi.utils.logging2.Logger
@@ -31,6 +30,9 @@ import org.jitsi.xmpp.extensions.jibri.RecordingStatus
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletableFuture.completedFuture
+import java.util.concurrent.CompletionException
 import org.jitsi.jicofo.util.ErrorResponse.create as error
 
 /**
@@ -55,6 +57,7 @@ class JibriRecorder(
     /**
      * The current recording session or <tt>null</tt>.
      */
+    @Volatile
     private var jibriSession: JibriSession? = null
 
     fun shutdown() {
@@ -84,39 +87,43 @@ class JibriRecorder(
 
     /**
      * Handles a request to start a jibri session coming from a client in the conference and returns the response to
-     * be sent.
+     * be sent, once a Jibri instance has accepted the request or no instance could be started.
      *
      * [BaseJibri] has checked that there is no recording session currently active.
      */
-    override fun handleStartRequest(iq: JibriIq): IQ {
+    override fun handleStartRequest(iq: JibriIq): CompletableFuture<IQ> {
         val streamIdIsEmpty = StringUtils.isBlank(iq.streamId)
 
         return if (streamIdIsEmpty && iq.recordingMode != RecordingMode.FILE) {
             // Stream ID is mandatory unless we're recording to a file.
-            error(iq, StanzaError.Condition.bad_request, "Stream ID is empty or undefined")
+            completedFuture(error(iq, StanzaError.Condition.bad_request, "Stream ID is empty or undefined"))
         } else if (!streamIdIsEmpty && iq.recordingMode == RecordingMode.FILE) {
             // Stream ID should not be provided with requests to record to a file.
-            error(iq, StanzaError.Condition.bad_request, "Stream ID is provided for a FILE recording.")
+            completedFuture(error(iq, StanzaError.Condition.bad_request, "Stream ID is provided for a FILE recording."))
         } else {
             val sessionId = UUID.randomUUID().toString()
-            try {
-                val jibriSession = JibriSession(
-                    this,
-                    conference.roomName,
-                    iq.from,
-                    config.pendingTimeout.seconds,
-                    config.numRetries,
-                    jibriDetector,
-                    false, null, iq.displayName, iq.streamId, iq.youtubeBroadcastId, sessionId, iq.appData,
-                    conference.isRtcStatsEnabled,
-                    logger
-                )
-                this.jibriSession = jibriSession
-                jibriSession.start()
-                logger.info("Started Jibri session")
-                JibriIq.createResult(iq, sessionId)
-            } catch (exc: StartException) {
-                jibriSession = null
+            val jibriSession = JibriSession(
+                this,
+                conference.roomName,
+                iq.from,
+                config.pendingTimeout.seconds,
+                config.numRetries,
+                jibriDetector,
+                false, null, iq.displayName, iq.streamId, iq.youtubeBroadcastId, sessionId, iq.appData,
+                conference.isRtcStatsEnabled,
+                logger
+            )
+            this.jibriSession = jibriSession
+            jibriSession.start().handle { _, e ->
+                if (e == null) {
+                    logger.info("Started Jibri session")
+                    return@handle JibriIq.createResult(iq, sessionId)
+                }
+                val exc = (e as? CompletionException)?.cause ?: e
+                // The session may have been replaced in the meantime.
+                if (this.jibriSession === jibriSession) {
+                    this.jibriSession = null
+                }
                 when (exc) {
                     is AllBusy -> {
                         logger.info("Failed to start a Jibri session, all Jibris were busy")
@@ -20,7 +20,6 @@ package org.jitsi.jicofo.jibri
 import org.apache.commons.lang3.StringUtils
 import org.jitsi.jicofo.conference.JitsiMeetConferenceImpl
 import org.jitsi.jicofo.jibri.JibriConfig.Companion.config
-import org.jitsi.jicofo.jibri.JibriSession.StartException
 import org.jitsi.jicofo.jibri.JibriSession.StartException.AllBusy
 import org.jitsi.jicofo.jibri.JibriSession.StartException.NotAvailable
 import org.jitsi.utils.logging2.Logger
@@ -29,7 +28,10 @@ import org.jitsi.xmpp.extensions.jibri.SipCallState
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 import java.util.UUID
-import kotlin.collections.HashMap
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletableFuture.completedFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
 import org.jitsi.jicofo.util.ErrorResponse.create as error
 
 /**
@@ -52,7 +54,7 @@ class JibriSipGateway(
     /**
      * The SIP [JibriSession]s mapped by the SIP address.
      */
-    private val sipSessions: MutableMap<String, JibriSession> = HashMap()
+    private val sipSessions: MutableMap<String, JibriSession> = ConcurrentHashMap()
 
     /**
      * Accepts only [JibriIq] with a SIP address (packets without one are handled by JibriRecorder).
@@ -71,7 +73,7 @@ class JibriSipGateway(
     override val jibriSessions: List<JibriSession>
         get() = ArrayList(sipSessions.values)
 
-    override fun handleStartRequest(iq: JibriIq): IQ = if (StringUtils.isNotBlank(iq.sipAddress)) {
+    override fun handleStartRequest(iq: JibriIq): CompletableFuture<IQ> = if (StringUtils.isNotBlank(iq.sipAddress)) {
         val sessionId = UUID.randomUUID().toString()
         val jibriSession = JibriSession(
             this,
@@ -87,14 +89,15 @@ class JibriSipGateway(
             logger
         )
         sipSessions[iq.sipAddress] = jibriSession
-        try {
-            jibriSession.start()
-            logger.info("Started Jibri session")
-            JibriIq.createResult(iq, sessionId)
-        } catch (exc: StartException) {
+        jibriSession.start().handle { _, e ->
+            if (e == null) {
+                logger.info("Started Jibri session")
+                return@handle JibriIq.createResult(iq, sessionId)
+            }
+            val exc = (e as? CompletionException)?.cause ?: e
             val reason = exc.message
             logger.warn("Failed to start a Jibri session: $reason", exc)
-            sipSessions.remove(iq.sipAddress)
+            sipSessions.remove(iq.sipAddress, jibriSession)
             when (exc) {
                 is AllBusy -> error(iq, StanzaError.Condition.resource_constraint, "all Jibris are busy")
                 is NotAvailable -> error(iq, StanzaError.Condition.service_unavailable, "no Jibris available")
@@ -103,7 +106,7 @@ class JibriSipGateway(
         }
     } else {
         // Bad request - no SIP address
-        error(iq, StanzaError.Condition.bad_request, "Stream ID is empty or undefined")
+        completedFuture(error(iq, StanzaError.Condition.bad_request, "Stream ID is empty or undefined"))
     }
 
     override fun onSessionStateChanged(
@@ -24,6 +24,7 @@ import org.jitsi.metaconfig.config
 import org.jitsi.metaconfig.optionalconfig
 import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.impl.JidCreate
+import java.time.Duration
 
 class JigasiConfig private constructor() {
     val breweryJid: EntityBareJid? by optionalconfig {
@@ -43,6 +44,31 @@ class JigasiConfig private constructor() {
         "jicofo.jigasi.use-private-address-connectivity".from(newConfig)
     }
 
+    /**
+     * When set, a dial request which has not been answered by the first jigasi instance within this time is also sent
+     * to a second instance.
+     */
+    val hedgeDelay: Duration?
+        get() = if (hedgingEnabled) hedgingDelay else null
+
+    private val hedgingEnabled: Boolean by config {
+        "jicofo.jigasi.dial-hedging.enabled".from(newConfig)
+    }
+
+    private val hedgingDelay: Duration by config {
+        "jicofo.jigasi.dial-hedging.delay".from(newConfig)
+    }
+
+    /** How long to avoid a jigasi instance which failed a request for. */
+    val failurePenalty: Duration by config {
+        "jicofo.jigasi.failure-penalty".from(newConfig)
+    }
+
+    /** Requests sent to an instance within this interval are added to the number of participants it reports. */
+    val participantRampupInterval: Duration by config {
+        "jicofo.jigasi.participant-rampup-interval".from(newConfig)
+    }
+
     fun xmppConnectionName() = xmppConnectionName
 
     companion object {
@@ -48,8 +48,22 @@ open class JigasiDetector(
 ) {
     val xmppConnection = xmppProvider.xmppConnection
 
-    override fun onInstanceStatusChanged(jid: EntityFullJid, status: ColibriStatsExtension) {}
-    override fun notifyInstanceOffline(jid: Jid) {}
+    /** The outcome of requests sent to each instance, used to rank instances when selecting one. */
+    val instanceStats = JigasiInstanceStats()
+
+    /** The decoded status of the instances. Replaced when an instance's presence changes. */
+    @Volatile
+    private var index = JigasiInstanceIndex()
+
+    override fun onInstanceStatusChanged(jid: EntityFullJid, status: ColibriStatsExtension) {
+        val instance = JigasiInstance(jid, status)
+        synchronized(this) { index = index.with(instance) }
+    }
+
+    override fun notifyInstanceOffline(jid: Jid) {
+        synchronized(this) { index = index.without(jid) }
+        instanceStats.remove(jid)
+    }
 
     /**
      * Selects a jigasi instance which supports transcription.
@@ -59,7 +73,7 @@ open class JigasiDetector(
      * constraints (are not excluded and support transcription).
      */
     fun selectTranscriber(exclude: List<Jid> = emptyList(), preferredRegions: Collection<String> = emptySet()): Jid? =
-        selectJigasi(instances, exclude, preferredRegions, localRegion, transcriber = true)
+        selectJigasi(index, instanceStats, exclude, preferredRegions, localRegion, transcriber = true)
 
     /**
      * Selects a jigasi instance which supports SIP.
@@ -69,7 +83,7 @@ open class JigasiDetector(
      * constraints (are not excluded and support SIP).
      */
     fun selectSipJigasi(exclude: List<Jid> = emptyList(), preferredRegions: Collection<String> = emptySet()): Jid? =
-        selectJigasi(instances, exclude, preferredRegions, localRegion, transcriber = false)
+        selectJigasi(index, instanceStats, exclude, preferredRegions, localRegion, transcriber = false)
 
     val stats: ObjectNode
         get() = JsonNodeFactory.instance.objectNode().apply {
@@ -81,22 +95,24 @@ open class JigasiDetector(
     val debugState: ObjectNode
         get() = JsonNodeFactory.instance.objectNode().also { debugState ->
             debugState.put("brewery_jid", breweryJid.toString())
-            instances.forEach { instance ->
+            index.instances.values.forEach { instance ->
                 val instanceJson = JsonNodeFactory.instance.objectNode().apply {
-                    put("supports_sip", instance.supportsSip())
-                    put("supports_transcription", instance.supportsTranscription())
-                    put("is_in_graceful_shutdown", instance.isInGracefulShutdown())
-                    put("participants", instance.getParticipantCount())
-                    put("region", instance.getRegion() ?: "null")
+                    put("supports_sip", instance.supportsSip)
+                    put("supports_transcription", instance.supportsTranscription)
+                    put("is_in_graceful_shutdown", instance.inGracefulShutdown)
+                    put("participants", instance.participants)
+                    put("region", instance.region ?: "null")
+                    instanceStats.toJson(instance.jid)?.let { set<ObjectNode>("requests", it) }
                 }
                 debugState.set<ObjectNode>(instance.jid.resourceOrEmpty.toString(), instanceJson)
             }
         }
 
     fun updateMetrics() {
-        sipCount.set(getInstanceCount { it.supportsSip() }.toLong())
-        sipInGracefulShutdownCount.set(getInstanceCount { it.supportsSip() && it.isInGracefulShutdown() }.toLong())
-        transcriberCount.set(getInstanceCount { it.supportsTranscription() }.toLong())
+        val instances = index.instances.values
+        sipCount.set(instances.count { it.supportsSip }.toLong())
+        sipInGracefulShutdownCount.set(instances.count { it.supportsSip && it.inGracefulShutdown }.toLong())
+        transcriberCount.set(instances.count { it.supportsTranscription }.toLong())
     }
 
     /**
@@ -105,35 +121,42 @@ open class JigasiDetector(
     companion object {
         @JvmStatic
         private fun selectJigasi(
-            instances: List<BaseBrewery<ColibriStatsExtension>.BrewInstance>,
+            index: JigasiInstanceIndex,
+            stats: JigasiInstanceStats,
             exclude: List<Jid> = emptyList(),
             preferredRegions: Collection<String> = emptyList(),
             localRegion: String? = null,
             transcriber: Boolean = false
         ): Jid? {
-            val availableInstances = instances
-                .filter { !exclude.contains(it.jid) }
-                .filter { !it.isInGracefulShutdown() }
-                .filter { if (transcriber) it.supportsTranscription() else it.supportsSip() }
+            fun JigasiInstance.isCandidate() = !exclude.contains(jid) &&
+                !inGracefulShutdown &&
+                (if (transcriber) supportsTranscription else supportsSip)
+
+            // Avoid instances which recently failed a request, unless there are no others.
+            val avoidPenalized = index.instances.values.any { it.isCandidate() && !stats.isPenalized(it.jid) }
+            fun JigasiInstance.isAvailable() = isCandidate() && !(avoidPenalized && stats.isPenalized(jid))
+
+            // The load is corrected for requests sent since the instance last reported its participants, so that a
+            // burst of requests is not sent to the same instance.
+            val byLoad = compareBy<JigasiInstance>(
+                { it.participants + stats.recentRequests(it.jid) },
+                { stats.responseTimeMs(it.jid) }
+            )
+            fun leastLoaded(regions: Iterable<String?>): Jid? = regions.asSequence()
+                .flatMap { index.byRegion[it].orEmpty() }
+                .filter { it.isAvailable() }
+                .minWithOrNull(byLoad)?.jid
 
             // Try to match the preferred region.
-            availableInstances.filter { it.isInRegion(*preferredRegions.toTypedArray()) }.let {
-                if (it.isNotEmpty()) return it.leastLoaded()?.jid
-            }
+            leastLoaded(preferredRegions)?.let { return it }
+
             // Try to match the preferred region groups.
-            val extendedPreferredRegions = preferredRegions.flatMap { region ->
-                BridgeConfig.config.getRegionGroup(region)
-            }
-            availableInstances.filter { it.isInRegion(*extendedPreferredRegions.toTypedArray()) }.let {
-                if (it.isNotEmpty()) return it.leastLoaded()?.jid
-            }
+            leastLoaded(preferredRegions.flatMap { BridgeConfig.config.getRegionGroup(it) })?.let { return it }
 
             // Otherwise try to match the local region.
-            availableInstances.filter { it.isInRegion(localRegion) }.let {
-                if (it.isNotEmpty()) return it.leastLoaded()?.jid
-            }
+            leastLoaded(listOf(localRegion))?.let { return it }
 
-            return availableInstances.leastLoaded()?.jid
+            return leastLoaded(index.byRegion.keys)
         }
 
         val sipCount = JicofoMetricsContainer.instance.registerLongGauge(
@@ -150,18 +173,3 @@ open class JigasiDetector(
         )
     }
 }
-
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.isInGracefulShutdown(): Boolean =
-    java.lang.Boolean.parseBoolean(status.getValueAsString(ColibriStatsExtension.SHUTDOWN_IN_PROGRESS))
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.supportsTranscription(): Boolean =
-    java.lang.Boolean.parseBoolean(status.getValueAsString(ColibriStatsExtension.SUPPORTS_TRANSCRIPTION))
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.supportsSip(): Boolean =
-    java.lang.Boolean.parseBoolean(status.getValueAsString(ColibriStatsExtension.SUPPORTS_SIP))
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.isInRegion(vararg regions: String?): Boolean =
-    regions.contains(this.getRegion())
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.getParticipantCount(): Int =
-    status.getValueAsInt(ColibriStatsExtension.PARTICIPANTS) ?: 0
-private fun BaseBrewery<ColibriStatsExtension>.BrewInstance.getRegion(): String? =
-    status.getValueAsString(ColibriStatsExtension.REGION)
-private fun List<BaseBrewery<ColibriStatsExtension>.BrewInstance>.leastLoaded() =
-    minByOrNull { it.getParticipantCount() }
@@ -0,0 +1,57 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.jigasi
+
+import org.jitsi.xmpp.extensions.colibri.ColibriStatsExtension
+import org.jxmpp.jid.EntityFullJid
+import org.jxmpp.jid.Jid
+
+/** The status of a jigasi instance, decoded once from the [ColibriStatsExtension] in its presence. */
+data class JigasiInstance(
+    val jid: EntityFullJid,
+    val region: String?,
+    val participants: Int,
+    val supportsSip: Boolean,
+    val supportsTranscription: Boolean,
+    val inGracefulShutdown: Boolean
+) {
+    constructor(jid: EntityFullJid, status: ColibriStatsExtension) : this(
+        jid,
+        region = status.getValueAsString(ColibriStatsExtension.REGION),
+        participants = status.getValueAsInt(ColibriStatsExtension.PARTICIPANTS) ?: 0,
+        supportsSip = status.getBoolean(ColibriStatsExtension.SUPPORTS_SIP),
+        supportsTranscription = status.getBoolean(ColibriStatsExtension.SUPPORTS_TRANSCRIPTION),
+        inGracefulShutdown = status.getBoolean(ColibriStatsExtension.SHUTDOWN_IN_PROGRESS)
+    )
+}
+
+/**
+ * An immutable index of [JigasiInstance]s. A new index is created for each presence update, which is rare compared to
+ * selections.
+ */
+internal class JigasiInstanceIndex(val instances: Map<EntityFullJid, JigasiInstance> = emptyMap()) {
+    /** The instances by region. Instances which don't report a region are indexed with a `null` region. */
+    val byRegion: Map<String?, List<JigasiInstance>> = instances.values.groupBy { it.region }
+
+    fun with(instance: JigasiInstance) = JigasiInstanceIndex(instances + (instance.jid to instance))
+
+    fun without(jid: Jid) =
+        if (jid is EntityFullJid && instances.containsKey(jid)) JigasiInstanceIndex(instances - jid) else this
+}
+
+private fun ColibriStatsExtension.getBoolean(name: String) = java.lang.Boolean.parseBoolean(getValueAsString(name))
@@ -0,0 +1,114 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.jigasi
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.jitsi.utils.stats.RateTracker
+import org.jxmpp.jid.Jid
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The outcome of the dial requests sent to each jigasi instance. Instances which failed a request within the last
+ * [failurePenalty] are avoided by [JigasiDetector] when other instances are available, and response times are used to
+ * choose between otherwise equal instances. Requests sent within the last [rampupInterval] are added to the load
+ * reported by an instance, since they are not reflected in its presence yet.
+ */
+class JigasiInstanceStats(
+    private val failurePenalty: Duration = JigasiConfig.config.failurePenalty,
+    private val rampupInterval: Duration = JigasiConfig.config.participantRampupInterval,
+    private val clock: Clock = Clock.systemUTC()
+) {
+    private val instances = ConcurrentHashMap<Jid, InstanceStats>()
+
+    fun requestSent(jid: Jid) = get(jid).sent()
+
+    fun requestSucceeded(jid: Jid, responseTime: Duration) = get(jid).succeeded(responseTime)
+
+    fun requestFailed(jid: Jid, timedOut: Boolean) = get(jid).failed(timedOut, clock.instant())
+
+    /** Whether [jid] failed a request within the last [failurePenalty]. */
+    fun isPenalized(jid: Jid): Boolean = instances[jid]?.isPenalized(clock.instant()) ?: false
+
+    /** The number of requests sent to [jid] within the last [rampupInterval]. */
+    fun recentRequests(jid: Jid): Long = instances[jid]?.recentRequests ?: 0L
+
+    /** The average response time of [jid] in milliseconds, or 0 if it has not responded to any requests. */
+    fun responseTimeMs(jid: Jid): Double = instances[jid]?.responseTimeMs ?: 0.0
+
+    fun remove(jid: Jid) {
+        instances.remove(jid)
+    }
+
+    fun toJson(jid: Jid): ObjectNode? = instances[jid]?.toJson()
+
+    private fun get(jid: Jid) = instances.computeIfAbsent(jid) { InstanceStats() }
+
+    private inner class InstanceStats {
+        private var successes = 0
+        private var errors = 0
+        private var timeouts = 0
+        private var lastFailure: Instant? = null
+        private val requestRate = RateTracker(rampupInterval, Duration.ofMillis(100), clock)
+
+        val recentRequests: Long
+            @Synchronized get() = requestRate.getAccumulatedCount().coerceAtLeast(0)
+
+        /** An exponentially weighted moving average of the response time. */
+        var responseTimeMs = 0.0
+            @Synchronized get
+            private set
+
+        @Synchronized
+        fun sent() = requestRate.update(1)
+
+        @Synchronized
+        fun succeeded(responseTime: Duration) {
+            val ms = responseTime.toMillis().toDouble()
+            responseTimeMs = if (successes == 0) ms else responseTimeMs + ALPHA * (ms - responseTimeMs)
+            successes++
+            lastFailure = null
+        }
+
+        @Synchronized
+        fun failed(timedOut: Boolean, now: Instant) {
+            if (timedOut) timeouts++ else errors++
+            lastFailure = now
+        }
+
+        @Synchronized
+        fun isPenalized(now: Instant) = lastFailure?.let { Duration.between(it, now) < failurePenalty } ?: false
+
+        @Synchronized
+        fun toJson(): ObjectNode = JsonNodeFactory.instance.objectNode().apply {
+            put("successes", successes)
+            put("errors", errors)
+            put("timeouts", timeouts)
+            put("recent_requests", recentRequests)
+            put("response_time_ms", responseTimeMs)
+            put("last_failure", lastFailure?.toString() ?: "null")
+        }
+    }
+
+    companion object {
+        private const val ALPHA = 0.2
+    }
+}
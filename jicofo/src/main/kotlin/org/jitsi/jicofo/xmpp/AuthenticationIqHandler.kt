@@ -22,12 +22,18 @@ import org.jitsi.jicofo.auth.AuthenticationAuthority
 import org.jitsi.utils.logging2.createLogger
 import org.jitsi.xmpp.extensions.jitsimeet.LoginUrlIq
 import org.jitsi.xmpp.extensions.jitsimeet.LogoutIq
+import org.jivesoftware.smack.XMPPConnection
 import org.jivesoftware.smack.iqrequest.AbstractIqRequestHandler
 import org.jivesoftware.smack.iqrequest.IQRequestHandler
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 
-class AuthenticationIqHandler(private val authAuthority: AuthenticationAuthority) {
+class AuthenticationIqHandler(
+    private val authAuthority: AuthenticationAuthority,
+    /** The connection on which the handlers are registered, used to send responses from [dispatcher]. */
+    private val connection: XMPPConnection,
+    private val dispatcher: IqDispatcher
+) {
     private val logger = createLogger()
     val loginUrlIqHandler: AbstractIqRequestHandler = LoginUrlIqHandler()
     val logoutIqHandler: AbstractIqRequestHandler = LogoutIqHandler()
@@ -58,18 +64,20 @@ class AuthenticationIqHandler(private val authAuthority: AuthenticationAuthority
         IQ.Type.get,
         IQRequestHandler.Mode.sync
     ) {
-        override fun handleIQRequest(iqRequest: IQ): IQ {
-            return if (iqRequest is LoginUrlIq) {
-                // If the IQ comes from mod_client_proxy, parse and substitute the original sender's JID.
-                val originalFrom = iqRequest.from
-                iqRequest.from = parseJidFromClientProxyJid(XmppConfig.client.clientProxy, originalFrom)
+        override fun handleIQRequest(iqRequest: IQ): IQ? {
+            if (iqRequest !is LoginUrlIq) {
+                logger.error("Received an unexpected IQ type: $iqRequest")
+                return createInternalServerErrorResponse(iqRequest)
+            }
+            // If the IQ comes from mod_client_proxy, parse and substitute the original sender's JID.
+            val originalFrom = iqRequest.from
+            iqRequest.from = parseJidFromClientProxyJid(XmppConfig.client.clientProxy, originalFrom)
+            dispatcher.dispatch(iqRequest.room, iqRequest, connection, originalFrom) {
                 handleLoginUrlIq(iqRequest).also {
                     it.to = originalFrom
                 }
-            } else {
-                logger.error("Received an unexpected IQ type: $iqRequest")
-                createInternalServerErrorResponse(iqRequest)
             }
+            return null
         }
     }
 
@@ -79,18 +87,21 @@ class AuthenticationIqHandler(private val authAuthority: AuthenticationAuthority
         IQ.Type.set,
         IQRequestHandler.Mode.sync
     ) {
-        override fun handleIQRequest(iqRequest: IQ): IQ {
-            return if (iqRequest is LogoutIq) {
-                // If the IQ comes from mod_client_proxy, parse and substitute the original sender's JID.
-                val originalFrom = iqRequest.from
-                iqRequest.from = parseJidFromClientProxyJid(XmppConfig.client.clientProxy, originalFrom)
+        override fun handleIQRequest(iqRequest: IQ): IQ? {
+            if (iqRequest !is LogoutIq) {
+                logger.error("Received an unexpected IQ type: $iqRequest")
+                return createInternalServerErrorResponse(iqRequest)
+            }
+            // If the IQ comes from mod_client_proxy, parse and substitute the original sender's JID.
+            val originalFrom = iqRequest.from
+            iqRequest.from = parseJidFromClientProxyJid(XmppConfig.client.clientProxy, originalFrom)
+            // A logout is not specific to a room, so use the sender.
+            dispatcher.dispatch(iqRequest.from?.asBareJid(), iqRequest, connection, originalFrom) {
                 handleLogoutIq(iqRequest).also {
                     it.to = originalFrom
                 }
-            } else {
-                logger.error("Received an unexpected IQ type: $iqRequest")
-                createInternalServerErrorResponse(iqRequest)
             }
+            return null
         }
     }
 
@@ -22,11 +22,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import io.opentelemetry.api.trace.StatusCode
 import io.opentelemetry.api.trace.Tracer
 import org.jitsi.jicofo.FocusManager
-import org.jitsi.jicofo.TaskPools
+import org.jitsi.jicofo.auth.AuthConfig
 import org.jitsi.jicofo.auth.AuthenticationAuthority
 import org.jitsi.jicofo.auth.ErrorFactory
+import org.jitsi.jicofo.conference.ConferenceMetrics
+import org.jitsi.jicofo.conference.JitsiMeetConference
 import org.jitsi.jicofo.metrics.JicofoMetricsContainer
-import org.jitsi.jwt.JitsiToken
 import org.jitsi.tracing.TracingGlobal.Companion.sdk
 import org.jitsi.utils.logging2.createLogger
 import org.jitsi.xmpp.extensions.jitsimeet.ConferenceIq
@@ -39,6 +40,8 @@ import org.jxmpp.jid.EntityBareJid
 import org.jxmpp.jid.impl.JidCreate
 import java.lang.Boolean.parseBoolean
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
 import org.jitsi.jicofo.visitors.VisitorsConfig.Companion.config as visitorsConfig
 
 /**
@@ -50,7 +53,11 @@ class ConferenceIqHandler(
     val focusAuthJid: String,
     val authAuthority: AuthenticationAuthority?,
     val jigasiEnabled: Boolean,
-    val visitorsManager: VisitorsManager
+    val visitorsManager: VisitorsManager,
+    /** Requests are handled on the queue for their room, so a slow request only delays requests for the same room. */
+    private val dispatcher: IqDispatcher = IqDispatcher("Conference"),
+    private val tokenCache: ParsedTokenCache =
+        ParsedTokenCache(AuthConfig.config.tokenCacheSize, AuthConfig.config.tokenCacheTtl)
 ) : XmppProvider.Listener, AbstractIqRequestHandler(
     ConferenceIq.ELEMENT,
     ConferenceIq.NAMESPACE,
@@ -74,32 +81,50 @@ class ConferenceIqHandler(
             put("focus_auth_jid", focusAuthJid)
             put("jigasi_enabled", jigasiEnabled)
             put("auth_authority", authAuthority?.javaClass?.simpleName ?: "null")
+            put("token_cache_size", tokenCache.size)
         }
 
     /** Handle a [ConferenceIq] synchronously and return a response. */
-    fun handleConferenceIq(query: ConferenceIq): IQ {
+    fun handleConferenceIq(query: ConferenceIq): IQ = try {
+        handleConferenceIqAsync(query).get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+
+    /**
+     * Handle a [ConferenceIq], received at [receivedNanos] (a value of [System.nanoTime]). The returned future
+     * completes with the response as soon as the conference is usable, without blocking a thread while the MUC is
+     * joined.
+     */
+    fun handleConferenceIqAsync(
+        query: ConferenceIq,
+        receivedNanos: Long = System.nanoTime()
+    ): CompletableFuture<IQ> {
         val span = tracer.spanBuilder("xmpp.conference")
             .setAttribute("client.id", Objects.toString(query.from))
             .setAttribute("room.id", Objects.toString(query.room))
             .startSpan()
-        try {
+        val result = try {
             span.makeCurrent().use {
-                return doHandleConferenceIq(query)
+                doHandleConferenceIq(query, receivedNanos)
             }
         } catch (e: Throwable) {
-            span.setStatus(StatusCode.ERROR, e.message ?: "")
-            throw e
-        } finally {
+            CompletableFuture.failedFuture(e)
+        }
+        return result.whenComplete { _, e ->
+            if (e != null) span.setStatus(StatusCode.ERROR, e.message ?: "")
             span.end()
         }
     }
 
-    private fun doHandleConferenceIq(query: ConferenceIq): IQ {
-        val room = query.room ?: return IQ.createErrorResponse(
-            query,
-            StanzaError.from(StanzaError.Condition.bad_request, "No 'room' specified.").build()
+    private fun doHandleConferenceIq(query: ConferenceIq, receivedNanos: Long): CompletableFuture<IQ> {
+        val room = query.room ?: return CompletableFuture.completedFuture(
+            IQ.createErrorResponse(
+                query,
+                StanzaError.from(StanzaError.Condition.bad_request, "No 'room' specified.").build()
+            )
         )
-        val token = parseToken(query.token)
+        val token = query.token?.let { tokenCache.get(it) }
         val userId = token?.context?.user?.id
         val groupId = token?.context?.group
 
@@ -126,7 +151,7 @@ class ConferenceIqHandler(
         logger.info("Conference request for room $room, from ${query.from}, token=${query.token != null}")
         logger.debug { "User ID: $userId, Group ID: $groupId" }
         conferenceRequestCounter.inc()
-        var conference = focusManager.getConference(room)
+        val conference = focusManager.getConference(room)
         val roomExists = conference != null
         if (!roomExists) {
             newConferenceRequestCounter.inc()
@@ -138,12 +163,12 @@ class ConferenceIqHandler(
         // Authentication logic
         val error: IQ? = processExtensions(query, room, response, roomExists)
         if (error != null) {
-            return error
+            return CompletableFuture.completedFuture(error)
         }
 
         val visitorSupported = query.properties.any { it.name == "visitors-version" }
         val visitorRequested = query.properties.any { it.name == "visitor" && it.value == "true" }
-        var visitorsLive = conference?.chatRoom?.visitorsLive ?: false
+        val visitorsLive = conference?.chatRoom?.visitorsLive ?: false
         logger.debug {
             "visitorSupported=$visitorSupported, visitorRequested=$visitorRequested, visitorsLive=$visitorsLive"
         }
@@ -152,15 +177,34 @@ class ConferenceIqHandler(
             logger.debug("Sending to queue")
             response.isReady = false
             response.addProperty(ConferenceIq.Property("live", "false"))
-            return response
+            return CompletableFuture.completedFuture(response)
         }
 
-        // If the conference didn't exist previously, it will be created and the MUC will be joined here (blocking).
-        conference = focusManager.conferenceRequest(room, query.propertiesMap)
+        // If the conference didn't exist previously, it will be created and the MUC will be joined. Continue once the
+        // room is usable.
+        return focusManager.conferenceRequestAsync(room, query.propertiesMap).thenApply {
+            val (conference, isConferenceCreator) = it
+            // Only the request which created the conference waited for the MUC to be joined.
+            if (isConferenceCreator && conference.chatRoom?.isJoined == true) {
+                ConferenceMetrics.conferenceRequestJoinTime.observeSince(receivedNanos)
+            }
+            handleConferenceStarted(conference, response, visitorSupported, visitorRequested, userId, groupId)
+        }
+    }
+
+    /** Complete [response] to a conference request, once [conference] has started. */
+    private fun handleConferenceStarted(
+        conference: JitsiMeetConference,
+        response: ConferenceIq,
+        visitorSupported: Boolean,
+        visitorRequested: Boolean,
+        userId: String?,
+        groupId: String?
+    ): IQ {
         response.isReady = conference.isStarted && (conference.chatRoom?.isJoined == true)
 
         // We've now joined the MUC and room metadata has been set.
-        visitorsLive = conference.chatRoom?.visitorsLive ?: false
+        val visitorsLive = conference.chatRoom?.visitorsLive ?: false
         val visitorsSupported = visitorsManager.enabled &&
             (conference.chatRoom?.visitorsEnabled == true || !visitorsConfig.requireMucConfigFlag)
         response.addProperty("visitors-supported", visitorsSupported.toString())
@@ -259,14 +303,9 @@ class ConferenceIqHandler(
         val originalFrom = iqRequest.from
         iqRequest.from = parseJidFromClientProxyJid(XmppConfig.client.clientProxy, originalFrom)
 
-        TaskPools.ioPool.execute {
-            val response = handleConferenceIq(iqRequest).apply { to = originalFrom }
-
-            try {
-                connection.sendStanza(response)
-            } catch (e: Exception) {
-                logger.error("Failed to send response", e)
-            }
+        val received = System.nanoTime()
+        dispatcher.dispatchAsync(iqRequest.room, iqRequest, connection, originalFrom) {
+            handleConferenceIqAsync(iqRequest, received).thenApply { response -> response.apply { to = originalFrom } }
         }
 
         return null
@@ -296,13 +335,3 @@ class ConferenceIqHandler(
     }
 }
 
-/**
- * Read context.user.id from an unparsed token. Note that no validation is performed on the token, this is intentional.
- * Validation will be performed when the user attempts to login to XMPP.
- */
-private fun parseToken(token: String?): JitsiToken? = try {
-    token?.let { return JitsiToken.parseWithoutValidation(it) }
-    null
-} catch (e: Throwable) {
-    null
-}
@@ -37,14 +37,16 @@ class JibriIqHandler(
     connections: Set<AbstractXMPPConnection>,
     private val conferenceStore: ConferenceStore,
     /** Whether any jibri detectors are configured (used only for logging). */
-    private val hasJibriDetector: () -> Boolean = { false }
+    private val hasJibriDetector: () -> Boolean = { false },
+    dispatcher: IqDispatcher? = null
 ) :
     AbstractIqHandler<JibriIq>(
         connections,
         JibriIq.ELEMENT,
         JibriIq.NAMESPACE,
         setOf(IQ.Type.set),
-        IQRequestHandler.Mode.sync
+        IQRequestHandler.Mode.sync,
+        dispatcher
     ) {
     val logger = createLogger()
 
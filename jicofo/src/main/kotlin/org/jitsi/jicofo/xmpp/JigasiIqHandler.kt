@@ -22,12 +22,15 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import org.jitsi.jicofo.ConferenceStore
 import org.jitsi.jicofo.TaskPools
 import org.jitsi.jicofo.conference.JitsiMeetConference
+import org.jitsi.jicofo.jigasi.JigasiConfig
 import org.jitsi.jicofo.jigasi.JigasiDetector
 import org.jitsi.jicofo.metrics.JicofoMetricsContainer
 import org.jitsi.jicofo.xmpp.IqProcessingResult.AcceptedWithNoResponse
 import org.jitsi.jicofo.xmpp.IqProcessingResult.RejectedWithError
 import org.jitsi.utils.logging2.createLogger
 import org.jitsi.xmpp.extensions.rayo.DialIq
+import org.jitsi.xmpp.extensions.rayo.HangUp
+import org.jitsi.xmpp.extensions.rayo.RefIq
 import org.jivesoftware.smack.AbstractXMPPConnection
 import org.jivesoftware.smack.SmackException
 import org.jivesoftware.smack.packet.IQ
@@ -35,12 +38,18 @@ import org.jivesoftware.smack.packet.StanzaError
 import org.jivesoftware.smack.packet.id.StandardStanzaIdSource
 import org.jxmpp.jid.Jid
 import org.jxmpp.jid.impl.JidCreate
+import org.jxmpp.stringprep.XmppStringprepException
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
 class JigasiIqHandler(
     connections: Set<AbstractXMPPConnection>,
     private val conferenceStore: ConferenceStore,
-    private val jigasiDetector: JigasiDetector
+    private val jigasiDetector: JigasiDetector,
+    /** If set, requests not answered within this time are also sent to a second instance. */
+    private val hedgeDelay: Duration? = JigasiConfig.config.hedgeDelay
 ) : AbstractIqHandler<DialIq>(
     connections,
     DialIq.ELEMENT,
@@ -91,9 +100,9 @@ class JigasiIqHandler(
         logger.info("Accepted jigasi request from ${request.iq.from}: ${request.iq.toXML()}")
         Stats.acceptedRequests.inc()
 
-        TaskPools.ioPool.execute {
+        TaskPools.signalingPool.execute {
             try {
-                inviteJigasi(request, conference)
+                DialAttempt(request, conference).start()
             } catch (e: Exception) {
                 logger.warn("Failed to invite jigasi", e)
                 request.connection.tryToSendStanza(
@@ -106,100 +115,195 @@ class JigasiIqHandler(
 
     /**
      * Invites a jigasi given a specific validated [request] from a participant. Handles jigasi instance selection and
-     * retry logic. Sends an IQ response for the [request].
+     * retry logic, and sends an IQ response for the [request].
+     *
+     * Requests to jigasi are sent asynchronously, and the responses handled on the signaling pool, so no thread waits
+     * for jigasi to respond. A request which fails or times out is retried with a different instance, up to
+     * [MAX_ATTEMPTS] instances in total. With [hedgeDelay] set, if the first instance has not responded after
+     * [hedgeDelay] the request is also sent to a second instance, and the first successful response is used. If the
+     * other instance succeeds too, the call it started is hung up, so that the callee is not dialed twice.
      */
-    private fun inviteJigasi(
-        request: IqRequest<DialIq>,
-        conference: JitsiMeetConference,
-        retryCount: Int = 2,
-        exclude: List<Jid> = emptyList()
+    private inner class DialAttempt(
+        private val request: IqRequest<DialIq>,
+        private val conference: JitsiMeetConference
     ) {
-        val selector = if (request.iq.destination == "jitsi_meet_transcribe") {
-            if (conference.hasTranscriber()) {
-                logger.warn("Request failed, transcriber already available: ${request.iq.toXML()}")
-                IQ.createErrorResponse(
-                    request.iq,
-                    StanzaError.getBuilder(StanzaError.Condition.conflict).build()
-                )
-                return
-            }
+        private val selector = if (request.iq.destination == "jitsi_meet_transcribe") {
             jigasiDetector::selectTranscriber
         } else {
             jigasiDetector::selectSipJigasi
         }
 
-        // Check if Jigasi is available
-        val jigasiJid = selector(exclude, conference.bridgeRegions) ?: run {
-            logger.warn("Request failed, no instances available: ${request.iq.toXML()}")
-            request.connection.tryToSendStanza(
-                IQ.createErrorResponse(
-                    request.iq,
-                    StanzaError.getBuilder(StanzaError.Condition.service_unavailable).build()
+        /** The instances to which the request has been sent. */
+        private val tried = mutableListOf<Jid>()
+
+        /** The requests which have not been answered yet, by instance. */
+        private val inFlight = mutableMapOf<Jid, CompletableFuture<IQ?>>()
+
+        /** The condition to use in the response if all instances fail. */
+        private var failureCondition = StanzaError.Condition.service_unavailable
+
+        private var done = false
+
+        fun start() {
+            if (request.iq.destination == "jitsi_meet_transcribe" && conference.hasTranscriber()) {
+                logger.warn("Request failed, transcriber already available: ${request.iq.toXML()}")
+                request.connection.tryToSendStanza(
+                    IQ.createErrorResponse(request.iq, StanzaError.getBuilder(StanzaError.Condition.conflict).build())
                 )
-            )
-            stats.noInstanceAvailable()
-            return
+                return
+            }
+
+            synchronized(this) { sendToNextInstance() }
+            hedgeDelay?.let { delay ->
+                TaskPools.scheduledPool.schedule(
+                    { TaskPools.signalingPool.execute { hedge() } },
+                    delay.toMillis(),
+                    TimeUnit.MILLISECONDS
+                )
+            }
         }
 
-        logger.info("Selected $jigasiJid (request from ${request.iq.from})")
-        // Forward the request to the selected Jigasi instance.
-        val requestToJigasi = DialIq(request.iq).apply {
-            from = null
-            to = jigasiJid
-            stanzaId = stanzaIdSource.newStanzaId
+        @Synchronized
+        private fun hedge() {
+            if (!done && inFlight.size == 1 && tried.size < MAX_ATTEMPTS) {
+                logger.info("No response from ${inFlight.keys.first()} after $hedgeDelay, hedging.")
+                Stats.hedgedRequests.inc()
+                sendToNextInstance()
+            }
         }
-        val responseFromJigasi = try {
-            jigasiDetector.xmppConnection.sendIqAndGetResponse(requestToJigasi)
-        } catch (e: SmackException.NotConnectedException) {
-            logger.error("Request failed,  XMPP not connected: ${request.iq.toXML()}")
-            stats.xmppNotConnected()
-            return
+
+        /** Send the request to an instance which hasn't been tried yet, or respond with an error if there are none. */
+        private fun sendToNextInstance() {
+            val jigasiJid = selector(tried, conference.bridgeRegions) ?: run {
+                // With other requests in flight, we wait for their responses.
+                if (inFlight.isEmpty()) {
+                    if (tried.isEmpty()) {
+                        logger.warn("Request failed, no instances available: ${request.iq.toXML()}")
+                        stats.noInstanceAvailable()
+                    } else {
+                        logger.warn("Request failed, all instances failed.")
+                        stats.allInstancesFailed()
+                    }
+                    fail(failureCondition)
+                }
+                return
+            }
+
+            logger.info("Selected $jigasiJid (request from ${request.iq.from})")
+            tried.add(jigasiJid)
+            jigasiDetector.instanceStats.requestSent(jigasiJid)
+            // Forward the request to the selected Jigasi instance.
+            val requestToJigasi = DialIq(request.iq).apply {
+                from = null
+                to = jigasiJid
+                stanzaId = stanzaIdSource.newStanzaId
+            }
+            val sent = System.nanoTime()
+            val response = try {
+                jigasiDetector.xmppConnection.sendIqAsync(requestToJigasi)
+            } catch (e: SmackException.NotConnectedException) {
+                logger.error("Request failed,  XMPP not connected: ${request.iq.toXML()}")
+                stats.xmppNotConnected()
+                if (inFlight.isEmpty()) done = true
+                return
+            }
+            inFlight[jigasiJid] = response
+            response.whenCompleteAsync(
+                { r, e ->
+                    val responseTime = Duration.ofNanos(System.nanoTime() - sent)
+                    try {
+                        handleResponse(jigasiJid, if (e == null) r else null, responseTime)
+                    } catch (ex: Exception) {
+                        logger.warn("Failed to invite jigasi", ex)
+                        synchronized(this) { if (!done) fail(StanzaError.Condition.internal_server_error) }
+                    }
+                },
+                TaskPools.signalingPool
+            )
         }
 
-        if (responseFromJigasi == null || responseFromJigasi.error != null) {
-            // Timeout or error.
-            if (responseFromJigasi == null) {
-                logger.warn("Jigasi instance timed out: $jigasiJid")
-                Stats.singleInstanceTimeouts.inc()
-            } else {
-                logger.warn("Jigasi instance returned error ($jigasiJid): ${responseFromJigasi.toXML()}")
-                Stats.singleInstanceErrors.inc()
+        @Synchronized
+        private fun handleResponse(jigasiJid: Jid, responseFromJigasi: IQ?, responseTime: Duration) {
+            if (inFlight.remove(jigasiJid) == null) return
+            if (done) {
+                if (responseFromJigasi != null && responseFromJigasi.error == null) {
+                    logger.warn("Jigasi instance $jigasiJid succeeded after another instance was used, hanging up.")
+                    Stats.hedgedDuplicates.inc()
+                    hangUp(jigasiJid, responseFromJigasi)
+                }
+                return
             }
 
-            if (retryCount > 0) {
-                logger.info("Will retry up to $retryCount more times.")
-                Stats.retries.inc()
-                // Do not try the same instance again.
-                inviteJigasi(request, conference, retryCount - 1, exclude + jigasiJid)
-            } else {
-                val condition = if (responseFromJigasi == null) {
-                    StanzaError.Condition.remote_server_timeout
+            if (responseFromJigasi == null || responseFromJigasi.error != null) {
+                // Timeout or error.
+                if (responseFromJigasi == null) {
+                    logger.warn("Jigasi instance timed out: $jigasiJid")
+                    Stats.singleInstanceTimeouts.inc()
+                    failureCondition = StanzaError.Condition.remote_server_timeout
                 } else {
-                    StanzaError.Condition.undefined_condition
+                    logger.warn("Jigasi instance returned error ($jigasiJid): ${responseFromJigasi.toXML()}")
+                    Stats.singleInstanceErrors.inc()
+                    failureCondition = StanzaError.Condition.undefined_condition
                 }
-                logger.warn("Request failed, all instances failed.")
-                stats.allInstancesFailed()
-                request.connection.tryToSendStanza(
-                    IQ.createErrorResponse(request.iq, StanzaError.getBuilder(condition).build())
-                )
+                jigasiDetector.instanceStats.requestFailed(jigasiJid, timedOut = responseFromJigasi == null)
+
+                if (tried.size < MAX_ATTEMPTS) {
+                    logger.info("Will retry up to ${MAX_ATTEMPTS - tried.size} more times.")
+                    Stats.retries.inc()
+                    // Do not try the same instance again.
+                    sendToNextInstance()
+                } else if (inFlight.isEmpty()) {
+                    logger.warn("Request failed, all instances failed.")
+                    stats.allInstancesFailed()
+                    fail(failureCondition)
+                }
+                return
             }
 
-            return
+            jigasiDetector.instanceStats.requestSucceeded(jigasiJid, responseTime)
+            done = true
+            // Keep waiting for the other instances, since they may still dial. If one of them succeeds, its call is
+            // hung up (see above).
+
+            logger.info("Response from jigasi: ${responseFromJigasi.toXML()}")
+            // Successful response from Jigasi, forward it as the response to the client.
+            request.connection.tryToSendStanza(
+                responseFromJigasi.apply {
+                    from = null
+                    to = request.iq.from
+                    stanzaId = request.iq.stanzaId
+                }
+            )
         }
 
-        logger.info("Response from jigasi: ${responseFromJigasi.toXML()}")
-        // Successful response from Jigasi, forward it as the response to the client.
-        request.connection.tryToSendStanza(
-            responseFromJigasi.apply {
-                from = null
-                to = request.iq.from
-                stanzaId = request.iq.stanzaId
-            }
-        )
+        /** Hang up the call that [jigasiJid] started, as described in its successful [response]. */
+        private fun hangUp(jigasiJid: Jid, response: IQ) {
+            // The call is addressed by the URI in the ref, like clients do to hang up. Fall back to the instance.
+            val callResource = (response as? RefIq)?.uri?.removePrefix("xmpp:")?.let {
+                try {
+                    JidCreate.from(it)
+                } catch (e: XmppStringprepException) {
+                    null
+                }
+            } ?: jigasiJid
+            jigasiDetector.xmppConnection.tryToSendStanza(
+                HangUp.create(null, callResource).apply { stanzaId = stanzaIdSource.newStanzaId }
+            )
+        }
+
+        private fun fail(condition: StanzaError.Condition) {
+            done = true
+            request.connection.tryToSendStanza(
+                IQ.createErrorResponse(request.iq, StanzaError.getBuilder(condition).build())
+            )
+        }
     }
 
     companion object {
         private val stanzaIdSourceFactory = StandardStanzaIdSource.Factory()
+
+        /** The maximum number of instances a request is sent to. */
+        private const val MAX_ATTEMPTS = 3
     }
 
     class Stats {
@@ -243,6 +347,15 @@ class JigasiIqHandler(
                 "${PREFIX}_instance_timeouts",
                 "Timeouts for requests sent to jigasi instances."
             )
+            val hedgedRequests = JicofoMetricsContainer.instance.registerCounter(
+                "${PREFIX}_hedged_requests",
+                "Requests sent to a second jigasi instance because the first one was slow to respond."
+            )
+            val hedgedDuplicates = JicofoMetricsContainer.instance.registerCounter(
+                "${PREFIX}_hedged_duplicates",
+                "Successful responses from jigasi instances received after another instance had been used, which " +
+                    "were hung up."
+            )
 
             fun statsJson() = JsonNodeFactory.instance.objectNode().apply {
                 put("rejected_requests", rejectedRequests.get())
@@ -250,6 +363,8 @@ class JigasiIqHandler(
                 put("retries", retries.get())
                 put("instance_errors", singleInstanceErrors.get())
                 put("instance_timeout", singleInstanceTimeouts.get())
+                put("hedged_requests", hedgedRequests.get())
+                put("hedged_duplicates", hedgedDuplicates.get())
             }
         }
     }
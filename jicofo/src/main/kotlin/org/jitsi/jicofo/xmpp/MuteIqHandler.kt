@@ -35,14 +35,16 @@ import org.jxmpp.jid.Jid
 
 class AudioMuteIqHandler(
     connections: Set<AbstractXMPPConnection>,
-    private val conferenceStore: ConferenceStore
+    private val conferenceStore: ConferenceStore,
+    dispatcher: IqDispatcher? = null
 ) :
     AbstractIqHandler<MuteIq>(
         connections,
         AbstractMuteIq.ELEMENT,
         MuteIq.NAMESPACE,
         setOf(IQ.Type.set),
-        IQRequestHandler.Mode.sync
+        IQRequestHandler.Mode.sync,
+        dispatcher
     ) {
     override fun handleRequest(request: IqRequest<MuteIq>): IqProcessingResult {
         return handleRequest(
@@ -60,14 +62,16 @@ class AudioMuteIqHandler(
 
 class VideoMuteIqHandler(
     connections: Set<AbstractXMPPConnection>,
-    private val conferenceStore: ConferenceStore
+    private val conferenceStore: ConferenceStore,
+    dispatcher: IqDispatcher? = null
 ) :
     AbstractIqHandler<MuteVideoIq>(
         connections,
         AbstractMuteIq.ELEMENT,
         MuteVideoIq.NAMESPACE,
         setOf(IQ.Type.set),
-        IQRequestHandler.Mode.sync
+        IQRequestHandler.Mode.sync,
+        dispatcher
     ) {
     override fun handleRequest(request: IqRequest<MuteVideoIq>): IqProcessingResult {
         return handleRequest(
@@ -85,14 +89,16 @@ class VideoMuteIqHandler(
 
 class DesktopMuteIqHandler(
     connections: Set<AbstractXMPPConnection>,
-    private val conferenceStore: ConferenceStore
+    private val conferenceStore: ConferenceStore,
+    dispatcher: IqDispatcher? = null
 ) :
     AbstractIqHandler<MuteDesktopIq>(
         connections,
         AbstractMuteIq.ELEMENT,
         MuteDesktopIq.NAMESPACE,
         setOf(IQ.Type.set),
-        IQRequestHandler.Mode.sync
+        IQRequestHandler.Mode.sync,
+        dispatcher
     ) {
     override fun handleRequest(request: IqRequest<MuteDesktopIq>): IqProcessingResult {
         return handleRequest(
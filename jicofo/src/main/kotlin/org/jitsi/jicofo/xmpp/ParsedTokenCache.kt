@@ -0,0 +1,115 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.jitsi.jwt.JitsiToken
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
+import org.jitsi.jicofo.metrics.JicofoMetricsContainer.Companion.instance as metricsContainer
+
+/**
+ * A cache of the tokens in conference requests, parsed without validation (validation is performed when the user logs
+ * in to XMPP). Clients retry conference requests and participants often share a token, so the same token is seen many
+ * times during a burst of joins.
+ *
+ * Entries are keyed by a SHA-256 hash of the token, so the tokens themselves are not retained. The [maxSize] most
+ * recently used entries are kept, each for at most [ttl] and never past the token's `exp` claim. Tokens which fail to
+ * parse are cached too.
+ */
+class ParsedTokenCache(
+    private val maxSize: Int,
+    private val ttl: Duration,
+    private val clock: Clock = Clock.systemUTC()
+) {
+    private val cache = object : LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ByteBuffer, Entry>) = size > maxSize
+    }
+
+    val size: Int
+        get() = synchronized(cache) { cache.size }
+
+    /** Get the parsed [token], or null if it can not be parsed. */
+    fun get(token: String): JitsiToken? {
+        if (maxSize <= 0) return parse(token)
+
+        val key = ByteBuffer.wrap(sha256.get().digest(token.toByteArray()))
+        val now = clock.instant()
+        synchronized(cache) {
+            cache[key]?.let {
+                if (now.isBefore(it.expires)) {
+                    hits.inc()
+                    return it.token
+                }
+                cache.remove(key)
+                expired.inc()
+            }
+        }
+
+        misses.inc()
+        val parsed = parse(token)
+        val expires = (now + ttl).let { max -> expiration(token)?.takeIf { it.isBefore(max) } ?: max }
+        if (now.isBefore(expires)) {
+            synchronized(cache) { cache[key] = Entry(parsed, expires) }
+        }
+        return parsed
+    }
+
+    private class Entry(val token: JitsiToken?, val expires: Instant)
+
+    companion object {
+        private val sha256 = ThreadLocal.withInitial { MessageDigest.getInstance("SHA-256") }
+        private val mapper = ObjectMapper()
+
+        private fun parse(token: String): JitsiToken? = try {
+            JitsiToken.parseWithoutValidation(token)
+        } catch (e: Throwable) {
+            null
+        }
+
+        /**
+         * Read the `exp` claim of [token]. [JitsiToken] does not expose it, so the payload is read again, but only
+         * for tokens which are not in the cache.
+         */
+        private fun expiration(token: String): Instant? = try {
+            val payload = token.split(".").getOrNull(1)?.let { Base64.getUrlDecoder().decode(it) }
+            payload?.let { mapper.readTree(it).get("exp") }?.takeIf { it.isNumber }?.let {
+                Instant.ofEpochSecond(it.asLong())
+            }
+        } catch (e: Exception) {
+            null
+        }
+
+        val hits = metricsContainer.registerCounter(
+            "token_cache_hits",
+            "Number of conference requests for which the token was found in the cache of parsed tokens."
+        )
+        val misses = metricsContainer.registerCounter(
+            "token_cache_misses",
+            "Number of conference requests for which the token was parsed."
+        )
+        val expired = metricsContainer.registerCounter(
+            "token_cache_expired",
+            "Number of entries dropped from the cache of parsed tokens because the token or the entry expired."
+        )
+    }
+}
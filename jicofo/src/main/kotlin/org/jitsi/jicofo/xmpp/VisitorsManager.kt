@@ -18,7 +18,6 @@
 package org.jitsi.jicofo.xmpp
 
 import org.jitsi.jicofo.ConferenceStore
-import org.jitsi.jicofo.TaskPools
 import org.jitsi.jicofo.visitors.VisitorsConfig
 import org.jitsi.utils.logging2.createLogger
 import org.jitsi.xmpp.extensions.visitors.VisitorsIq
@@ -72,15 +71,18 @@ class VisitorsManager(
 
     /** Send an IQ, return immediately. Log an error if there's no response. */
     fun sendIqToComponent(roomJid: EntityBareJid, extensions: List<ExtensionElement>) {
-        TaskPools.ioPool.submit {
-            val response = sendIqToComponentAndGetResponse(roomJid, extensions)
-            when {
-                response == null -> logger.warn("Timeout waiting for VisitorsIq response.")
-                response.type == IQ.Type.result -> {
-                    logger.info("Received VisitorsIq response: ${response.toXML()}")
+        try {
+            xmppProvider.xmppConnection.sendIqAsync(createIq(roomJid, extensions)).thenAccept { response ->
+                when {
+                    response == null -> logger.warn("Timeout waiting for VisitorsIq response.")
+                    response.type == IQ.Type.result -> {
+                        logger.info("Received VisitorsIq response: ${response.toXML()}")
+                    }
+                    else -> logger.warn("Received error response: ${response.toXML()}")
                 }
-                else -> logger.warn("Received error response: ${response.toXML()}")
             }
+        } catch (e: Exception) {
+            logger.warn("Failed to send VisitorsIq: ${e.message}")
         }
     }
 
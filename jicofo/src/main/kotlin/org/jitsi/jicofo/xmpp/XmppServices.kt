@@ -79,10 +79,14 @@ class XmppServices(
         null
     }
 
+    /** Handles conference, mute, jibri and authentication requests on a serial queue per room. */
+    private val iqDispatcher = IqDispatcher("Client")
+
     private val jibriIqHandler = JibriIqHandler(
         setOf(clientConnection.xmppConnection, serviceConnection.xmppConnection),
         conferenceStore,
-        hasJibriDetector
+        hasJibriDetector,
+        iqDispatcher
     )
 
     private val jigasiIqHandler = if (jigasiDetector != null) {
@@ -101,9 +105,21 @@ class XmppServices(
 
     val avModerationHandler = AvModerationHandler(clientConnection, conferenceStore)
     val roomMetadataHandler = RoomMetadataHandler(clientConnection, conferenceStore)
-    private val audioMuteHandler = AudioMuteIqHandler(setOf(clientConnection.xmppConnection), conferenceStore)
-    private val videoMuteHandler = VideoMuteIqHandler(setOf(clientConnection.xmppConnection), conferenceStore)
-    private val desktopMuteHandler = DesktopMuteIqHandler(setOf(clientConnection.xmppConnection), conferenceStore)
+    private val audioMuteHandler = AudioMuteIqHandler(
+        setOf(clientConnection.xmppConnection),
+        conferenceStore,
+        iqDispatcher
+    )
+    private val videoMuteHandler = VideoMuteIqHandler(
+        setOf(clientConnection.xmppConnection),
+        conferenceStore,
+        iqDispatcher
+    )
+    private val desktopMuteHandler = DesktopMuteIqHandler(
+        setOf(clientConnection.xmppConnection),
+        conferenceStore,
+        iqDispatcher
+    )
     val jingleHandler = JingleIqRequestHandler(
         visitorConnections.map { it.xmppConnection }.toSet() + clientConnection.xmppConnection
     )
@@ -115,7 +131,8 @@ class XmppServices(
         focusAuthJid = XmppConfig.client.jid,
         authAuthority = authenticationAuthority,
         jigasiEnabled = jigasiDetector != null,
-        visitorsManager
+        visitorsManager,
+        iqDispatcher
     ).apply {
         clientConnection.xmppConnection.registerIQRequestHandler(this)
     }
@@ -123,7 +140,7 @@ class XmppServices(
     private val authenticationIqHandler: AuthenticationIqHandler? = if (authenticationAuthority == null) {
         null
     } else {
-        AuthenticationIqHandler(authenticationAuthority).also {
+        AuthenticationIqHandler(authenticationAuthority, clientConnection.xmppConnection, iqDispatcher).also {
             clientConnection.xmppConnection.registerIQRequestHandler(it.loginUrlIqHandler)
             clientConnection.xmppConnection.registerIQRequestHandler(it.logoutIqHandler)
         }
@@ -149,5 +166,6 @@ class XmppServices(
             clientConnection.xmppConnection.unregisterIQRequestHandler(it.loginUrlIqHandler)
             clientConnection.xmppConnection.unregisterIQRequestHandler(it.logoutIqHandler)
         }
+        iqDispatcher.shutdown()
     }
 }
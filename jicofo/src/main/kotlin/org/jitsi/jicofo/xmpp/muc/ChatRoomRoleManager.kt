@@ -51,7 +51,7 @@ sealed class ChatRoomRoleManager(
             it.run()
             return@PacketQueue true
         },
-        TaskPools.ioPool
+        TaskPools.signalingPool
     )
 }
 
@@ -0,0 +1,64 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.maps.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+import io.mockk.mockk
+import org.jitsi.jicofo.bridge.Bridge
+
+class BridgeConferenceIndexTest : ShouldSpec() {
+    override fun isolationMode() = IsolationMode.InstancePerLeaf
+
+    init {
+        val index = BridgeConferenceIndex<String>()
+        val bridge1: Bridge = mockk()
+        val bridge2: Bridge = mockk()
+
+        index.update(bridge1, "conf1", 3)
+        index.update(bridge1, "conf2", 1)
+        index.update(bridge2, "conf1", 2)
+
+        should("return the conferences on a bridge") {
+            index.getConferences(bridge1) shouldBe mapOf("conf1" to 3, "conf2" to 1)
+            index.getConferences(bridge2) shouldBe mapOf("conf1" to 2)
+        }
+        should("update the participant count") {
+            index.update(bridge1, "conf2", 5)
+            index.getConferences(bridge1) shouldBe mapOf("conf1" to 3, "conf2" to 5)
+        }
+        should("keep a conference with no participants in its session on a bridge") {
+            index.update(bridge1, "conf1", 0)
+            index.getConferences(bridge1) shouldBe mapOf("conf1" to 0, "conf2" to 1)
+        }
+        should("remove a conference when its session on a bridge is removed") {
+            index.remove(bridge1, "conf1")
+            index.getConferences(bridge1) shouldBe mapOf("conf2" to 1)
+            index.getConferences(bridge2) shouldBe mapOf("conf1" to 2)
+            index.remove(bridge2, "conf1")
+            index.getConferences(bridge2).shouldBeEmpty()
+        }
+        should("remove a conference from all bridges") {
+            index.remove("conf1")
+            index.getConferences(bridge1) shouldBe mapOf("conf2" to 1)
+            index.getConferences(bridge2).shouldBeEmpty()
+        }
+    }
+}
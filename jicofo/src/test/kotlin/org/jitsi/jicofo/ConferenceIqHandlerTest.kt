@@ -26,16 +26,22 @@ import org.jitsi.jicofo.xmpp.ConferenceIqHandler
 import org.jitsi.xmpp.extensions.jitsimeet.ConferenceIq
 import org.jivesoftware.smack.packet.IQ
 import org.jxmpp.jid.impl.JidCreate
+import java.util.concurrent.CompletableFuture
 
 class ConferenceIqHandlerTest : ShouldSpec() {
     private val conferenceIqHandler = ConferenceIqHandler(
         xmppProvider = mockk(relaxed = true),
         focusManager = mockk {
             every { getConference(any()) } returns null
-            every { conferenceRequest(any(), any()) } returns mockk<JitsiMeetConference> {
-                every { isStarted() } returns true
-                every { chatRoom } returns null
-            }
+            every { conferenceRequestAsync(any(), any()) } returns CompletableFuture.completedFuture(
+                Pair(
+                    mockk<JitsiMeetConference> {
+                        every { isStarted() } returns true
+                        every { chatRoom } returns null
+                    },
+                    true
+                )
+            )
         },
         focusAuthJid = "",
         authAuthority = null,
@@ -0,0 +1,67 @@
+/*
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.shouldBe
+import org.jxmpp.jid.impl.JidCreate
+
+class ConferenceRegistryTest : ShouldSpec() {
+    override fun isolationMode() = IsolationMode.InstancePerLeaf
+
+    init {
+        val registry = ConferenceRegistry<String>()
+        val main = JidCreate.entityBareFrom("main@example.com")
+        val breakout1 = JidCreate.entityBareFrom("breakout1@example.com")
+        val breakout2 = JidCreate.entityBareFrom("breakout2@example.com")
+
+        registry.getOrCreate(main) { "main" } shouldBe Pair("main", true)
+        registry.getOrCreate(breakout1) { "breakout1" }
+        registry.getOrCreate(breakout2) { "breakout2" }
+        registry.addBreakoutConference(main, breakout1, "breakout1")
+        registry.addBreakoutConference(main, breakout2, "breakout2")
+
+        should("return the existing conference") {
+            registry.getOrCreate(main) { "other" } shouldBe Pair("main", false)
+            registry[main] shouldBe "main"
+            registry.all.shouldContainExactlyInAnyOrder("main", "breakout1", "breakout2")
+        }
+        should("not remove a conference which has been replaced") {
+            registry.remove(breakout1, "breakout1", main) shouldBe true
+            registry.getOrCreate(breakout1) { "breakout1-new" }
+            registry.remove(breakout1, "breakout1", main) shouldBe false
+            registry[breakout1] shouldBe "breakout1-new"
+        }
+        should("index the breakout conferences until all are removed") {
+            registry.hasBreakoutConferences(main) shouldBe true
+            registry.hasBreakoutConferences(breakout1) shouldBe false
+            registry.remove(breakout1, "breakout1", main)
+            registry.hasBreakoutConferences(main) shouldBe true
+            registry.remove(breakout2, "breakout2", main)
+            registry.hasBreakoutConferences(main) shouldBe false
+            registry.size shouldBe 1
+        }
+        should("not index a conference which was removed before it was indexed") {
+            val breakout3 = JidCreate.entityBareFrom("breakout3@example.com")
+            registry.getOrCreate(breakout3) { "breakout3" }
+            registry.remove(breakout3, "breakout3", null)
+            registry.addBreakoutConference(breakout1, breakout3, "breakout3")
+            registry.hasBreakoutConferences(breakout1) shouldBe false
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import io.mockk.mockk
+import org.jitsi.jicofo.conference.JitsiMeetConference
+import org.jitsi.jicofo.conference.JitsiMeetConferenceImpl
+import org.jitsi.utils.logging2.createLogger
+import org.jxmpp.jid.impl.JidCreate
+import java.time.Clock
+import java.time.Duration
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.logging.Level
+
+/**
+ * Stresses the conference registry of [FocusManager] with concurrent requests. The XMPP provider of the mock services
+ * is not registered, so conferences start without joining a MUC.
+ */
+class FocusManagerTest : ShouldSpec() {
+    init {
+        val numRooms = 1_000
+        val requestsPerRoom = 4
+        val numThreads = 16
+
+        context("Concurrent conference requests") {
+            val focusManager = FocusManager(jicofoServices = mockk(relaxed = true))
+            val rooms = List(numRooms) { JidCreate.entityBareFrom("room-$it@example.com") }
+            val results = ConcurrentHashMap<String, MutableSet<JitsiMeetConference>>()
+
+            measureAndLog(numRooms * requestsPerRoom, "requests for $numRooms rooms") {
+                runConcurrently(numThreads, List(requestsPerRoom) { rooms }.flatten().shuffled()) { room ->
+                    val conference = focusManager.conferenceRequest(room, emptyMap(), Level.OFF, false)
+                    results.computeIfAbsent(room.toString()) { identitySet() }.add(conference)
+                }
+            }
+
+            should("create a single conference for each room") {
+                results.size shouldBe numRooms
+                results.values.forEach { it shouldHaveSize 1 }
+                focusManager.getConferences() shouldHaveSize numRooms
+                rooms.forEach { room ->
+                    val conference = focusManager.getConference(room)
+                    (conference === results[room.toString()]!!.single()) shouldBe true
+                }
+            }
+            should("accept each meeting ID only once") {
+                val conferences = focusManager.getConferences().map { it as JitsiMeetConferenceImpl }
+                val accepted = ConcurrentHashMap<String, AtomicInteger>()
+                val attempts = conferences.flatMap { c -> List(numRooms / 10) { c to "meeting-$it" } }.shuffled()
+                runConcurrently(numThreads, attempts) { (conference, meetingId) ->
+                    val counter = accepted.computeIfAbsent(meetingId) { AtomicInteger() }
+                    if (focusManager.meetingIdSet(conference, meetingId)) counter.incrementAndGet()
+                }
+                accepted.values.filter { it.get() != 1 }.shouldBeEmpty()
+            }
+            should("remove ended conferences while others are requested") {
+                val ending = rooms.filterIndexed { i, _ -> i % 2 == 0 }
+                val kept = rooms.filterIndexed { i, _ -> i % 2 == 1 }
+                val newRooms = List(numRooms / 2) { JidCreate.entityBareFrom("new-room-$it@example.com") }
+                val endingConferences = ending.map { focusManager.getConference(it) as JitsiMeetConferenceImpl }
+                val tasks = endingConferences.map { { focusManager.conferenceEnded(it) } } +
+                    newRooms.map { { focusManager.conferenceRequest(it, emptyMap(), Level.OFF, false) } }
+
+                measureAndLog(tasks.size, "ends and requests") {
+                    runConcurrently(numThreads, tasks.shuffled()) { it() }
+                }
+
+                focusManager.getConferences().map { it.roomName }.toSet() shouldBe (kept + newRooms).toSet()
+                ending.forEach { focusManager.getConference(it) shouldBe null }
+            }
+        }
+    }
+
+    private fun <T> runConcurrently(numThreads: Int, items: List<T>, block: (T) -> Unit) {
+        val executor = Executors.newFixedThreadPool(numThreads)
+        val futures = items.map { executor.submit { block(it) } }
+        executor.shutdown()
+        executor.awaitTermination(60, TimeUnit.SECONDS) shouldBe true
+        // Propagate any failure.
+        futures.forEach { it.get() }
+    }
+
+    private fun identitySet(): MutableSet<JitsiMeetConference> =
+        Collections.synchronizedSet(Collections.newSetFromMap(IdentityHashMap()))
+
+    private val logger = createLogger()
+    private fun measureAndLog(count: Int, name: String, block: () -> Unit) {
+        val start = Clock.systemUTC().instant()
+        block()
+        val elapsed = Duration.between(start, Clock.systemUTC().instant()).toMillis()
+        logger.info("$count $name took $elapsed ms (${count * 1000 / elapsed.coerceAtLeast(1)} per second)")
+    }
+}
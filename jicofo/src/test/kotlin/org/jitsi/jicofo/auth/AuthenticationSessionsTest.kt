@@ -0,0 +1,118 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.auth
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import org.jitsi.xmpp.extensions.jitsimeet.ConferenceIq
+import org.jxmpp.jid.impl.JidCreate
+import java.time.Duration
+
+class AuthenticationSessionsTest : ShouldSpec() {
+    private val lifetime = Duration.ofMinutes(1)
+    private val authAuthority = XMPPDomainAuthAuthority(false, lifetime, JidCreate.domainBareFrom("auth.example.com"))
+
+    private val room1 = JidCreate.entityBareFrom("room1@conference.example.com")
+    private val room2 = JidCreate.entityBareFrom("room2@conference.example.com")
+    private val jid1 = JidCreate.from("user1@auth.example.com/r1")
+    private val jid2 = JidCreate.from("user2@auth.example.com/r2")
+
+    override fun isolationMode() = IsolationMode.SingleInstance
+
+    init {
+        context("Indexed lookups") {
+            val session1 = authAuthority.createNewSession("m1", "user1@auth.example.com", room1)
+            val session2 = authAuthority.createNewSession("m2", "user2@auth.example.com", room2)
+            authAuthority.authenticateJidWithSession(session1, jid1, ConferenceIq())
+
+            should("find sessions by JID and identity") {
+                authAuthority.getSessionForJid(jid1) shouldBe session1.sessionId
+                authAuthority.getUserIdentity(jid1) shouldBe "user1@auth.example.com"
+                authAuthority.getSessionForJid(jid2) shouldBe null
+                authAuthority.findSessionForIdentity("m2", "user2@auth.example.com") shouldBe session2
+                authAuthority.findSessionForIdentity("m1", "user2@auth.example.com") shouldBe null
+            }
+            should("update the JID index when a session is authenticated with a new JID") {
+                authAuthority.authenticateJidWithSession(session1, jid2, ConferenceIq())
+                authAuthority.getSessionForJid(jid1) shouldBe null
+                authAuthority.getSessionForJid(jid2) shouldBe session1.sessionId
+            }
+            should("remove destroyed sessions from the indexes") {
+                authAuthority.getSessionForJid(jid2) shouldBe session1.sessionId
+                authAuthority.destroySession(session1.sessionId)
+                authAuthority.getSessionForJid(jid2) shouldBe null
+                authAuthority.findSessionForIdentity("m1", "user1@auth.example.com") shouldBe null
+                authAuthority.getSession(session2.sessionId) shouldBe session2
+            }
+            should("remove the sessions of a room when its conference ends") {
+                val session3 = authAuthority.createNewSession("m3", "user3@auth.example.com", room1)
+                authAuthority.authenticateJidWithSession(session2, jid2, ConferenceIq())
+                authAuthority.conferenceEnded(room2)
+                authAuthority.getSession(session2.sessionId) shouldBe null
+                authAuthority.getSessionForJid(jid2) shouldBe null
+                authAuthority.getSession(session3.sessionId) shouldBe session3
+                authAuthority.destroySession(session3.sessionId)
+            }
+        }
+        context("Expiry") {
+            val session1 = authAuthority.createNewSession("m1", "user1@auth.example.com", room1)
+            val session2 = authAuthority.createNewSession("m2", "user2@auth.example.com", room1)
+            authAuthority.authenticateJidWithSession(session1, jid1, ConferenceIq())
+            val created = maxOf(session1.activityTimestamp, session2.activityTimestamp)
+
+            should("not expire sessions before their lifetime") {
+                authAuthority.expireSessions(created + lifetime.toMillis() - 1)
+                authAuthority.getSession(session1.sessionId) shouldBe session1
+                authAuthority.getSession(session2.sessionId) shouldBe session2
+            }
+            should("expire sessions which have not been used") {
+                authAuthority.expireSessions(created + lifetime.toMillis() + 1)
+                authAuthority.getSession(session1.sessionId) shouldBe null
+                authAuthority.getSession(session2.sessionId) shouldBe null
+                authAuthority.getSessionForJid(jid1) shouldBe null
+            }
+            should("keep sessions which were used since they were queued") {
+                val session3 = authAuthority.createNewSession("m3", "user3@auth.example.com", room1)
+                val deadline = session3.activityTimestamp + lifetime.toMillis()
+                Thread.sleep(5)
+                session3.touch()
+                val renewed = session3.activityTimestamp + lifetime.toMillis()
+
+                authAuthority.expireSessions(deadline + 1)
+                authAuthority.getSession(session3.sessionId) shouldBe session3
+                authAuthority.expireSessions(renewed + 1)
+                authAuthority.getSession(session3.sessionId) shouldBe null
+            }
+        }
+        context("Destroyed sessions") {
+            authAuthority.expireSessions(Long.MAX_VALUE)
+            val sessions = List(200) { authAuthority.createNewSession("m$it", "user$it@auth.example.com", room2) }
+            sessions.forEach { authAuthority.destroySession(it.sessionId) }
+
+            should("be dropped from the expiry queue without waiting for their deadline") {
+                authAuthority.expiryQueueSize shouldBeLessThanOrEqual 64
+            }
+            should("be skipped when their deadline is reached") {
+                authAuthority.expireSessions(Long.MAX_VALUE)
+                authAuthority.expiryQueueSize shouldBe 0
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.codec
+
+import io.kotest.core.spec.style.ShouldSpec
+import org.jitsi.utils.logging2.createLogger
+import java.lang.management.ManagementFactory
+
+/**
+ * Compares the time and memory allocated to create offers with and without templates. Disabled by default, enable
+ * locally to run.
+ */
+class JingleOfferFactoryPerfTest : ShouldSpec() {
+    private val logger = createLogger()
+    private val threadMxBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    init {
+        xcontext("Creating offers") {
+            val options = listOf(
+                OfferOptions(),
+                OfferOptions(video = false),
+                OfferOptions(tcc = false, remb = true),
+                OfferOptions(rtx = false, opusRed = false)
+            )
+            val withTemplates = JingleOfferFactory(true)
+            val withoutTemplates = JingleOfferFactory(false)
+
+            // Warm up.
+            repeat(WARMUP) { i ->
+                withTemplates.createOffer(options[i % options.size])
+                withoutTemplates.createOffer(options[i % options.size])
+            }
+
+            should("Allocate less with templates") {
+                measureAndLog("Without templates") { i -> withoutTemplates.createOffer(options[i % options.size]) }
+                measureAndLog("With templates") { i -> withTemplates.createOffer(options[i % options.size]) }
+            }
+        }
+    }
+
+    private fun measureAndLog(name: String, block: (Int) -> Unit) {
+        val threadId = Thread.currentThread().id
+        val startBytes = threadMxBean.getThreadAllocatedBytes(threadId)
+        val startNanos = System.nanoTime()
+        repeat(ITERATIONS) { block(it) }
+        val nanos = System.nanoTime() - startNanos
+        val bytes = threadMxBean.getThreadAllocatedBytes(threadId) - startBytes
+        logger.info("$name: ${nanos / ITERATIONS} ns and ${bytes / ITERATIONS} bytes allocated per offer")
+    }
+
+    companion object {
+        private const val WARMUP = 10_000
+        private const val ITERATIONS = 100_000
+    }
+}
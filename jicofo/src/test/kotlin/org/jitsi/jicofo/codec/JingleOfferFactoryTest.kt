@@ -21,6 +21,8 @@ import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
 import org.jitsi.xmpp.extensions.jingle.ContentPacketExtension
 import org.jitsi.xmpp.extensions.jingle.PayloadTypePacketExtension
 import org.jitsi.xmpp.extensions.jingle.RtpDescriptionPacketExtension
@@ -53,8 +55,35 @@ class JingleOfferFactoryTest : ShouldSpec() {
             videoContent shouldNotBe null
             videoContent!!.containsRtx() shouldBe false
         }
+        context("Offers with the same options") {
+            val offer1 = jingleOfferFactory.createOffer(OfferOptions())
+            val offer2 = jingleOfferFactory.createOffer(OfferOptions())
+
+            should("Have separate contents") {
+                offer1.zip(offer2).forEach { (content1, content2) ->
+                    content1 shouldNotBeSameInstanceAs content2
+                    content1.rtpDescription() shouldNotBeSameInstanceAs content2.rtpDescription()
+                }
+            }
+            should("Share the payload types") {
+                offer1.zip(offer2).forEach { (content1, content2) ->
+                    content1.rtpDescription()?.payloadTypes?.zip(content2.rtpDescription()!!.payloadTypes)?.forEach {
+                        it.first shouldBeSameInstanceAs it.second
+                    }
+                }
+            }
+            should("Share the payload types with options which only differ for other media types") {
+                val audioOnly1 = jingleOfferFactory.createOffer(OfferOptions(video = false, rtx = true))
+                val audioOnly2 = jingleOfferFactory.createOffer(OfferOptions(video = false, rtx = false))
+                audioOnly1.single().rtpDescription()!!.payloadTypes.first() shouldBeSameInstanceAs
+                    audioOnly2.single().rtpDescription()!!.payloadTypes.first()
+            }
+        }
     }
 
+    private fun ContentPacketExtension.rtpDescription() =
+        getFirstChildOfType(RtpDescriptionPacketExtension::class.java)
+
     private fun ContentPacketExtension.containsRtx() =
         getChildExtensionsOfType(RtpDescriptionPacketExtension::class.java).any {
             it.getChildExtensionsOfType(PayloadTypePacketExtension::class.java).any { it.name == "rtx" }
@@ -29,6 +29,7 @@ import org.jitsi.jicofo.bridge.colibri.SSRC_OWNER_JVB
 import org.jitsi.jicofo.conference.source.ConferenceSourceMap
 import org.jitsi.jicofo.conference.source.EndpointSourceSet
 import org.jitsi.jicofo.conference.source.Source
+import org.jitsi.jicofo.conference.source.SourceSnapshot
 import org.jitsi.jicofo.conference.source.SsrcGroup
 import org.jitsi.jicofo.conference.source.SsrcGroupSemantics
 import org.jitsi.jicofo.xmpp.Features
@@ -39,6 +40,7 @@ import org.jitsi.utils.logging2.LoggerImpl
 import org.jitsi.xmpp.extensions.jingle.ContentPacketExtension
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
 import org.jxmpp.jid.impl.JidCreate
+import java.util.concurrent.CompletableFuture
 
 class ParticipantInviteRunnableTest : ShouldSpec({
     context("Creating and sending an offer") {
@@ -78,12 +80,14 @@ class ParticipantInviteRunnableTest : ShouldSpec({
             )
         )
         val colibriSessionManager = mockk<ColibriSessionManager> {
-            every { allocate(any()) } returns ColibriAllocation(
-                feedbackSources,
-                IceUdpTransportPacketExtension(),
-                null,
-                null,
-                null
+            every { allocateAsync(any()) } returns CompletableFuture.completedFuture(
+                ColibriAllocation(
+                    feedbackSources,
+                    IceUdpTransportPacketExtension(),
+                    null,
+                    null,
+                    null
+                )
             )
         }
 
@@ -92,10 +96,12 @@ class ParticipantInviteRunnableTest : ShouldSpec({
         val sourcesContentsSlot = slot<ConferenceSourceMap>()
         val conference = mockk<JitsiMeetConferenceImpl> {
             every { sources } returns conferenceSources
+            every { getSourceSnapshot(any()) } answers { SourceSnapshot(conferenceSources, firstArg()) }
             every { chatRoom } returns mockk {
                 every { hasMember(any()) } returns true
             }
             every { getSourcesForParticipant(any()) } returns EndpointSourceSet.EMPTY
+            every { sourceChanges } returns SourceChangeLog()
         }
         listOf(true, false).forEach { supportsVideo ->
             val features = Features.defaultFeatures.toMutableSet().apply {
@@ -127,7 +133,7 @@ class ParticipantInviteRunnableTest : ShouldSpec({
                             any(),
                             capture(sourcesContentsSlot)
                         )
-                    } returns true
+                    } returns CompletableFuture.completedFuture(true)
                 }
             }
 
@@ -19,8 +19,11 @@ import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.collections.shouldBeEmpty
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
 import org.jitsi.jicofo.conference.AddOrRemove.Add
 import org.jitsi.jicofo.conference.AddOrRemove.Remove
+import org.jitsi.jicofo.conference.SourceChangeLog
 import org.jitsi.jicofo.conference.SourceSignaling
 import org.jitsi.jicofo.util.shouldBeValidJson
 import org.jitsi.utils.MediaType
@@ -160,5 +163,89 @@ class SourceSignalingTest : ShouldSpec() {
             sourceSignaling.addSources(s2)
             sourceSignaling.update().shouldBeEmpty()
         }
+        context("Sharing a log between endpoints") {
+            val log = SourceChangeLog()
+            val sourceSignaling1 = SourceSignaling(log = log, endpointId = e1)
+            val sourceSignaling2 = SourceSignaling(log = log, endpointId = e2)
+
+            log.add(s1)
+            log.add(s2)
+            log.size shouldBe 2
+
+            should("Not signal an endpoint's own sources") {
+                sourceSignaling1.update().let {
+                    it.size shouldBe 1
+                    it[0].action shouldBe Add
+                    it[0].sources.toMap() shouldBe s2.toMap()
+                }
+                sourceSignaling2.update().let {
+                    it.size shouldBe 1
+                    it[0].action shouldBe Add
+                    it[0].sources.toMap() shouldBe s1.toMap()
+                }
+            }
+            should("Only signal the changes since the last update") {
+                sourceSignaling1.update()
+                sourceSignaling2.update()
+
+                log.add(s3)
+                log.remove(s2)
+                sourceSignaling1.update().let {
+                    it.size shouldBe 2
+                    it[0].action shouldBe Remove
+                    it[0].sources.toMap() shouldBe s2.toMap()
+                    it[1].action shouldBe Add
+                    it[1].sources.toMap() shouldBe s3.toMap()
+                }
+                sourceSignaling2.update().let {
+                    it.size shouldBe 1
+                    it[0].action shouldBe Add
+                    it[0].sources.toMap() shouldBe s3.toMap()
+                }
+            }
+            should("Drop entries consumed by all endpoints") {
+                sourceSignaling1.update()
+                log.add(s3)
+                // The first two entries are still needed by sourceSignaling2.
+                log.size shouldBe 3
+
+                sourceSignaling2.update()
+                sourceSignaling1.skipPending()
+                log.add(s2new)
+                log.size shouldBe 1
+            }
+            should("Not keep entries for a closed reader") {
+                sourceSignaling1.update()
+                log.add(s3)
+                log.size shouldBe 3
+
+                sourceSignaling2.close()
+                log.size shouldBe 1
+                sourceSignaling1.close()
+                log.size shouldBe 0
+            }
+            should("Share the encoding of the same changes") {
+                val sourceSignaling3 = SourceSignaling(log = log, endpointId = e3)
+                val sourceSignalingAudioOnly = SourceSignaling(video = false, log = log, endpointId = e3)
+                sourceSignaling1.update()
+                sourceSignaling2.update()
+                log.add(s3)
+
+                val encoded1 = sourceSignaling1.update().single().sources.let { sourceSignaling1.encode(it) }
+                val encoded2 = sourceSignaling2.update().single().sources.let { sourceSignaling2.encode(it) }
+                encoded1.sources.toMap() shouldBe s3.toMap()
+                encoded2 shouldBeSameInstanceAs encoded1
+                encoded2.json shouldBeSameInstanceAs encoded1.json
+                sourceSignaling3.update().shouldBeEmpty()
+
+                log.add(s2new)
+                val encoded = sourceSignaling1.update().single().sources.let { sourceSignaling1.encode(it) }
+                val encodedAudioOnly = sourceSignalingAudioOnly.update().single().sources.let {
+                    sourceSignalingAudioOnly.encode(it)
+                }
+                encodedAudioOnly shouldNotBeSameInstanceAs encoded
+                encodedAudioOnly.sources.toMap() shouldBe mapOf(e2 to EndpointSourceSet(e2a2))
+            }
+        }
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright @ 2026 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.conference.translation
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.core.test.TestCase
+import io.kotest.core.test.TestResult
+import io.kotest.matchers.shouldBe
+import io.mockk.every
+import org.jitsi.jicofo.TaskPools
+import org.jitsi.jicofo.conference.source.EndpointSourceSet
+import org.jitsi.jicofo.conference.source.Source
+import org.jitsi.jicofo.mock.ConferenceHarness
+import org.jitsi.jicofo.mock.inPlaceExecutor
+import org.jitsi.jicofo.mock.inPlaceScheduledExecutor
+import org.jitsi.jicofo.xmpp.muc.ChatRoomMember
+import org.jitsi.utils.MediaType
+import kotlin.random.Random
+
+/**
+ * Checks that the synthetic translation sources maintained incrementally (as endpoints join, leave, and add or remove
+ * sources) match those computed from scratch from the requests and the final sources of the conference.
+ */
+class ConferenceTranslationManagerTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode = IsolationMode.InstancePerLeaf
+
+    override suspend fun beforeAny(testCase: TestCase) = super.beforeAny(testCase).also {
+        TaskPools.ioPool = inPlaceExecutor
+        TaskPools.scheduledPool = inPlaceScheduledExecutor
+    }
+
+    override suspend fun afterAny(testCase: TestCase, result: TestResult) = super.afterAny(testCase, result).also {
+        TaskPools.resetIoPool()
+        TaskPools.resetScheduledPool()
+    }
+
+    init {
+        context("Randomized joins, leaves, source changes and request changes") {
+            (1..10).forEach { seed ->
+                should("match a full recompute (seed $seed)") {
+                    RandomSequence(Random(seed)).run(steps = 100)
+                }
+            }
+        }
+    }
+
+    private class RandomSequence(private val random: Random) {
+        private val harness = ConferenceHarness()
+        private val chatRoom = harness.chatRoom
+        private val conference = harness.conference
+
+        /** The audio sources currently signaled by each member. */
+        private val audioSources = mutableMapOf<ChatRoomMember, MutableList<Source>>()
+        private var requests: Map<String, List<String>> = emptyMap()
+
+        init {
+            every { chatRoom.chatRoom.translation } returns null
+        }
+
+        fun run(steps: Int) {
+            repeat(steps) {
+                when (random.nextInt(6)) {
+                    0, 1 -> join()
+                    2 -> leave()
+                    3 -> addAudioSource()
+                    4 -> removeAudioSource()
+                    else -> changeRequests()
+                }
+                checkAgainstFullRecompute()
+            }
+        }
+
+        private fun join() {
+            val member = harness.addParticipants(1)[0]
+            audioSources[member] = harness.getRemoteParticipant(member)!!.sources.sources
+                .filter { it.mediaType == MediaType.AUDIO }.toMutableList()
+        }
+
+        private fun leave() {
+            val member = audioSources.keys.randomOrNull(random) ?: return
+            chatRoom.removeMember(member)
+            audioSources.remove(member)
+        }
+
+        private fun addAudioSource() {
+            val member = audioSources.keys.randomOrNull(random) ?: return
+            if (audioSources[member]!!.size >= 3) return
+            val remoteParticipant = harness.getRemoteParticipant(member)!!
+            val source = remoteParticipant.nextSource(MediaType.AUDIO)
+            harness.getParticipant(member)!!.jingleSession!!.processIq(
+                remoteParticipant.createSourceAdd(EndpointSourceSet(source))
+            )
+            audioSources[member]!!.add(source)
+        }
+
+        private fun removeAudioSource() {
+            val member = audioSources.keys.randomOrNull(random) ?: return
+            val source = audioSources[member]!!.randomOrNull(random) ?: return
+            harness.getParticipant(member)!!.jingleSession!!.processIq(
+                harness.getRemoteParticipant(member)!!.createSourceRemove(EndpointSourceSet(source))
+            )
+            audioSources[member]!!.remove(source)
+        }
+
+        private fun changeRequests() {
+            // Include an endpoint which is not in the conference, whose request must be ignored.
+            val endpoints = audioSources.keys.map { it.name } + "absent"
+            requests = endpoints.filter { random.nextBoolean() }.associateWith { LANGUAGES.shuffled(random).take(2) }
+            chatRoom.chatRoomListeners.forEach { it.audioTranslationRequestsChanged(requests) }
+        }
+
+        private fun syntheticSources(): Map<String, Set<Source>> = conference.sources
+            .mapValues { (_, sourceSet) -> sourceSet.sources.filter { it.synthetic }.toSet() }
+            .filterValues { it.isNotEmpty() }
+
+        private fun checkAgainstFullRecompute() {
+            val incremental = syntheticSources()
+
+            // Recompute from scratch, with a new manager and only the final non-synthetic sources of the conference.
+            val nonSynthetic = conference.sources.mapValues { (_, sourceSet) ->
+                sourceSet.sources.filter { !it.synthetic }
+            }
+            val baseName = { sender: String ->
+                nonSynthetic[sender]?.firstOrNull { it.mediaType == MediaType.AUDIO }?.let {
+                    it.name ?: Source.nameForIdAndMediaType(sender, MediaType.AUDIO, 0)
+                }
+            }
+            val nonSyntheticSsrcs = nonSynthetic.values.flatten().map { it.ssrc }.toSet()
+            val expected = TranslationSourceManager()
+                .update(requests, baseName) { it in nonSyntheticSsrcs }
+                .sourcesBySender.filterValues { it.isNotEmpty() }
+
+            // The SSRCs are random, so compare everything else.
+            incremental.mapValues { (_, sources) -> sources.map { it.copy(ssrc = 0) }.toSet() } shouldBe
+                expected.mapValues { (_, sources) -> sources.map { it.copy(ssrc = 0) }.toSet() }
+
+            // The SSRCs must still be unique in the conference.
+            val syntheticSsrcs = incremental.values.flatten().map { it.ssrc }
+            syntheticSsrcs.toSet().size shouldBe syntheticSsrcs.size
+            syntheticSsrcs.filter { it in nonSyntheticSsrcs } shouldBe emptyList()
+        }
+    }
+
+    companion object {
+        private val LANGUAGES = listOf("en", "es", "fr", "de")
+    }
+}
@@ -21,13 +21,17 @@ import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
 import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeInstanceOf
 import io.mockk.every
 import io.mockk.mockk
 import io.mockk.mockkStatic
 import io.mockk.slot
 import io.mockk.verify
-import org.jitsi.jicofo.xmpp.sendIqAndGetResponse
+import org.jitsi.jicofo.TaskPools
+import org.jitsi.jicofo.mock.inPlaceExecutor
+import org.jitsi.jicofo.xmpp.sendIqAsync
 import org.jitsi.utils.logging2.Logger
 import org.jitsi.utils.logging2.LoggerImpl
 import org.jitsi.xmpp.extensions.jibri.JibriIq
@@ -35,9 +39,17 @@ import org.jivesoftware.smack.AbstractXMPPConnection
 import org.jivesoftware.smack.packet.IQ
 import org.jivesoftware.smack.packet.StanzaError
 import org.jxmpp.jid.impl.JidCreate
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletableFuture.completedFuture
+import java.util.concurrent.ExecutionException
 
 class JibriSessionTest : ShouldSpec({
     isolationMode = IsolationMode.InstancePerLeaf
+    // Handle the responses from Jibri inline.
+    TaskPools.ioPool = inPlaceExecutor
+    afterSpec {
+        TaskPools.resetIoPool()
+    }
 
     val stateListener: JibriSession.StateListener = mockk(relaxed = true)
     val roomName = JidCreate.entityBareFrom("room@bar.com/baz")
@@ -46,7 +58,9 @@ class JibriSessionTest : ShouldSpec({
     val maxNumRetries = 2
     // Mock the AbstractXMPPConnection.sendPacketAndGetReply extension function.
     mockkStatic("org.jitsi.jicofo.xmpp.UtilKt")
-    val mockXmppConnection: AbstractXMPPConnection = mockk()
+    val mockXmppConnection: AbstractXMPPConnection = mockk {
+        every { replyTimeout } returns 15000
+    }
     val jibriList = mutableListOf(
         JidCreate.bareFrom("jibri1@bar.com"),
         JidCreate.bareFrom("jibri2@bar.com"),
@@ -84,36 +98,39 @@ class JibriSessionTest : ShouldSpec({
 
     context("When sending a request to a Jibri to start a session throws an error") {
         val iqRequests = mutableListOf<IQ>()
-        every { mockXmppConnection.sendIqAndGetResponse(capture(iqRequests)) } answers {
+        every { mockXmppConnection.sendIqAsync(capture(iqRequests), any()) } answers {
             // First return error
-            IQ.createErrorResponse(arg(1), StanzaError.Condition.service_unavailable)
+            completedFuture(IQ.createErrorResponse(arg(1), StanzaError.Condition.service_unavailable))
         } andThenAnswer {
             // Then return a successful response
-            JibriIq().apply {
-                status = JibriIq.Status.PENDING
-                from = (arg(1) as IQ).to
-            }
+            completedFuture(
+                JibriIq().apply {
+                    status = JibriIq.Status.PENDING
+                    from = (arg(1) as IQ).to
+                }
+            )
         }
         context("Trying to start a Jibri session") {
             should("retry with another jibri") {
-                jibriSession.start()
-                verify(exactly = 2) { mockXmppConnection.sendIqAndGetResponse(any()) }
+                jibriSession.start().isDone shouldBe true
+                verify(exactly = 2) { mockXmppConnection.sendIqAsync(any(), any()) }
                 iqRequests shouldHaveSize 2
                 iqRequests[0].to shouldNotBe iqRequests[1].to
             }
         }
         context("and that's the only Jibri") {
             every { detector.selectJibri() } returns JidCreate.bareFrom("solo@bar.com")
-            every { mockXmppConnection.sendIqAndGetResponse(capture(iqRequests)) } answers {
+            every { mockXmppConnection.sendIqAsync(capture(iqRequests), any()) } answers {
                 // First return error
-                IQ.createErrorResponse(arg(1), StanzaError.Condition.service_unavailable)
+                completedFuture(IQ.createErrorResponse(arg(1), StanzaError.Condition.service_unavailable))
             }
             context("trying to start a jibri session") {
                 should("give up after exceeding the retry count") {
-                    shouldThrow<JibriSession.StartException> {
-                        jibriSession.start()
-                    }
-                    verify(exactly = maxNumRetries + 1) { mockXmppConnection.sendIqAndGetResponse(any()) }
+                    val result = jibriSession.start()
+                    shouldThrow<ExecutionException> {
+                        result.get()
+                    }.cause.shouldBeInstanceOf<JibriSession.StartException>()
+                    verify(exactly = maxNumRetries + 1) { mockXmppConnection.sendIqAsync(any(), any()) }
                 }
             }
         }
@@ -121,27 +138,87 @@ class JibriSessionTest : ShouldSpec({
     context("Trying to start a session with a Jibri that is busy") {
         val iq = slot<IQ>()
         // First return busy, then pending
-        every { mockXmppConnection.sendIqAndGetResponse(capture(iq)) } answers {
+        every { mockXmppConnection.sendIqAsync(capture(iq), any()) } answers {
+            completedFuture(
+                JibriIq().apply {
+                    type = IQ.Type.result
+                    from = iq.captured.to
+                    to = iq.captured.from
+                    shouldRetry = true
+                    status = JibriIq.Status.OFF
+                    failureReason = JibriIq.FailureReason.BUSY
+                }
+            )
+        } andThenAnswer {
+            completedFuture(
+                JibriIq().apply {
+                    type = IQ.Type.result
+                    from = iq.captured.to
+                    to = iq.captured.from
+                    shouldRetry = true
+                    status = JibriIq.Status.PENDING
+                }
+            )
+        }
+        jibriSession.start()
+        should("retry with another jibri") {
+            verify(exactly = 2) { mockXmppConnection.sendIqAsync(any(), any()) }
+        }
+    }
+    context("When a Jibri fails and there is no other Jibri to fall back to") {
+        val iq = slot<IQ>()
+        every { mockXmppConnection.sendIqAsync(capture(iq), any()) } answers {
+            completedFuture(
+                JibriIq().apply {
+                    type = IQ.Type.result
+                    from = iq.captured.to
+                    to = iq.captured.from
+                    status = JibriIq.Status.PENDING
+                }
+            )
+        }
+        jibriSession.start().isDone shouldBe true
+        every { detector.selectJibri() } returns null
+        every { detector.isAnyInstanceConnected } returns false
+
+        val noInstanceFailures = JibriStats.noInstanceFailures.get()
+        jibriSession.processJibriIqRequestFromJibri(
             JibriIq().apply {
-                type = IQ.Type.result
+                type = IQ.Type.set
                 from = iq.captured.to
-                to = iq.captured.from
-                shouldRetry = true
                 status = JibriIq.Status.OFF
-                failureReason = JibriIq.FailureReason.BUSY
+                failureReason = JibriIq.FailureReason.ERROR
+                shouldRetry = true
             }
-        } andThenAnswer {
+        )
+        should("record the failure") {
+            JibriStats.noInstanceFailures.get() shouldBe noInstanceFailures + 1
+            verify {
+                stateListener.onSessionStateChanged(jibriSession, JibriIq.Status.OFF, JibriIq.FailureReason.ERROR)
+            }
+        }
+    }
+    context("When the session is stopped before the Jibri responds to the start request") {
+        val iq = slot<IQ>()
+        val response = CompletableFuture<IQ?>()
+        every { mockXmppConnection.sendIqAsync(capture(iq), any()) } returns response
+        every { mockXmppConnection.trySendStanza(any()) } returns true
+
+        val result = jibriSession.start()
+        jibriSession.stop(initiator)
+        response.complete(
             JibriIq().apply {
                 type = IQ.Type.result
                 from = iq.captured.to
                 to = iq.captured.from
-                shouldRetry = true
                 status = JibriIq.Status.PENDING
             }
-        }
-        jibriSession.start()
-        should("retry with another jibri") {
-            verify(exactly = 2) { mockXmppConnection.sendIqAndGetResponse(any()) }
+        )
+        should("fail the start request") {
+            shouldThrow<ExecutionException> {
+                result.get()
+            }.cause.shouldBeInstanceOf<JibriSession.StartException.Stopped>()
+            verify(exactly = 1) { mockXmppConnection.sendIqAsync(any(), any()) }
         }
     }
 })
@@ -23,6 +23,7 @@ import org.jitsi.jicofo.jigasi.JigasiDetector
 import org.jitsi.xmpp.extensions.colibri.ColibriStatsExtension
 import org.jxmpp.jid.EntityFullJid
 import org.jxmpp.jid.impl.JidCreate
+import java.time.Duration
 
 class JigasiSelectorTest : ShouldSpec() {
     init {
@@ -103,6 +104,18 @@ class JigasiSelectorTest : ShouldSpec() {
                 exclude = listOf(transcriber1),
                 preferredRegions = listOf(r3)
             ) shouldBe transcriber2
+
+            // An instance which recently failed a request is avoided, unless there are no others.
+            selector.instanceStats.requestFailed(transcriber1, timedOut = true)
+            selector.selectTranscriber() shouldBe transcriber2
+            selector.selectTranscriber(exclude = listOf(transcriber2)) shouldBe transcriber1
+            selector.instanceStats.requestSucceeded(transcriber1, Duration.ofMillis(100))
+            selector.selectTranscriber() shouldBe transcriber1
+
+            // Requests sent since the last presence are added to the reported participants.
+            selector.instanceStats.requestSent(transcriber1)
+            selector.instanceStats.requestSent(transcriber1)
+            selector.selectTranscriber() shouldBe transcriber2
         }
     }
 }
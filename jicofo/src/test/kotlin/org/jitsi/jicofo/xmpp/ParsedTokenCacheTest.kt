@@ -0,0 +1,82 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2026 - present 8x8, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.xmpp
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+import org.jitsi.utils.time.FakeClock
+import java.time.Duration
+import java.util.Base64
+
+class ParsedTokenCacheTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode = IsolationMode.InstancePerLeaf
+
+    init {
+        context("Parsed token cache") {
+            val clock = FakeClock()
+            val cache = ParsedTokenCache(2, Duration.ofMinutes(10), clock)
+            val now = clock.instant().epochSecond
+
+            should("return the same parsed token for the same token") {
+                val token = createToken("user1", now + 3600)
+                val parsed = cache.get(token)
+                parsed?.context?.user?.id shouldBe "user1"
+                cache.get(String(token.toCharArray())) shouldBeSameInstanceAs parsed
+            }
+            should("parse different tokens separately") {
+                cache.get(createToken("user1", now + 3600))?.context?.user?.id shouldBe "user1"
+                cache.get(createToken("user2", now + 3600))?.context?.user?.id shouldBe "user2"
+            }
+            should("drop entries when the token expires") {
+                val token = createToken("user1", now + 60)
+                val parsed = cache.get(token)
+                clock.elapse(Duration.ofSeconds(30))
+                cache.get(token) shouldBeSameInstanceAs parsed
+                clock.elapse(Duration.ofSeconds(31))
+                cache.get(token) shouldNotBeSameInstanceAs parsed
+            }
+            should("drop entries after the TTL") {
+                val token = createToken("user1", null)
+                val parsed = cache.get(token)
+                clock.elapse(Duration.ofMinutes(11))
+                cache.get(token) shouldNotBeSameInstanceAs parsed
+            }
+            should("keep at most max-size entries") {
+                cache.get(createToken("user1", null))
+                cache.get(createToken("user2", null))
+                cache.get(createToken("user3", null))
+                cache.size shouldBe 2
+            }
+            should("return null for invalid tokens") {
+                cache.get("invalid") shouldBe null
+                cache.get("invalid") shouldBe null
+            }
+        }
+    }
+}
+
+private fun createToken(userId: String, exp: Long?): String {
+    val encoder = Base64.getUrlEncoder().withoutPadding()
+    val header = encoder.encodeToString("""{"alg":"HS256","typ":"JWT"}""".toByteArray())
+    val expClaim = exp?.let { ""","exp":$it""" } ?: ""
+    val payload = """{"context":{"user":{"id":"$userId"},"group":"group1"}$expClaim}"""
+    return "$header.${encoder.encodeToString(payload.toByteArray())}.signature"
+}
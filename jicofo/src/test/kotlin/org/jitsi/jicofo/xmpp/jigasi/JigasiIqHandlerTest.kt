@@ -17,9 +17,11 @@
  */
 package org.jitsi.jicofo.xmpp.jigasi
 
+import io.kotest.assertions.nondeterministic.eventually
 import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.Spec
 import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldBeEmpty
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeInstanceOf
 import io.mockk.every
@@ -27,6 +29,7 @@ import io.mockk.mockk
 import org.jitsi.jicofo.TaskPools
 import org.jitsi.jicofo.conference.JitsiMeetConference
 import org.jitsi.jicofo.jigasi.JigasiDetector
+import org.jitsi.jicofo.jigasi.JigasiInstanceStats
 import org.jitsi.jicofo.mock.MockXmppConnection
 import org.jitsi.jicofo.mock.inPlaceExecutor
 import org.jitsi.jicofo.util.ListConferenceStore
@@ -35,6 +38,7 @@ import org.jitsi.jicofo.xmpp.IqProcessingResult.RejectedWithError
 import org.jitsi.jicofo.xmpp.IqRequest
 import org.jitsi.jicofo.xmpp.JigasiIqHandler
 import org.jitsi.xmpp.extensions.rayo.DialIq
+import org.jitsi.xmpp.extensions.rayo.HangUp
 import org.jivesoftware.smack.packet.EmptyResultIQ
 import org.jivesoftware.smack.packet.ErrorIQ
 import org.jivesoftware.smack.packet.IQ
@@ -42,6 +46,9 @@ import org.jivesoftware.smack.packet.Stanza
 import org.jivesoftware.smack.packet.StanzaError.Condition
 import org.jxmpp.jid.Jid
 import org.jxmpp.jid.impl.JidCreate
+import java.time.Duration
+import java.util.Collections
+import kotlin.time.Duration.Companion.seconds
 
 class JigasiIqHandlerTest : ShouldSpec() {
     override fun isolationMode(): IsolationMode = IsolationMode.SingleInstance
@@ -52,14 +59,16 @@ class JigasiIqHandlerTest : ShouldSpec() {
     private val jigasi1 = JidCreate.from("jigasi1@example.com")
     private val jigasi2 = JidCreate.from("jigasi2@example.com")
     private val jigasiXmppConnection = JigasiXmppConnection()
+    private val instanceStats = JigasiInstanceStats()
     private val jigasiDetector: JigasiDetector = mockk {
         every { xmppConnection } returns jigasiXmppConnection.xmppConnection
+        every { instanceStats } returns this@JigasiIqHandlerTest.instanceStats
     }
 
     private val conferenceStore = ListConferenceStore()
     private val jigasiIqHandler = JigasiIqHandler(setOf(), conferenceStore, jigasiDetector)
 
-    private val dialResponses = mutableListOf<Stanza>()
+    private val dialResponses: MutableList<Stanza> = Collections.synchronizedList(mutableListOf())
     private val dialRequest = IqRequest(
         DialIq().apply {
             from = participant
@@ -126,11 +135,12 @@ class JigasiIqHandlerTest : ShouldSpec() {
                     jigasiXmppConnection.responses[jigasi1] = JigasiXmppConnection.Response.Timeout
                     every { jigasiDetector.selectSipJigasi(any(), any()) } answers { jigasi1 } andThen null
 
-                    jigasiIqHandler.handleRequest(dialRequest).shouldBeInstanceOf<AcceptedWithNoResponse>()
-                    dialResponses.last().let {
+                    // The timeout fires on another thread.
+                    handleAndAwaitResponse(jigasiIqHandler).let {
                         it.shouldBeInstanceOf<IQ>()
-                        it.shouldBeError()
+                        it.shouldBeError(Condition.remote_server_timeout)
                     }
+                    instanceStats.isPenalized(jigasi1) shouldBe true
                 }
                 context("And the only jigasi instance succeeds") {
                     jigasiXmppConnection.responses[jigasi1] = JigasiXmppConnection.Response.Success
@@ -157,9 +167,61 @@ class JigasiIqHandlerTest : ShouldSpec() {
                         it.shouldBeSuccessful()
                     }
                 }
+                context("With hedging, the first jigasi instance doesn't respond, but the second succeeds") {
+                    val hedgingIqHandler = JigasiIqHandler(setOf(), conferenceStore, jigasiDetector, Duration.ZERO)
+                    every { jigasiXmppConnection.xmppConnection.replyTimeout } returns 60_000
+                    jigasiXmppConnection.responses[jigasi1] = JigasiXmppConnection.Response.Timeout
+                    jigasiXmppConnection.responses[jigasi2] = JigasiXmppConnection.Response.Success
+                    every { jigasiDetector.selectSipJigasi(any(), any()) } answers {
+                        jigasi1
+                    } andThenAnswer {
+                        jigasi2
+                    }
+
+                    handleAndAwaitResponse(hedgingIqHandler).let {
+                        it.shouldBeInstanceOf<IQ>()
+                        it.shouldBeSuccessful()
+                    }
+                    instanceStats.isPenalized(jigasi2) shouldBe false
+                }
+                context("With hedging, both jigasi instances succeed") {
+                    val hedgingIqHandler = JigasiIqHandler(setOf(), conferenceStore, jigasiDetector, Duration.ZERO)
+                    every { jigasiXmppConnection.xmppConnection.replyTimeout } returns 60_000
+                    jigasiXmppConnection.responses[jigasi1] = JigasiXmppConnection.Response.Held
+                    jigasiXmppConnection.responses[jigasi2] = JigasiXmppConnection.Response.Success
+                    every { jigasiDetector.selectSipJigasi(any(), any()) } answers {
+                        jigasi1
+                    } andThenAnswer {
+                        jigasi2
+                    }
+
+                    val responseCount = dialResponses.size
+                    handleAndAwaitResponse(hedgingIqHandler).let {
+                        it.shouldBeInstanceOf<IQ>()
+                        it.shouldBeSuccessful()
+                    }
+                    jigasiXmppConnection.hangUps.shouldBeEmpty()
+
+                    // The first instance responds after the second one was used.
+                    jigasiXmppConnection.releaseHeld(jigasi1)
+                    eventually(5.seconds) {
+                        jigasiXmppConnection.hangUps.map { it.to } shouldBe listOf(jigasi1)
+                    }
+                    dialResponses.size shouldBe responseCount + 1
+                }
             }
         }
     }
+
+    /** Handle [dialRequest] and wait for the response, which may be sent from another thread. */
+    private suspend fun handleAndAwaitResponse(handler: JigasiIqHandler): Stanza {
+        val count = dialResponses.size
+        handler.handleRequest(dialRequest).shouldBeInstanceOf<AcceptedWithNoResponse>()
+        eventually(5.seconds) {
+            dialResponses.size shouldBe count + 1
+        }
+        return dialResponses.last()
+    }
 }
 
 private fun IQ?.shouldBeError(condition: Condition? = null) {
@@ -175,19 +237,37 @@ private fun IQ?.shouldBeSuccessful() {
 
 class JigasiXmppConnection : MockXmppConnection() {
     val responses = mutableMapOf<Jid, Response>()
+
+    /** The requests to instances with a [Response.Held] response, which have not been responded to yet. */
+    private val held = Collections.synchronizedMap(mutableMapOf<Jid, IQ>())
+
+    val hangUps: MutableList<IQ> = Collections.synchronizedList(mutableListOf())
+
     override fun handleIq(iq: IQ): IQ? = when (iq) {
         is DialIq -> responses.computeIfAbsent(iq.to) { Response.Success }.let {
             when (it) {
                 Response.Success -> IQ.createResultIQ(iq)
                 Response.Failure -> IQ.createErrorResponse(iq, Condition.internal_server_error)
                 Response.Timeout -> null
+                Response.Held -> {
+                    held[iq.to] = iq
+                    null
+                }
             }
         }
+        is HangUp -> {
+            hangUps.add(iq)
+            IQ.createResultIQ(iq)
+        }
         else -> {
             println("Not handling ${iq.toXML()}")
             null
         }
     }
 
-    enum class Response { Success, Failure, Timeout }
+    /** Respond successfully to the request held for [jigasi]. */
+    fun releaseHeld(jigasi: Jid) = held.remove(jigasi)?.let { deliver(IQ.createResultIQ(it)) }
+
+    /** [Held] responses are only sent when released with [releaseHeld]. */
+    enum class Response { Success, Failure, Timeout, Held }
 }